@@ -0,0 +1,202 @@
+package org.example;
+import org.eclipse.sumo.libtraci.Edge;
+import org.eclipse.sumo.libtraci.IntVector;
+import org.eclipse.sumo.libtraci.SubscriptionResults;
+import org.eclipse.sumo.libtraci.TraCIDouble;
+import org.eclipse.sumo.libtraci.TraCIInt;
+import org.eclipse.sumo.libtraci.TraCIResult;
+import org.eclipse.sumo.libtraci.TraCIResults;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 每条道路 (非路口内部 Edge) 的实时数据：车辆数、平均速度、停车数、占有率
+ * 每条 Edge 只订阅一次，由 SUMO 自己计算，每步只读一次订阅结果
+ * 数据存放在按 Edge 下标索引的基本类型数组里，原地覆盖 (只在仿真线程使用)
+ * 排名 (top) 用 EdgeTopK 维护，每步只更新数值有变化的 Edge，不再遍历全部道路
+ * 移植自 Milestone3 的 EdgeMetricsStore (原版)：先改那边，再同步到这里
+ */
+public class EdgeMetricsStore {
+    // 排名方式：车辆数 / 停车数 / 速度下降 (1 - 平均速度 / 畅通速度，只算有车的 Edge)
+    public enum Ranking {
+        VEHICLES("vehicles"),
+        HALTING("halting"),
+        SPEED_DROP("speed drop");
+
+        final String label;
+        Ranking(String label) { this.label = label; }
+
+        @Override
+        public String toString() { return "Top edges by " + label; }
+    }
+
+    // TraCI Edge 变量 (上一步)
+    static final int LAST_STEP_VEHICLE_NUMBER = 0x10;
+    static final int LAST_STEP_MEAN_SPEED = 0x11;
+    static final int LAST_STEP_OCCUPANCY = 0x13;
+    static final int LAST_STEP_VEHICLE_HALTING_NUMBER = 0x14;
+
+    private String[] ids = new String[0];
+    private final Map<String, Integer> indexOf = new HashMap<>();
+
+    private int[] vehicles = new int[0];
+    private int[] halting = new int[0];
+    private double[] meanSpeed = new double[0];
+    private double[] occupancy = new double[0];
+    // 畅通速度：SUMO 对空 Edge 报告的平均速度就是限速，取见过的最大值
+    private double[] freeSpeed = new double[0];
+    private boolean subscribed = false;
+
+    private final EdgeTopK[] rank = new EdgeTopK[Ranking.values().length];
+    // 本步数值有变化的 Edge
+    private int[] dirty = new int[0];
+    private boolean[] isDirty = new boolean[0];
+    private int dirtyCount = 0;
+
+    /**
+     * 订阅所有非内部 Edge (SUMO 连接建立之后，第一次 update 时自动调用)
+     */
+    public void subscribeAll() {
+        List<String> all = Edge.getIDList();
+        ids = all.stream().filter(id -> !id.startsWith(":")).toArray(String[]::new);
+        indexOf.clear();
+        for (int e = 0; e < ids.length; e++) indexOf.put(ids[e], e);
+        vehicles = new int[ids.length];
+        halting = new int[ids.length];
+        meanSpeed = new double[ids.length];
+        occupancy = new double[ids.length];
+        freeSpeed = new double[ids.length];
+        for (int r = 0; r < rank.length; r++) rank[r] = new EdgeTopK(ids.length);
+        dirty = new int[ids.length];
+        isDirty = new boolean[ids.length];
+        dirtyCount = 0;
+
+        IntVector vars = new IntVector();
+        vars.add(LAST_STEP_VEHICLE_NUMBER);
+        vars.add(LAST_STEP_MEAN_SPEED);
+        vars.add(LAST_STEP_VEHICLE_HALTING_NUMBER);
+        vars.add(LAST_STEP_OCCUPANCY);
+        for (String id : ids) {
+            try {
+                Edge.subscribe(id, vars);
+            } catch (Exception e) {
+                System.err.println("Edge subscribe failed: " + id);
+            }
+        }
+        subscribed = true;
+    }
+
+    /**
+     * 每步仿真后调用：读取所有 Edge 的订阅结果，只把有变化的 Edge 放进排名堆
+     * (SUMO 每步都返回所有已订阅的 Edge，缺失的保留上一步的值)
+     */
+    public void update() {
+        if (!subscribed) subscribeAll();
+
+        SubscriptionResults all = Edge.getAllSubscriptionResults();
+        for (Map.Entry<String, TraCIResults> entry : all.entrySet()) {
+            Integer e = indexOf.get(entry.getKey());
+            if (e == null || entry.getValue() == null) continue;
+            for (Map.Entry<Integer, TraCIResult> v : entry.getValue().entrySet()) {
+                if (v.getKey() == null || v.getValue() == null) continue;
+                double value = toDouble(v.getValue());
+                boolean changed;
+                switch (v.getKey()) {
+                    case LAST_STEP_VEHICLE_NUMBER:
+                        changed = vehicles[e] != (int) value;
+                        vehicles[e] = (int) value;
+                        break;
+                    case LAST_STEP_VEHICLE_HALTING_NUMBER:
+                        changed = halting[e] != (int) value;
+                        halting[e] = (int) value;
+                        break;
+                    case LAST_STEP_MEAN_SPEED:
+                        changed = meanSpeed[e] != value;
+                        meanSpeed[e] = value;
+                        break;
+                    case LAST_STEP_OCCUPANCY:
+                        occupancy[e] = value; // 不参与排名
+                        changed = false;
+                        break;
+                    default:
+                        changed = false;
+                        break;
+                }
+                if (changed && !isDirty[e]) {
+                    isDirty[e] = true;
+                    dirty[dirtyCount++] = e;
+                }
+            }
+        }
+
+        for (int i = 0; i < dirtyCount; i++) {
+            int e = dirty[i];
+            isDirty[e] = false;
+            if (vehicles[e] == 0 && meanSpeed[e] > freeSpeed[e]) freeSpeed[e] = meanSpeed[e];
+            rank[Ranking.VEHICLES.ordinal()].update(e, vehicles[e]);
+            rank[Ranking.HALTING.ordinal()].update(e, halting[e]);
+            rank[Ranking.SPEED_DROP.ordinal()].update(e, speedDrop(e));
+        }
+        dirtyCount = 0;
+    }
+
+    private static double toDouble(TraCIResult r) {
+        if (r instanceof TraCIDouble) return ((TraCIDouble) r).getValue();
+        if (r instanceof TraCIInt) return ((TraCIInt) r).getValue();
+        try {
+            return Double.parseDouble(r.getString().trim());
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    // --- 查询方法 ---
+
+    public int size() { return ids.length; }
+    public String id(int e) { return ids[e]; }
+
+    // 内部 / 未知 Edge 返回 -1
+    public int index(String edgeId) {
+        Integer e = indexOf.get(edgeId);
+        return e == null ? -1 : e;
+    }
+
+    public int vehicles(int e) { return vehicles[e]; }
+    public int halting(int e) { return halting[e]; }
+    public double meanSpeed(int e) { return meanSpeed[e]; }
+    public double occupancy(int e) { return occupancy[e]; }
+
+    // 0..1，空 Edge 或还不知道畅通速度时为 0
+    public double speedDrop(int e) {
+        double free = freeSpeed[e];
+        if (vehicles[e] == 0 || !(free > 0)) return 0.0;
+        return Math.max(0.0, Math.min(1.0, 1.0 - meanSpeed[e] / free));
+    }
+
+    // 车辆最多的 Edge 下标 (相同时取下标小的)，全部为空时返回 -1
+    public int busiest() {
+        return subscribed ? rank[Ranking.VEHICLES.ordinal()].peek() : -1;
+    }
+
+    // 按 r 排名的前 k 个 Edge 写入 out，返回个数 (只包含数值 > 0 的 Edge)
+    public int top(Ranking r, int k, int[] out) {
+        return subscribed ? rank[r.ordinal()].top(k, out) : 0;
+    }
+
+    // 排名列表的文本，每行 "1. id (...)"
+    public List<String> topLines(Ranking r, int k) {
+        int[] out = new int[k];
+        int n = top(r, k, out);
+        List<String> lines = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int e = out[i];
+            String line = String.format("%d. %s (%d veh, %d halting, %.1f m/s)",
+                    i + 1, ids[e], vehicles[e], halting[e], meanSpeed[e]);
+            if (r == Ranking.SPEED_DROP) line += String.format(" -%.0f%%", 100.0 * speedDrop(e));
+            lines.add(line);
+        }
+        return lines;
+    }
+}
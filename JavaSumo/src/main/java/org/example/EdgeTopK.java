@@ -0,0 +1,151 @@
+package org.example;
+import java.util.Arrays;
+
+/**
+ * 按 Edge 下标索引的二叉最大堆 (indexed heap)：不用遍历所有道路就能拿到 Top-K
+ * update(e, key) 只在数值变化时调整堆，O(log 道路数)；top(k) 按从大到小取前 k 个，O(k log k)
+ * key <= 0 的 Edge 不在堆里；数值相同时下标小的在前，排名不会来回跳
+ * 只在仿真线程使用
+ * 移植自 Milestone3 的 EdgeTopK (原版)：先改那边，再同步到这里
+ */
+public class EdgeTopK {
+    private final int[] heap;   // Edge 下标，heap[0] 最大
+    private final int[] pos;    // Edge -> 在 heap 中的位置，不在堆里为 -1
+    private final double[] key;
+    private int size = 0;
+
+    // top() 用的候选堆 (复用)
+    private int[] cand = new int[16];
+
+    public EdgeTopK(int edges) {
+        heap = new int[edges];
+        pos = new int[edges];
+        key = new double[edges];
+        Arrays.fill(pos, -1);
+    }
+
+    public int size() { return size; }
+    public double key(int e) { return key[e]; }
+
+    // 堆为空时返回 -1
+    public int peek() { return size == 0 ? -1 : heap[0]; }
+
+    public void update(int e, double k) {
+        if (!(k > 0)) k = 0.0;
+        double old = key[e];
+        if (k == old && (pos[e] >= 0) == (k > 0)) return; // 没变化
+        key[e] = k;
+
+        int p = pos[e];
+        if (k <= 0) {
+            if (p >= 0) remove(p);
+            return;
+        }
+        if (p < 0) {
+            p = size++;
+            heap[p] = e;
+            pos[e] = p;
+            siftUp(p);
+        } else if (k > old) {
+            siftUp(p);
+        } else {
+            siftDown(p);
+        }
+    }
+
+    private void remove(int p) {
+        int e = heap[p];
+        int last = --size;
+        pos[e] = -1;
+        if (p == last) return;
+        int moved = heap[last];
+        heap[p] = moved;
+        pos[moved] = p;
+        siftDown(p);
+        if (pos[moved] == p) siftUp(p);
+    }
+
+    // a 排在 b 前面
+    private boolean above(int a, int b) {
+        return key[a] > key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int p) {
+        int e = heap[p];
+        while (p > 0) {
+            int parent = (p - 1) >>> 1;
+            int pe = heap[parent];
+            if (!above(e, pe)) break;
+            heap[p] = pe;
+            pos[pe] = p;
+            p = parent;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+
+    private void siftDown(int p) {
+        int e = heap[p];
+        while (true) {
+            int c = 2 * p + 1;
+            if (c >= size) break;
+            if (c + 1 < size && above(heap[c + 1], heap[c])) c++;
+            int ce = heap[c];
+            if (!above(ce, e)) break;
+            heap[p] = ce;
+            pos[ce] = p;
+            p = c;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+
+    /**
+     * 前 k 个 Edge (从大到小) 写入 out，返回个数
+     * 从堆顶开始，用一个小的候选堆按顺序展开子节点，不用排序整个堆
+     */
+    public int top(int k, int[] out) {
+        int n = Math.min(k, size);
+        if (n <= 0) return 0;
+        if (cand.length < n + 1) cand = new int[Math.max(n + 1, cand.length * 2)];
+
+        int cs = 0;
+        cand[cs++] = 0;
+        for (int i = 0; i < n; i++) {
+            int p = cand[0];
+            out[i] = heap[p];
+            cand[0] = cand[--cs];
+            candDown(cs);
+            for (int c = 2 * p + 1; c <= 2 * p + 2 && c < size; c++) {
+                cand[cs] = c;
+                candUp(cs++);
+            }
+        }
+        return n;
+    }
+
+    private void candUp(int i) {
+        int v = cand[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(heap[v], heap[cand[parent]])) break;
+            cand[i] = cand[parent];
+            i = parent;
+        }
+        cand[i] = v;
+    }
+
+    private void candDown(int cs) {
+        if (cs == 0) return;
+        int i = 0, v = cand[0];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= cs) break;
+            if (c + 1 < cs && above(heap[cand[c + 1]], heap[cand[c]])) c++;
+            if (!above(heap[cand[c]], heap[v])) break;
+            cand[i] = cand[c];
+            i = c;
+        }
+        cand[i] = v;
+    }
+}
@@ -119,6 +119,22 @@ public class Main {
         rightPanel.add(avgWaitLabel);
         //rightPanel.add(Box.createVerticalStrut(15));
         rightPanel.add(congestionLabel);
+
+        // 拥堵路段排名 (车辆数 / 停车数 / 速度下降)
+        rightPanel.add(Box.createVerticalStrut(15));
+        JComboBox<EdgeMetricsStore.Ranking> cmbTopEdges = new JComboBox<>(EdgeMetricsStore.Ranking.values());
+        cmbTopEdges.setFont(FONT_NORMAL);
+        cmbTopEdges.setMaximumSize(new Dimension(Integer.MAX_VALUE, 25));
+        cmbTopEdges.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JTextArea txtTopEdges = new JTextArea("-", 5, 1);
+        txtTopEdges.setEditable(false);
+        txtTopEdges.setFont(FONT_NORMAL);
+        txtTopEdges.setForeground(Color.LIGHT_GRAY);
+        txtTopEdges.setBackground(BG_DARK);
+        txtTopEdges.setAlignmentX(Component.LEFT_ALIGNMENT);
+        rightPanel.add(cmbTopEdges);
+        rightPanel.add(Box.createVerticalStrut(5));
+        rightPanel.add(txtTopEdges);
         rightPanel.add(Box.createVerticalGlue()); // 占位，把内容顶上去
 
         frame.add(rightPanel, BorderLayout.EAST);
@@ -130,6 +146,9 @@ public class Main {
         activeVehiclesLabel.setText("Active Vehicles: 0");
 
         SimulationManager simManager = new SimulationManager(mapPanel, activeVehiclesLabel,congestionLabel);
+        simManager.setTopEdgesView(txtTopEdges);
+        cmbTopEdges.addActionListener(e ->
+                simManager.setTopEdgesRanking((EdgeMetricsStore.Ranking) cmbTopEdges.getSelectedItem()));
 
 
         // --- 左侧：控制面板 (Controls) ---
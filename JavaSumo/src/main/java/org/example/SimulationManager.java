@@ -24,6 +24,10 @@ public class SimulationManager implements Runnable {
     private final Main.MapPanel mapPanel;
     private final JLabel activeVehiclesLabel;
     private final JLabel congestionLabel; // <--- 新增这个
+    // 拥堵路段排名列表 (可选)，排名方式由 GUI 下拉框选择
+    private JTextArea topEdgesArea;
+    private volatile EdgeMetricsStore.Ranking topEdgesRanking = EdgeMetricsStore.Ranking.VEHICLES;
+    private static final int TOP_EDGES = 5;
     // 运行标志
     private volatile boolean running = true;
 
@@ -57,6 +61,20 @@ public class SimulationManager implements Runnable {
         this.running = false;
     }
 
+    /**
+     * 设置显示拥堵路段排名的文本框 (在启动线程之前调用)
+     */
+    public void setTopEdgesView(JTextArea area) {
+        this.topEdgesArea = area;
+    }
+
+    /**
+     * 切换排名方式 (GUI 线程调用，下一步生效)
+     */
+    public void setTopEdgesRanking(EdgeMetricsStore.Ranking ranking) {
+        this.topEdgesRanking = ranking;
+    }
+
     // --- 工作线程逻辑 ---
 
     @Override
@@ -89,20 +107,16 @@ public class SimulationManager implements Runnable {
                 statsCollector.update(ids);
 
                 /// >>> E. 计算拥堵路段 (在后台线程计算，不卡界面) <<<
-                Map<String, Integer> density = statsCollector.getEdgeDensities();
-                String maxEdge = "None";
-                int maxCount = 0;
-                // 找出车辆最多的路段
-
-                for (Map.Entry<String, Integer> entry : density.entrySet()) {
-                    if (entry.getValue() > maxCount) {
-                        maxCount = entry.getValue();
-                        maxEdge = entry.getKey();
-                    }
-                }
+                // 车辆最多的路段就是排名堆的堆顶，不用遍历所有道路
+                EdgeMetricsStore edges = statsCollector.getEdgeMetrics();
+                int hot = edges.busiest();
+                String maxEdge = hot < 0 ? "None" : edges.id(hot);
+                int maxCount = hot < 0 ? 0 : edges.vehicles(hot);
                 // 准备好要显示的字符串 (final 变量以便传入 lambda)
                 final String congestionText = "Hottest Edge: " + maxEdge + " (" + maxCount + ")";
                 final int activeCount = ids.size();
+                final String topEdgesText = topEdgesArea == null ? null
+                        : String.join("\n", edges.topLines(topEdgesRanking, TOP_EDGES));
                 // F. 更新 GUI (必须在 EDT 中执行)
                 int count = ids.size();
                 SwingUtilities.invokeLater(() -> {
@@ -110,6 +124,7 @@ public class SimulationManager implements Runnable {
                     mapPanel.repaint();
                     activeVehiclesLabel.setText("Active Vehicles: " + activeCount);
                     congestionLabel.setText(congestionText); // <--- 这里更新！
+                    if (topEdgesText != null) topEdgesArea.setText(topEdgesText.isEmpty() ? "-" : topEdgesText);
                 });
 
                 // 控制帧率
@@ -183,6 +198,11 @@ public class SimulationManager implements Runnable {
         // 2. 打印某辆车的平均速度 (例如第一辆)
         double systemAvg = statsCollector.getSystemAverageSpeed();
         System.out.printf("System Avg Speed: %.2f m/s%n", systemAvg);
+
+        // 3. 已完成的行程
+        TripStore trips = statsCollector.getTrips();
+        System.out.printf("Finished Trips: %d (avg travel %.1f s, avg wait %.1f s)%n",
+                trips.totalTrips(), trips.averageTravelTime(), trips.averageWaitTime());
         System.out.println("-----------------------");
     }
 
@@ -1,67 +1,121 @@
 package org.example;
+import org.eclipse.sumo.libtraci.Simulation;
 import org.eclipse.sumo.libtraci.Vehicle;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 public class StatisticsCollector {
-    private final Map<String, VehicleData> vehicleHistory = new ConcurrentHashMap<>();
+    // 只保存正在行驶的车辆；到达后写入 trips 并移除，长时间运行也不会增长
+    private final Map<String, VehicleData> activeVehicles = new ConcurrentHashMap<>();
 
-    // 存储当前帧的道路密度 (EdgeID -> Count)
-    private final Map<String, Integer> currentEdgeDensity = new ConcurrentHashMap<>();
+    // 已完成的行程 (列式存储，见 TripStore)
+    private final TripStore trips = new TripStore();
+
+    // 活跃车辆平均速度之和 (增量维护)，系统平均速度不用再遍历车辆
+    private double activeAvgSpeedSum = 0.0;
+
+    // 仿真步长 [秒]，只读一次
+    private double stepLength = Double.NaN;
+
+    // 每条道路的实时数据 (Edge 订阅，SUMO 计算，不再逐车调用 getRoadID)
+    private final EdgeMetricsStore edgeMetrics = new EdgeMetricsStore();
 
     /**
      * 在 SimulationManager 的每一步调用此方法
      * @param activeVehicleIds 当前活跃的所有车辆 ID 列表
      */
     public void update(List<String> activeVehicleIds) {
-        // 1. 清空上一帧的密度数据
-        currentEdgeDensity.clear();
+        // 1. 道路数据：一次读取所有 Edge 的订阅结果 (已忽略路口内部连接段)
+        try {
+            edgeMetrics.update();
+        } catch (Exception e) {
+            System.err.println("Error reading edge subscriptions: " + e.getMessage());
+        }
+
+        // 2. 上一步到达的车辆：结束行程
+        double now = Double.NaN;
+        try {
+            if (Double.isNaN(stepLength)) stepLength = Simulation.getDeltaT();
+            now = Simulation.getTime();
+            for (String id : Simulation.getArrivedIDList()) finishTrip(id, now);
+        } catch (Exception e) {
+            System.err.println("Error reading arrived list: " + e.getMessage());
+        }
+        double dt = Double.isNaN(stepLength) ? 0.0 : stepLength;
 
         for (String id : activeVehicleIds) {
             try {
                 // 获取车辆实时数据
                 double speed = Vehicle.getSpeed(id);
-                String edge = Vehicle.getRoadID(id);
-
-                // A. 更新/创建车辆历史数据
-                vehicleHistory.putIfAbsent(id, new VehicleData(id));
-                VehicleData data = vehicleHistory.get(id);
-                data.update(speed, edge);
 
-                // B. 更新道路密度
-                // 忽略路口内部连接段 (通常以 : 开头)
-                if (!edge.startsWith(":")) {
-                    currentEdgeDensity.put(edge, currentEdgeDensity.getOrDefault(edge, 0) + 1);
+                // 新车：路线只查询一次
+                VehicleData data = activeVehicles.get(id);
+                if (data == null) {
+                    data = new VehicleData(id, Vehicle.getRouteID(id), now);
+                    activeVehicles.put(id, data);
                 }
+                activeAvgSpeedSum -= data.getAverageSpeed();
+                data.update(speed, dt);
+                activeAvgSpeedSum += data.getAverageSpeed();
 
             } catch (Exception e) {
                 // 车辆可能在这一瞬间刚离开，捕获异常防止崩溃
                 System.err.println("Error updating stats for " + id);
             }
         }
+
+        // 3. 没有出现在到达列表里就消失的车辆也结束行程，保证 Map 不会增长
+        if (activeVehicles.size() > activeVehicleIds.size()) {
+            HashSet<String> onMap = new HashSet<>(activeVehicleIds);
+            for (String id : new ArrayList<>(activeVehicles.keySet())) {
+                if (!onMap.contains(id)) finishTrip(id, now);
+            }
+        }
+        if (activeVehicles.isEmpty()) activeAvgSpeedSum = 0.0; // 清除舍入误差
+    }
+
+    // 把到达车辆的数据写成一条行程记录，并从活跃车辆中移除
+    private void finishTrip(String id, double arriveTime) {
+        VehicleData data = activeVehicles.remove(id);
+        if (data == null) return;
+        activeAvgSpeedSum -= data.getAverageSpeed();
+        trips.add(data.getDepartTime(), arriveTime, data.getDistance(), data.getAverageSpeed(),
+                data.getWaitTime(), data.getRouteId());
     }
 
     // --- 获取统计结果的方法 ---
 
+    // 只对活跃车辆有效，已到达的车辆返回 0
     public double getVehicleAverageSpeed(String vehicleId) {
-        if (vehicleHistory.containsKey(vehicleId)) {
-            return vehicleHistory.get(vehicleId).getAverageSpeed();
-        }
-        return 0.0;
+        VehicleData data = activeVehicles.get(vehicleId);
+        return data == null ? 0.0 : data.getAverageSpeed();
     }
 
+    // 有车的道路 (EdgeID -> Count)，每次新建 (仿真线程调用)
     public Map<String, Integer> getEdgeDensities() {
-        return new HashMap<>(currentEdgeDensity); // 返回副本保护数据
+        Map<String, Integer> density = new HashMap<>();
+        for (int e = 0; e < edgeMetrics.size(); e++) {
+            if (edgeMetrics.vehicles(e) > 0) density.put(edgeMetrics.id(e), edgeMetrics.vehicles(e));
+        }
+        return density;
     }
 
-    // 获取全系统所有车辆的平均速度
+    public EdgeMetricsStore getEdgeMetrics() {
+        return edgeMetrics;
+    }
+
+    // 已完成的行程 (仿真线程调用)
+    public TripStore getTrips() {
+        return trips;
+    }
+
+    // 全系统平均速度：所有出现过的车辆 (已完成 + 活跃) 各自平均速度的平均值，由累计值得到 O(1)
     public double getSystemAverageSpeed() {
-        if (vehicleHistory.isEmpty()) return 0.0;
-        double sumAvg = 0.0;
-        for (VehicleData v : vehicleHistory.values()) {
-            sumAvg += v.getAverageSpeed();
-        }
-        return sumAvg / vehicleHistory.size();
+        long count = trips.totalTrips() + activeVehicles.size();
+        if (count == 0) return 0.0;
+        return (trips.sumMeanSpeed() + activeAvgSpeedSum) / count;
     }
 }
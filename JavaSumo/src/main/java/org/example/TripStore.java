@@ -0,0 +1,114 @@
+package org.example;
+import java.util.Arrays;
+
+/**
+ * 已完成的行程：每辆到达的车一条紧凑记录 (出发、到达、距离、平均速度、等待时间、路线)
+ * 按列存储：每个字段一个基本类型数组，每个行程约 48 字节，没有对象头和装箱，只追加
+ * 存满 capacity 条后覆盖最旧的 (环形)，长时间运行内存有上限；累计值仍包含所有行程
+ * 所以存满后 size() 和按下标的访问只描述最近 capacity 个行程，totalTrips() 和平均值描述全部行程
+ * 只在仿真线程使用
+ * 本类是原版，Vehicle Injection & Control Module 的 TripStore 是它的移植：先改这里，再同步过去
+ */
+public class TripStore {
+    public static final int DEFAULT_CAPACITY = 100_000;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final int capacity;
+
+    private double[] depart = new double[0];     // 仿真时间 [秒]
+    private double[] arrive = new double[0];     // 仿真时间 [秒]
+    private double[] distance = new double[0];   // [米]
+    private double[] meanSpeed = new double[0];  // [米/秒]
+    private double[] waitTime = new double[0];   // 速度低于 0.1 m/s 的时间 [秒]
+    private String[] route = new String[0];
+
+    private int size = 0;
+    private int oldest = 0; // 环形存满后第 0 条记录的位置
+
+    // 所有行程的累计值 (包括已被覆盖的)
+    private long totalTrips = 0;
+    private long timedTrips = 0; // 出发时间已知 (行程时间可算) 的行程，averageTravelTime() 的分母
+    private double sumMeanSpeed = 0.0;
+    private double sumTravelTime = 0.0;
+    private double sumDistance = 0.0;
+    private double sumWaitTime = 0.0;
+
+    public TripStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TripStore(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * 追加一个已完成的行程 (存满时覆盖最旧的)
+     */
+    public void add(double departTime, double arriveTime, double dist, double speed, double wait, String routeId) {
+        int slot;
+        if (size < capacity) {
+            if (size == depart.length) grow();
+            slot = size++;
+        } else {
+            slot = oldest;
+            oldest = (oldest + 1) % capacity;
+        }
+        depart[slot] = departTime;
+        arrive[slot] = arriveTime;
+        distance[slot] = dist;
+        meanSpeed[slot] = speed;
+        waitTime[slot] = wait;
+        route[slot] = routeId;
+
+        totalTrips++;
+        sumMeanSpeed += speed;
+        if (arriveTime >= departTime) {
+            timedTrips++;
+            sumTravelTime += arriveTime - departTime;
+        }
+        sumDistance += dist;
+        sumWaitTime += wait;
+    }
+
+    // 每列扩大一倍，最多到 capacity
+    private void grow() {
+        int n = Math.min(capacity, Math.max(INITIAL_SLOTS, depart.length * 2));
+        depart = Arrays.copyOf(depart, n);
+        arrive = Arrays.copyOf(arrive, n);
+        distance = Arrays.copyOf(distance, n);
+        meanSpeed = Arrays.copyOf(meanSpeed, n);
+        waitTime = Arrays.copyOf(waitTime, n);
+        route = Arrays.copyOf(route, n);
+    }
+
+    // --- 保存的记录 (0 = 最旧) ---
+    // 只有最近 min(totalTrips(), capacity) 个行程；更早的已被覆盖，只留在累计值里
+
+    public int size() { return size; }
+    public int capacity() { return capacity; }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("trip " + i + " of " + size);
+        return size < capacity ? i : (oldest + i) % capacity;
+    }
+
+    public double depart(int i) { return depart[slot(i)]; }
+    public double arrive(int i) { return arrive[slot(i)]; }
+    public double distance(int i) { return distance[slot(i)]; }
+    public double meanSpeed(int i) { return meanSpeed[slot(i)]; }
+    public double waitTime(int i) { return waitTime[slot(i)]; }
+    public String route(int i) { return route[slot(i)]; }
+
+    // --- 所有行程的累计值 (包括已被覆盖、不能再按下标访问的) ---
+
+    public long totalTrips() { return totalTrips; }
+    // 其中行程时间已知的 (出发时间未知 (NaN) 或晚于到达时间的不算)
+    public long timedTrips() { return timedTrips; }
+    public double sumMeanSpeed() { return sumMeanSpeed; }
+    public double totalDistance() { return sumDistance; }
+
+    public double averageMeanSpeed() { return totalTrips == 0 ? 0.0 : sumMeanSpeed / totalTrips; }
+    public double averageTravelTime() { return timedTrips == 0 ? 0.0 : sumTravelTime / timedTrips; }
+    public double averageWaitTime() { return totalTrips == 0 ? 0.0 : sumWaitTime / totalTrips; }
+}
@@ -1,19 +1,32 @@
 package org.example;
 
 public class VehicleData {
+    // 速度低于 0.1 m/s 算作等待 (和 SUMO 一致)
+    static final double WAIT_SPEED = 0.1;
+
     private final String vehicleId;
+    private final String routeId;
+    private final double departTime; // 第一次看到这辆车的仿真时间
     private double totalSpeedSum = 0.0;
     private long sampleCount = 0;
-    private String currentEdge = "";
+    private double distance = 0.0;   // 速度 * 步长 [米]
+    private double waitTime = 0.0;   // [秒]
 
     public VehicleData(String vehicleId) {
+        this(vehicleId, "", Double.NaN);
+    }
+
+    public VehicleData(String vehicleId, String routeId, double departTime) {
         this.vehicleId = vehicleId;
+        this.routeId = routeId;
+        this.departTime = departTime;
     }
 
-    public void update(double currentSpeed, String edge) {
+    public void update(double currentSpeed, double stepLength) {
         this.totalSpeedSum += currentSpeed;
         this.sampleCount++;
-        this.currentEdge = edge;
+        this.distance += currentSpeed * stepLength;
+        if (currentSpeed < WAIT_SPEED) this.waitTime += stepLength;
     }
 
     public double getAverageSpeed() {
@@ -21,7 +34,9 @@ public class VehicleData {
         return totalSpeedSum / sampleCount;
     }
 
-    public String getCurrentEdge() {
-        return currentEdge;
-    }
+    public String getVehicleId() { return vehicleId; }
+    public String getRouteId() { return routeId; }
+    public double getDepartTime() { return departTime; }
+    public double getDistance() { return distance; }
+    public double getWaitTime() { return waitTime; }
 }
@@ -0,0 +1,120 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TripStoreTest {
+
+    // 第 i 个行程：出发 i，到达 i + 10，距离 100 * i，平均速度 i，等待 i / 2
+    private static void addTrip(TripStore store, int i) {
+        store.add(i, i + 10, 100.0 * i, i, i / 2.0, "r" + i);
+    }
+
+    @Test
+    void keepsEveryTripBelowCapacity() {
+        TripStore store = new TripStore(5000);
+        for (int i = 0; i < 3000; i++) addTrip(store, i);
+
+        assertEquals(3000, store.size());
+        assertEquals(3000, store.totalTrips());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(i, store.depart(i));
+            assertEquals(i + 10, store.arrive(i));
+            assertEquals(100.0 * i, store.distance(i));
+            assertEquals("r" + i, store.route(i));
+        }
+    }
+
+    @Test
+    void overwritesTheOldestOnceFull() {
+        TripStore store = new TripStore(5);
+        for (int i = 0; i < 12; i++) {
+            addTrip(store, i);
+            // 每次加入后：保存最近 min(i + 1, 5) 个行程，0 = 最旧
+            int kept = Math.min(i + 1, 5);
+            assertEquals(kept, store.size());
+            for (int k = 0; k < kept; k++) {
+                int trip = i + 1 - kept + k;
+                assertEquals(trip, store.depart(k), "after " + (i + 1) + " trips, record " + k);
+                assertEquals(trip / 2.0, store.waitTime(k));
+                assertEquals("r" + trip, store.route(k));
+            }
+        }
+        assertEquals(5, store.capacity());
+    }
+
+    @Test
+    void totalsCoverOverwrittenTrips() {
+        TripStore store = new TripStore(3);
+        for (int i = 1; i <= 10; i++) addTrip(store, i);
+
+        assertEquals(3, store.size());
+        assertEquals(10, store.totalTrips());
+        assertEquals(55.0, store.sumMeanSpeed(), 1e-9);
+        assertEquals(5.5, store.averageMeanSpeed(), 1e-9);
+        assertEquals(10.0, store.averageTravelTime(), 1e-9);
+        assertEquals(2.75, store.averageWaitTime(), 1e-9);
+        assertEquals(5500.0, store.totalDistance(), 1e-9);
+    }
+
+    @Test
+    void capacityOfOne() {
+        TripStore store = new TripStore(1);
+        addTrip(store, 1);
+        addTrip(store, 2);
+        assertEquals(1, store.size());
+        assertEquals(2, store.depart(0));
+        assertEquals(2, store.totalTrips());
+    }
+
+    @Test
+    void indexOutsideTheStoredTripsThrows() {
+        TripStore store = new TripStore(3);
+        assertThrows(IndexOutOfBoundsException.class, () -> store.depart(0));
+        for (int i = 0; i < 7; i++) addTrip(store, i);
+        assertThrows(IndexOutOfBoundsException.class, () -> store.depart(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.depart(-1));
+    }
+
+    @Test
+    void emptyStoreAveragesAreZero() {
+        TripStore store = new TripStore();
+        assertEquals(0, store.size());
+        assertEquals(0.0, store.averageMeanSpeed());
+        assertEquals(0.0, store.averageTravelTime());
+        assertEquals(0.0, store.averageWaitTime());
+    }
+
+    @Test
+    void arrivalBeforeDepartureIsLeftOutOfTravelTime() {
+        TripStore store = new TripStore(4);
+        store.add(50, 40, 0, 0, 0, null);
+        store.add(0, 20, 0, 0, 0, null);
+        assertEquals(2, store.totalTrips());
+        assertEquals(1, store.timedTrips());
+        assertEquals(20.0, store.averageTravelTime(), 1e-9);
+    }
+
+    // 出发时间未知 (NaN) 的行程不拉低平均行程时间，但仍计入其他平均值
+    @Test
+    void unknownDepartTimeIsLeftOutOfTravelTime() {
+        TripStore store = new TripStore(4);
+        store.add(0, 30, 0, 10, 4, null);
+        store.add(Double.NaN, 50, 0, 20, 8, null);
+        assertEquals(2, store.totalTrips());
+        assertEquals(1, store.timedTrips());
+        assertEquals(30.0, store.averageTravelTime(), 1e-9);
+        assertEquals(15.0, store.averageMeanSpeed(), 1e-9);
+        assertEquals(6.0, store.averageWaitTime(), 1e-9);
+
+        TripStore untimed = new TripStore(4);
+        untimed.add(Double.NaN, 50, 0, 0, 0, null);
+        assertEquals(0.0, untimed.averageTravelTime());
+    }
+
+    @Test
+    void rejectsCapacityBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new TripStore(0));
+    }
+}
@@ -0,0 +1,69 @@
+// ===================== Backends.java =====================
+package org.example;
+
+import java.util.Locale;
+
+// Process-wide backend choice. Both bindings expose static APIs, so a JVM uses exactly one.
+//   --backend libtraci|libsumo|fake   (any mode), or -Dsumo.backend=..., default libtraci
+//   fake = FakeSimulationBackend, pure Java on the scenario's net.xml (profiling without SUMO)
+public final class Backends {
+
+    public enum Kind {
+        LIBTRACI, LIBSUMO, FAKE;
+
+        @Override public String toString() { return name().toLowerCase(Locale.ROOT); }
+    }
+
+    static final String PROPERTY = "sumo.backend";
+
+    private static Kind selected = null;
+    private static volatile SimulationBackend INSTANCE;
+
+    private Backends() {}
+
+    static Kind parseKind(String s) throws Main.Milestone3Exception {
+        try {
+            return Kind.valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new Main.Milestone3Exception("Unknown backend (want libtraci, libsumo or fake): " + s);
+        }
+    }
+
+    // --backend from the command line, else the system property, else libtraci
+    static Kind kindFromArgs(String[] args) throws Main.Milestone3Exception {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--backend")) return parseKind(args[i + 1]);
+        }
+        String prop = System.getProperty(PROPERTY);
+        return (prop == null || prop.isBlank()) ? Kind.LIBTRACI : parseKind(prop);
+    }
+
+    // Must happen before the first get(); selecting the same kind again is a no-op.
+    static synchronized void select(Kind kind) throws Main.Milestone3Exception {
+        Kind current = INSTANCE != null ? INSTANCE.kind() : selected;
+        if (current != null && current != kind) {
+            throw new Main.Milestone3Exception("Backend already set to " + current + ", cannot switch to " + kind);
+        }
+        selected = kind;
+    }
+
+    public static SimulationBackend get() {
+        SimulationBackend b = INSTANCE;
+        if (b == null) {
+            synchronized (Backends.class) {
+                b = INSTANCE;
+                if (b == null) {
+                    Kind k = selected != null ? selected : Kind.LIBTRACI;
+                    switch (k) {
+                        case LIBSUMO: b = new LibsumoBackend(); break;
+                        case FAKE: b = new FakeSimulationBackend(); break;
+                        default: b = new LibtraciBackend(); break;
+                    }
+                    INSTANCE = b;
+                    Logging.LOG.info("Simulation backend: " + k);
+                }
+            }
+        }
+        return b;
+    }
+}
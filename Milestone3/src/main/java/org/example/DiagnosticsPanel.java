@@ -0,0 +1,88 @@
+// ===================== DiagnosticsPanel.java =====================
+package org.example;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.Locale;
+
+// Live view of a StepProfiler: p50 / p99 / max per phase since the window opened (or Reset),
+// refreshed once a second on the EDT. Stall counts use the phase budgets (-Dsumo.stall.*).
+final class DiagnosticsPanel extends JPanel {
+
+    private static final int REFRESH_MS = 1000;
+    private static final String[] COLUMNS = {"Phase", "Count", "p50 ms", "p99 ms", "Max ms", "Budget ms", "Stalls"};
+    private static final StepProfiler.Phase[] PHASES = StepProfiler.Phase.values();
+
+    private final StepProfiler profiler;
+    private final Timer timer;
+    private StepProfiler.Snapshot baseline;
+    private StepProfiler.Snapshot view;
+
+    private final AbstractTableModel model = new AbstractTableModel() {
+        @Override public int getRowCount() { return PHASES.length; }
+        @Override public int getColumnCount() { return COLUMNS.length; }
+        @Override public String getColumnName(int c) { return COLUMNS[c]; }
+
+        @Override public Object getValueAt(int r, int c) {
+            StepProfiler.Phase p = PHASES[r];
+            switch (c) {
+                case 0: return p.label;
+                case 1: return view == null ? 0L : view.count(p);
+                case 2: return ms(view == null ? 0 : view.p50Ms(p));
+                case 3: return ms(view == null ? 0 : view.p99Ms(p));
+                case 4: return ms(view == null ? 0 : view.maxMs(p));
+                case 5: return p.budgeted ? String.format(Locale.US, "%.0f", profiler.budgetMs(p)) : "-";
+                default: return view == null ? 0L : view.stalls(p);
+            }
+        }
+    };
+
+    DiagnosticsPanel(StepProfiler profiler) {
+        super(new BorderLayout(0, 6));
+        this.profiler = profiler;
+        this.baseline = profiler.snapshot();
+
+        JTable table = new JTable(model);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(170);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JButton reset = new JButton("Reset");
+        reset.addActionListener(e -> {
+            baseline = profiler.snapshot();
+            refresh();
+        });
+        JPanel south = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        south.add(reset);
+        south.add(new JLabel("Histograms since the window opened / last reset"));
+        add(south, BorderLayout.SOUTH);
+        setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+
+        timer = new Timer(REFRESH_MS, e -> refresh());
+        refresh();
+    }
+
+    private static String ms(double v) { return String.format(Locale.US, "%.3f", v); }
+
+    private void refresh() {
+        view = profiler.snapshot().since(baseline);
+        model.fireTableDataChanged();
+    }
+
+    // one non-modal window; the refresh timer only runs while it is shown
+    static void showDialog(JFrame owner, StepProfiler profiler) {
+        DiagnosticsPanel panel = new DiagnosticsPanel(profiler);
+        JDialog dialog = new JDialog(owner, "Diagnostics - step latency", false);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.setContentPane(panel);
+        dialog.setSize(720, 400);
+        dialog.setLocationRelativeTo(owner);
+        dialog.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override public void windowClosed(java.awt.event.WindowEvent e) { panel.timer.stop(); }
+        });
+        panel.timer.start();
+        dialog.setVisible(true);
+    }
+}
@@ -0,0 +1,248 @@
+// ===================== EdgeMetricsStore.java =====================
+package org.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Live state of every non-internal edge: vehicle count, mean speed, halting vehicles, occupancy.
+// Each edge is subscribed once, so SUMO computes the values itself and a step costs one
+// subscription read over the edges instead of a getRoadID per vehicle. Values sit in primitive
+// arrays indexed by edge (index() / id()) and are overwritten in place by update(); anything
+// per edge runs over these arrays in O(edges). update() runs after every step whose results SUMO
+// sent (sampled and intermediate steps; a multi-step jump only has its last step). Simulation thread only.
+// Rankings (top()) are kept in one EdgeTopK per Ranking, touched only for edges whose values changed.
+// Source of the EdgeMetricsStore ports in JavaSumo and the injection module (see EdgeTopK).
+public final class EdgeMetricsStore {
+
+    public enum Ranking {
+        VEHICLES("vehicles"),
+        HALTING("halting"),
+        // 1 - mean speed / free speed, edges with vehicles only
+        SPEED_DROP("speed drop");
+
+        final String label;
+        Ranking(String label) { this.label = label; }
+
+        @Override public String toString() { return "Top edges by " + label; }
+    }
+
+    // TraCI edge variables (last step)
+    static final int LAST_STEP_VEHICLE_NUMBER = 0x10;
+    static final int LAST_STEP_MEAN_SPEED = 0x11;
+    static final int LAST_STEP_OCCUPANCY = 0x13;
+    static final int LAST_STEP_VEHICLE_HALTING_NUMBER = 0x14;
+
+    private static final int[] SUBSCRIBED_VARS = {
+            LAST_STEP_VEHICLE_NUMBER, LAST_STEP_MEAN_SPEED, LAST_STEP_VEHICLE_HALTING_NUMBER, LAST_STEP_OCCUPANCY
+    };
+
+    private final String[] ids;
+    private final Map<String, Integer> indexOf;
+
+    private final int[] vehicles;
+    private final int[] halting;
+    // m/s; SUMO reports the speed limit for an empty edge
+    private final double[] meanSpeed;
+    // percent of the edge length covered by vehicles
+    private final double[] occupancy;
+    // most vehicles seen on the edge at one update, and when
+    private final int[] peakVehicles;
+    private final double[] peakAt;
+    // free speed: SUMO reports the speed limit as mean speed of an empty edge, so the highest
+    // mean speed seen is the limit (or close to it) without asking for lane speeds
+    private final double[] freeSpeed;
+
+    private final EdgeTopK[] rank = new EdgeTopK[Ranking.values().length];
+    // edges whose values changed during this update
+    private final int[] dirty;
+    private final boolean[] isDirty;
+    private int dirtyCount = 0;
+
+    private int totalVehicles = 0;
+    private int totalHalting = 0;
+    private double updatedAt = Double.NaN;
+
+    private final Sink sink = new Sink();
+
+    private EdgeMetricsStore(List<String> edgeIds) {
+        ids = edgeIds.stream().filter(id -> !id.startsWith(":")).toArray(String[]::new);
+        indexOf = new HashMap<>(ids.length * 2);
+        for (int e = 0; e < ids.length; e++) indexOf.put(ids[e], e);
+        vehicles = new int[ids.length];
+        halting = new int[ids.length];
+        meanSpeed = new double[ids.length];
+        occupancy = new double[ids.length];
+        peakVehicles = new int[ids.length];
+        peakAt = new double[ids.length];
+        freeSpeed = new double[ids.length];
+        for (int r = 0; r < rank.length; r++) rank[r] = new EdgeTopK(ids.length);
+        dirty = new int[ids.length];
+        isDirty = new boolean[ids.length];
+    }
+
+    // Subscribes every non-internal edge of the running simulation (after a warm start load, if any).
+    static EdgeMetricsStore subscribeAll() {
+        SimulationBackend sumo = Backends.get();
+        long t0 = System.nanoTime();
+        EdgeMetricsStore store = new EdgeMetricsStore(sumo.edgeIds());
+        int failed = 0;
+        for (String id : store.ids) {
+            try {
+                sumo.subscribeEdge(id, SUBSCRIBED_VARS);
+            } catch (Exception ex) {
+                failed++;
+                Logging.LOG.fine("Edge.subscribe failed for " + id + ": " + ex.getMessage());
+            }
+        }
+        Logging.LOG.info(String.format(Locale.US, "Edge metrics: %d edges subscribed in %.0f ms%s",
+                store.ids.length - failed, (System.nanoTime() - t0) / 1e6,
+                failed > 0 ? " (" + failed + " failed)" : ""));
+        return store;
+    }
+
+    // ===================== Update (after a step) =====================
+    // Edges missing from the results keep their last values (SUMO returns every subscribed edge).
+    public void update(double simTime) {
+        Backends.get().readEdgeSubscriptions(sink);
+
+        for (int i = 0; i < dirtyCount; i++) {
+            int e = dirty[i];
+            isDirty[e] = false;
+            if (vehicles[e] > peakVehicles[e]) { peakVehicles[e] = vehicles[e]; peakAt[e] = simTime; }
+            if (vehicles[e] == 0 && meanSpeed[e] > freeSpeed[e]) freeSpeed[e] = meanSpeed[e];
+            rank[Ranking.VEHICLES.ordinal()].update(e, vehicles[e]);
+            rank[Ranking.HALTING.ordinal()].update(e, halting[e]);
+            rank[Ranking.SPEED_DROP.ordinal()].update(e, speedDrop(e));
+        }
+        dirtyCount = 0;
+        updatedAt = simTime;
+    }
+
+    // 0..1, 0 for empty edges or before the free speed is known
+    public double speedDrop(int e) {
+        double free = freeSpeed[e];
+        if (vehicles[e] == 0 || !(free > 0)) return 0.0;
+        return Math.max(0.0, Math.min(1.0, 1.0 - meanSpeed[e] / free));
+    }
+
+    private final class Sink implements SimulationBackend.EdgeVarSink {
+        private int e = -1;
+
+        @Override public void edge(String id) {
+            Integer i = indexOf.get(id);
+            e = i == null ? -1 : i;
+        }
+
+        @Override public void var(int varId, double value) {
+            if (e < 0) return;
+            switch (varId) {
+                case LAST_STEP_VEHICLE_NUMBER:
+                    int v = (int) value;
+                    if (v == vehicles[e]) return;
+                    totalVehicles += v - vehicles[e];
+                    vehicles[e] = v;
+                    break;
+                case LAST_STEP_VEHICLE_HALTING_NUMBER:
+                    int h = (int) value;
+                    if (h == halting[e]) return;
+                    totalHalting += h - halting[e];
+                    halting[e] = h;
+                    break;
+                case LAST_STEP_MEAN_SPEED:
+                    if (value == meanSpeed[e]) return;
+                    meanSpeed[e] = value;
+                    break;
+                case LAST_STEP_OCCUPANCY:
+                    // not ranked, no need to mark the edge
+                    occupancy[e] = value;
+                    return;
+                default:
+                    return;
+            }
+            if (!isDirty[e]) {
+                isDirty[e] = true;
+                dirty[dirtyCount++] = e;
+            }
+        }
+    }
+
+    // ===================== Access =====================
+    public int size() { return ids.length; }
+
+    public String id(int e) { return ids[e]; }
+
+    // -1 for internal / unknown edges
+    public int index(String edgeId) {
+        Integer e = indexOf.get(edgeId);
+        return e == null ? -1 : e;
+    }
+
+    public int vehicles(int e) { return vehicles[e]; }
+    public int halting(int e) { return halting[e]; }
+    public double meanSpeed(int e) { return meanSpeed[e]; }
+    public double occupancy(int e) { return occupancy[e]; }
+    public int peakVehicles(int e) { return peakVehicles[e]; }
+    public double peakAt(int e) { return peakAt[e]; }
+
+    // on non-internal edges (vehicles inside junctions are not counted)
+    public int totalVehicles() { return totalVehicles; }
+    public int totalHalting() { return totalHalting; }
+
+    // NaN before the first update
+    public double updatedAt() { return updatedAt; }
+
+    // edge with the most vehicles (first one on ties), -1 when every edge is empty
+    public int busiest() { return rank[Ranking.VEHICLES.ordinal()].peek(); }
+
+    // Up to k edges by the given ranking, best first, into out; returns how many.
+    // Only edges with something to rank (key > 0) are listed.
+    public int top(Ranking r, int k, int[] out) { return rank[r.ordinal()].top(k, out); }
+
+    // edge with the highest peak so far (first one on ties), -1 before any vehicle was seen
+    public int busiestPeak() {
+        int best = -1, max = 0;
+        for (int e = 0; e < ids.length; e++) {
+            if (peakVehicles[e] > max) { max = peakVehicles[e]; best = e; }
+        }
+        return best;
+    }
+
+    // ===================== Text =====================
+    String describe(int e) {
+        return String.format(Locale.US, "%s (%d veh, %d halting, %.1f m/s, occ %.0f%%)",
+                ids[e], vehicles[e], halting[e], meanSpeed[e], occupancy[e]);
+    }
+
+    // GUI label
+    String status() {
+        int e = busiest();
+        return e < 0 ? "Hottest Edge: -" : "Hottest Edge: " + describe(e);
+    }
+
+    // "1. id (...)" per edge, best first
+    List<String> topLines(Ranking r, int k) {
+        int[] out = new int[k];
+        int n = top(r, k, out);
+        List<String> lines = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String line = (i + 1) + ". " + describe(out[i]);
+            if (r == Ranking.SPEED_DROP) line += String.format(Locale.US, " -%.0f%%", 100.0 * speedDrop(out[i]));
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    // GUI ranked list: one html block per Ranking (by ordinal)
+    String[] topHtml(int k) {
+        Ranking[] all = Ranking.values();
+        String[] out = new String[all.length];
+        for (Ranking r : all) {
+            List<String> lines = topLines(r, k);
+            out[r.ordinal()] = "<html>" + (lines.isEmpty() ? "-" : String.join("<br>", lines)) + "</html>";
+        }
+        return out;
+    }
+}
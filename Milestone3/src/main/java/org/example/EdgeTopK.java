@@ -0,0 +1,157 @@
+// ===================== EdgeTopK.java =====================
+package org.example;
+
+import java.util.Arrays;
+
+// Indexed binary max-heap over edge indices: the K largest keys at any time without scanning every
+// edge. update(e, key) is O(log edges) and does nothing when the key did not change, so a step costs
+// O(changed edges * log edges); top(k) walks the heap best-first in O(k log k).
+// Edges with key <= 0 are not in the heap (nothing to rank). Ties: lower edge index first, so the
+// ranking does not flicker between equal edges. Single thread.
+// JavaSumo and the injection module carry ports of this class (and of EdgeMetricsStore's ranking):
+// this one is the source, change it first and keep the ports in step.
+public final class EdgeTopK {
+
+    // edge indices, heap[0] = best
+    private final int[] heap;
+    // edge -> position in heap, -1 when not in it
+    private final int[] pos;
+    private final double[] key;
+    private int size = 0;
+
+    // top(): candidate heap positions, reused
+    private int[] cand = new int[16];
+
+    public EdgeTopK(int edges) {
+        heap = new int[edges];
+        pos = new int[edges];
+        key = new double[edges];
+        Arrays.fill(pos, -1);
+    }
+
+    public int size() { return size; }
+
+    public double key(int e) { return key[e]; }
+
+    // -1 when every key is <= 0
+    public int peek() { return size == 0 ? -1 : heap[0]; }
+
+    // ===================== Update =====================
+    public void update(int e, double k) {
+        if (!(k > 0)) k = 0.0;
+        double old = key[e];
+        if (k == old && (pos[e] >= 0) == (k > 0)) return;
+        key[e] = k;
+
+        int p = pos[e];
+        if (k <= 0) {
+            if (p >= 0) remove(p);
+            return;
+        }
+        if (p < 0) {
+            p = size++;
+            heap[p] = e;
+            pos[e] = p;
+            siftUp(p);
+        } else if (k > old) {
+            siftUp(p);
+        } else {
+            siftDown(p);
+        }
+    }
+
+    private void remove(int p) {
+        int e = heap[p];
+        int last = --size;
+        pos[e] = -1;
+        if (p == last) return;
+        int moved = heap[last];
+        heap[p] = moved;
+        pos[moved] = p;
+        siftDown(p);
+        if (pos[moved] == p) siftUp(p);
+    }
+
+    // a ranks before b
+    private boolean above(int a, int b) {
+        return key[a] > key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int p) {
+        int e = heap[p];
+        while (p > 0) {
+            int parent = (p - 1) >>> 1;
+            int pe = heap[parent];
+            if (!above(e, pe)) break;
+            heap[p] = pe;
+            pos[pe] = p;
+            p = parent;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+
+    private void siftDown(int p) {
+        int e = heap[p];
+        while (true) {
+            int c = 2 * p + 1;
+            if (c >= size) break;
+            if (c + 1 < size && above(heap[c + 1], heap[c])) c++;
+            int ce = heap[c];
+            if (!above(ce, e)) break;
+            heap[p] = ce;
+            pos[ce] = p;
+            p = c;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+
+    // ===================== Query =====================
+    // Up to k edges, best first, into out (length >= k); returns how many.
+    public int top(int k, int[] out) {
+        int n = Math.min(k, size);
+        if (n <= 0) return 0;
+        if (cand.length < n + 1) cand = new int[Math.max(n + 1, cand.length * 2)];
+
+        // best-first walk: a small max-heap of heap positions, seeded with the root
+        int cs = 0;
+        cand[cs++] = 0;
+        for (int i = 0; i < n; i++) {
+            int p = cand[0];
+            out[i] = heap[p];
+            cand[0] = cand[--cs];
+            candDown(cs);
+            for (int c = 2 * p + 1; c <= 2 * p + 2 && c < size; c++) {
+                cand[cs] = c;
+                candUp(cs++);
+            }
+        }
+        return n;
+    }
+
+    private void candUp(int i) {
+        int v = cand[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(heap[v], heap[cand[parent]])) break;
+            cand[i] = cand[parent];
+            i = parent;
+        }
+        cand[i] = v;
+    }
+
+    private void candDown(int cs) {
+        if (cs == 0) return;
+        int i = 0, v = cand[0];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= cs) break;
+            if (c + 1 < cs && above(heap[cand[c + 1]], heap[cand[c]])) c++;
+            if (!above(heap[cand[c]], heap[v])) break;
+            cand[i] = cand[c];
+            i = c;
+        }
+        cand[i] = v;
+    }
+}
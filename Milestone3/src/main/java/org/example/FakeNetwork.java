@@ -0,0 +1,339 @@
+// ===================== FakeNetwork.java =====================
+package org.example;
+
+import org.w3c.dom.*;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.*;
+import java.util.List;
+
+// Immutable road graph for FakeSimulationBackend, read from a SUMO net.xml:
+// normal edges and their lanes (length, speed, shape, vClass permissions), the connections
+// between edges (with the traffic light link that guards them) and the static TLS programs.
+// Internal junction lanes are skipped; vehicles jump from one edge's end to the next edge.
+final class FakeNetwork {
+
+    // SUMO vehicle classes, used to turn disallow="..." into an allowed list
+    static final String[] VCLASSES = {
+            "private", "emergency", "authority", "army", "vip", "pedestrian", "passenger", "hov",
+            "taxi", "bus", "coach", "delivery", "truck", "trailer", "motorcycle", "moped", "bicycle",
+            "evehicle", "tram", "rail_urban", "rail", "rail_electric", "rail_fast", "ship",
+            "container", "cable_car", "subway", "aircraft", "wheelchair", "scooter", "drone", "custom1", "custom2"
+    };
+
+    // ===================== Lanes =====================
+    final int laneCount;
+    final String[] laneId;
+    final int[] laneEdge;
+    final double[] laneLength;
+    final double[] laneSpeed;
+    // x0,y0,x1,y1,... and the cumulative length at each point (for position lookups)
+    final double[][] laneShape;
+    final double[][] laneShapeCum;
+    // empty = every class
+    final List<List<String>> laneAllowed;
+    final Map<String, Integer> laneIndex;
+
+    // ===================== Edges =====================
+    final int edgeCount;
+    final String[] edgeId;
+    final int[][] edgeLanes;
+    final Map<String, Integer> edgeIndex;
+    // outgoing connections per edge
+    final Connection[][] edgeOut;
+
+    static final class Connection {
+        final int toEdge;
+        final int fromLane; // lane index within the from-edge
+        final int toLane;   // lane index within the to-edge
+        final int tls;      // index into tlsId, -1 = not signalised
+        final int linkIndex;
+        Connection(int toEdge, int fromLane, int toLane, int tls, int linkIndex) {
+            this.toEdge = toEdge; this.fromLane = fromLane; this.toLane = toLane;
+            this.tls = tls; this.linkIndex = linkIndex;
+        }
+    }
+
+    // ===================== Traffic lights =====================
+    final String[] tlsId;
+    final String[] tlsProgramId;
+    final double[][] tlsPhaseDuration;
+    final String[][] tlsPhaseState;
+    // incoming lane per link index (TrafficLight.getControlledLanes)
+    final List<List<String>> tlsControlledLanes;
+    final Map<String, Integer> tlsIndex;
+
+    private FakeNetwork(List<String> lanes, List<double[]> laneNums, List<double[]> shapes,
+                        List<List<String>> allowed, List<String> edges, List<List<Integer>> edgeLaneList,
+                        List<List<Connection>> out, List<String> tls, List<String> tlsProgs,
+                        List<double[]> tlsDur, List<String[]> tlsStates, List<List<String>> tlsLanes) {
+        laneCount = lanes.size();
+        laneId = new String[laneCount];
+        laneEdge = new int[laneCount];
+        laneLength = new double[laneCount];
+        laneSpeed = new double[laneCount];
+        laneShape = new double[laneCount][];
+        laneShapeCum = new double[laneCount][];
+        laneIndex = new HashMap<>(laneCount * 2);
+        for (int i = 0; i < laneCount; i++) {
+            laneId[i] = lanes.get(i);
+            laneEdge[i] = (int) laneNums.get(i)[0];
+            laneLength[i] = laneNums.get(i)[1];
+            laneSpeed[i] = laneNums.get(i)[2];
+            laneShape[i] = shapes.get(i);
+            laneShapeCum[i] = cumulative(shapes.get(i));
+            laneIndex.put(laneId[i], i);
+        }
+        laneAllowed = allowed;
+
+        edgeCount = edges.size();
+        edgeId = edges.toArray(new String[0]);
+        edgeLanes = new int[edgeCount][];
+        edgeOut = new Connection[edgeCount][];
+        edgeIndex = new HashMap<>(edgeCount * 2);
+        for (int e = 0; e < edgeCount; e++) {
+            edgeLanes[e] = edgeLaneList.get(e).stream().mapToInt(Integer::intValue).toArray();
+            edgeOut[e] = out.get(e).toArray(new Connection[0]);
+            edgeIndex.put(edgeId[e], e);
+        }
+
+        tlsId = tls.toArray(new String[0]);
+        tlsProgramId = tlsProgs.toArray(new String[0]);
+        tlsPhaseDuration = tlsDur.toArray(new double[0][]);
+        tlsPhaseState = tlsStates.toArray(new String[0][]);
+        tlsControlledLanes = tlsLanes;
+        tlsIndex = new HashMap<>();
+        for (int t = 0; t < tlsId.length; t++) tlsIndex.put(tlsId[t], t);
+    }
+
+    private static double[] cumulative(double[] xy) {
+        int n = xy.length / 2;
+        double[] cum = new double[Math.max(1, n)];
+        for (int i = 1; i < n; i++) {
+            cum[i] = cum[i - 1] + Math.hypot(xy[2 * i] - xy[2 * i - 2], xy[2 * i + 1] - xy[2 * i - 1]);
+        }
+        return cum;
+    }
+
+    // ===================== Loading =====================
+    private static final Map<String, FakeNetwork> CACHE = new HashMap<>();
+
+    // one parse per net file, shared by every fake run in the JVM
+    static synchronized FakeNetwork load(File netFile) throws Exception {
+        String key = netFile.getCanonicalPath();
+        FakeNetwork n = CACHE.get(key);
+        if (n == null) {
+            n = parse(netFile);
+            CACHE.put(key, n);
+            Logging.LOG.info("Fake network loaded: " + netFile.getPath() + " (" + n.edgeCount + " edges, "
+                    + n.laneCount + " lanes, " + n.tlsId.length + " traffic lights)");
+        }
+        return n;
+    }
+
+    private static FakeNetwork parse(File netFile) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        dbf.setExpandEntityReferences(false);
+        DocumentBuilder db = dbf.newDocumentBuilder();
+        Document doc = db.parse(netFile);
+        doc.getDocumentElement().normalize();
+
+        List<String> lanes = new ArrayList<>();
+        List<double[]> laneNums = new ArrayList<>();
+        List<double[]> shapes = new ArrayList<>();
+        List<List<String>> allowed = new ArrayList<>();
+        List<String> edges = new ArrayList<>();
+        List<List<Integer>> edgeLanes = new ArrayList<>();
+        Map<String, Integer> edgeIdx = new HashMap<>();
+
+        NodeList edgeNodes = doc.getElementsByTagName("edge");
+        for (int i = 0; i < edgeNodes.getLength(); i++) {
+            Element edge = (Element) edgeNodes.item(i);
+            String id = edge.getAttribute("id");
+            if (id.startsWith(":") || "internal".equalsIgnoreCase(edge.getAttribute("function"))) continue;
+
+            int e = edges.size();
+            edges.add(id);
+            edgeIdx.put(id, e);
+            List<Integer> own = new ArrayList<>();
+            edgeLanes.add(own);
+
+            NodeList laneNodes = edge.getElementsByTagName("lane");
+            // lanes in index order (the file lists them that way, but do not rely on it)
+            Element[] byIndex = new Element[laneNodes.getLength()];
+            for (int k = 0; k < laneNodes.getLength(); k++) {
+                Element lane = (Element) laneNodes.item(k);
+                int idx = parseInt(lane.getAttribute("index"), k);
+                if (idx < 0 || idx >= byIndex.length || byIndex[idx] != null) idx = k;
+                byIndex[idx] = lane;
+            }
+            for (Element lane : byIndex) {
+                if (lane == null) continue;
+                own.add(lanes.size());
+                lanes.add(lane.getAttribute("id"));
+                laneNums.add(new double[]{e,
+                        Math.max(0.1, parseDouble(lane.getAttribute("length"), 1.0)),
+                        Math.max(0.1, parseDouble(lane.getAttribute("speed"), 13.89))});
+                shapes.add(parseShape(lane.getAttribute("shape")));
+                allowed.add(allowedClasses(lane.getAttribute("allow"), lane.getAttribute("disallow")));
+            }
+        }
+
+        // traffic lights: first program of each tlLogic
+        List<String> tls = new ArrayList<>();
+        List<String> tlsProgs = new ArrayList<>();
+        List<double[]> tlsDur = new ArrayList<>();
+        List<String[]> tlsStates = new ArrayList<>();
+        Map<String, Integer> tlsIdx = new HashMap<>();
+        NodeList logics = doc.getElementsByTagName("tlLogic");
+        for (int i = 0; i < logics.getLength(); i++) {
+            Element tl = (Element) logics.item(i);
+            String id = tl.getAttribute("id");
+            if (tlsIdx.containsKey(id)) continue;
+            NodeList phases = tl.getElementsByTagName("phase");
+            if (phases.getLength() == 0) continue;
+            double[] dur = new double[phases.getLength()];
+            String[] st = new String[phases.getLength()];
+            for (int k = 0; k < phases.getLength(); k++) {
+                Element ph = (Element) phases.item(k);
+                dur[k] = Math.max(1.0, parseDouble(ph.getAttribute("duration"), 1.0));
+                st[k] = ph.getAttribute("state");
+            }
+            tlsIdx.put(id, tls.size());
+            tls.add(id);
+            tlsProgs.add(tl.getAttribute("programID").isBlank() ? "0" : tl.getAttribute("programID"));
+            tlsDur.add(dur);
+            tlsStates.add(st);
+        }
+
+        List<List<Connection>> out = new ArrayList<>();
+        for (int e = 0; e < edges.size(); e++) out.add(new ArrayList<>());
+        List<TreeMap<Integer, String>> tlsLaneByLink = new ArrayList<>();
+        for (int t = 0; t < tls.size(); t++) tlsLaneByLink.add(new TreeMap<>());
+
+        NodeList conns = doc.getElementsByTagName("connection");
+        for (int i = 0; i < conns.getLength(); i++) {
+            Element c = (Element) conns.item(i);
+            Integer from = edgeIdx.get(c.getAttribute("from"));
+            Integer to = edgeIdx.get(c.getAttribute("to"));
+            if (from == null || to == null) continue;
+            int fromLane = parseInt(c.getAttribute("fromLane"), 0);
+            int toLane = parseInt(c.getAttribute("toLane"), 0);
+            Integer t = c.hasAttribute("tl") ? tlsIdx.get(c.getAttribute("tl")) : null;
+            int link = parseInt(c.getAttribute("linkIndex"), -1);
+            if (t == null || link < 0) { t = -1; link = -1; }
+            out.get(from).add(new Connection(to, fromLane, toLane, t, link));
+            if (t >= 0) tlsLaneByLink.get(t).put(link, c.getAttribute("from") + "_" + fromLane);
+        }
+
+        List<List<String>> tlsLanes = new ArrayList<>();
+        for (int t = 0; t < tls.size(); t++) {
+            int links = tlsStates.get(t)[0].length();
+            List<String> l = new ArrayList<>(links);
+            for (int k = 0; k < links; k++) l.add(tlsLaneByLink.get(t).getOrDefault(k, ""));
+            tlsLanes.add(Collections.unmodifiableList(l));
+        }
+
+        return new FakeNetwork(lanes, laneNums, shapes, allowed, edges, edgeLanes, out,
+                tls, tlsProgs, tlsDur, tlsStates, tlsLanes);
+    }
+
+    private static double[] parseShape(String shape) {
+        if (shape == null || shape.isBlank()) return new double[]{0, 0};
+        String[] pts = shape.trim().split("\\s+");
+        double[] xy = new double[pts.length * 2];
+        for (int i = 0; i < pts.length; i++) {
+            String[] p = pts[i].split(",");
+            xy[2 * i] = parseDouble(p[0], 0.0);
+            xy[2 * i + 1] = p.length > 1 ? parseDouble(p[1], 0.0) : 0.0;
+        }
+        return xy;
+    }
+
+    private static List<String> allowedClasses(String allow, String disallow) {
+        if (allow != null && !allow.isBlank()) {
+            return Collections.unmodifiableList(Arrays.asList(allow.trim().split("\\s+")));
+        }
+        if (disallow != null && !disallow.isBlank()) {
+            Set<String> no = new HashSet<>(Arrays.asList(disallow.trim().split("\\s+")));
+            List<String> yes = new ArrayList<>();
+            for (String c : VCLASSES) if (!no.contains(c)) yes.add(c);
+            return Collections.unmodifiableList(yes);
+        }
+        return Collections.emptyList();
+    }
+
+    private static int parseInt(String s, int def) {
+        try { return Integer.parseInt(s.trim()); } catch (Exception ex) { return def; }
+    }
+
+    private static double parseDouble(String s, double def) {
+        try { return Double.parseDouble(s.trim()); } catch (Exception ex) { return def; }
+    }
+
+    // ===================== Queries =====================
+    boolean laneAllows(int lane, String vClass) {
+        List<String> a = laneAllowed.get(lane);
+        return a.isEmpty() || a.contains(vClass);
+    }
+
+    boolean edgeAllows(int edge, String vClass) {
+        for (int l : edgeLanes[edge]) if (laneAllows(l, vClass)) return true;
+        return false;
+    }
+
+    // xy of a point pos metres along the lane (shape scaled to the lane length)
+    void position(int lane, double pos, double[] xyOut) {
+        double[] xy = laneShape[lane];
+        double[] cum = laneShapeCum[lane];
+        int n = cum.length;
+        if (n < 2) { xyOut[0] = xy[0]; xyOut[1] = xy[1]; return; }
+        double d = Math.max(0.0, Math.min(1.0, pos / laneLength[lane])) * cum[n - 1];
+        int k = 1;
+        while (k < n - 1 && cum[k] < d) k++;
+        double seg = cum[k] - cum[k - 1];
+        double f = seg <= 1e-9 ? 0.0 : (d - cum[k - 1]) / seg;
+        xyOut[0] = xy[2 * k - 2] + f * (xy[2 * k] - xy[2 * k - 2]);
+        xyOut[1] = xy[2 * k - 1] + f * (xy[2 * k + 1] - xy[2 * k - 1]);
+    }
+
+    // fastest route by free-flow travel time, null when there is none
+    List<String> findRoute(String from, String to, String vClass) {
+        Integer s = edgeIndex.get(from), t = edgeIndex.get(to);
+        if (s == null || t == null) return null;
+
+        double[] dist = new double[edgeCount];
+        int[] prev = new int[edgeCount];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(prev, -1);
+        dist[s] = 0.0;
+        PriorityQueue<double[]> pq = new PriorityQueue<>(Comparator.comparingDouble(a -> a[0]));
+        pq.add(new double[]{0.0, s});
+
+        while (!pq.isEmpty()) {
+            double[] top = pq.poll();
+            int e = (int) top[1];
+            if (top[0] > dist[e]) continue;
+            if (e == t) break;
+            for (Connection c : edgeOut[e]) {
+                if (!edgeAllows(c.toEdge, vClass)) continue;
+                int lane0 = edgeLanes[c.toEdge][0];
+                double nd = dist[e] + laneLength[lane0] / laneSpeed[lane0];
+                if (nd < dist[c.toEdge]) {
+                    dist[c.toEdge] = nd;
+                    prev[c.toEdge] = e;
+                    pq.add(new double[]{nd, c.toEdge});
+                }
+            }
+        }
+        if (dist[t] == Double.POSITIVE_INFINITY) return null;
+
+        ArrayList<String> route = new ArrayList<>();
+        for (int e = t; e != -1; e = prev[e]) route.add(edgeId[e]);
+        Collections.reverse(route);
+        return route;
+    }
+}
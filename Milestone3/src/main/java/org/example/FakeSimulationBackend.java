@@ -0,0 +1,769 @@
+// ===================== FakeSimulationBackend.java =====================
+package org.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.List;
+
+// Pure-Java stand-in for SUMO (no native library, no process), for profiling our own code.
+// Vehicles drive along the lanes of the scenario's net.xml with a simple car-following rule,
+// stop at red lights of the net's static TLS programs and leave at the end of their route.
+// Background traffic keeps a target number of vehicles on random routes. Everything random
+// comes from one seeded Random, so a run with the same seed repeats exactly.
+//
+//   --backend fake   [-Dsumo.fake.vehicles=20000] [-Dsumo.fake.seed=42]
+//
+// The seed is taken from the SUMO command line (--seed) when present. saveState / loadState write
+// the whole world (vehicles, lights, RNG) with Java serialization, so a loaded run continues exactly.
+// This is not a traffic model: numbers are only good for load, not for conclusions.
+final class FakeSimulationBackend implements SimulationBackend {
+
+    static final String PROP_VEHICLES = "sumo.fake.vehicles";
+    static final String PROP_SEED = "sumo.fake.seed";
+
+    // label -> simulation, one per connection. Thread-mode runs still take turns: every call is made
+    // under TraciSession.LOCK, same as with libtraci.
+    private final Map<String, World> worlds = new HashMap<>();
+    private World active = null;
+
+    private final TraciCapabilities caps = new TraciCapabilities("fake",
+            id -> world().waitingTime(id),
+            () -> world().arrived,
+            // vehicles never teleport here
+            Collections::emptyList,
+            Collections::emptyList,
+            id -> world().controlledLanes(id),
+            laneId -> world().laneHalting(laneId),
+            laneId -> world().laneAllowed(laneId),
+            laneId -> world().laneLength(laneId),
+            (from, to, vType) -> world().findRoute(from, to, vType),
+            (vehId, routeId, typeId) -> world().addVehicle(vehId, routeId, typeId));
+
+    @Override public Backends.Kind kind() { return Backends.Kind.FAKE; }
+    @Override public boolean supportsSumoGui() { return false; }
+    @Override public boolean supportsMultipleConnections() { return true; }
+    @Override public TraciCapabilities capabilities() { return caps; }
+
+    private World world() {
+        World w = active;
+        if (w == null) throw new IllegalStateException("fake backend: no simulation running");
+        return w;
+    }
+
+    // ===================== Lifecycle =====================
+    @Override public void preloadLibraries() {}
+
+    @Override public synchronized void start(List<String> cmd, String label) {
+        if (worlds.containsKey(label)) throw new IllegalStateException("fake backend: connection '" + label + "' is open");
+        String cfg = Main.SUMOCFG_PATH;
+        Long seed = null;
+        double stepLength = 1.0;
+        for (int i = 0; i + 1 < cmd.size(); i++) {
+            String a = cmd.get(i);
+            if (a.equals("-c") || a.equals("--configuration-file")) cfg = cmd.get(i + 1);
+            else if (a.equals("--seed")) seed = Long.parseLong(cmd.get(i + 1).trim());
+            else if (a.equals("--step-length")) stepLength = Double.parseDouble(cmd.get(i + 1).trim());
+        }
+        if (seed == null) seed = Long.getLong(PROP_SEED, 42L);
+        int vehicles = Integer.getInteger(PROP_VEHICLES, 0);
+
+        File netFile = MapVisualisation.netFileOf(cfg);
+        FakeNetwork net;
+        try {
+            net = FakeNetwork.load(netFile);
+        } catch (Exception ex) {
+            throw new IllegalStateException("fake backend: cannot read " + netFile.getPath(), ex);
+        }
+        World w = new World(net, seed, stepLength, vehicles);
+        worlds.put(label, w);
+        active = w;
+        Logging.LOG.info("[" + label + "] Fake simulation: seed=" + seed + " step=" + stepLength
+                + "s background vehicles=" + vehicles);
+    }
+
+    @Override public synchronized void switchConnection(String label) {
+        World w = worlds.get(label);
+        if (w == null) throw new IllegalStateException("fake backend: no connection '" + label + "'");
+        active = w;
+    }
+
+    @Override public synchronized void close() {
+        World w = world();
+        worlds.values().remove(w);
+        active = null;
+    }
+
+    // ===================== Delegation =====================
+    @Override public void step() { world().step(); }
+    @Override public void stepTo(double simTime) {
+        World w = world();
+        do { w.step(); } while (w.time < simTime - 1e-9);
+    }
+    @Override public double currentTime() { return world().time; }
+    @Override public double deltaT() { return world().dt; }
+    @Override public int minExpectedNumber() { return world().minExpectedNumber(); }
+    @Override public List<String> departedIds() { return world().departed; }
+
+    @Override public void saveState(String file) {
+        try { world().saveState(new File(file)); }
+        catch (IOException ex) { throw new IllegalStateException("fake backend: cannot save state to " + file, ex); }
+    }
+
+    @Override public void loadState(String file) {
+        try { world().loadState(new File(file)); }
+        catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalStateException("fake backend: cannot load state from " + file, ex);
+        }
+    }
+
+    @Override public List<String> vehicleIds() { return world().vehicleIds(); }
+    @Override public void subscribeVehicle(String vehId, int[] varIds) { world().subscribe(vehId, varIds); }
+    @Override public void readVehicleSubscriptions(VehicleVarSink sink) { world().readSubscriptions(sink); }
+    @Override public boolean vehiclePosition(String vehId, double[] xyOut) { return world().position(vehId, xyOut); }
+    @Override public double vehicleSpeed(String vehId) { return world().speed[world().slot(vehId)]; }
+
+    @Override public String vehicleTypeId(String vehId) { World w = world(); return TYPE_ID[w.type[w.slot(vehId)]]; }
+    @Override public String vehicleClass(String vehId) { World w = world(); return TYPE_CLASS[w.type[w.slot(vehId)]]; }
+    @Override public int vehicleColor(String vehId) { world().slot(vehId); return DEFAULT_COLOR; }
+    @Override public String vehicleRouteId(String vehId) { World w = world(); return w.routeId[w.slot(vehId)]; }
+    @Override public double vehicleDepartTime(String vehId) { World w = world(); return w.departTime[w.slot(vehId)]; }
+
+    @Override public void addRoute(String routeId, List<String> edges) { world().addRoute(routeId, edges); }
+    @Override public int edgeLaneCount(String edgeId) { World w = world(); return w.net.edgeLanes[w.edge(edgeId)].length; }
+    @Override public List<String> edgeIds() { return Arrays.asList(world().net.edgeId); }
+    @Override public void subscribeEdge(String edgeId, int[] varIds) { World w = world(); w.edgeSubscribed[w.edge(edgeId)] = varIds; }
+    @Override public void readEdgeSubscriptions(EdgeVarSink sink) { world().readEdgeSubscriptions(sink); }
+
+    @Override public List<String> trafficLightIds() { return Arrays.asList(world().net.tlsId); }
+    @Override public String tlsProgram(String tlsId) { World w = world(); return w.tlsProgram[w.tls(tlsId)]; }
+    @Override public void setTlsProgram(String tlsId, String programId) { world().setProgram(tlsId, programId); }
+    @Override public void setTlsPhaseDuration(String tlsId, double seconds) { world().setPhaseDuration(tlsId, seconds); }
+    @Override public String tlsState(String tlsId) { World w = world(); return w.tlsState(w.tls(tlsId)); }
+    @Override public void setTlsState(String tlsId, String state) { world().setState(tlsId, state); }
+
+    // ===================== Vehicle types =====================
+    // same vTypes as SumoLauncher writes for the real run
+    private static final String[] TYPE_ID = {Main.TYPE_CAR, Main.TYPE_TRUCK, Main.TYPE_BUS};
+    private static final String[] TYPE_CLASS = {"passenger", "truck", "bus"};
+    private static final double[] TYPE_LENGTH = {5.0, 8.0, 12.0};
+    private static final double[] TYPE_ACCEL = {2.6, 1.3, 1.1};
+    private static final double[] TYPE_DECEL = {4.5, 4.0, 4.0};
+    private static final double[] TYPE_MAX_SPEED = {33.0, 25.0, 22.0};
+    // SUMO's default vehicle colour (yellow) when none is set
+    private static final int DEFAULT_COLOR = 0xFFFFFF00;
+
+    private static final double MIN_GAP = 2.5;
+    private static final double SIGMA = 0.5;
+    private static final double HALTING_SPEED = 0.1;
+
+    private static int typeIndex(String typeId) {
+        for (int t = 0; t < TYPE_ID.length; t++) if (TYPE_ID[t].equals(typeId)) return t;
+        return -1;
+    }
+
+    // ===================== One simulation =====================
+    private static final class World {
+        final FakeNetwork net;
+        Random rnd;
+        final double dt;
+        final int targetVehicles;
+        double time = 0.0;
+
+        // vehicles by slot (freed slots are reused)
+        int slots = 0;
+        int activeCount = 0;
+        final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+        final Map<String, Integer> slotOf = new HashMap<>();
+        String[] id = new String[1024];
+        int[] type = new int[1024];
+        int[][] route = new int[1024][];
+        // SUMO names implicit routes "!<vehId>"
+        String[] routeId = new String[1024];
+        double[] departTime = new double[1024];
+        int[] routePos = new int[1024];
+        int[] lane = new int[1024];          // -1 = waiting for insertion
+        double[] pos = new double[1024];
+        double[] speed = new double[1024];
+        double[] waiting = new double[1024];
+        double[] speedFactor = new double[1024];
+        int[][] subscribed = new int[1024][];
+        // by edge; edges are part of the network, so these survive a state load
+        final int[][] edgeSubscribed;
+        FakeNetwork.Connection[] next = new FakeNetwork.Connection[1024];
+
+        // explicit adds that have not found room on their first lane yet
+        final ArrayDeque<Integer> pending = new ArrayDeque<>();
+        long backgroundSeq = 0;
+        final int[] backgroundEdges;
+
+        // vehicles per lane, leader first (CSR layout, rebuilt every step)
+        final int[] laneStart;
+        int[] laneVeh = new int[1024];
+        final int[] laneHalting;
+        // back of the last vehicle on the lane, +inf when empty
+        final double[] laneTail;
+
+        final int[] tlsPhase;
+        final double[] tlsLeft;
+        final String[] tlsOverride; // null = program running
+        final String[] tlsProgram;
+
+        final Map<String, int[]> routes = new HashMap<>();
+
+        List<String> departed = new ArrayList<>();
+        List<String> arrived = new ArrayList<>();
+
+        private final double[] xy = new double[2];
+
+        World(FakeNetwork net, long seed, double dt, int targetVehicles) {
+            this.net = net;
+            this.rnd = new Random(seed);
+            this.dt = dt;
+            this.targetVehicles = Math.max(0, targetVehicles);
+
+            laneStart = new int[net.laneCount + 1];
+            laneHalting = new int[net.laneCount];
+            laneTail = new double[net.laneCount];
+            Arrays.fill(laneTail, Double.POSITIVE_INFINITY);
+            edgeSubscribed = new int[net.edgeCount][];
+
+            int n = net.tlsId.length;
+            tlsPhase = new int[n];
+            tlsLeft = new double[n];
+            tlsOverride = new String[n];
+            tlsProgram = new String[n];
+            for (int t = 0; t < n; t++) {
+                tlsLeft[t] = net.tlsPhaseDuration[t][0];
+                tlsProgram[t] = net.tlsProgramId[t];
+            }
+
+            int[] bg = new int[net.edgeCount];
+            int k = 0;
+            for (int e = 0; e < net.edgeCount; e++) {
+                if (net.edgeAllows(e, "passenger") && net.edgeOut[e].length > 0) bg[k++] = e;
+            }
+            backgroundEdges = Arrays.copyOf(bg, k);
+        }
+
+        // ===================== Step =====================
+        void step() {
+            time += dt;
+            departed = new ArrayList<>();
+            arrived = new ArrayList<>();
+
+            advanceTls();
+            boolean inserted = spawnBackground();
+            inserted |= insertPending();
+            if (inserted) rebuildLanes();
+            move();
+            rebuildLanes();
+        }
+
+        private void advanceTls() {
+            for (int t = 0; t < tlsPhase.length; t++) {
+                if (tlsOverride[t] != null) continue;
+                tlsLeft[t] -= dt;
+                double[] dur = net.tlsPhaseDuration[t];
+                while (tlsLeft[t] <= 1e-9) {
+                    tlsPhase[t] = (tlsPhase[t] + 1) % dur.length;
+                    tlsLeft[t] += dur[tlsPhase[t]];
+                }
+            }
+        }
+
+        private boolean spawnBackground() {
+            if (targetVehicles == 0 || backgroundEdges.length == 0) return false;
+            int deficit = targetVehicles - activeCount - pending.size();
+            int n = Math.min(deficit, Math.max(10, targetVehicles / 20));
+            for (int i = 0; i < n; i++) {
+                double r = rnd.nextDouble();
+                int t = r < 0.8 ? 0 : (r < 0.95 ? 1 : 2);
+                int[] walk = randomWalk(backgroundEdges[rnd.nextInt(backgroundEdges.length)], TYPE_CLASS[t]);
+                int s = newVehicle("bg_" + (++backgroundSeq), t, walk);
+                int l = net.edgeLanes[walk[0]][0];
+                // spread over the first lane so the network fills quickly
+                place(s, l, rnd.nextDouble() * net.laneLength[l] * 0.9, TYPE_MAX_SPEED[t] * 0.3);
+            }
+            return n > 0;
+        }
+
+        private int[] randomWalk(int start, String vClass) {
+            int len = 10 + rnd.nextInt(31);
+            int[] walk = new int[len];
+            walk[0] = start;
+            int n = 1;
+            while (n < len) {
+                FakeNetwork.Connection[] out = net.edgeOut[walk[n - 1]];
+                if (out.length == 0) break;
+                int pick = -1;
+                // a few tries to avoid U-turns and closed edges
+                for (int tries = 0; tries < 4 && pick < 0; tries++) {
+                    FakeNetwork.Connection c = out[rnd.nextInt(out.length)];
+                    if (!net.edgeAllows(c.toEdge, vClass)) continue;
+                    if (n >= 2 && c.toEdge == walk[n - 2]) continue;
+                    if (isReverse(walk[n - 1], c.toEdge) && tries < 3) continue;
+                    pick = c.toEdge;
+                }
+                if (pick < 0) break;
+                walk[n++] = pick;
+            }
+            return Arrays.copyOf(walk, n);
+        }
+
+        private boolean isReverse(int a, int b) {
+            String x = net.edgeId[a], y = net.edgeId[b];
+            return x.equals("-" + y) || y.equals("-" + x);
+        }
+
+        private boolean insertPending() {
+            boolean any = false;
+            int n = pending.size();
+            for (int i = 0; i < n; i++) {
+                int s = pending.pollFirst();
+                int best = -1;
+                for (int l : net.edgeLanes[route[s][0]]) {
+                    if (!net.laneAllows(l, TYPE_CLASS[type[s]])) continue;
+                    if (laneTail[l] < TYPE_LENGTH[type[s]] + MIN_GAP) continue;
+                    if (best < 0 || laneTail[l] > laneTail[best]) best = l;
+                }
+                if (best < 0) { pending.addLast(s); continue; }
+                place(s, best, 0.0, 0.0);
+                laneTail[best] = -TYPE_LENGTH[type[s]];
+                any = true;
+            }
+            return any;
+        }
+
+        private void place(int s, int l, double p, double v) {
+            lane[s] = l;
+            pos[s] = p;
+            speed[s] = v;
+            next[s] = nextConnection(s);
+            departTime[s] = time;
+            departed.add(id[s]);
+        }
+
+        // ===================== Movement =====================
+        private void move() {
+            for (int l = 0; l < net.laneCount; l++) {
+                int from = laneStart[l], to = laneStart[l + 1];
+                double leaderBack = Double.POSITIVE_INFINITY;
+                for (int k = from; k < to; k++) {
+                    int s = laneVeh[k];
+                    int t = type[s];
+                    double gap = Math.min(leaderBack - pos[s] - MIN_GAP, gapToStop(s, l));
+
+                    double vMax = Math.min(TYPE_MAX_SPEED[t] * speedFactor[s], net.laneSpeed[l]);
+                    double g = Math.max(0.0, gap);
+                    double v = Math.min(speed[s] + TYPE_ACCEL[t] * dt, vMax);
+                    v = Math.min(v, Math.sqrt(2.0 * TYPE_DECEL[t] * g));
+                    v = Math.min(v, g / dt);
+                    v = Math.max(0.0, v - SIGMA * TYPE_ACCEL[t] * dt * rnd.nextDouble());
+
+                    speed[s] = v;
+                    pos[s] += v * dt;
+                    waiting[s] = v < HALTING_SPEED ? waiting[s] + dt : 0.0;
+                    leaderBack = pos[s] - TYPE_LENGTH[t];
+                }
+            }
+
+            // lane changes at the end of a lane, arrivals at the end of the route
+            for (int s = 0; s < slots; s++) {
+                if (id[s] == null || lane[s] < 0) continue;
+                while (pos[s] > net.laneLength[lane[s]]) {
+                    if (routePos[s] == route[s].length - 1) { arrive(s); break; }
+                    FakeNetwork.Connection c = next[s];
+                    if (c != null && isRed(c)) { pos[s] = net.laneLength[lane[s]]; speed[s] = 0.0; break; }
+                    pos[s] -= net.laneLength[lane[s]];
+                    int e = route[s][++routePos[s]];
+                    int[] lanes = net.edgeLanes[e];
+                    lane[s] = lanes[c != null ? Math.min(c.toLane, lanes.length - 1) : 0];
+                    next[s] = nextConnection(s);
+                }
+            }
+        }
+
+        // distance the vehicle may still drive on this lane (and into the next one)
+        private double gapToStop(int s, int l) {
+            double toEnd = net.laneLength[l] - pos[s];
+            if (routePos[s] == route[s].length - 1) return Double.POSITIVE_INFINITY;
+            FakeNetwork.Connection c = next[s];
+            if (c != null && isRed(c)) return toEnd - 0.5;
+            int[] lanes = net.edgeLanes[route[s][routePos[s] + 1]];
+            int nl = lanes[c != null ? Math.min(c.toLane, lanes.length - 1) : 0];
+            return toEnd + Math.min(laneTail[nl] - MIN_GAP, net.laneLength[nl]);
+        }
+
+        private FakeNetwork.Connection nextConnection(int s) {
+            if (routePos[s] >= route[s].length - 1) return null;
+            int e = route[s][routePos[s]], to = route[s][routePos[s] + 1];
+            int laneInEdge = 0;
+            int[] lanes = net.edgeLanes[e];
+            for (int i = 0; i < lanes.length; i++) if (lanes[i] == lane[s]) laneInEdge = i;
+            FakeNetwork.Connection any = null;
+            for (FakeNetwork.Connection c : net.edgeOut[e]) {
+                if (c.toEdge != to) continue;
+                if (c.fromLane == laneInEdge) return c;
+                if (any == null) any = c;
+            }
+            return any;
+        }
+
+        private boolean isRed(FakeNetwork.Connection c) {
+            if (c.tls < 0) return false;
+            String st = tlsState(c.tls);
+            if (c.linkIndex >= st.length()) return false;
+            char ch = st.charAt(c.linkIndex);
+            return ch == 'r' || ch == 'R';
+        }
+
+        private void arrive(int s) {
+            arrived.add(id[s]);
+            slotOf.remove(id[s]);
+            id[s] = null;
+            route[s] = null;
+            subscribed[s] = null;
+            next[s] = null;
+            lane[s] = -1;
+            freeSlots.addLast(s);
+            activeCount--;
+        }
+
+        // counting sort by lane, then leader first within each lane (order barely changes per step)
+        private void rebuildLanes() {
+            Arrays.fill(laneStart, 0);
+            int placed = 0;
+            for (int s = 0; s < slots; s++) {
+                if (id[s] == null || lane[s] < 0) continue;
+                laneStart[lane[s] + 1]++;
+                placed++;
+            }
+            for (int l = 0; l < net.laneCount; l++) laneStart[l + 1] += laneStart[l];
+            if (laneVeh.length < placed) laneVeh = new int[Math.max(placed, laneVeh.length * 2)];
+
+            int[] fill = Arrays.copyOf(laneStart, net.laneCount);
+            for (int s = 0; s < slots; s++) {
+                if (id[s] == null || lane[s] < 0) continue;
+                laneVeh[fill[lane[s]]++] = s;
+            }
+
+            for (int l = 0; l < net.laneCount; l++) {
+                int from = laneStart[l], to = laneStart[l + 1];
+                for (int i = from + 1; i < to; i++) {
+                    int v = laneVeh[i];
+                    int j = i - 1;
+                    while (j >= from && pos[laneVeh[j]] < pos[v]) { laneVeh[j + 1] = laneVeh[j]; j--; }
+                    laneVeh[j + 1] = v;
+                }
+                int halting = 0;
+                for (int i = from; i < to; i++) if (speed[laneVeh[i]] < HALTING_SPEED) halting++;
+                laneHalting[l] = halting;
+                int last = to > from ? laneVeh[to - 1] : -1;
+                laneTail[l] = last < 0 ? Double.POSITIVE_INFINITY : pos[last] - TYPE_LENGTH[type[last]];
+            }
+        }
+
+        // ===================== State =====================
+        // derived data (lane order, next connections, subscriptions) is rebuilt, not stored;
+        // like SUMO, subscriptions do not survive a load
+        private static final int STATE_VERSION = 1;
+
+        void saveState(File file) throws IOException {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(STATE_VERSION);
+                out.writeInt(net.edgeCount);
+                out.writeDouble(time);
+                out.writeObject(rnd);
+                out.writeInt(slots);
+                out.writeObject(Arrays.copyOf(id, slots));
+                out.writeObject(Arrays.copyOf(type, slots));
+                out.writeObject(Arrays.copyOf(route, slots));
+                out.writeObject(Arrays.copyOf(routeId, slots));
+                out.writeObject(Arrays.copyOf(departTime, slots));
+                out.writeObject(Arrays.copyOf(routePos, slots));
+                out.writeObject(Arrays.copyOf(lane, slots));
+                out.writeObject(Arrays.copyOf(pos, slots));
+                out.writeObject(Arrays.copyOf(speed, slots));
+                out.writeObject(Arrays.copyOf(waiting, slots));
+                out.writeObject(Arrays.copyOf(speedFactor, slots));
+                out.writeObject(freeSlots.toArray(new Integer[0]));
+                out.writeObject(pending.toArray(new Integer[0]));
+                out.writeLong(backgroundSeq);
+                out.writeObject(tlsPhase);
+                out.writeObject(tlsLeft);
+                out.writeObject(tlsOverride);
+                out.writeObject(tlsProgram);
+                out.writeObject(new HashMap<>(routes));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void loadState(File file) throws IOException, ClassNotFoundException {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                int version = in.readInt();
+                if (version != STATE_VERSION) throw new IOException("unsupported fake state version " + version);
+                if (in.readInt() != net.edgeCount) throw new IOException("state was saved on a different network");
+                time = in.readDouble();
+                rnd = (Random) in.readObject();
+
+                slots = in.readInt();
+                int cap = Math.max(1024, slots);
+                id = Arrays.copyOf((String[]) in.readObject(), cap);
+                type = Arrays.copyOf((int[]) in.readObject(), cap);
+                route = Arrays.copyOf((int[][]) in.readObject(), cap);
+                routeId = Arrays.copyOf((String[]) in.readObject(), cap);
+                departTime = Arrays.copyOf((double[]) in.readObject(), cap);
+                routePos = Arrays.copyOf((int[]) in.readObject(), cap);
+                lane = Arrays.copyOf((int[]) in.readObject(), cap);
+                pos = Arrays.copyOf((double[]) in.readObject(), cap);
+                speed = Arrays.copyOf((double[]) in.readObject(), cap);
+                waiting = Arrays.copyOf((double[]) in.readObject(), cap);
+                speedFactor = Arrays.copyOf((double[]) in.readObject(), cap);
+                subscribed = new int[cap][];
+                next = new FakeNetwork.Connection[cap];
+                freeSlots.clear();
+                freeSlots.addAll(Arrays.asList((Integer[]) in.readObject()));
+                pending.clear();
+                pending.addAll(Arrays.asList((Integer[]) in.readObject()));
+                backgroundSeq = in.readLong();
+                System.arraycopy((int[]) in.readObject(), 0, tlsPhase, 0, tlsPhase.length);
+                System.arraycopy((double[]) in.readObject(), 0, tlsLeft, 0, tlsLeft.length);
+                System.arraycopy((String[]) in.readObject(), 0, tlsOverride, 0, tlsOverride.length);
+                System.arraycopy((String[]) in.readObject(), 0, tlsProgram, 0, tlsProgram.length);
+                routes.clear();
+                routes.putAll((Map<String, int[]>) in.readObject());
+            }
+
+            slotOf.clear();
+            activeCount = 0;
+            for (int s = 0; s < slots; s++) {
+                if (id[s] == null) continue;
+                slotOf.put(id[s], s);
+                activeCount++;
+                if (lane[s] >= 0) next[s] = nextConnection(s);
+            }
+            departed = new ArrayList<>();
+            arrived = new ArrayList<>();
+            rebuildLanes();
+        }
+
+        // ===================== Vehicles =====================
+        private int newVehicle(String vehId, int t, int[] edges) {
+            int s;
+            if (!freeSlots.isEmpty()) {
+                s = freeSlots.pollFirst();
+            } else {
+                if (slots == id.length) grow();
+                s = slots++;
+            }
+            id[s] = vehId;
+            type[s] = t;
+            route[s] = edges;
+            routeId[s] = "!" + vehId;
+            departTime[s] = -1.0;
+            routePos[s] = 0;
+            lane[s] = -1;
+            pos[s] = 0.0;
+            speed[s] = 0.0;
+            waiting[s] = 0.0;
+            speedFactor[s] = 0.9 + 0.2 * rnd.nextDouble();
+            subscribed[s] = null;
+            next[s] = null;
+            slotOf.put(vehId, s);
+            activeCount++;
+            return s;
+        }
+
+        private void grow() {
+            int cap = id.length * 2;
+            id = Arrays.copyOf(id, cap);
+            type = Arrays.copyOf(type, cap);
+            route = Arrays.copyOf(route, cap);
+            routeId = Arrays.copyOf(routeId, cap);
+            departTime = Arrays.copyOf(departTime, cap);
+            routePos = Arrays.copyOf(routePos, cap);
+            lane = Arrays.copyOf(lane, cap);
+            pos = Arrays.copyOf(pos, cap);
+            speed = Arrays.copyOf(speed, cap);
+            waiting = Arrays.copyOf(waiting, cap);
+            speedFactor = Arrays.copyOf(speedFactor, cap);
+            subscribed = Arrays.copyOf(subscribed, cap);
+            next = Arrays.copyOf(next, cap);
+        }
+
+        void addVehicle(String vehId, String routeId, String typeId) {
+            if (slotOf.containsKey(vehId)) throw new IllegalArgumentException("Vehicle '" + vehId + "' already exists");
+            int[] edges = routes.get(routeId);
+            if (edges == null) throw new IllegalArgumentException("Route '" + routeId + "' is not known");
+            int t = typeIndex(typeId);
+            if (t < 0) throw new IllegalArgumentException("Vehicle type '" + typeId + "' is not known");
+            int s = newVehicle(vehId, t, edges);
+            this.routeId[s] = routeId;
+            pending.addLast(s);
+        }
+
+        void addRoute(String routeId, List<String> edges) {
+            if (routes.containsKey(routeId)) throw new IllegalArgumentException("Route '" + routeId + "' already exists");
+            if (edges.isEmpty()) throw new IllegalArgumentException("Route '" + routeId + "' has no edges");
+            int[] r = new int[edges.size()];
+            for (int i = 0; i < r.length; i++) r[i] = edge(edges.get(i));
+            routes.put(routeId, r);
+        }
+
+        int slot(String vehId) {
+            Integer s = slotOf.get(vehId);
+            if (s == null || lane[s] < 0) throw new IllegalArgumentException("Vehicle '" + vehId + "' is not known");
+            return s;
+        }
+
+        int edge(String edgeId) {
+            Integer e = net.edgeIndex.get(edgeId);
+            if (e == null) throw new IllegalArgumentException("Edge '" + edgeId + "' is not known");
+            return e;
+        }
+
+        List<String> vehicleIds() {
+            ArrayList<String> out = new ArrayList<>(activeCount);
+            for (int s = 0; s < slots; s++) if (id[s] != null && lane[s] >= 0) out.add(id[s]);
+            return out;
+        }
+
+        boolean position(String vehId, double[] xyOut) {
+            int s = slot(vehId);
+            net.position(lane[s], pos[s], xyOut);
+            return true;
+        }
+
+        double waitingTime(String vehId) {
+            Integer s = slotOf.get(vehId);
+            return s == null ? Double.NaN : waiting[s];
+        }
+
+        int minExpectedNumber() {
+            return activeCount + (targetVehicles > 0 ? 1 : 0);
+        }
+
+        List<String> findRoute(String from, String to, String typeId) {
+            int t = typeIndex(typeId);
+            return net.findRoute(from, to, TYPE_CLASS[t < 0 ? 0 : t]);
+        }
+
+        // ===================== Subscriptions =====================
+        void subscribe(String vehId, int[] varIds) {
+            subscribed[slot(vehId)] = varIds;
+        }
+
+        void readSubscriptions(VehicleVarSink sink) {
+            for (int s = 0; s < slots; s++) {
+                int[] vars = subscribed[s];
+                if (vars == null || id[s] == null || lane[s] < 0) continue;
+                sink.vehicle(id[s]);
+                for (int v : vars) {
+                    switch (v) {
+                        case VehicleSnapshot.VAR_POSITION:
+                            net.position(lane[s], pos[s], xy);
+                            sink.position(xy[0], xy[1]);
+                            break;
+                        case VehicleSnapshot.VAR_SPEED: sink.doubleVar(v, speed[s]); break;
+                        case VehicleSnapshot.VAR_WAITING_TIME: sink.doubleVar(v, waiting[s]); break;
+                        case VehicleSnapshot.VAR_TYPE: sink.stringVar(v, TYPE_ID[type[s]]); break;
+                        case VehicleSnapshot.VAR_ROAD_ID: sink.stringVar(v, net.edgeId[net.laneEdge[lane[s]]]); break;
+                        default: break;
+                    }
+                }
+            }
+        }
+
+        // like SUMO's edge values: summed over the lanes, mean speed = lane speed limit when empty,
+        // occupancy in percent of the lane length covered by vehicles
+        void readEdgeSubscriptions(EdgeVarSink sink) {
+            for (int e = 0; e < edgeSubscribed.length; e++) {
+                int[] vars = edgeSubscribed[e];
+                if (vars == null) continue;
+                int vehicles = 0, halting = 0;
+                double speedSum = 0.0, occupied = 0.0, limitSum = 0.0;
+                int[] lanes = net.edgeLanes[e];
+                for (int l : lanes) {
+                    double covered = 0.0;
+                    for (int i = laneStart[l]; i < laneStart[l + 1]; i++) {
+                        int s = laneVeh[i];
+                        speedSum += speed[s];
+                        covered += TYPE_LENGTH[type[s]];
+                    }
+                    vehicles += laneStart[l + 1] - laneStart[l];
+                    halting += laneHalting[l];
+                    occupied += Math.min(1.0, covered / net.laneLength[l]);
+                    limitSum += net.laneSpeed[l];
+                }
+                sink.edge(net.edgeId[e]);
+                for (int v : vars) {
+                    switch (v) {
+                        case EdgeMetricsStore.LAST_STEP_VEHICLE_NUMBER: sink.var(v, vehicles); break;
+                        case EdgeMetricsStore.LAST_STEP_VEHICLE_HALTING_NUMBER: sink.var(v, halting); break;
+                        case EdgeMetricsStore.LAST_STEP_MEAN_SPEED:
+                            sink.var(v, vehicles > 0 ? speedSum / vehicles : (lanes.length > 0 ? limitSum / lanes.length : 0.0));
+                            break;
+                        case EdgeMetricsStore.LAST_STEP_OCCUPANCY:
+                            sink.var(v, lanes.length > 0 ? 100.0 * occupied / lanes.length : 0.0);
+                            break;
+                        default: break;
+                    }
+                }
+            }
+        }
+
+        // ===================== Lanes =====================
+        private int lane(String laneId) {
+            Integer l = net.laneIndex.get(laneId);
+            if (l == null) throw new IllegalArgumentException("Lane '" + laneId + "' is not known");
+            return l;
+        }
+
+        int laneHalting(String laneId) {
+            Integer l = net.laneIndex.get(laneId);
+            return l == null ? -1 : laneHalting[l];
+        }
+
+        List<String> laneAllowed(String laneId) { return net.laneAllowed.get(lane(laneId)); }
+
+        double laneLength(String laneId) { return net.laneLength[lane(laneId)]; }
+
+        // ===================== Traffic lights =====================
+        int tls(String tlsId) {
+            Integer t = net.tlsIndex.get(tlsId);
+            if (t == null) throw new IllegalArgumentException("Traffic light '" + tlsId + "' is not known");
+            return t;
+        }
+
+        String tlsState(int t) {
+            String o = tlsOverride[t];
+            return o != null ? o : net.tlsPhaseState[t][tlsPhase[t]];
+        }
+
+        List<String> controlledLanes(String tlsId) { return net.tlsControlledLanes.get(tls(tlsId)); }
+
+        // like SUMO: a fixed state switches the light to the "online" program
+        void setState(String tlsId, String state) {
+            int t = tls(tlsId);
+            if (state.length() != net.tlsPhaseState[t][0].length()) {
+                throw new IllegalArgumentException("State '" + state + "' has the wrong length for '" + tlsId + "'");
+            }
+            tlsOverride[t] = state;
+            tlsProgram[t] = "online";
+        }
+
+        void setProgram(String tlsId, String programId) {
+            int t = tls(tlsId);
+            if (!programId.equals(net.tlsProgramId[t])) {
+                throw new IllegalArgumentException("Program '" + programId + "' is not known for '" + tlsId + "'");
+            }
+            tlsOverride[t] = null;
+            tlsProgram[t] = programId;
+        }
+
+        void setPhaseDuration(String tlsId, double seconds) {
+            int t = tls(tlsId);
+            if (tlsOverride[t] == null) tlsLeft[t] = Math.max(0.0, seconds);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+// ===================== FrameCapture.java =====================
+package org.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+// Simulation-thread side of the frame pipeline: everything that needs TraCI
+// (vehicle snapshot, arrivals) ends up in an immutable VehicleFrame.
+public final class FrameCapture {
+
+    private final VehicleSnapshot snapshot;
+    private final VehicleFrame.Pool pool = new VehicleFrame.Pool();
+
+    // arrivals collected since the last frame (primitive buffer, reset per frame)
+    private double[] arrivals = new double[64];
+    private int arrivalCount = 0;
+    // travel times (arrival - depart), waiting times and types of trips ended since the last frame
+    private double[] trips = new double[64];
+    private double[] tripWaits = new double[64];
+    private byte[] tripTypes = new byte[64];
+    private int tripCount = 0;
+
+    // TLS whose states go into every frame (recording only), null = none
+    private List<String> tlsIds = null;
+
+    public FrameCapture(VehicleSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public VehicleSnapshot snapshot() { return snapshot; }
+
+    // one state read per TLS and sampled step, so only when a FrameRecorder needs them
+    public void captureTlsStates(List<String> tlsIds) { this.tlsIds = tlsIds; }
+
+    // frames allocated so far; stays flat once the pipeline is warm
+    public int framesAllocated() { return pool.created(); }
+
+    // Registers the vehicles already running (after a warm start), so those that leave during the
+    // first interval are counted as arrivals.
+    public void prime() {
+        snapshot.applyChurn();
+    }
+
+    // warm start sidecar: per-vehicle trip state the SUMO state does not carry (VehicleSnapshot)
+    void writeState(DataOutput out) throws IOException { snapshot.writeState(out); }
+
+    // before prime()
+    void readState(DataInput in) throws IOException { snapshot.readState(in); }
+
+    // ===================== Sampled step =====================
+    // The returned frame holds one reference, owned by the caller: release() it (or pass it on) when done.
+    public VehicleFrame capture(double simTime, int speedFactorUi, boolean ruleBasedEnabled,
+                                boolean render, String tlsStatus) {
+        // arrivals of this step, plus whatever the snapshot's sweep found gone (gap / no arrived list)
+        int arrived = snapshot.applyChurn();
+        addTrips(simTime);
+        int swept = snapshot.refresh();
+        addArrivals(simTime, Math.max(0, arrived) + swept);
+
+        VehicleFrame f = pool.take(snapshot.size());
+        f.fill(snapshot, simTime, arrivals, arrivalCount, speedFactorUi, ruleBasedEnabled, render, tlsStatus);
+        f.fillTrips(trips, tripWaits, tripTypes, tripCount);
+        arrivalCount = 0;
+        tripCount = 0;
+        readTlsStates(f);
+        return f;
+    }
+
+    private void readTlsStates(VehicleFrame f) {
+        if (tlsIds == null) {
+            f.tlsStatesBuffer(-1);
+            return;
+        }
+        SimulationBackend sumo = Backends.get();
+        String[] out = f.tlsStatesBuffer(tlsIds.size());
+        for (int i = 0; i < out.length; i++) {
+            try { out[i] = sumo.tlsState(tlsIds.get(i)); } catch (Exception ignore) { out[i] = null; }
+        }
+    }
+
+    // ===================== Multi-step advance =====================
+    // Intermediate step (not sampled): keep the registry, subscriptions and arrivals exact.
+    // Without an arrived list the next sample's sweep counts them instead.
+    public void onSubStep(double simTime) {
+        addArrivals(simTime, Math.max(0, snapshot.applyChurn()));
+        addTrips(simTime);
+    }
+
+    // Several steps were done in one Simulation.step(t) call (no arrived list): arrivals inside the
+    // jump are found by the next sample's sweep and stamped with its time. They have no trip record,
+    // and vehicles that departed and arrived inside the jump are not counted at all.
+    public void onGap() {
+        snapshot.markGap();
+    }
+
+    // ===================== Arrivals =====================
+    // trips of the last applyChurn(); travel time NaN when the depart time is unknown
+    private void addTrips(double simTime) {
+        int n = snapshot.finishedTrips();
+        if (tripCount + n > trips.length) {
+            int cap = Math.max(tripCount + n, trips.length * 2);
+            trips = Arrays.copyOf(trips, cap);
+            tripWaits = Arrays.copyOf(tripWaits, cap);
+            tripTypes = Arrays.copyOf(tripTypes, cap);
+        }
+        for (int k = 0; k < n; k++) {
+            double depart = snapshot.finishedDepart(k);
+            trips[tripCount] = depart <= simTime ? simTime - depart : Double.NaN;
+            tripWaits[tripCount] = snapshot.finishedWaiting(k);
+            tripTypes[tripCount++] = snapshot.finishedType(k);
+        }
+    }
+
+    private void addArrivals(double simTime, int n) {
+        if (arrivalCount + n > arrivals.length) arrivals = Arrays.copyOf(arrivals, Math.max(arrivalCount + n, arrivals.length * 2));
+        for (int i = 0; i < n; i++) arrivals[arrivalCount++] = simTime;
+    }
+}
@@ -0,0 +1,86 @@
+// ===================== FramePipeline.java =====================
+package org.example;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Simulation thread -> metrics stage.
+// The sim thread only publishes immutable VehicleFrames; metric maths, MetricRow logging and recording
+// run on their own ring and thread, never on the stepping thread. Map/label frames do not go through
+// here: they are handed to FrameView's latest-frame slot, which its Swing timer drains at a fixed rate.
+final class FramePipeline {
+
+    interface Stage {
+        void accept(VehicleFrame frame) throws Exception;
+    }
+
+    // ~8 minutes of sim time at 1 s steps before the sim thread has to wait for metrics
+    private static final int METRICS_RING_CAPACITY = 512;
+
+    private final FrameRing<VehicleFrame> metricsRing = new FrameRing<>(METRICS_RING_CAPACITY);
+
+    private final Thread metricsThread;
+
+    // frames published (sim thread only) / finished by the stage, for awaitIdle()
+    private long published = 0;
+    private final AtomicLong finished = new AtomicLong();
+
+    FramePipeline(Stage metricsStage) {
+        metricsThread = new Thread(() -> runStage("metrics", metricsRing, metricsStage, finished), "Frame-Metrics");
+        metricsThread.setDaemon(true);
+    }
+
+    void start() {
+        metricsThread.start();
+    }
+
+    // sim thread only; takes over the caller's reference, released after the stage ran
+    // (or right away when the pipeline is already closed)
+    void publish(VehicleFrame frame) {
+        if (!metricsRing.offer(frame)) {
+            frame.release();
+            return;
+        }
+        published++;
+    }
+
+    // Sim thread only: waits until the stage has finished every published frame, so its state
+    // (MetricsCollector) can be read until the next publish(). false on timeout.
+    boolean awaitIdle(long timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        while (finished.get() < published) {
+            if (System.nanoTime() > deadline || !metricsThread.isAlive()) return false;
+            LockSupport.parkNanos(200_000L);
+        }
+        return true;
+    }
+
+    // Lets the metrics stage drain (lossless), then stops it.
+    void close(long timeoutMs) {
+        metricsRing.close();
+        try {
+            metricsThread.join(timeoutMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        Logging.LOG.info(String.format(Locale.US,
+                "Frame pipeline closed: sim thread waited on metrics %.1f ms",
+                metricsRing.producerWaitNanos() / 1e6));
+    }
+
+    private static void runStage(String name, FrameRing<VehicleFrame> ring, Stage stage, AtomicLong finished) {
+        while (true) {
+            VehicleFrame f = ring.take();
+            if (f == null) return;
+            try {
+                stage.accept(f);
+            } catch (Exception ex) {
+                Logging.LOG.log(java.util.logging.Level.WARNING, "Frame " + name + " stage failed at t=" + f.simTime, ex);
+            } finally {
+                f.release();
+                finished.incrementAndGet();
+            }
+        }
+    }
+}
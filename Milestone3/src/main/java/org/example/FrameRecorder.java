@@ -0,0 +1,247 @@
+// ===================== FrameRecorder.java =====================
+package org.example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.List;
+
+// Append-only binary log of published frames (vehicles, TLS states, MetricRow values),
+// so a run can be looked at again with --replay without SUMO. Read by FrameRecording.
+//
+// Layout (big-endian):
+//   header   "M3REC" u8 version, str scenario, short tlsCount, tlsCount x str tlsId
+//   records  u8 tag, int payloadLength, payload
+//     IDS      int firstIndex, int count, count x str      vehicle ids, numbered by first appearance
+//     FRAME    u8 flags, double simTime,
+//              int active, int stopped, double congestion, double meanSpeed, double avgWait,
+//              double throughput, int visible, int visCar, int visTruck, int visBus, int speedFactorUi,
+//              int n, n x (int id, u8 type, float x, float y, float speed, float waiting),
+//              short changed, changed x (short tls, str state)      key frames carry every TLS
+//     TRAILER  long frames, double firstTime, double lastTime, int idCount, idCount x str,
+//              int keys, keys x (double simTime, long offset)       sparse index of key frames
+//   footer   long trailerOffset, int FOOTER_MAGIC   (only after close(); otherwise the reader scans)
+//   str = u16 length + UTF-8 bytes
+public final class FrameRecorder implements Closeable {
+
+    static final byte[] MAGIC = {'M', '3', 'R', 'E', 'C'};
+    static final int VERSION = 1;
+    static final int FOOTER_MAGIC = 0x4D334958; // "M3IX"
+    static final int FOOTER_BYTES = 12;
+
+    static final byte TAG_IDS = 1;
+    static final byte TAG_FRAME = 2;
+    static final byte TAG_TRAILER = 3;
+
+    static final int FLAG_KEY = 1;
+    static final int FLAG_RULE_BASED = 2;
+
+    // a seek decodes at most this much sim time past the key frame
+    static final double KEY_FRAME_EVERY_SEC = 30.0;
+
+    private final File file;
+    private final FileChannel ch;
+    private ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+
+    // vehicle id dictionary
+    private final Map<String, Integer> idIndex = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+
+    private final String[] tlsIds;
+    private final String[] lastTls;
+
+    // sparse index
+    private double[] keyTimes = new double[64];
+    private long[] keyOffsets = new long[64];
+    private int keyCount = 0;
+    private double lastKeyTime = Double.NEGATIVE_INFINITY;
+
+    private long frames = 0;
+    private double firstTime = Double.NaN;
+    private double lastTime = Double.NaN;
+    private boolean closed = false;
+
+    public FrameRecorder(File file, String scenario, List<String> tlsIds) throws IOException {
+        this.file = file;
+        this.tlsIds = tlsIds.toArray(new String[0]);
+        this.lastTls = new String[this.tlsIds.length];
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        this.ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        buf.clear();
+        buf.put(MAGIC);
+        buf.put((byte) VERSION);
+        putStr(new File(scenario).getAbsolutePath());
+        buf.putShort((short) this.tlsIds.length);
+        for (String id : this.tlsIds) putStr(id);
+        flush();
+        Logging.LOG.info("Recording frames to " + file.getAbsolutePath() + " (" + this.tlsIds.length + " traffic lights)");
+    }
+
+    public File file() { return file; }
+
+    // ===================== Append =====================
+    // One published frame and the metrics computed from it (metrics stage / headless loop).
+    public synchronized void append(VehicleFrame vf, StepFrame f) throws IOException {
+        if (closed) throw new IOException("recorder closed: " + file);
+        buf.clear();
+
+        // new ids first, so every FRAME only refers to ids defined before it
+        int firstNew = ids.size();
+        for (int i = 0; i < vf.size; i++) {
+            String id = vf.ids[i];
+            if (!idIndex.containsKey(id)) {
+                idIndex.put(id, ids.size());
+                ids.add(id);
+            }
+        }
+        if (ids.size() > firstNew) {
+            int at = beginRecord(TAG_IDS);
+            ensure(8);
+            buf.putInt(firstNew);
+            buf.putInt(ids.size() - firstNew);
+            for (int i = firstNew; i < ids.size(); i++) putStr(ids.get(i));
+            endRecord(at);
+        }
+
+        boolean key = vf.simTime - lastKeyTime >= KEY_FRAME_EVERY_SEC;
+        long frameOffset = ch.position() + buf.position();
+
+        int at = beginRecord(TAG_FRAME);
+        ensure(1 + 8 + 4 * 2 + 8 * 4 + 4 * 5 + 4);
+        buf.put((byte) ((key ? FLAG_KEY : 0) | (vf.ruleBasedEnabled ? FLAG_RULE_BASED : 0)));
+        buf.putDouble(vf.simTime);
+        buf.putInt(f.active);
+        buf.putInt(f.stopped);
+        buf.putDouble(f.congestion);
+        buf.putDouble(f.meanSpeed);
+        buf.putDouble(f.avgWaitSec);
+        buf.putDouble(f.throughputVph);
+        buf.putInt(f.visible);
+        buf.putInt(f.visCar);
+        buf.putInt(f.visTruck);
+        buf.putInt(f.visBus);
+        buf.putInt(vf.speedFactorUi);
+
+        buf.putInt(vf.size);
+        ensure(vf.size * 21);
+        for (int i = 0; i < vf.size; i++) {
+            buf.putInt(idIndex.get(vf.ids[i]));
+            buf.put(vf.types[i]);
+            buf.putFloat((float) vf.x[i]);
+            buf.putFloat((float) vf.y[i]);
+            buf.putFloat((float) vf.speed[i]);
+            buf.putFloat((float) vf.waiting[i]);
+        }
+        putTlsStates(vf.tlsStates, key);
+        endRecord(at);
+
+        flush();
+
+        if (key) {
+            lastKeyTime = vf.simTime;
+            if (keyCount == keyTimes.length) {
+                keyTimes = Arrays.copyOf(keyTimes, keyCount * 2);
+                keyOffsets = Arrays.copyOf(keyOffsets, keyCount * 2);
+            }
+            keyTimes[keyCount] = vf.simTime;
+            keyOffsets[keyCount] = frameOffset;
+            keyCount++;
+        }
+        if (frames == 0) firstTime = vf.simTime;
+        lastTime = vf.simTime;
+        frames++;
+    }
+
+    // changed states only; key frames repeat all known states so a seek needs nothing before them
+    private void putTlsStates(String[] states, boolean key) {
+        int countAt = buf.position();
+        ensure(2);
+        buf.putShort((short) 0);
+        int changed = 0;
+        for (int t = 0; t < lastTls.length; t++) {
+            String s = (states != null && t < states.length) ? states[t] : null;
+            boolean differs = s != null && !s.equals(lastTls[t]);
+            if (differs) lastTls[t] = s;
+            if (lastTls[t] == null || !(differs || key)) continue;
+            ensure(2);
+            buf.putShort((short) t);
+            putStr(lastTls[t]);
+            changed++;
+        }
+        buf.putShort(countAt, (short) changed);
+    }
+
+    // ===================== Close =====================
+    @Override public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            buf.clear();
+            long trailerOffset = ch.position();
+            int at = beginRecord(TAG_TRAILER);
+            ensure(8 + 8 + 8 + 4);
+            buf.putLong(frames);
+            buf.putDouble(firstTime);
+            buf.putDouble(lastTime);
+            buf.putInt(ids.size());
+            for (String id : ids) putStr(id);
+            ensure(4 + keyCount * 16);
+            buf.putInt(keyCount);
+            for (int i = 0; i < keyCount; i++) {
+                buf.putDouble(keyTimes[i]);
+                buf.putLong(keyOffsets[i]);
+            }
+            endRecord(at);
+            ensure(FOOTER_BYTES);
+            buf.putLong(trailerOffset);
+            buf.putInt(FOOTER_MAGIC);
+            flush();
+        } finally {
+            ch.close();
+        }
+        Logging.LOG.info(String.format(Locale.US, "Recording closed: %s (%d frames, %d vehicles, %d key frames, %.1f MB)",
+                file.getName(), frames, ids.size(), keyCount, file.length() / 1e6));
+    }
+
+    // ===================== Buffer helpers =====================
+    private int beginRecord(byte tag) {
+        ensure(5);
+        int at = buf.position();
+        buf.put(tag);
+        buf.putInt(0);
+        return at;
+    }
+
+    private void endRecord(int at) {
+        buf.putInt(at + 1, buf.position() - at - 5);
+    }
+
+    private void putStr(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        ensure(2 + b.length);
+        buf.putShort((short) b.length);
+        buf.put(b);
+    }
+
+    private void ensure(int more) {
+        if (buf.remaining() >= more) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + more));
+        buf.flip();
+        bigger.put(buf);
+        buf = bigger;
+    }
+
+    private void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+}
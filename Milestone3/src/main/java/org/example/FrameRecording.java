@@ -0,0 +1,288 @@
+// ===================== FrameRecording.java =====================
+package org.example;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.List;
+
+// Reader for FrameRecorder files: sequential frames plus seek by sim time via the key-frame index.
+// A file without footer (recorder did not close) is scanned once on open to rebuild the index.
+public final class FrameRecording implements Closeable {
+
+    // one decoded FRAME record
+    public static final class Frame {
+        final VehicleFrame vehicles;
+        // the MetricRow values as recorded (visible counts used the filter of the recording run)
+        final StepFrame metrics;
+        // state of every TLS after this frame (tlsIds order, null = never seen)
+        final String[] tlsStates;
+        final boolean keyFrame;
+
+        Frame(VehicleFrame vehicles, StepFrame metrics, String[] tlsStates, boolean keyFrame) {
+            this.vehicles = vehicles;
+            this.metrics = metrics;
+            this.tlsStates = tlsStates;
+            this.keyFrame = keyFrame;
+        }
+    }
+
+    private final File file;
+    private final FileChannel ch;
+    private final String scenario;
+    private final List<String> tlsIds;
+    private final long dataStart;
+    // end of the record area (trailer offset, or the file size when scanned)
+    private long dataEnd;
+
+    private final List<String> ids = new ArrayList<>();
+    private double[] keyTimes = new double[64];
+    private long[] keyOffsets = new long[64];
+    private int keyCount = 0;
+    private long frames = 0;
+    private double firstTime = Double.NaN;
+    private double lastTime = Double.NaN;
+
+    // ===================== Cursor =====================
+    private long pos;
+    private final String[] tlsState;
+    private Frame peeked = null;
+    private final ByteBuffer head = ByteBuffer.allocate(5);
+    private ByteBuffer body = ByteBuffer.allocate(1 << 16);
+
+    private FrameRecording(File file) throws IOException {
+        this.file = file;
+        this.ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer h = read(0, Math.min(ch.size(), 1 << 20));
+            byte[] magic = new byte[FrameRecorder.MAGIC.length];
+            h.get(magic);
+            if (!Arrays.equals(magic, FrameRecorder.MAGIC)) throw new IOException("not a frame recording: " + file);
+            int version = h.get() & 0xFF;
+            if (version != FrameRecorder.VERSION) throw new IOException("unsupported recording version " + version + ": " + file);
+            scenario = getStr(h);
+            int tlsCount = h.getShort() & 0xFFFF;
+            List<String> t = new ArrayList<>(tlsCount);
+            for (int i = 0; i < tlsCount; i++) t.add(getStr(h));
+            tlsIds = Collections.unmodifiableList(t);
+            dataStart = h.position();
+            tlsState = new String[tlsCount];
+
+            if (!readTrailer()) scan();
+            pos = dataStart;
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            if (ex instanceof IOException) throw (IOException) ex;
+            throw new IOException("corrupt recording: " + file, ex);
+        }
+    }
+
+    public static FrameRecording open(File file) throws IOException {
+        FrameRecording r = new FrameRecording(file);
+        Logging.LOG.info(String.format(Locale.US, "Recording opened: %s (%d frames, t=%.1f..%.1f s, %d key frames)",
+                file.getName(), r.frames, r.firstTime, r.lastTime, r.keyCount));
+        return r;
+    }
+
+    public String scenario() { return scenario; }
+    public List<String> tlsIds() { return tlsIds; }
+    public long frameCount() { return frames; }
+    public double startTime() { return firstTime; }
+    public double endTime() { return lastTime; }
+
+    // ===================== Index =====================
+    private boolean readTrailer() throws IOException {
+        long size = ch.size();
+        if (size - dataStart < FrameRecorder.FOOTER_BYTES) return false;
+        ByteBuffer foot = read(size - FrameRecorder.FOOTER_BYTES, FrameRecorder.FOOTER_BYTES);
+        long trailerOffset = foot.getLong();
+        if (foot.getInt() != FrameRecorder.FOOTER_MAGIC) return false;
+        if (trailerOffset < dataStart || trailerOffset >= size) return false;
+
+        ByteBuffer t = read(trailerOffset, size - FrameRecorder.FOOTER_BYTES - trailerOffset);
+        if (t.get() != FrameRecorder.TAG_TRAILER) return false;
+        t.getInt();
+        frames = t.getLong();
+        firstTime = t.getDouble();
+        lastTime = t.getDouble();
+        int idCount = t.getInt();
+        for (int i = 0; i < idCount; i++) ids.add(getStr(t));
+        int keys = t.getInt();
+        for (int i = 0; i < keys; i++) addKey(t.getDouble(), t.getLong());
+        dataEnd = trailerOffset;
+        return true;
+    }
+
+    // unfinished file: walk the record headers, stop at the first incomplete record
+    private void scan() throws IOException {
+        long size = ch.size();
+        long p = dataStart;
+        ByteBuffer frameHead = ByteBuffer.allocate(9);
+        while (p + 5 <= size) {
+            head.clear();
+            readFully(head, p);
+            head.flip();
+            byte tag = head.get();
+            int len = head.getInt();
+            if (len < 0 || p + 5 + len > size) break;
+
+            if (tag == FrameRecorder.TAG_IDS) {
+                defineIds(read(p + 5, len));
+            } else if (tag == FrameRecorder.TAG_FRAME) {
+                frameHead.clear();
+                readFully(frameHead, p + 5);
+                frameHead.flip();
+                int flags = frameHead.get();
+                double t = frameHead.getDouble();
+                if ((flags & FrameRecorder.FLAG_KEY) != 0) addKey(t, p);
+                if (frames == 0) firstTime = t;
+                lastTime = t;
+                frames++;
+            } else if (tag == FrameRecorder.TAG_TRAILER) {
+                break;
+            }
+            p += 5 + len;
+        }
+        dataEnd = p;
+        Logging.LOG.warning("Recording " + file.getName() + " was not closed cleanly; index rebuilt by scanning");
+    }
+
+    private void addKey(double t, long offset) {
+        if (keyCount == keyTimes.length) {
+            keyTimes = Arrays.copyOf(keyTimes, keyCount * 2);
+            keyOffsets = Arrays.copyOf(keyOffsets, keyCount * 2);
+        }
+        keyTimes[keyCount] = t;
+        keyOffsets[keyCount] = offset;
+        keyCount++;
+    }
+
+    private void defineIds(ByteBuffer b) {
+        int first = b.getInt();
+        int count = b.getInt();
+        for (int i = 0; i < count; i++) {
+            String id = getStr(b);
+            if (first + i == ids.size()) ids.add(id);
+        }
+    }
+
+    // ===================== Read / seek =====================
+    // Next frame in file order, null at the end.
+    public Frame next() throws IOException {
+        if (peeked != null) {
+            Frame f = peeked;
+            peeked = null;
+            return f;
+        }
+        while (pos + 5 <= dataEnd) {
+            head.clear();
+            readFully(head, pos);
+            head.flip();
+            byte tag = head.get();
+            int len = head.getInt();
+            long payload = pos + 5;
+            pos = payload + len;
+            if (tag == FrameRecorder.TAG_FRAME) return decodeFrame(payload, len);
+            if (tag == FrameRecorder.TAG_IDS) defineIds(read(payload, len));
+        }
+        return null;
+    }
+
+    // Position the cursor so next() returns the first frame at or after simTime.
+    public void seek(double simTime) throws IOException {
+        int k = Arrays.binarySearch(keyTimes, 0, keyCount, simTime);
+        if (k < 0) k = -k - 2;
+        pos = k >= 0 ? keyOffsets[k] : dataStart;
+        peeked = null;
+        Arrays.fill(tlsState, null);
+
+        Frame f;
+        while ((f = next()) != null) {
+            if (f.vehicles.simTime >= simTime) {
+                peeked = f;
+                return;
+            }
+        }
+    }
+
+    private Frame decodeFrame(long payload, int len) throws IOException {
+        ByteBuffer b = read(payload, len);
+        int flags = b.get();
+        double simTime = b.getDouble();
+
+        StepFrame m = new StepFrame();
+        m.simTime = simTime;
+        m.active = b.getInt();
+        m.stopped = b.getInt();
+        m.congestion = b.getDouble();
+        m.meanSpeed = b.getDouble();
+        m.avgWaitSec = b.getDouble();
+        m.throughputVph = b.getDouble();
+        m.visible = b.getInt();
+        m.visCar = b.getInt();
+        m.visTruck = b.getInt();
+        m.visBus = b.getInt();
+        int speedFactorUi = b.getInt();
+
+        int n = b.getInt();
+        String[] vid = new String[n];
+        double[] x = new double[n], y = new double[n], speed = new double[n], waiting = new double[n];
+        byte[] types = new byte[n];
+        for (int i = 0; i < n; i++) {
+            int idx = b.getInt();
+            vid[i] = idx < ids.size() ? ids.get(idx) : ("#" + idx);
+            byte type = b.get();
+            types[i] = type >= 0 && type < VehicleRegistry.TYPE_NAMES.length ? type : VehicleRegistry.TYPE_CAR;
+            x[i] = b.getFloat();
+            y[i] = b.getFloat();
+            speed[i] = b.getFloat();
+            waiting[i] = b.getFloat();
+        }
+
+        int changed = b.getShort() & 0xFFFF;
+        for (int c = 0; c < changed; c++) {
+            int t = b.getShort() & 0xFFFF;
+            String s = getStr(b);
+            if (t < tlsState.length) tlsState[t] = s;
+        }
+
+        boolean ruleBased = (flags & FrameRecorder.FLAG_RULE_BASED) != 0;
+        VehicleFrame vf = new VehicleFrame(simTime, n, vid, x, y, speed, waiting, types, new double[0],
+                speedFactorUi, ruleBased, true, null, tlsState.clone());
+        return new Frame(vf, m, vf.tlsStates, (flags & FrameRecorder.FLAG_KEY) != 0);
+    }
+
+    @Override public void close() throws IOException { ch.close(); }
+
+    // ===================== Buffer helpers =====================
+    private ByteBuffer read(long at, long len) throws IOException {
+        if (len < 0 || len > Integer.MAX_VALUE) throw new IOException("bad record length " + len + " in " + file);
+        if (body.capacity() < len) body = ByteBuffer.allocate((int) Math.max(len, body.capacity() * 2L));
+        body.clear();
+        body.limit((int) len);
+        readFully(body, at);
+        body.flip();
+        return body;
+    }
+
+    private void readFully(ByteBuffer b, long at) throws IOException {
+        while (b.hasRemaining()) {
+            int r = ch.read(b, at);
+            if (r < 0) throw new EOFException("truncated recording: " + file);
+            at += r;
+        }
+    }
+
+    private static String getStr(ByteBuffer b) {
+        int len = b.getShort() & 0xFFFF;
+        byte[] s = new byte[len];
+        b.get(s);
+        return new String(s, StandardCharsets.UTF_8);
+    }
+}
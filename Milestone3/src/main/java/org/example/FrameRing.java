@@ -0,0 +1,86 @@
+// ===================== FrameRing.java =====================
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded single-producer / single-consumer ring. A full ring makes the producer wait, nothing is
+// ever dropped (metrics must not lose rows, and entries may hold pooled references).
+final class FrameRing<T> {
+
+    private final Object[] slots;
+    private final int mask;
+
+    // advanced by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // written by the producer only; the volatile write publishes the slot
+    private volatile long tail = 0;
+
+    private volatile Thread consumer;
+    private volatile boolean closed = false;
+
+    private final AtomicLong producerWaitNanos = new AtomicLong();
+
+    FrameRing(int capacity) {
+        int cap = 2;
+        while (cap < capacity) cap <<= 1;
+        this.slots = new Object[cap];
+        this.mask = cap - 1;
+    }
+
+    long producerWaitNanos() { return producerWaitNanos.get(); }
+    int size() { return (int) Math.max(0, tail - head.get()); }
+
+    // ===================== Producer =====================
+    // false when the ring is closed (item not taken, the caller still owns it)
+    boolean offer(T item) {
+        if (closed) return false;
+        long t = tail;
+        int cap = slots.length;
+
+        if (t - head.get() >= cap) {
+            long waitStart = System.nanoTime();
+            while (t - head.get() >= cap) {
+                if (closed) return false;
+                LockSupport.parkNanos(50_000L);
+            }
+            producerWaitNanos.addAndGet(System.nanoTime() - waitStart);
+        }
+
+        slots[(int) (t & mask)] = item;
+        tail = t + 1;
+
+        Thread c = consumer;
+        if (c != null) LockSupport.unpark(c);
+        return true;
+    }
+
+    // ===================== Consumer =====================
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long h = head.get();
+        if (h >= tail) return null;
+        int i = (int) (h & mask);
+        T item = (T) slots[i];
+        slots[i] = null;
+        head.set(h + 1);
+        return item;
+    }
+
+    // Waits for the next entry; null once the ring is closed and drained.
+    T take() {
+        consumer = Thread.currentThread();
+        while (true) {
+            T item = poll();
+            if (item != null) return item;
+            if (closed) return poll();
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    void close() {
+        closed = true;
+        Thread c = consumer;
+        if (c != null) LockSupport.unpark(c);
+    }
+}
@@ -0,0 +1,262 @@
+// ===================== FrameView.java =====================
+package org.example;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleConsumer;
+
+// Swing side of a frame: map, trend chart and metric labels. Fed by the live loop and by ReplayPlayer.
+// show() only swaps the newest frame into a slot (any thread, never blocks, never queues); a Swing
+// timer at a fixed rate applies whatever is newest, so EDT work is capped at `fps` frames per second
+// however fast the simulation runs. Labels are only touched when their text changes.
+// The slot holds a reference to the frame (VehicleFrame.retain by the caller); it is released once
+// applied or replaced.
+//
+//   -Dsumo.ui.fps=30
+final class FrameView {
+
+    static final String PROP_FPS = "sumo.ui.fps";
+    static final int DEFAULT_FPS = 30;
+
+    final MapVisualisation.MapPanel mapPanel;
+    final MapVisualisation.TrendChartPanel trendChart;
+    final GUI.VehicleFilter filter;
+
+    private final JLabel activeVehiclesLabel;
+    private final JLabel visibleVehiclesLabel;
+    private final JLabel byTypeLabel;
+
+    private final JLabel avgWaitLabel;
+    private final JLabel congestionLabel;
+    private final JLabel throughputLabel;
+    private final JLabel meanSpeedLabel;
+
+    private final JLabel tlStateLabel;
+    private final JLabel rtfLabel;
+    private final JLabel hottestEdgeLabel;
+    private final JLabel topEdgesLabel;
+    private final JLabel quantilesLabel;
+
+    // ===================== Latest-frame handoff =====================
+    private static final class Pending {
+        final VehicleFrame vf;
+        final double throughputVph;
+        final String tlsStatus;
+        final String rtfText;
+        final long postedNanos;
+
+        Pending(VehicleFrame vf, double throughputVph, String tlsStatus, String rtfText) {
+            this.vf = vf;
+            this.throughputVph = throughputVph;
+            this.tlsStatus = tlsStatus;
+            this.rtfText = rtfText;
+            this.postedNanos = System.nanoTime();
+        }
+    }
+
+    private final AtomicReference<Pending> latest = new AtomicReference<>();
+    // sliding-window summary for the metric label tooltips, newest wins
+    private final AtomicReference<String> windowsTooltip = new AtomicReference<>();
+    // p50/p90/p99 text and its per window / per type tooltip, newest wins
+    private final AtomicReference<String[]> quantiles = new AtomicReference<>();
+    // EdgeMetricsStore.status(), newest wins
+    private final AtomicReference<String> edgeStatus = new AtomicReference<>();
+    private final AtomicReference<String[]> edgeTop = new AtomicReference<>();
+    // EDT only
+    private String[] lastEdgeTop;
+    private EdgeMetricsStore.Ranking edgeRanking = EdgeMetricsStore.Ranking.VEHICLES;
+    // frames replaced before a tick picked them up
+    private final AtomicLong skipped = new AtomicLong();
+    private final Timer timer;
+
+    // live loop only: frame age at pickup and EDT time per tick
+    private volatile StepProfiler profiler = null;
+    // EDT, sim time of each applied frame (replay position)
+    private volatile DoubleConsumer onShown = null;
+    // EDT only, reused per tick
+    private final StepFrame frame = new StepFrame();
+
+    FrameView(MapVisualisation.MapPanel mapPanel,
+              MapVisualisation.TrendChartPanel trendChart,
+              GUI.VehicleFilter filter,
+              JLabel activeVehiclesLabel,
+              JLabel visibleVehiclesLabel,
+              JLabel byTypeLabel,
+              JLabel avgWaitLabel,
+              JLabel congestionLabel,
+              JLabel throughputLabel,
+              JLabel meanSpeedLabel,
+              JLabel tlStateLabel,
+              JLabel rtfLabel,
+              JLabel hottestEdgeLabel,
+              JLabel topEdgesLabel,
+              JLabel quantilesLabel) {
+        this.mapPanel = mapPanel;
+        this.trendChart = trendChart;
+        this.filter = filter;
+        this.activeVehiclesLabel = activeVehiclesLabel;
+        this.visibleVehiclesLabel = visibleVehiclesLabel;
+        this.byTypeLabel = byTypeLabel;
+        this.avgWaitLabel = avgWaitLabel;
+        this.congestionLabel = congestionLabel;
+        this.throughputLabel = throughputLabel;
+        this.meanSpeedLabel = meanSpeedLabel;
+        this.tlStateLabel = tlStateLabel;
+        this.rtfLabel = rtfLabel;
+        this.hottestEdgeLabel = hottestEdgeLabel;
+        this.topEdgesLabel = topEdgesLabel;
+        this.quantilesLabel = quantilesLabel;
+
+        int fps = Integer.getInteger(PROP_FPS, DEFAULT_FPS);
+        if (fps < 1 || fps > 240) {
+            Logging.LOG.warning("Ignoring -D" + PROP_FPS + "=" + fps + " (want 1..240), using " + DEFAULT_FPS);
+            fps = DEFAULT_FPS;
+        }
+        timer = new Timer(1000 / fps, e -> tick());
+        timer.setCoalesce(true);
+        Logging.LOG.info("UI refresh: " + fps + " fps");
+    }
+
+    void start() { timer.start(); }
+
+    void stop() {
+        timer.stop();
+        Pending p = latest.getAndSet(null);
+        if (p != null) p.vf.release();
+        Logging.LOG.info("UI frames skipped (newer frame arrived before the tick): " + skipped.get());
+    }
+
+    void setProfiler(StepProfiler profiler) { this.profiler = profiler; }
+
+    void setOnShown(DoubleConsumer onShown) { this.onShown = onShown; }
+
+    // ===================== Trend =====================
+    void addTrendSample(StepFrame f) {
+        trendChart.addSample(
+                f.avgWaitSec < 0 ? 0.0 : f.avgWaitSec,
+                f.throughputVph,
+                f.congestion
+        );
+    }
+
+    void clearTrend() { trendChart.clear(); }
+
+    // ===================== Window summary (any thread) =====================
+    // MetricsCollector.windowLines(), shown as tooltip of throughput / speed / wait
+    void showWindows(List<String> lines) {
+        windowsTooltip.set("<html>" + String.join("<br>", lines) + "</html>");
+    }
+
+    // MetricsCollector.quantileSummary() as label, quantileLines() as its tooltip
+    void showQuantiles(List<String> summary, List<String> lines) {
+        quantiles.set(new String[]{
+                "<html>" + String.join("<br>", summary) + "</html>",
+                "<html>" + String.join("<br>", lines) + "</html>"
+        });
+    }
+
+    // ===================== Edge status (any thread) =====================
+    // topByRanking: EdgeMetricsStore.topHtml(), indexed by Ranking ordinal
+    void showEdges(String status, String[] topByRanking) {
+        edgeStatus.set(status);
+        edgeTop.set(topByRanking);
+    }
+
+    // EDT: ranking shown in the top edges list
+    void setEdgeRanking(EdgeMetricsStore.Ranking r) {
+        edgeRanking = r;
+        if (lastEdgeTop != null) setText(topEdgesLabel, lastEdgeTop[r.ordinal()]);
+    }
+
+    // ===================== Handoff (any thread) =====================
+    // Takes over one reference to vf. tlsStatus / rtfText == null leave those labels unchanged.
+    void show(VehicleFrame vf, double throughputVph, String tlsStatus, String rtfText) {
+        Pending old = latest.getAndSet(new Pending(vf, throughputVph, tlsStatus, rtfText));
+        if (old != null) {
+            skipped.incrementAndGet();
+            old.vf.release();
+        }
+    }
+
+    // ===================== Timer tick (EDT) =====================
+    private void tick() {
+        String tip = windowsTooltip.getAndSet(null);
+        if (tip != null) {
+            throughputLabel.setToolTipText(tip);
+            meanSpeedLabel.setToolTipText(tip);
+            avgWaitLabel.setToolTipText(tip);
+        }
+        String[] q = quantiles.getAndSet(null);
+        if (q != null) {
+            setText(quantilesLabel, q[0]);
+            quantilesLabel.setToolTipText(q[1]);
+        }
+        String edges = edgeStatus.getAndSet(null);
+        if (edges != null) setText(hottestEdgeLabel, edges);
+        String[] top = edgeTop.getAndSet(null);
+        if (top != null) {
+            lastEdgeTop = top;
+            setText(topEdgesLabel, top[edgeRanking.ordinal()]);
+        }
+
+        Pending p = latest.getAndSet(null);
+        if (p == null) return;
+
+        long t0 = System.nanoTime();
+        StepProfiler prof = profiler;
+        if (prof != null) prof.record(StepProfiler.Phase.FRAME_AGE, t0 - p.postedNanos);
+
+        // read before release: the pooled frame may be refilled by the sim thread right after
+        double simTime = p.vf.simTime;
+        try {
+            apply(p);
+        } finally {
+            p.vf.release();
+        }
+
+        DoubleConsumer shown = onShown;
+        if (shown != null) shown.accept(simTime);
+        if (prof != null) prof.lap(StepProfiler.Phase.UI_TICK, t0);
+    }
+
+    private void apply(Pending p) {
+        VehicleFrame vf = p.vf;
+
+        // labels are computed from the same frame as the map so they always agree
+        frame.sweep(vf, filter);
+        mapPanel.updateVehicles(vf);
+
+        setText(activeVehiclesLabel, "Active Vehicles (all): " + frame.active);
+        setText(visibleVehiclesLabel, "Visible Vehicles (filtered): " + frame.visible);
+        setText(byTypeLabel, "By Type: car=" + frame.visCar + " truck=" + frame.visTruck + " bus=" + frame.visBus);
+
+        if (frame.avgWaitSec >= 0) {
+            setText(avgWaitLabel, String.format(Locale.US,
+                    "Avg Wait Time: %.1f s (%.2f min)", frame.avgWaitSec, frame.avgWaitSec/60.0));
+        } else {
+            double ratio = frame.active > 0 ? (frame.stopped / (double) frame.active) : 0.0;
+            setText(avgWaitLabel, String.format(Locale.US,
+                    "Avg Wait Time: N/A (API) | stopped ratio=%.2f", ratio));
+        }
+
+        setText(congestionLabel, String.format(Locale.US,
+                "Congestion Index: %.2f (stopped=%d)", frame.congestion, frame.stopped));
+
+        setText(throughputLabel, String.format(Locale.US,
+                "Throughput: %.1f v/h (last %.0f s)", p.throughputVph, Main.THROUGHPUT_WINDOW_SEC));
+
+        setText(meanSpeedLabel, String.format(Locale.US,
+                "Mean Speed: %.2f m/s", frame.meanSpeed));
+
+        if (p.tlsStatus != null) setText(tlStateLabel, p.tlsStatus);
+        if (p.rtfText != null) setText(rtfLabel, p.rtfText);
+    }
+
+    // setText revalidates and repaints even for the same text
+    private static void setText(JLabel label, String text) {
+        if (!text.equals(label.getText())) label.setText(text);
+    }
+}
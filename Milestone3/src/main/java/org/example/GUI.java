@@ -5,8 +5,10 @@ import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.util.Hashtable;
 import java.util.Locale;
+import java.util.Map;
 
 public final class GUI {
 
@@ -54,12 +56,36 @@ public final class GUI {
     private static final JLabel meanSpeedLabel = new JLabel("Mean Speed: 0.0 m/s");
 
     private static final JLabel tlStateLabel = new JLabel("TL State: -");
+    private static final JLabel rtfLabel = new JLabel("RTF: -");
+    private static final JLabel hottestEdgeLabel = new JLabel("Hottest Edge: -");
+    private static final JLabel topEdgesLabel = new JLabel("<html>-</html>");
+    private static final JLabel quantilesLabel = new JLabel("<html>wait p50/p90/p99: N/A</html>");
+
+    // slider step -> target real-time factor (1x on the slider ~ the old 100 ms sleep per 1 s step)
+    static final double RTF_PER_SPEED_STEP = 10.0;
+
+    // replay seek slider resolution
+    private static final int SEEK_STEPS = 1000;
+
+    // recordTo != null: every frame of the run is also written to that file (--record)
+    // warm: --load-state / --save-state of this launch
+    // startup: background parses + timing of this launch (see Startup)
+    public static void launch(Startup startup, File recordTo, WarmStart.Plan warm) {
+        launch(startup, recordTo, warm, null);
+    }
+
+    // --replay: same window, fed from a recording instead of SUMO
+    public static void launchReplay(FrameRecording recording) {
+        launch(null, null, null, recording);
+    }
 
-    public static void launch() {
+    private static void launch(Startup startup, File recordTo, WarmStart.Plan warm, FrameRecording replay) {
+        VehicleInjection injection = startup == null ? null : startup.injection();
         try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); }
         catch (Exception e) { Logging.LOG.log(java.util.logging.Level.WARNING, "LookAndFeel set failed", e); }
 
-        JFrame frame = new JFrame("Traffic Grid Simulation");
+        JFrame frame = new JFrame(replay == null ? "Traffic Grid Simulation"
+                : "Traffic Grid Simulation - Replay: " + new File(replay.scenario()).getName());
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(1220, 680);
         frame.setLayout(new BorderLayout());
@@ -97,8 +123,31 @@ public final class GUI {
         simSpeedSlider.setAlignmentX(Component.LEFT_ALIGNMENT);
         simSpeedSlider.setMaximumSize(new Dimension(320, 44));
 
+        JCheckBox maxSpeedCb = styleCheckBox(new JCheckBox("Max speed (no pacing)", false));
+
+        JLabel stepsPerSampleLabel = new JLabel("Steps per sample");
+        JComboBox<Integer> stepsPerSampleCombo = new JComboBox<>(new Integer[]{1, 5, 10, 30, 60});
+        stepsPerSampleCombo.setMaximumSize(new Dimension(90, 26));
+        JPanel stepsPerSamplePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        stepsPerSamplePanel.setBackground(BG_PANEL);
+        stepsPerSamplePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        stepsPerSampleLabel.setForeground(new Color(220,220,220));
+        stepsPerSamplePanel.add(stepsPerSampleLabel);
+        stepsPerSamplePanel.add(stepsPerSampleCombo);
+        rtfLabel.setForeground(new Color(220,220,220));
+        rtfLabel.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        rtfLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        // replay only
+        JLabel seekLabel = new JLabel("Position");
+        JSlider seekSlider = new JSlider(0, SEEK_STEPS, 0);
+        seekSlider.setBackground(BG_PANEL);
+        seekSlider.setAlignmentX(Component.LEFT_ALIGNMENT);
+        seekSlider.setMaximumSize(new Dimension(320, 30));
+
         JButton exportBtn = new JButton("Export CSV");
         JButton exportPdfBtn = new JButton("Export PDF");
+        JButton diagnosticsBtn = new JButton("Diagnostics");
 
         JLabel routeLabel = new JLabel("Select scenario (same destination, 4 long variants)");
         JComboBox<VehicleInjection.RouteDef> routeCombo = new JComboBox<>();
@@ -166,6 +215,7 @@ public final class GUI {
 
         // style
         styleSectionLabel(speedLabel, titleFont);
+        styleSectionLabel(seekLabel, titleFont);
         styleSectionLabel(routeLabel, new Font("SansSerif", Font.BOLD, 12));
         styleSectionLabel(numVehiclesLabel, titleFont);
         styleSectionLabel(vehicleTypeLabel, titleFont);
@@ -177,6 +227,7 @@ public final class GUI {
         stylePrimaryButton(stopBtn, ACCENT_RED);
         stylePrimaryButton(exportBtn, ACCENT_BLUE);
         stylePrimaryButton(exportPdfBtn, ACCENT_BLUE);
+        stylePrimaryButton(diagnosticsBtn, ACCENT_BLUE);
 
         stylePrimaryButton(carBtn, ACCENT_BLUE);
         stylePrimaryButton(truckBtn, ACCENT_BLUE);
@@ -191,11 +242,23 @@ public final class GUI {
         controls.add(rowPanel(startBtn, stopBtn));
         controls.add(Box.createVerticalStrut(6));
         controls.add(rowPanel(exportBtn, exportPdfBtn));
+        controls.add(Box.createVerticalStrut(6));
+        controls.add(rowPanel(diagnosticsBtn, Box.createHorizontalGlue()));
 
         controls.add(Box.createVerticalStrut(10));
         controls.add(speedLabel);
         controls.add(Box.createVerticalStrut(4));
         controls.add(simSpeedSlider);
+        controls.add(rtfLabel);
+        controls.add(maxSpeedCb);
+        controls.add(stepsPerSamplePanel);
+
+        if (replay != null) {
+            controls.add(Box.createVerticalStrut(10));
+            controls.add(seekLabel);
+            controls.add(Box.createVerticalStrut(4));
+            controls.add(seekSlider);
+        }
 
         controls.add(Box.createVerticalStrut(10));
         controls.add(routeLabel);
@@ -257,7 +320,7 @@ public final class GUI {
         for (JLabel l : new JLabel[]{
                 activeVehiclesLabel, visibleVehiclesLabel, byTypeLabel,
                 avgWaitLabel, congestionLabel, throughputLabel, meanSpeedLabel,
-                tlStateLabel
+                hottestEdgeLabel, tlStateLabel
         }) {
             l.setForeground(Color.WHITE); l.setFont(metricsFont);
         }
@@ -283,6 +346,23 @@ public final class GUI {
         metrics.add(throughputLabel);
         metrics.add(Box.createVerticalStrut(4));
         metrics.add(meanSpeedLabel);
+        metrics.add(Box.createVerticalStrut(4));
+        quantilesLabel.setForeground(new Color(220,220,220));
+        quantilesLabel.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        quantilesLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        metrics.add(quantilesLabel);
+        metrics.add(Box.createVerticalStrut(4));
+        metrics.add(hottestEdgeLabel);
+        metrics.add(Box.createVerticalStrut(4));
+        JComboBox<EdgeMetricsStore.Ranking> topEdgesCombo = new JComboBox<>(EdgeMetricsStore.Ranking.values());
+        topEdgesCombo.setMaximumSize(new Dimension(200, 26));
+        topEdgesCombo.setAlignmentX(Component.LEFT_ALIGNMENT);
+        metrics.add(topEdgesCombo);
+        metrics.add(Box.createVerticalStrut(4));
+        topEdgesLabel.setForeground(new Color(220,220,220));
+        topEdgesLabel.setFont(new Font("SansSerif", Font.PLAIN, 11));
+        topEdgesLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        metrics.add(topEdgesLabel);
 
         metrics.add(Box.createVerticalStrut(10));
         metrics.add(tlStateLabel);
@@ -292,17 +372,13 @@ public final class GUI {
 
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+        if (startup != null) {
+            startup.mark("window", startup.started());
+            // roads appear as the net is read
+            startup.setOnMapProgress(mapPanel::repaint);
+        }
 
-        Runnable onStopped = () -> {
-            frame.dispose();
-            System.exit(0);
-        };
-
-        // traffic control + live connection
-        TrafficControl trafficControl = new TrafficControl(tlCombo, tlStateLabel);
-
-        LiveConnectionSumo live = new LiveConnectionSumo(
-                frame,
+        FrameView view = new FrameView(
                 mapPanel,
                 trendChart,
                 FILTER,
@@ -314,21 +390,85 @@ public final class GUI {
                 throughputLabel,
                 meanSpeedLabel,
                 tlStateLabel,
+                rtfLabel,
+                hottestEdgeLabel,
+                topEdgesLabel,
+                quantilesLabel
+        );
+        view.start();
+        topEdgesCombo.addActionListener(e ->
+                view.setEdgeRanking((EdgeMetricsStore.Ranking) topEdgesCombo.getSelectedItem()));
+
+        Runnable onStopped = () -> {
+            view.stop();
+            frame.dispose();
+            System.exit(0);
+        };
+
+        // Filters (live and replay)
+        showCars.addActionListener(e -> FILTER.showCars = showCars.isSelected());
+        showTrucks.addActionListener(e -> FILTER.showTrucks = showTrucks.isSelected());
+        showBuses.addActionListener(e -> FILTER.showBuses = showBuses.isSelected());
+
+        minSpeedSlider.addChangeListener(e -> {
+            int v = minSpeedSlider.getValue();
+            FILTER.minSpeedMps = v;
+            double kmh = v * 3.6;
+            minSpeedValue.setText(String.format(Locale.US, ">= %.1f m/s (%.0f km/h)", (double)v, kmh));
+        });
+
+        if (replay != null) {
+            // nothing here can change a recorded run
+            for (JComponent c : new JComponent[]{
+                    exportBtn, exportPdfBtn, diagnosticsBtn, stepsPerSampleCombo, routeCombo, numVehiclesField,
+                    carBtn, truckBtn, busBtn, tlRedBtn, tlGreenBtn, tlResetBtn, ruleBasedTlsCb
+            }) {
+                c.setEnabled(false);
+            }
+            wireReplay(replay, view, startBtn, stopBtn, simSpeedSlider, maxSpeedCb, seekSlider, seekLabel, tlCombo, onStopped);
+            Logging.LOG.info("UI ready (replay).");
+            return;
+        }
+
+        // traffic control + live connection
+        TrafficControl trafficControl = new TrafficControl(tlCombo, tlStateLabel);
+
+        LiveConnectionSumo live = new LiveConnectionSumo(
+                frame,
+                view,
                 routeCombo,
                 tlCombo,
                 trafficControl,
+                injection,
+                startup,
+                recordTo,
+                warm,
                 onStopped
         );
 
         // ===== UI actions =====
         startBtn.addActionListener(e -> { live.startSimulation(); startBtn.setEnabled(false); });
         stopBtn.addActionListener(e -> live.stopSimulation());
+        diagnosticsBtn.addActionListener(e -> DiagnosticsPanel.showDialog(frame, live.profiler()));
 
         simSpeedSlider.addChangeListener(e -> {
             int factor = simSpeedSlider.getValue();
-            int delayMs = 110 - 10 * factor;
-            live.setSpeedDelay(delayMs, factor);
-            Logging.LOG.info("Sim speed set: " + factor + "x (delay=" + delayMs + "ms)");
+            double rtf = RTF_PER_SPEED_STEP * factor;
+            live.setTargetRtf(rtf, factor);
+            Logging.LOG.info("Sim speed set: " + factor + "x (target RTF=" + rtf + ")");
+        });
+
+        stepsPerSampleCombo.addActionListener(e -> {
+            Integer k = (Integer) stepsPerSampleCombo.getSelectedItem();
+            live.setStepsPerSample(k == null ? 1 : k);
+            Logging.LOG.info("Steps per sample: " + k);
+        });
+
+        maxSpeedCb.addActionListener(e -> {
+            boolean on = maxSpeedCb.isSelected();
+            live.setMaxSpeed(on);
+            simSpeedSlider.setEnabled(!on);
+            Logging.LOG.info("Max speed mode: " + (on ? "ON" : "OFF"));
         });
 
         exportBtn.addActionListener(e -> {
@@ -349,12 +489,36 @@ public final class GUI {
             catch (Exception ex) { return 1; }
         };
 
-        carBtn.addActionListener(e -> VehicleInjection.injectVehicles(frame, Main.TYPE_CAR,
-                (VehicleInjection.RouteDef) routeCombo.getSelectedItem(), numVehiclesSupplier.get()));
-        truckBtn.addActionListener(e -> VehicleInjection.injectVehicles(frame, Main.TYPE_TRUCK,
-                (VehicleInjection.RouteDef) routeCombo.getSelectedItem(), numVehiclesSupplier.get()));
-        busBtn.addActionListener(e -> VehicleInjection.injectVehicles(frame, Main.TYPE_BUS,
-                (VehicleInjection.RouteDef) routeCombo.getSelectedItem(), numVehiclesSupplier.get()));
+        // TraCI work is queued for the simulation thread, results come back on the EDT
+        TraciCommandQueue commands = live.commands();
+
+        java.util.function.Consumer<String> injectAction = typeId -> {
+            if (!injection.isReady()) {
+                JOptionPane.showMessageDialog(frame, "Not ready yet. Press Start Simulation first.",
+                        "Not Ready", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            VehicleInjection.RouteDef rd = (VehicleInjection.RouteDef) routeCombo.getSelectedItem();
+            if (rd == null) return;
+
+            int n = numVehiclesSupplier.get();
+            commands.submit(new TraciCommandQueue.InjectVehicles(typeId, rd, n)).whenComplete((added, err) ->
+                    SwingUtilities.invokeLater(() -> {
+                        if (err != null) {
+                            Logging.LOG.warning("Injection not applied: " + err.getMessage());
+                        } else if (added < 0) {
+                            JOptionPane.showMessageDialog(frame,
+                                    "Could not build long routes for this scenario/type.\nTry another scenario.",
+                                    "No Long Routes", JOptionPane.ERROR_MESSAGE);
+                        } else {
+                            Logging.LOG.info("Injected " + added + "/" + n + " " + typeId + " on " + rd.name);
+                        }
+                    }));
+        };
+
+        carBtn.addActionListener(e -> injectAction.accept(Main.TYPE_CAR));
+        truckBtn.addActionListener(e -> injectAction.accept(Main.TYPE_TRUCK));
+        busBtn.addActionListener(e -> injectAction.accept(Main.TYPE_BUS));
 
         tlCombo.addActionListener(e -> {
             TrafficControl.TlsItem item = (TrafficControl.TlsItem) tlCombo.getSelectedItem();
@@ -364,30 +528,79 @@ public final class GUI {
         tlRedBtn.addActionListener(e -> {
             TrafficControl.TlsItem item = (TrafficControl.TlsItem) tlCombo.getSelectedItem();
             String tlsId = (item == null) ? null : item.id;
-            if (tlsId != null) trafficControl.forceTrafficLightRed(tlsId);
+            if (tlsId != null) commands.submit(new TraciCommandQueue.ForceTls(tlsId, true));
         });
         tlGreenBtn.addActionListener(e -> {
             TrafficControl.TlsItem item = (TrafficControl.TlsItem) tlCombo.getSelectedItem();
             String tlsId = (item == null) ? null : item.id;
-            if (tlsId != null) trafficControl.forceTrafficLightGreen(tlsId);
+            if (tlsId != null) commands.submit(new TraciCommandQueue.ForceTls(tlsId, false));
         });
-        tlResetBtn.addActionListener(e -> trafficControl.resetAllForcedTrafficLights());
+        tlResetBtn.addActionListener(e -> commands.submit(new TraciCommandQueue.ResetTls()));
 
-        ruleBasedTlsCb.addActionListener(e -> trafficControl.setRuleBasedTlsEnabled(ruleBasedTlsCb.isSelected()));
+        ruleBasedTlsCb.addActionListener(e -> commands.submit(new TraciCommandQueue.SetRuleBased(ruleBasedTlsCb.isSelected())));
 
-        // Filters
-        showCars.addActionListener(e -> FILTER.showCars = showCars.isSelected());
-        showTrucks.addActionListener(e -> FILTER.showTrucks = showTrucks.isSelected());
-        showBuses.addActionListener(e -> FILTER.showBuses = showBuses.isSelected());
+        Logging.LOG.info("UI ready. Scenarios + long variants will populate after SUMO starts.");
+    }
 
-        minSpeedSlider.addChangeListener(e -> {
-            int v = minSpeedSlider.getValue();
-            FILTER.minSpeedMps = v;
-            double kmh = v * 3.6;
-            minSpeedValue.setText(String.format(Locale.US, ">= %.1f m/s (%.0f km/h)", (double)v, kmh));
+    // ===================== Replay controls =====================
+    // Start = play/pause, Stop = quit, speed / max speed as live, seek slider over the recording.
+    private static void wireReplay(FrameRecording rec, FrameView view, JButton playBtn, JButton stopBtn,
+                                   JSlider simSpeedSlider, JCheckBox maxSpeedCb, JSlider seekSlider, JLabel seekLabel,
+                                   JComboBox<TrafficControl.TlsItem> tlCombo, Runnable onStopped) {
+        final double t0 = rec.startTime();
+        final double span = Math.max(1e-9, rec.endTime() - t0);
+        // set while the player moves the slider, so that is not taken as a seek
+        final boolean[] fromPlayer = {false};
+
+        ReplayPlayer.Listener listener = new ReplayPlayer.Listener() {
+            @Override public void position(double simTime) {
+                if (seekSlider.getValueIsAdjusting()) return;
+                fromPlayer[0] = true;
+                seekSlider.setValue((int) Math.round((simTime - t0) / span * SEEK_STEPS));
+                fromPlayer[0] = false;
+                seekLabel.setText(String.format(Locale.US, "Position: %.1f / %.1f s", simTime, rec.endTime()));
+            }
+
+            @Override public void playing(boolean on) { playBtn.setText(on ? "Pause" : "Play"); }
+        };
+        ReplayPlayer player = new ReplayPlayer(rec, view, listener, onStopped);
+
+        playBtn.setText("Play");
+        playBtn.addActionListener(e -> {
+            boolean on = !player.isPlaying();
+            player.setPlaying(on);
+            playBtn.setText(on ? "Pause" : "Play");
         });
+        stopBtn.addActionListener(e -> player.stop());
 
-        Logging.LOG.info("UI ready. Scenarios + long variants will populate after SUMO starts.");
+        simSpeedSlider.addChangeListener(e -> {
+            double rtf = RTF_PER_SPEED_STEP * simSpeedSlider.getValue();
+            player.setTargetRtf(rtf);
+            Logging.LOG.info("Replay speed set: target RTF=" + rtf);
+        });
+        maxSpeedCb.addActionListener(e -> {
+            boolean on = maxSpeedCb.isSelected();
+            player.setMaxSpeed(on);
+            simSpeedSlider.setEnabled(!on);
+        });
+
+        seekSlider.addChangeListener(e -> {
+            double t = t0 + span * seekSlider.getValue() / SEEK_STEPS;
+            seekLabel.setText(String.format(Locale.US, "Position: %.1f / %.1f s", t, rec.endTime()));
+            if (fromPlayer[0] || seekSlider.getValueIsAdjusting()) return;
+            player.seek(t);
+        });
+
+        // TLS list comes from the recording (the TL label shows the recorded state)
+        tlCombo.addActionListener(e -> {
+            TrafficControl.TlsItem item = (TrafficControl.TlsItem) tlCombo.getSelectedItem();
+            player.setSelectedTls(item == null ? null : item.id);
+        });
+        Map<String, String> labels = MapVisualisation.getTlsLabels();
+        for (String id : rec.tlsIds()) {
+            tlCombo.addItem(new TrafficControl.TlsItem(id, labels != null ? labels.getOrDefault(id, id) : id));
+        }
+        tlCombo.setEnabled(!rec.tlsIds().isEmpty());
     }
 
     // ===================== UI HELPERS =====================
@@ -439,4 +652,4 @@ public final class GUI {
         for (Component c : comps) p.add(c);
         return p;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
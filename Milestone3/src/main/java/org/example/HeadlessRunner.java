@@ -0,0 +1,405 @@
+// ===================== HeadlessRunner.java =====================
+package org.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.List;
+
+// Batch mode: same stepping / TLS rules / injection / MetricRow collection as the GUI loop,
+// but against the plain "sumo" binary with no Swing at all (no EDT, no labels, no invokeLater).
+//
+//   java -jar app.jar --headless [--scenario final.sumocfg] [--duration 3600] [--seed 42]
+//        [--inject 0:car:1:20,60:truck:2:5] [--rule-tls] [--sumo sumo] [--steps-per-sample 60]
+//        [--metrics-out metrics.csv] [--summary-out summary.txt] [--kpi-out run.properties]
+//        [--rule-stop 6] [--rule-go 12] [--branch-split 0.3/0.4/0.2/0.1] [--long-tries 800]
+//        [--backend libtraci|libsumo|fake] [--record run.rec]
+//        [--save-state warm.xml --save-at 3600] [--load-state warm.xml]
+//
+// --inject entries are  simTime:type:route:count  (route = 1-based index into the scenario list)
+public final class HeadlessRunner {
+
+    // ===================== Options =====================
+    static final class Options {
+        String scenario = Main.SUMOCFG_PATH;
+        double durationSec = 3600.0;
+        Long seed = null;
+        String sumoBinary = "sumo";
+        boolean ruleTls = false;
+        int stepsPerSample = 1;
+        String metricsOut = "headless_metrics.csv";
+        String summaryOut = "headless_summary.txt";
+        // machine-readable run KPIs (java.util.Properties), null = not written
+        String kpiOut = null;
+        // FrameRecorder file for --replay, null = not recorded
+        String recordOut = null;
+        // warm start (--load-state: --duration counts from the saved time)
+        final WarmStart.Plan warm = new WarmStart.Plan();
+        // libtraci connection label (distinct per run when several share a JVM)
+        String label = TraciSession.DEFAULT_LABEL;
+        // null = whatever the JVM selected (-Dsumo.backend, default libtraci)
+        Backends.Kind backend = null;
+        final List<Injection> plan = new ArrayList<>();
+
+        // tunables, null = built-in default
+        Double ruleStopSec = null;
+        Double ruleGoSec = null;
+        double[] branchSplit = null;
+        Integer longTries = null;
+    }
+
+    static final class Injection {
+        final double atSimTime;
+        final String type;
+        final int routeIndex; // 1-based
+        final int count;
+        Injection(double atSimTime, String type, int routeIndex, int count) {
+            this.atSimTime = atSimTime; this.type = type; this.routeIndex = routeIndex; this.count = count;
+        }
+        @Override public String toString() { return atSimTime + ":" + type + ":" + routeIndex + ":" + count; }
+    }
+
+    static Options parseArgs(String[] args) throws Main.Milestone3Exception {
+        Options o = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            switch (a) {
+                case "--headless": break;
+                case "--rule-tls": o.ruleTls = true; break;
+                case "--scenario": o.scenario = value(args, ++i, a); break;
+                case "--duration": o.durationSec = number(value(args, ++i, a), a); break;
+                case "--seed": o.seed = (long) number(value(args, ++i, a), a); break;
+                case "--sumo": o.sumoBinary = value(args, ++i, a); break;
+                case "--steps-per-sample": o.stepsPerSample = (int) number(value(args, ++i, a), a); break;
+                case "--metrics-out": o.metricsOut = value(args, ++i, a); break;
+                case "--summary-out": o.summaryOut = value(args, ++i, a); break;
+                case "--kpi-out": o.kpiOut = value(args, ++i, a); break;
+                case "--record": o.recordOut = value(args, ++i, a); break;
+                case "--label": o.label = value(args, ++i, a); break;
+                case "--backend": o.backend = Backends.parseKind(value(args, ++i, a)); break;
+                case "--load-state": o.warm.loadFrom = new File(value(args, ++i, a)); break;
+                case "--save-state": o.warm.saveTo = new File(value(args, ++i, a)); break;
+                case "--save-at": o.warm.saveAt = number(value(args, ++i, a), a); break;
+                case "--rule-stop": o.ruleStopSec = number(value(args, ++i, a), a); break;
+                case "--rule-go": o.ruleGoSec = number(value(args, ++i, a), a); break;
+                case "--long-tries": o.longTries = (int) number(value(args, ++i, a), a); break;
+                case "--branch-split": o.branchSplit = parseSplit(value(args, ++i, a)); break;
+                case "--inject":
+                    for (String item : value(args, ++i, a).split("[,;]")) {
+                        if (!item.isBlank()) o.plan.add(parseInjection(item.trim()));
+                    }
+                    break;
+                default:
+                    throw new Main.Milestone3Exception("Unknown option: " + a);
+            }
+        }
+        if (o.durationSec <= 0) throw new Main.Milestone3Exception("--duration must be > 0");
+        if (o.ruleStopSec != null && !(o.ruleStopSec > 0)) throw new Main.Milestone3Exception("--rule-stop must be > 0");
+        if (o.ruleGoSec != null && !(o.ruleGoSec > 0)) throw new Main.Milestone3Exception("--rule-go must be > 0");
+        if (o.longTries != null && o.longTries <= 0) throw new Main.Milestone3Exception("--long-tries must be > 0");
+        o.warm.validate();
+        o.plan.sort(Comparator.comparingDouble(p -> p.atSimTime));
+        return o;
+    }
+
+    private static String value(String[] args, int i, String opt) throws Main.Milestone3Exception {
+        if (i >= args.length) throw new Main.Milestone3Exception("Missing value for " + opt);
+        return args[i];
+    }
+
+    private static double number(String s, String opt) throws Main.Milestone3Exception {
+        try { return Double.parseDouble(s.trim()); }
+        catch (NumberFormatException ex) { throw new Main.Milestone3Exception("Not a number for " + opt + ": " + s); }
+    }
+
+    // A/B/C/D shares, e.g. 0.3/0.4/0.2/0.1 (normalized later)
+    static double[] parseSplit(String s) throws Main.Milestone3Exception {
+        String[] p = s.split("/");
+        if (p.length != VehicleInjection.DEFAULT_BRANCH_P.length) {
+            throw new Main.Milestone3Exception("--branch-split needs " + VehicleInjection.DEFAULT_BRANCH_P.length
+                    + " values separated by '/': " + s);
+        }
+        double[] out = new double[p.length];
+        double sum = 0.0;
+        for (int i = 0; i < p.length; i++) {
+            out[i] = number(p[i], "--branch-split");
+            if (out[i] < 0) throw new Main.Milestone3Exception("--branch-split values must be >= 0: " + s);
+            sum += out[i];
+        }
+        if (sum <= 0) throw new Main.Milestone3Exception("--branch-split must not be all zero: " + s);
+        return out;
+    }
+
+    private static Injection parseInjection(String item) throws Main.Milestone3Exception {
+        String[] p = item.split(":");
+        if (p.length != 4) throw new Main.Milestone3Exception("Bad --inject entry (want t:type:route:count): " + item);
+        String type = p[1].trim().toLowerCase(Locale.ROOT);
+        if (!type.equals(Main.TYPE_CAR) && !type.equals(Main.TYPE_TRUCK) && !type.equals(Main.TYPE_BUS)) {
+            throw new Main.Milestone3Exception("Unknown vehicle type in --inject: " + p[1]);
+        }
+        try {
+            return new Injection(Double.parseDouble(p[0].trim()), type,
+                    Integer.parseInt(p[2].trim()), Integer.parseInt(p[3].trim()));
+        } catch (NumberFormatException ex) {
+            throw new Main.Milestone3Exception("Bad --inject entry: " + item, ex);
+        }
+    }
+
+    // ===================== Run =====================
+    // Everything a run needs lives in this instance, so several runners can share a JVM.
+    private final Options opt;
+    private final SimulationBackend sumo;
+    private final TraciSession session;
+    private final VehicleInjection injection;
+
+    HeadlessRunner(Options opt) {
+        this.opt = opt;
+        this.sumo = Backends.get();
+        this.session = new TraciSession(opt.label);
+        this.injection = new VehicleInjection(opt.scenario, MapVisualisation.loadNetwork(opt.scenario));
+    }
+
+    void run() throws Exception {
+        if (opt.backend != null && opt.backend != sumo.kind()) {
+            throw new Main.Milestone3Exception("This JVM uses the " + sumo.kind() + " backend, run asked for " + opt.backend);
+        }
+        sumo.preloadLibraries();
+        injection.loadTripRoutesFromRou();
+
+        List<String> cmd = opt.seed != null
+                ? SumoLauncher.commandFor(opt.scenario, opt.sumoBinary, "--seed", String.valueOf(opt.seed), "--no-step-log", "true")
+                : SumoLauncher.commandFor(opt.scenario, opt.sumoBinary, "--no-step-log", "true");
+
+        Logging.LOG.info("[" + session.label + "] Starting SUMO (headless, " + sumo.kind() + "): " + cmd);
+        session.start(cmd);
+
+        MetricsCollector metrics = new MetricsCollector();
+        TrafficControl trafficControl = new TrafficControl(null, null);
+        int injected = 0;
+        long steps = 0;
+        long wallStart = System.nanoTime();
+        double simTime;
+        double endTime;
+        String stopReason = "end time reached";
+        FrameRecorder recorder = null;
+        EdgeMetricsStore edges;
+
+        try {
+            FrameCapture capture;
+            Deque<Injection> pending = new ArrayDeque<>(opt.plan);
+            SimAdvancer advancer = new SimAdvancer();
+            advancer.setStepsPerSample(opt.stepsPerSample);
+            double deltaT;
+
+            // every TraCI call of this run happens under the session lock with our label active
+            synchronized (TraciSession.LOCK) {
+                session.activate();
+                simTime = sumo.currentTime();
+                endTime = simTime + opt.durationSec;
+
+                TraciCapabilities.get();
+
+                trafficControl.rebuildTrafficLightDropdown();
+                trafficControl.setRuleTiming(
+                        opt.ruleStopSec != null ? opt.ruleStopSec : TrafficControl.DEFAULT_RULE_STOP_SEC,
+                        opt.ruleGoSec != null ? opt.ruleGoSec : TrafficControl.DEFAULT_RULE_GO_SEC);
+                if (opt.ruleTls) trafficControl.setRuleBasedTlsEnabled(true);
+
+                if (opt.seed != null) injection.setSeed(opt.seed);
+                if (opt.branchSplit != null) injection.setBranchSplit(opt.branchSplit);
+                if (opt.longTries != null) injection.setLongTries(opt.longTries);
+                capture = new FrameCapture(new VehicleSnapshot(true));
+                if (opt.warm.loads()) {
+                    simTime = WarmStart.load(opt.warm, opt.scenario, injection, trafficControl, metrics, capture);
+                    endTime = simTime + opt.durationSec;
+                    // plan times are absolute: what lies before the saved time already happened
+                    final double from = simTime;
+                    int before = pending.size();
+                    pending.removeIf(p -> p.atSimTime < from);
+                    if (pending.size() < before) Logging.LOG.info("Warm start: skipped " + (before - pending.size()) + " injection(s) before t=" + from);
+                }
+                injection.rebuildAllowedRoutesAndDropdown(null);
+
+                if (opt.warm.loads()) capture.prime();
+                edges = EdgeMetricsStore.subscribeAll();
+                deltaT = sumo.deltaT();
+
+                if (opt.recordOut != null && !opt.recordOut.isBlank()) {
+                    recorder = new FrameRecorder(new File(opt.recordOut), opt.scenario, trafficControl.tlsIds());
+                    capture.captureTlsStates(trafficControl.tlsIds());
+                }
+            }
+
+            wallStart = System.nanoTime();
+            while (true) {
+                VehicleFrame vf;
+                boolean ruleBased;
+                boolean noneLeft = false;
+
+                synchronized (TraciSession.LOCK) {
+                    session.activate();
+
+                    while (!pending.isEmpty() && pending.peekFirst().atSimTime <= simTime) {
+                        injected += inject(pending.pollFirst());
+                    }
+
+                    // never jump over a planned injection, the save time or the end time
+                    double limit = opt.warm.limit(pending.isEmpty() ? endTime : Math.min(endTime, pending.peekFirst().atSimTime));
+                    double before = simTime;
+                    simTime = advancer.advance(trafficControl, capture, edges, limit);
+                    steps += Math.max(1, Math.round((simTime - before) / deltaT));
+
+                    trafficControl.applyPerStep(simTime);
+                    ruleBased = trafficControl.isRuleBasedTlsEnabled();
+                    vf = capture.capture(simTime, 0, ruleBased, false, null);
+                    edges.update(simTime);
+
+                    if (simTime < endTime && pending.isEmpty()) noneLeft = sumo.minExpectedNumber() <= 0;
+                }
+
+                // no filter headless: "visible" = all active vehicles, split by type
+                // no pipeline threads here: metrics run inline, outside the TraCI lock
+                StepFrame frame = metrics.onFrame(vf, null);
+                if (metrics.logDue(simTime)) metrics.log(frame, 0, ruleBased);
+                if (recorder != null) recorder.append(vf, frame);
+                vf.release();
+
+                if (opt.warm.saveDue(simTime)) {
+                    synchronized (TraciSession.LOCK) {
+                        session.activate();
+                        WarmStart.save(opt.warm, opt.scenario, injection, trafficControl, metrics, capture);
+                    }
+                }
+
+                if (simTime >= endTime) break;
+                if (noneLeft) {
+                    stopReason = "no vehicles left";
+                    break;
+                }
+            }
+        } finally {
+            session.close();
+            if (recorder != null) recorder.close();
+        }
+
+        double wallSec = (System.nanoTime() - wallStart) / 1e9;
+        Logging.LOG.info(String.format(Locale.US,
+                "[%s] Headless run finished (%s): %d steps, sim %.1f s in %.2f s wall (%.0f steps/s, RTF %.1fx), injected=%d",
+                session.label, stopReason, steps, simTime, wallSec,
+                wallSec > 0 ? steps / wallSec : 0.0, wallSec > 0 ? simTime / wallSec : 0.0, injected));
+
+        List<MetricsCollector.MetricRow> rows = metrics.rows();
+        if (opt.metricsOut != null && !opt.metricsOut.isBlank()) {
+            File f = new File(opt.metricsOut);
+            MetricsCollector.writeCsv(f, rows, "", 0.0);
+            Logging.LOG.info("Metrics CSV: " + f.getAbsolutePath() + " (" + rows.size() + " rows)");
+        }
+        if (opt.summaryOut != null && !opt.summaryOut.isBlank()) {
+            File f = new File(opt.summaryOut);
+            writeSummary(f, rows, metrics.windowLines(), metrics.quantileLines(), edges, stopReason, steps, simTime, wallSec, injected);
+            Logging.LOG.info("Summary: " + f.getAbsolutePath());
+        }
+        if (opt.kpiOut != null && !opt.kpiOut.isBlank()) {
+            writeKpis(new File(opt.kpiOut), MetricsCollector.kpis(rows), stopReason, steps, simTime, wallSec, injected);
+        }
+    }
+
+    // Written last: its presence means the run completed (SimulationRunner / ParameterSweep read it).
+    private void writeKpis(File file, MetricsCollector.Kpis k, String stopReason,
+                           long steps, double simTime, double wallSec, int injected) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("label", session.label);
+        p.setProperty("stop_reason", stopReason);
+        p.setProperty("steps", String.valueOf(steps));
+        p.setProperty("sim_time_s", String.format(Locale.US, "%.2f", simTime));
+        p.setProperty("wall_s", String.format(Locale.US, "%.3f", wallSec));
+        p.setProperty("injected", String.valueOf(injected));
+        String[] values = k.values();
+        for (int i = 0; i < values.length; i++) p.setProperty(MetricsCollector.Kpis.COLUMNS[i], values[i]);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            p.store(out, "headless run KPIs");
+        }
+        if (file.exists() && !file.delete()) throw new IOException("cannot replace " + file.getAbsolutePath());
+        if (!tmp.renameTo(file)) throw new IOException("cannot write " + file.getAbsolutePath());
+    }
+
+    private int inject(Injection inj) {
+        java.util.List<VehicleInjection.RouteDef> routes = injection.allowedRoutes();
+        if (inj.routeIndex < 1 || inj.routeIndex > routes.size()) {
+            Logging.LOG.warning("Skipping injection " + inj + ": only " + routes.size() + " routes available");
+            return 0;
+        }
+        int added = injection.injectVehicles(inj.type, routes.get(inj.routeIndex - 1), inj.count);
+        if (added < 0) {
+            Logging.LOG.warning("Skipping injection " + inj + ": no long routes for this scenario/type");
+            return 0;
+        }
+        Logging.LOG.info("Injected " + added + "/" + inj.count + " (" + inj + ")");
+        return added;
+    }
+
+    private void writeSummary(File file, List<MetricsCollector.MetricRow> rows, List<String> windows,
+                              List<String> quantiles, EdgeMetricsStore edges, String stopReason,
+                              long steps, double simTime, double wallSec, int injected) throws IOException {
+        MetricsCollector.MetricRow last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            pw.println("Traffic Simulation - Headless Summary");
+            pw.println("Export time: " + Logging.nowTag());
+            pw.println("Scenario: " + opt.scenario);
+            pw.println("Seed: " + (opt.seed == null ? "(SUMO default)" : opt.seed));
+            pw.println("Injection plan: " + opt.plan);
+            pw.println("Rule-based TLS enabled: " + opt.ruleTls);
+            pw.println("Stop reason: " + stopReason);
+            pw.println(String.format(Locale.US, "Steps: %d | sim time(s): %.2f | wall(s): %.3f | steps/s: %.1f",
+                    steps, simTime, wallSec, wallSec > 0 ? steps / wallSec : 0.0));
+            pw.println("Vehicles injected: " + injected);
+            if (last == null) {
+                pw.println("Metrics: (no data collected)");
+            } else {
+                pw.println("Active vehicles: " + last.activeVehicles + " | stopped: " + last.stoppedVehicles);
+                pw.println("Congestion index: " + String.format(Locale.US, "%.4f", last.congestionIndex));
+                pw.println("Avg wait(s): " + String.format(Locale.US, "%.3f", last.avgWaitSeconds));
+                pw.println("Mean speed(m/s): " + String.format(Locale.US, "%.3f", last.meanSpeedMps));
+                pw.println("Throughput(vph): " + String.format(Locale.US, "%.2f", last.throughputVph));
+                pw.println("Sliding windows (sim time):");
+                for (String line : windows) pw.println("  " + line);
+                pw.println("Quantiles (sim time, all vehicles | per type):");
+                for (String line : quantiles) pw.println("  " + line);
+            }
+            int hot = edges.busiest();
+            pw.println("Hottest edge at end: " + (hot < 0 ? "-" : edges.describe(hot)));
+            int peak = edges.busiestPeak();
+            pw.println("Hottest edge over the run: " + (peak < 0 ? "-" : String.format(Locale.US,
+                    "%s (%d veh at t=%.1f)", edges.id(peak), edges.peakVehicles(peak), edges.peakAt(peak))));
+            for (EdgeMetricsStore.Ranking r : EdgeMetricsStore.Ranking.values()) {
+                pw.println(r + " at end:");
+                List<String> lines = edges.topLines(r, 5);
+                if (lines.isEmpty()) pw.println("  -");
+                for (String line : lines) pw.println("  " + line);
+            }
+        }
+    }
+
+    // ===================== Entry =====================
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            Options o = parseArgs(args);
+            if (o.backend != null) Backends.select(o.backend);
+            Main.SUMOCFG_PATH = o.scenario;
+            Main.validateProjectSetup();
+
+            Logging.LOG.info("Headless boot @ " + Logging.nowTag() + " scenario=" + o.scenario
+                    + " duration=" + o.durationSec + " seed=" + o.seed + " plan=" + o.plan);
+
+            new HeadlessRunner(o).run();
+        } catch (Main.Milestone3Exception ex) {
+            Logging.LOG.severe("Headless setup error: " + ex.getMessage());
+            System.exit(2);
+        } catch (Exception ex) {
+            Logging.LOG.log(java.util.logging.Level.SEVERE, "Headless run failed", ex);
+            System.exit(1);
+        }
+    }
+}
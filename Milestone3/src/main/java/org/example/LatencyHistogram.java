@@ -0,0 +1,78 @@
+// ===================== LatencyHistogram.java =====================
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear histogram of nanosecond durations (the HdrHistogram bucket layout):
+// 32 linear sub-buckets per power of two, so every value is kept to within 1/32 (~3 %)
+// over the whole long range, in a fixed 15 KB array. record() is one atomic increment.
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(index(nanos));
+    }
+
+    // copy of the counts; consistent enough for reporting while other threads record
+    long[] counts() {
+        long[] out = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) out[i] = counts.get(i);
+        return out;
+    }
+
+    // ===================== Buckets =====================
+    // values below SUB_COUNT are exact; above: (exponent, SUB_BITS bits after the leading one)
+    static int index(long v) {
+        if (v < SUB_COUNT) return (int) Math.max(0, v);
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        int sub = (int) (v >>> shift) & (SUB_COUNT - 1);
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+
+    // largest value that lands in bucket i (what percentiles report, like HDR's highestEquivalentValue)
+    static long upperBound(int i) {
+        if (i < SUB_COUNT) return i;
+        int shift = i / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + i % SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    // ===================== Stats over a counts array =====================
+    static long total(long[] counts) {
+        long n = 0;
+        for (long c : counts) n += c;
+        return n;
+    }
+
+    // q in [0,1]; 0 when empty
+    static long percentile(long[] counts, double q) {
+        long n = total(counts);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return max(counts);
+    }
+
+    static long max(long[] counts) {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) return upperBound(i);
+        }
+        return 0;
+    }
+
+    // a - b, bucket by bucket (interval between two snapshots)
+    static long[] minus(long[] a, long[] b) {
+        long[] out = new long[a.length];
+        for (int i = 0; i < a.length; i++) out[i] = a[i] - (b == null ? 0 : b[i]);
+        return out;
+    }
+}
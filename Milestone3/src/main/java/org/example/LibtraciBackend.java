@@ -0,0 +1,165 @@
+// ===================== LibtraciBackend.java =====================
+package org.example;
+
+import org.eclipse.sumo.libtraci.*;
+
+import java.util.List;
+import java.util.Map;
+
+// SUMO as a separate process behind a TraCI socket (labels select the connection).
+final class LibtraciBackend implements SimulationBackend {
+
+    private volatile TraciCapabilities caps;
+
+    // last subscription variable set, converted once (callers reuse the same array)
+    private int[] subscribedVars = null;
+    private IntVector subscribedVector = null;
+    private int[] edgeVars = null;
+    private IntVector edgeVector = null;
+
+    @Override public Backends.Kind kind() { return Backends.Kind.LIBTRACI; }
+    @Override public boolean supportsSumoGui() { return true; }
+    @Override public boolean supportsMultipleConnections() { return true; }
+
+    @Override public TraciCapabilities capabilities() {
+        TraciCapabilities c = caps;
+        if (c == null) {
+            synchronized (this) {
+                c = caps;
+                if (c == null) {
+                    c = new TraciCapabilities("libtraci", Simulation.class, Vehicle.class, TrafficLight.class, Lane.class);
+                    caps = c;
+                    Logging.LOG.info(c.describe());
+                }
+            }
+        }
+        return c;
+    }
+
+    // ===================== Lifecycle =====================
+    @Override public void preloadLibraries() { Simulation.preloadLibraries(); }
+
+    // libtraci defaults: free port, 60 connect retries
+    @Override public void start(List<String> cmd, String label) {
+        Simulation.start(toVector(cmd), -1, 60, label);
+    }
+
+    @Override public void switchConnection(String label) { Simulation.switchConnection(label); }
+    @Override public void close() { Simulation.close(); }
+
+    // ===================== Simulation =====================
+    @Override public void step() { Simulation.step(); }
+    @Override public void stepTo(double simTime) { Simulation.step(simTime); }
+    @Override public double currentTime() { return Simulation.getCurrentTime(); }
+    @Override public double deltaT() { return Simulation.getDeltaT(); }
+    @Override public int minExpectedNumber() { return Simulation.getMinExpectedNumber(); }
+    @Override public List<String> departedIds() { return Simulation.getDepartedIDList(); }
+    @Override public void saveState(String file) { Simulation.saveState(file); }
+    @Override public void loadState(String file) { Simulation.loadState(file); }
+
+    // ===================== Vehicles =====================
+    @Override public List<String> vehicleIds() { return Vehicle.getIDList(); }
+
+    @Override public void subscribeVehicle(String vehId, int[] varIds) {
+        if (varIds != subscribedVars) {
+            IntVector v = new IntVector();
+            for (int id : varIds) v.add(id);
+            subscribedVector = v;
+            subscribedVars = varIds;
+        }
+        Vehicle.subscribe(vehId, subscribedVector);
+    }
+
+    @Override public void readVehicleSubscriptions(VehicleVarSink sink) {
+        SubscriptionResults all = Vehicle.getAllSubscriptionResults();
+        for (Map.Entry<String, TraCIResults> e : all.entrySet()) {
+            sink.vehicle(e.getKey());
+            TraCIResults res = e.getValue();
+            if (res == null) continue;
+            for (Map.Entry<Integer, TraCIResult> v : res.entrySet()) {
+                Integer key = v.getKey();
+                TraCIResult r = v.getValue();
+                if (key == null || r == null) continue;
+                // some builds hand back the plain TraCIResult proxy, the sink parses its text
+                if (r instanceof TraCIPosition) {
+                    TraCIPosition p = (TraCIPosition) r;
+                    sink.position(p.getX(), p.getY());
+                } else if (r instanceof TraCIDouble) {
+                    sink.doubleVar(key, ((TraCIDouble) r).getValue());
+                } else if (r instanceof TraCIString) {
+                    sink.stringVar(key, ((TraCIString) r).getValue());
+                } else {
+                    try { sink.stringVar(key, r.getString()); } catch (Exception ignore) {}
+                }
+            }
+        }
+    }
+
+    @Override public boolean vehiclePosition(String vehId, double[] xyOut) {
+        TraCIPosition pos = Vehicle.getPosition(vehId);
+        if (pos == null) return false;
+        xyOut[0] = pos.getX();
+        xyOut[1] = pos.getY();
+        return true;
+    }
+
+    @Override public double vehicleSpeed(String vehId) { return Vehicle.getSpeed(vehId); }
+
+    @Override public String vehicleTypeId(String vehId) { return Vehicle.getTypeID(vehId); }
+    @Override public String vehicleClass(String vehId) { return Vehicle.getVehicleClass(vehId); }
+    @Override public int vehicleColor(String vehId) {
+        TraCIColor c = Vehicle.getColor(vehId);
+        return (c.getA() & 0xFF) << 24 | (c.getR() & 0xFF) << 16 | (c.getG() & 0xFF) << 8 | (c.getB() & 0xFF);
+    }
+    @Override public String vehicleRouteId(String vehId) { return Vehicle.getRouteID(vehId); }
+    @Override public double vehicleDepartTime(String vehId) { return Vehicle.getDeparture(vehId); }
+
+    // ===================== Routes / edges =====================
+    @Override public void addRoute(String routeId, List<String> edges) { Route.add(routeId, toVector(edges)); }
+    @Override public int edgeLaneCount(String edgeId) { return Edge.getLaneNumber(edgeId); }
+    @Override public List<String> edgeIds() { return Edge.getIDList(); }
+
+    @Override public void subscribeEdge(String edgeId, int[] varIds) {
+        if (varIds != edgeVars) {
+            IntVector v = new IntVector();
+            for (int id : varIds) v.add(id);
+            edgeVector = v;
+            edgeVars = varIds;
+        }
+        Edge.subscribe(edgeId, edgeVector);
+    }
+
+    @Override public void readEdgeSubscriptions(EdgeVarSink sink) {
+        SubscriptionResults all = Edge.getAllSubscriptionResults();
+        for (Map.Entry<String, TraCIResults> e : all.entrySet()) {
+            sink.edge(e.getKey());
+            TraCIResults res = e.getValue();
+            if (res == null) continue;
+            for (Map.Entry<Integer, TraCIResult> v : res.entrySet()) {
+                Integer key = v.getKey();
+                TraCIResult r = v.getValue();
+                if (key == null || r == null) continue;
+                if (r instanceof TraCIDouble) sink.var(key, ((TraCIDouble) r).getValue());
+                else if (r instanceof TraCIInt) sink.var(key, ((TraCIInt) r).getValue());
+                else {
+                    try { sink.var(key, Double.parseDouble(r.getString().trim())); } catch (Exception ignore) {}
+                }
+            }
+        }
+    }
+
+    // ===================== Traffic lights =====================
+    @Override public List<String> trafficLightIds() { return TrafficLight.getIDList(); }
+    @Override public String tlsProgram(String tlsId) { return TrafficLight.getProgram(tlsId); }
+    @Override public void setTlsProgram(String tlsId, String programId) { TrafficLight.setProgram(tlsId, programId); }
+    @Override public void setTlsPhaseDuration(String tlsId, double seconds) { TrafficLight.setPhaseDuration(tlsId, seconds); }
+    @Override public String tlsState(String tlsId) { return TrafficLight.getRedYellowGreenState(tlsId); }
+    @Override public void setTlsState(String tlsId, String state) { TrafficLight.setRedYellowGreenState(tlsId, state); }
+
+    private static StringVector toVector(List<String> items) {
+        if (items instanceof StringVector) return (StringVector) items;
+        StringVector sv = new StringVector();
+        for (String s : items) sv.add(s);
+        return sv;
+    }
+}
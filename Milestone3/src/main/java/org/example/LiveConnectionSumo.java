@@ -1,14 +1,11 @@
 // ===================== LiveConnectionSumo.java =====================
 package org.example;
 
-import org.eclipse.sumo.libtraci.*;
-
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.lang.reflect.Method;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -17,422 +14,289 @@ import java.util.List;
 public class LiveConnectionSumo implements Runnable {
 
     private final JFrame owner;
-    private final MapVisualisation.MapPanel mapPanel;
-    private final MapVisualisation.TrendChartPanel trendChart;
-
-    private final JLabel activeVehiclesLabel;
-    private final JLabel visibleVehiclesLabel;
-    private final JLabel byTypeLabel;
-
-    private final JLabel avgWaitLabel;
-    private final JLabel congestionLabel;
-    private final JLabel throughputLabel;
-    private final JLabel meanSpeedLabel;
-
-    private final JLabel tlStateLabel;
+    private final FrameView view;
 
     private final JComboBox<VehicleInjection.RouteDef> routeCombo;
     private final JComboBox<TrafficControl.TlsItem> tlCombo;
 
     private final TrafficControl trafficControl;
+    private final VehicleInjection injection;
+    private final Startup startup;
 
     private final Runnable onStopped;
 
     private volatile boolean started = false;
     private volatile boolean running = true;
-    private volatile int sleepMs = 50;
     private volatile int latestSpeedFactorUi = 1;
 
-    private int injectedCounter = 0;
+    private final SimulationBackend sumo = Backends.get();
 
-    // ===================== AUTO REROUTE OFF =====================
-    private static final boolean AUTO_REROUTE_ENABLED = false;
+    // ===================== PACING =====================
+    // default matches the slider at 1x
+    private final SimPacer pacer = new SimPacer(GUI.RTF_PER_SPEED_STEP);
+    private final SimAdvancer advancer = new SimAdvancer();
 
-    // ===================== Export-data log =====================
-    public static class MetricRow {
-        final String exportLocalTime;
-        final double simTime;
-        final int activeVehicles;
-        final int stoppedVehicles;
-        final double congestionIndex;
-        final double avgWaitSeconds;
-        final double meanSpeedMps;
-        final double throughputVph;
-        final int speedFactorUi;
-
-        final int visibleVehicles;
-        final int visibleCars;
-        final int visibleTrucks;
-        final int visibleBuses;
-
-        final boolean ruleBasedEnabled;
-
-        MetricRow(String exportLocalTime, double simTime, int activeVehicles, int stoppedVehicles,
-                  double congestionIndex, double avgWaitSeconds, double meanSpeedMps,
-                  double throughputVph, int speedFactorUi,
-                  int visibleVehicles, int visibleCars, int visibleTrucks, int visibleBuses,
-                  boolean ruleBasedEnabled) {
-            this.exportLocalTime = exportLocalTime;
-            this.simTime = simTime;
-            this.activeVehicles = activeVehicles;
-            this.stoppedVehicles = stoppedVehicles;
-            this.congestionIndex = congestionIndex;
-            this.avgWaitSeconds = avgWaitSeconds;
-            this.meanSpeedMps = meanSpeedMps;
-            this.throughputVph = throughputVph;
-            this.speedFactorUi = speedFactorUi;
-            this.visibleVehicles = visibleVehicles;
-            this.visibleCars = visibleCars;
-            this.visibleTrucks = visibleTrucks;
-            this.visibleBuses = visibleBuses;
-            this.ruleBasedEnabled = ruleBasedEnabled;
-        }
-    }
+    private int injectedCounter = 0;
 
-    private final List<MetricRow> metricsLog = Collections.synchronizedList(new ArrayList<>());
+    // ===================== UI COMMANDS =====================
+    // GUI actions that need TraCI are queued and applied here, between steps
+    private static final long COMMAND_BUDGET_NANOS = 5_000_000L;
+    private final TraciCommandQueue commands = new TraciCommandQueue();
 
-    private final Deque<Double> arrivalTimes = new ArrayDeque<>();
-    private final Set<String> prevVehicleIds = new HashSet<>();
+    // ===================== AUTO REROUTE OFF =====================
+    private static final boolean AUTO_REROUTE_ENABLED = false;
 
-    private double lastLoggedSimTime = -1.0;
-    private static final double LOG_EVERY_SIM_SECONDS = 0.5;
+    // ===================== PER-STEP VEHICLE SNAPSHOT =====================
+    // true: one getAllSubscriptionResults() per step, false: per-vehicle getters (old behaviour)
+    private static final boolean SUBSCRIPTION_SNAPSHOT = true;
+    private FrameCapture capture;
+    private EdgeMetricsStore edges;
+    // length of the ranked edge list in the metrics panel
+    private static final int TOP_EDGES = 5;
+
+    // ===================== FRAME PIPELINE =====================
+    // sim thread -> Frame-Metrics thread (lossless ring); map and labels go to FrameView's
+    // latest-frame slot, drawn by its Swing timer
+    private FramePipeline pipeline;
+    private final MetricsCollector metrics = new MetricsCollector();
+    private volatile double latestThroughputVph = 0.0;
+
+    // ===================== STEP PROFILING =====================
+    // per-phase latency histograms, stall warnings, periodic log report (Diagnostics window)
+    private final StepProfiler profiler = new StepProfiler("gui");
 
     // Filter state source (GUI provides values)
     private final GUI.VehicleFilter filter;
 
+    // ===================== RECORDING =====================
+    // --record <file>: every published frame also goes to a FrameRecorder (metrics stage)
+    private final File recordFile;
+    private volatile FrameRecorder recorder;
+
+    // ===================== WARM START =====================
+    // --load-state before the first step, --save-state at --save-at (see WarmStart)
+    private final WarmStart.Plan warm;
+
     public LiveConnectionSumo(
             JFrame owner,
-            MapVisualisation.MapPanel mapPanel,
-            MapVisualisation.TrendChartPanel trendChart,
-            GUI.VehicleFilter filter,
-            JLabel activeVehiclesLabel,
-            JLabel visibleVehiclesLabel,
-            JLabel byTypeLabel,
-            JLabel avgWaitLabel,
-            JLabel congestionLabel,
-            JLabel throughputLabel,
-            JLabel meanSpeedLabel,
-            JLabel tlStateLabel,
+            FrameView view,
             JComboBox<VehicleInjection.RouteDef> routeCombo,
             JComboBox<TrafficControl.TlsItem> tlCombo,
             TrafficControl trafficControl,
+            VehicleInjection injection,
+            Startup startup,
+            File recordFile,
+            WarmStart.Plan warm,
             Runnable onStopped
     ) {
         this.owner = owner;
-        this.mapPanel = mapPanel;
-        this.trendChart = trendChart;
-        this.filter = filter;
-
-        this.activeVehiclesLabel = activeVehiclesLabel;
-        this.visibleVehiclesLabel = visibleVehiclesLabel;
-        this.byTypeLabel = byTypeLabel;
-
-        this.avgWaitLabel = avgWaitLabel;
-        this.congestionLabel = congestionLabel;
-        this.throughputLabel = throughputLabel;
-        this.meanSpeedLabel = meanSpeedLabel;
-
-        this.tlStateLabel = tlStateLabel;
+        this.view = view;
+        this.filter = view.filter;
 
         this.routeCombo = routeCombo;
         this.tlCombo = tlCombo;
         this.trafficControl = trafficControl;
+        this.injection = injection;
+        this.startup = startup;
+        this.recordFile = recordFile;
+        this.warm = warm;
 
         this.onStopped = onStopped;
 
+        view.setProfiler(profiler);
         new Thread(this, "SUMO-Simulation-Thread").start();
     }
 
     public void startSimulation() { started = true; Logging.LOG.info("Simulation START pressed."); }
 
-    public void setSpeedDelay(int ms, int speedFactorUi) {
-        sleepMs = Math.max(1, ms);
+    public void setTargetRtf(double rtf, int speedFactorUi) {
+        pacer.setTargetRtf(rtf);
         latestSpeedFactorUi = speedFactorUi;
     }
 
-    public void stopSimulation() { running = false; Logging.LOG.info("Simulation STOP pressed."); }
-
-    // ===================== Routing file override for manual injection only =====================
-    private String buildRoutesFileWithVTypesOnly() throws IOException {
-        File tmp = File.createTempFile("manual_only_", ".rou.xml");
-        tmp.deleteOnExit();
-        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"))) {
-            pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            pw.println("<routes xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
-            pw.println("        xsi:noNamespaceSchemaLocation=\"http://sumo.dlr.de/xsd/routes_file.xsd\">");
-            pw.println("  <!-- Manual injection only (no trips/vehicles here) -->");
-            pw.println("  <vType id=\"car\"   vClass=\"passenger\" length=\"5.0\"  accel=\"2.6\" decel=\"4.5\" maxSpeed=\"33\"/>");
-            pw.println("  <vType id=\"truck\" vClass=\"truck\"     length=\"8.0\"  accel=\"1.3\" decel=\"4.0\" maxSpeed=\"25\"/>");
-            pw.println("  <vType id=\"bus\"   vClass=\"bus\"       length=\"12.0\" accel=\"1.1\" decel=\"4.0\" maxSpeed=\"22\"/>");
-            pw.println("</routes>");
-        }
-        Logging.LOG.info("Temp manual routes file: " + tmp.getAbsolutePath());
-        return tmp.getAbsolutePath();
-    }
+    public void setMaxSpeed(boolean on) { pacer.setMaxSpeed(on); }
 
-    // ===================== REAL METRICS =====================
-    private double safeVehicleWaitingTimeSec(String vehId) {
-        try {
-            Method m = Vehicle.class.getMethod("getWaitingTime", String.class);
-            Object o = m.invoke(null, vehId);
-            if (o instanceof Number) return ((Number) o).doubleValue();
-        } catch (Exception ignore) {}
+    // steps advanced between metric samples / map frames (1 = every step)
+    public void setStepsPerSample(int k) { advancer.setStepsPerSample(k); }
 
-        try {
-            Method m = Vehicle.class.getMethod("getAccumulatedWaitingTime", String.class);
-            Object o = m.invoke(null, vehId);
-            if (o instanceof Number) return ((Number) o).doubleValue();
-        } catch (Exception ignore) {}
+    public TraciCommandQueue commands() { return commands; }
 
-        return Double.NaN;
-    }
+    public StepProfiler profiler() { return profiler; }
 
-    private double computeAvgWaitSeconds(StringVector vIds) {
-        if (vIds == null || vIds.size() == 0) return 0.0;
-
-        double sum = 0.0;
-        int cnt = 0;
-        for (int i = 0; i < vIds.size(); i++) {
-            String id = vIds.get(i);
-            double w = safeVehicleWaitingTimeSec(id);
-            if (!Double.isNaN(w) && !Double.isInfinite(w)) {
-                sum += w;
-                cnt++;
-            }
-        }
-        if (cnt == 0) return -1.0;
-        return sum / cnt;
-    }
-
-    private double computeMeanSpeed(StringVector vIds) {
-        if (vIds == null || vIds.size() == 0) return 0.0;
-        double sum = 0.0;
-        int cnt = 0;
-        for (int i = 0; i < vIds.size(); i++) {
-            try {
-                sum += Vehicle.getSpeed(vIds.get(i));
-                cnt++;
-            } catch (Exception ignore) {}
-        }
-        return cnt == 0 ? 0.0 : (sum / cnt);
-    }
-
-    private int countStopped(StringVector vIds) {
-        int stopped = 0;
-        for (int i = 0; i < vIds.size(); i++) {
-            try {
-                if (Vehicle.getSpeed(vIds.get(i)) < 0.1) stopped++;
-            } catch (Exception ignore) {}
-        }
-        return stopped;
-    }
-
-    private int recordArrivalsAndReturnCount(double simTime, Set<String> currentIdsSet) {
-        try {
-            Method m = Simulation.class.getMethod("getArrivedIDList");
-            Object o = m.invoke(null);
-            if (o instanceof StringVector) {
-                StringVector arrived = (StringVector) o;
-                int n = arrived.size();
-                for (int i = 0; i < n; i++) arrivalTimes.addLast(simTime);
-                return n;
-            }
-        } catch (Exception ignore) {}
-
-        int arrived = 0;
-        for (String oldId : prevVehicleIds) {
-            if (!currentIdsSet.contains(oldId)) {
-                arrived++;
-                arrivalTimes.addLast(simTime);
-            }
-        }
-        return arrived;
-    }
-
-    private void trimThroughputWindow(double simTime) {
-        while (!arrivalTimes.isEmpty()) {
-            double t = arrivalTimes.peekFirst();
-            if ((simTime - t) > Main.THROUGHPUT_WINDOW_SEC) arrivalTimes.removeFirst();
-            else break;
-        }
-    }
-
-    private double computeThroughputVph() {
-        double windowHours = Main.THROUGHPUT_WINDOW_SEC / 3600.0;
-        if (windowHours <= 1e-9) return 0.0;
-        return arrivalTimes.size() / windowHours;
-    }
+    public void stopSimulation() { running = false; Logging.LOG.info("Simulation STOP pressed."); }
 
     // ===================== Simulation loop =====================
     @Override public void run() {
         try {
-            Simulation.preloadLibraries();
-
-            String manualRou = buildRoutesFileWithVTypesOnly();
+            sumo.preloadLibraries();
 
-            StringVector cmd = new StringVector();
-            cmd.add("sumo-gui");
-            cmd.add("-c"); cmd.add(Main.SUMOCFG_PATH);
-            cmd.add("--route-files"); cmd.add(manualRou);
-            cmd.add("--start");
-            cmd.add("--quit-on-end");
+            // libsumo runs in-process without the sumo-gui window; the Swing map is unaffected
+            List<String> cmd = sumo.supportsSumoGui()
+                    ? SumoLauncher.command("sumo-gui", "--start", "--quit-on-end")
+                    : SumoLauncher.command("sumo");
 
-            Logging.LOG.info("Starting SUMO: " + cmd);
-            Simulation.start(cmd);
+            Logging.LOG.info("Starting SUMO (" + sumo.kind() + "): " + cmd);
+            long t = System.nanoTime();
+            sumo.start(cmd, TraciSession.DEFAULT_LABEL);
+            startup.mark("SUMO start", t);
             Logging.LOG.info("SUMO started.");
 
+            // probe optional libtraci API once, before anything on the hot path needs it
+            TraciCapabilities.get();
+
+            // TLS labels and trip routes come from the background parses
+            startup.awaitParsed();
             trafficControl.rebuildTrafficLightDropdown();
-            VehicleInjection.rebuildAllowedRoutesAndDropdown(routeCombo);
+            capture = new FrameCapture(new VehicleSnapshot(SUBSCRIPTION_SNAPSHOT));
+            if (warm.loads()) WarmStart.load(warm, Main.SUMOCFG_PATH, injection, trafficControl, metrics, capture);
+            t = System.nanoTime();
+            injection.rebuildAllowedRoutesAndDropdown(routeCombo);
+            startup.mark("routes", t);
+
+            if (warm.loads()) capture.prime();
+            edges = EdgeMetricsStore.subscribeAll();
+            Logging.LOG.info("Vehicle snapshot mode: " + (SUBSCRIPTION_SNAPSHOT ? "subscriptions" : "getters"));
+
+            if (recordFile != null) {
+                try {
+                    recorder = new FrameRecorder(recordFile, Main.SUMOCFG_PATH, trafficControl.tlsIds());
+                    capture.captureTlsStates(trafficControl.tlsIds());
+                } catch (IOException ex) {
+                    Logging.LOG.log(java.util.logging.Level.WARNING, "Recording disabled: " + recordFile, ex);
+                }
+            }
+
+            pipeline = new FramePipeline(this::metricsStage);
+            pipeline.start();
+            profiler.startReporting();
+            startup.finish();
 
             while (running) {
+                t = System.nanoTime();
+                final long loopStart = t;
+
+                commands.drain(trafficControl, injection, COMMAND_BUDGET_NANOS);
+                t = profiler.lap(StepProfiler.Phase.COMMANDS, t);
+
                 if (!started) {
                     Thread.sleep(50);
+                    pacer.reset();
                     continue;
                 }
 
-                Simulation.step();
-                double simTime = Simulation.getCurrentTime();
+                double simTime = advancer.advance(trafficControl, capture, edges, warm.limit(Double.POSITIVE_INFINITY));
+                profiler.setSimTime(simTime);
+                t = profiler.lap(StepProfiler.Phase.STEP, t);
 
                 // 1) Rule-based TLS + manual persists
                 trafficControl.applyPerStep(simTime);
+                t = profiler.lap(StepProfiler.Phase.TLS_RULES, t);
 
                 // 2) Auto reroute disabled
                 if (AUTO_REROUTE_ENABLED) {
                     // intentionally OFF
                 }
 
-                Thread.sleep(sleepMs);
-
-                // ---- vehicle metrics ----
-                StringVector vIds = Vehicle.getIDList();
-                int active = vIds.size();
-
-                Set<String> currentIdSet = new HashSet<>(Math.max(16, active * 2));
-                for (int i = 0; i < vIds.size(); i++) currentIdSet.add(vIds.get(i));
-
-                recordArrivalsAndReturnCount(simTime, currentIdSet);
-                trimThroughputWindow(simTime);
-                double throughputVph = computeThroughputVph();
-
-                prevVehicleIds.clear();
-                prevVehicleIds.addAll(currentIdSet);
-
-                int stopped = countStopped(vIds);
-                double congestion = active > 0 ? (double) stopped / active : 0.0;
-
-                double avgWaitSec = computeAvgWaitSeconds(vIds);
-                double meanSpeed = computeMeanSpeed(vIds);
-
-                Map<String, java.awt.geom.Point2D.Double> positions = new HashMap<>();
-                Map<String, String> types = new HashMap<>();
-                Map<String, Double> speeds = new HashMap<>();
-
-                int visibleCount = 0, visCar = 0, visTruck = 0, visBus = 0;
-
-                for (int i = 0; i < vIds.size(); i++) {
-                    String id = vIds.get(i);
-
-                    TraCIPosition pos = Vehicle.getPosition(id);
-                    positions.put(id, new java.awt.geom.Point2D.Double(pos.getX(), pos.getY()));
-
-                    String type;
-                    if (id.startsWith("car_")) type = Main.TYPE_CAR;
-                    else if (id.startsWith("truck_")) type = Main.TYPE_TRUCK;
-                    else if (id.startsWith("bus_")) type = Main.TYPE_BUS;
-                    else type = Main.TYPE_CAR;
-
-                    types.put(id, type);
-
-                    double sp = 0.0;
-                    try { sp = Vehicle.getSpeed(id); } catch (Exception ignore) {}
-                    speeds.put(id, sp);
-
-                    if (filter.allows(type, sp)) {
-                        visibleCount++;
-                        if (Main.TYPE_CAR.equals(type)) visCar++;
-                        else if (Main.TYPE_TRUCK.equals(type)) visTruck++;
-                        else if (Main.TYPE_BUS.equals(type)) visBus++;
-                    }
+                // when behind schedule only every few steps get a map frame
+                boolean render = pacer.frameDue(simTime);
+                // SUMO sends the edge results every step anyway: read them every step so peaks and
+                // free speeds see every step, format the list only for frames that reach the screen
+                edges.update(simTime);
+                String tlsStatus = null;
+                if (render) {
+                    tlsStatus = trafficControl.buildTlsStatusString();
+                    t = profiler.lap(StepProfiler.Phase.TLS_STATUS, t);
+                    view.showEdges(edges.status(), edges.topHtml(TOP_EDGES));
                 }
-
-                if (lastLoggedSimTime < 0 || (simTime - lastLoggedSimTime) >= LOG_EVERY_SIM_SECONDS) {
-                    lastLoggedSimTime = simTime;
-                    metricsLog.add(new MetricRow(
-                            Logging.nowTag(), simTime, active, stopped, congestion,
-                            avgWaitSec, meanSpeed, throughputVph, latestSpeedFactorUi,
-                            visibleCount, visCar, visTruck, visBus,
-                            trafficControl.isRuleBasedTlsEnabled()
-                    ));
-
-                    trendChart.addSample(
-                            avgWaitSec < 0 ? 0.0 : avgWaitSec,
-                            throughputVph,
-                            congestion
-                    );
+                t = profiler.lap(StepProfiler.Phase.EDGES, t);
+
+                // the sim thread only captures + publishes: metrics go through the pipeline,
+                // map/labels through the view's latest-frame slot (never queues on the EDT)
+                VehicleFrame vf = capture.capture(simTime, latestSpeedFactorUi,
+                        trafficControl.isRuleBasedTlsEnabled(), render, tlsStatus);
+                t = profiler.lap(StepProfiler.Phase.CAPTURE, t);
+                if (render) {
+                    vf.retain();
+                    view.show(vf, latestThroughputVph, tlsStatus, rtfText());
+                }
+                pipeline.publish(vf);
+                t = profiler.lap(StepProfiler.Phase.PUBLISH, t);
+                profiler.record(StepProfiler.Phase.LOOP, t - loopStart);
+
+                // once per run: the metrics window has to include this frame before it is saved
+                if (warm.saveDue(simTime)) {
+                    if (!pipeline.awaitIdle(10_000)) Logging.LOG.warning("Warm start: metrics stage did not catch up, window may be short");
+                    WarmStart.save(warm, Main.SUMOCFG_PATH, injection, trafficControl, metrics, capture);
+                    pacer.reset();
                 }
 
-                final Map<String, java.awt.geom.Point2D.Double> positionsF = positions;
-                final Map<String, String> typesF = types;
-                final Map<String, Double> speedsF = speeds;
-
-                final int activeF = active;
-                final int stoppedF = stopped;
-                final double congestionF = congestion;
-                final double avgWaitSecF = avgWaitSec;
-                final double throughputVphF = throughputVph;
-                final double meanSpeedF = meanSpeed;
-
-                final int visibleF = visibleCount;
-                final int visCarF = visCar, visTruckF = visTruck, visBusF = visBus;
-
-                final String tlsStateF = trafficControl.buildTlsStatusString();
-
-                SwingUtilities.invokeLater(() -> {
-                    mapPanel.updateVehicles(positionsF, typesF, speedsF);
-
-                    activeVehiclesLabel.setText("Active Vehicles (all): " + activeF);
-                    visibleVehiclesLabel.setText("Visible Vehicles (filtered): " + visibleF);
-                    byTypeLabel.setText("By Type: car=" + visCarF + " truck=" + visTruckF + " bus=" + visBusF);
-
-                    if (avgWaitSecF >= 0) {
-                        avgWaitLabel.setText(String.format(Locale.US,
-                                "Avg Wait Time: %.1f s (%.2f min)", avgWaitSecF, avgWaitSecF/60.0));
-                    } else {
-                        double ratio = activeF > 0 ? (stoppedF / (double) activeF) : 0.0;
-                        avgWaitLabel.setText(String.format(Locale.US,
-                                "Avg Wait Time: N/A (API) | stopped ratio=%.2f", ratio));
-                    }
-
-                    congestionLabel.setText(String.format(Locale.US,
-                            "Congestion Index: %.2f (stopped=%d)", congestionF, stoppedF));
-
-                    throughputLabel.setText(String.format(Locale.US,
-                            "Throughput: %.1f v/h (last %.0f s)", throughputVphF, Main.THROUGHPUT_WINDOW_SEC));
-
-                    meanSpeedLabel.setText(String.format(Locale.US,
-                            "Mean Speed: %.2f m/s", meanSpeedF));
-
-                    tlStateLabel.setText(tlsStateF);
-                });
+                pacer.awaitDeadline(simTime);
+                profiler.lap(StepProfiler.Phase.PACE_WAIT, t);
             }
 
-            try { Simulation.close(); } catch (Exception ignored) {}
+            commands.close();
+            pipeline.close(2000);
+            Logging.LOG.info("Vehicle frames allocated: " + capture.framesAllocated());
+            profiler.stopReporting();
+            closeRecorder();
+            try { sumo.close(); } catch (Exception ignored) {}
             if (onStopped != null) SwingUtilities.invokeLater(onStopped);
 
         } catch (Exception ex) {
             Logging.LOG.log(java.util.logging.Level.SEVERE, "Simulation thread crashed", ex);
+            commands.close();
+            if (pipeline != null) pipeline.close(2000);
+            profiler.stopReporting();
+            closeRecorder();
             if (onStopped != null) SwingUtilities.invokeLater(onStopped);
         }
     }
 
-    // ===================== Export CSV =====================
-    private static String csvEscape(String s) {
-        if (s == null) return "";
-        boolean needs = s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r");
-        String t = s.replace("\"", "\"\"");
-        return needs ? ("\"" + t + "\"") : t;
+    // ===================== Metrics stage (Frame-Metrics thread) =====================
+    private void metricsStage(VehicleFrame vf) {
+        long t0 = System.nanoTime();
+        StepFrame f = metrics.onFrame(vf, filter);
+        latestThroughputVph = f.throughputVph;
+
+        if (recorder != null) {
+            try {
+                recorder.append(vf, f);
+            } catch (IOException ex) {
+                Logging.LOG.log(java.util.logging.Level.WARNING, "Recording stopped at t=" + vf.simTime, ex);
+                closeRecorder();
+            }
+        }
+
+        if (metrics.logDue(vf.simTime)) {
+            metrics.log(f, vf.speedFactorUi, vf.ruleBasedEnabled);
+            view.addTrendSample(f);
+            view.showWindows(metrics.windowLines());
+            view.showQuantiles(metrics.quantileSummary(), metrics.quantileLines());
+        }
+        profiler.lap(StepProfiler.Phase.METRICS, t0);
+    }
+
+    // ===================== RTF label =====================
+    private String rtfText() {
+        return pacer.isMaxSpeed()
+                ? String.format(Locale.US, "RTF: %.1fx (target: max)", pacer.achievedRtf())
+                : String.format(Locale.US, "RTF: %.1fx (target %.0fx)", pacer.achievedRtf(), pacer.targetRtf());
+    }
+
+    // sim thread after the pipeline is closed, or the metrics stage after a write error
+    private void closeRecorder() {
+        FrameRecorder r = recorder;
+        recorder = null;
+        if (r == null) return;
+        try { r.close(); }
+        catch (IOException ex) { Logging.LOG.log(java.util.logging.Level.WARNING, "Closing recording failed", ex); }
     }
 
+    private List<MetricsCollector.MetricRow> rowsSnapshot() {
+        return metrics.rows();
+    }
+
+    // ===================== Export CSV =====================
     public void exportMetricsCsv(Component parent, String selectedRouteName) {
         JFileChooser chooser = new JFileChooser();
         chooser.setDialogTitle("Save metrics CSV");
@@ -447,29 +311,10 @@ public class LiveConnectionSumo implements Runnable {
         String path = file.getAbsolutePath();
         if (!path.toLowerCase(Locale.ROOT).endsWith(".csv")) file = new File(path + ".csv");
 
-        List<MetricRow> snap;
-        synchronized (metricsLog) { snap = new ArrayList<>(metricsLog); }
-
-        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
-            pw.println("export_local_time,sim_time,active_vehicles,stopped_vehicles,congestion_index,avg_wait_seconds,mean_speed_mps,throughput_vph,speed_factor_ui,selected_route,visible_vehicles,visible_cars,visible_trucks,visible_buses,min_speed_filter_mps,rule_based_enabled");
-            for (MetricRow r : snap) {
-                pw.print(csvEscape(r.exportLocalTime)); pw.print(",");
-                pw.print(String.format(Locale.US, "%.2f", r.simTime)); pw.print(",");
-                pw.print(r.activeVehicles); pw.print(",");
-                pw.print(r.stoppedVehicles); pw.print(",");
-                pw.print(String.format(Locale.US, "%.4f", r.congestionIndex)); pw.print(",");
-                pw.print(String.format(Locale.US, "%.3f", r.avgWaitSeconds)); pw.print(",");
-                pw.print(String.format(Locale.US, "%.3f", r.meanSpeedMps)); pw.print(",");
-                pw.print(String.format(Locale.US, "%.2f", r.throughputVph)); pw.print(",");
-                pw.print(r.speedFactorUi); pw.print(",");
-                pw.print(csvEscape(selectedRouteName)); pw.print(",");
-                pw.print(r.visibleVehicles); pw.print(",");
-                pw.print(r.visibleCars); pw.print(",");
-                pw.print(r.visibleTrucks); pw.print(",");
-                pw.print(r.visibleBuses); pw.print(",");
-                pw.print(String.format(Locale.US, "%.2f", filter.minSpeedMps)); pw.print(",");
-                pw.println(r.ruleBasedEnabled ? "1" : "0");
-            }
+        List<MetricsCollector.MetricRow> snap = rowsSnapshot();
+
+        try {
+            MetricsCollector.writeCsv(file, snap, selectedRouteName, filter.minSpeedMps);
         } catch (Exception ex) {
             Logging.LOG.log(java.util.logging.Level.SEVERE, "Export CSV failed", ex);
             JOptionPane.showMessageDialog(parent, "CSV export failed:\n" + ex.getMessage(),
@@ -497,9 +342,8 @@ public class LiveConnectionSumo implements Runnable {
         String path = file.getAbsolutePath();
         if (!path.toLowerCase(Locale.ROOT).endsWith(".pdf")) file = new File(path + ".pdf");
 
-        List<MetricRow> snap;
-        synchronized (metricsLog) { snap = new ArrayList<>(metricsLog); }
-        MetricRow last = snap.isEmpty() ? null : snap.get(snap.size() - 1);
+        List<MetricsCollector.MetricRow> snap = rowsSnapshot();
+        MetricsCollector.MetricRow last = snap.isEmpty() ? null : snap.get(snap.size() - 1);
 
         List<String> lines = new ArrayList<>();
         String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
@@ -526,6 +370,9 @@ public class LiveConnectionSumo implements Runnable {
             lines.add("Speed factor(UI): " + last.speedFactorUi);
             lines.add("Visible vehicles: " + last.visibleVehicles +
                     " (cars " + last.visibleCars + ", trucks " + last.visibleTrucks + ", buses " + last.visibleBuses + ")");
+            lines.add("Wait p50/p90/p99: " + MetricsCollector.formatPct(last.waitPct, "s"));
+            lines.add("Travel time p50/p90/p99: " + MetricsCollector.formatPct(last.travelPct, "s"));
+            lines.add("Speed p50/p90/p99: " + MetricsCollector.formatPct(last.speedPct, "m/s"));
         }
 
         try {
@@ -698,4 +545,4 @@ public class LiveConnectionSumo implements Runnable {
             }
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
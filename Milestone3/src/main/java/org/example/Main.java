@@ -3,6 +3,8 @@ package org.example;
 
 import javax.swing.*;
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 public class Main {
 
@@ -11,7 +13,8 @@ public class Main {
     public static final String TYPE_TRUCK = "truck";
     public static final String TYPE_BUS = "bus";
 
-    public static final String SUMOCFG_PATH = "final.sumocfg";
+    // overridable with --scenario (headless mode)
+    public static volatile String SUMOCFG_PATH = "final.sumocfg";
 
     // IMPORTANT: previously you forced dropping 2nd route. Turn it OFF.
     public static final boolean DROP_SECOND_ROUTE = false;
@@ -24,11 +27,15 @@ public class Main {
         public Milestone3Exception(String message, Throwable cause) { super(message, cause); }
     }
 
-    private static void validateProjectSetup() throws Milestone3Exception {
-        File cfg = new File(SUMOCFG_PATH);
+    static void validateProjectSetup() throws Milestone3Exception {
+        validateScenario(SUMOCFG_PATH);
+    }
+
+    static void validateScenario(String sumocfgPath) throws Milestone3Exception {
+        File cfg = new File(sumocfgPath);
         if (!cfg.exists()) {
             throw new Milestone3Exception(
-                    "Missing SUMO config file: '" + SUMOCFG_PATH + "'. " +
+                    "Missing SUMO config file: '" + sumocfgPath + "'. " +
                             "Place it next to the program (working directory: " + new File(".").getAbsolutePath() + ")");
         }
         if (!cfg.isFile() || !cfg.canRead()) {
@@ -36,10 +43,46 @@ public class Main {
         }
     }
 
+    // value after a GUI option (--record / --replay), null when absent
+    static String optionValue(String[] args, String name) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) return args[i + 1];
+        }
+        return null;
+    }
+
     // ===================== MAIN (tiny) =====================
     public static void main(String[] args) {
+        try {
+            Backends.select(Backends.kindFromArgs(args));
+        } catch (Milestone3Exception ex) {
+            Logging.LOG.severe("Project setup error: " + ex.getMessage());
+            System.exit(2);
+        }
+
+        if (Arrays.asList(args).contains("--sweep")) {
+            ParameterSweep.main(args);
+            return;
+        }
+        if (Arrays.asList(args).contains("--runner")) {
+            SimulationRunner.main(args);
+            return;
+        }
+        if (Arrays.asList(args).contains("--headless")) {
+            HeadlessRunner.main(args);
+            return;
+        }
+
+        String replay = optionValue(args, "--replay");
+        if (replay != null) {
+            launchReplay(new File(replay));
+            return;
+        }
+
+        WarmStart.Plan warm;
         try {
             validateProjectSetup();
+            warm = WarmStart.Plan.fromArgs(args);
         } catch (Milestone3Exception ex) {
             Logging.LOG.severe("Project setup error: " + ex.getMessage());
             JOptionPane.showMessageDialog(null, ex.getMessage(), "Project setup error", JOptionPane.ERROR_MESSAGE);
@@ -48,10 +91,30 @@ public class Main {
 
         Logging.LOG.info("App boot @ " + Logging.nowTag());
 
-        // Init map + trips (file parsing part)
-        VehicleInjection.loadTripRoutesFromRou();
-        MapVisualisation.initBoundsFromFiles();
+        // net + trip parsing run in the background; the window and SUMO do not wait for them
+        Startup startup = Startup.begin(SUMOCFG_PATH);
+
+        String record = optionValue(args, "--record");
+        GUI.launch(startup, record == null ? null : new File(record), warm);
+    }
 
-        GUI.launch();
+    // No SUMO: the map comes from the recorded scenario's net (when it is still there), the rest from the file.
+    private static void launchReplay(File file) {
+        FrameRecording rec;
+        try {
+            rec = FrameRecording.open(file);
+        } catch (IOException ex) {
+            Logging.LOG.log(java.util.logging.Level.SEVERE, "Cannot open recording " + file, ex);
+            JOptionPane.showMessageDialog(null, "Cannot open recording:\n" + ex.getMessage(),
+                    "Replay error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        if (new File(rec.scenario()).isFile()) SUMOCFG_PATH = rec.scenario();
+        else Logging.LOG.warning("Recorded scenario not found (" + rec.scenario() + "), map uses " + SUMOCFG_PATH);
+
+        Logging.LOG.info("Replay boot @ " + Logging.nowTag() + " file=" + file.getAbsolutePath());
+        MapVisualisation.initBoundsFromFiles();
+        GUI.launchReplay(rec);
     }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ package org.example;
 import javax.swing.*;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParserFactory;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -13,7 +14,6 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.*;
 
@@ -50,7 +50,6 @@ public final class MapVisualisation {
         }
     }
 
-    private static volatile Bounds NET_BOUNDS = null;
     private static volatile Bounds FALLBACK_BOUNDS = new Bounds(-100, -100, 100, 100);
 
     private static final boolean DRAW_INTERNAL_EDGES = true;
@@ -61,41 +60,92 @@ public final class MapVisualisation {
     private static final double ROAD_MIN_PX = 6.0;
     private static final boolean DRAW_LANE_MARKINGS = true;
 
-    private static volatile java.util.List<RoadGeom> ROAD_GEOMS = java.util.Collections.emptyList();
+    // Everything read from one scenario's net.xml. Several runs in one JVM each load their own;
+    // the map panel draws the one installed by initBoundsFromFiles().
+    public static final class Network {
+        static final Network EMPTY = new Network(null, java.util.Collections.emptyList(),
+                java.util.Collections.emptyMap(), java.util.Collections.emptyMap());
 
-    private static volatile Map<String, Point2D.Double> TLS_POSITIONS = java.util.Collections.emptyMap();
-    private static volatile Map<String, String> TLS_LABELS = java.util.Collections.emptyMap();
+        // null when the net has no usable convBoundary
+        final Bounds bounds;
+        final java.util.List<RoadGeom> roadGeoms;
+        final Map<String, Point2D.Double> tlsPositions;
+        final Map<String, String> tlsLabels;
+
+        Network(Bounds bounds, java.util.List<RoadGeom> roadGeoms,
+                Map<String, Point2D.Double> tlsPositions, Map<String, String> tlsLabels) {
+            this.bounds = bounds;
+            this.roadGeoms = roadGeoms;
+            this.tlsPositions = tlsPositions;
+            this.tlsLabels = tlsLabels;
+        }
+
+        public java.util.List<RoadGeom> roadGeoms() { return roadGeoms; }
+    }
+
+    private static volatile Network NETWORK = Network.EMPTY;
 
     public static Bounds getActiveBounds() {
-        Bounds b = NET_BOUNDS;
+        Bounds b = NETWORK.bounds;
         return (b != null && b.sane()) ? b : FALLBACK_BOUNDS;
     }
 
-    public static List<RoadGeom> getRoadGeoms() { return ROAD_GEOMS; }
+    public static Network network() { return NETWORK; }
+
+    public static List<RoadGeom> getRoadGeoms() { return NETWORK.roadGeoms; }
 
-    public static Map<String, Point2D.Double> getTlsPositions() { return TLS_POSITIONS; }
+    public static Map<String, Point2D.Double> getTlsPositions() { return NETWORK.tlsPositions; }
 
-    public static Map<String, String> getTlsLabels() { return TLS_LABELS; }
+    public static Map<String, String> getTlsLabels() { return NETWORK.tlsLabels; }
 
+    // GUI: load Main.SUMOCFG_PATH's net and make it the one that is drawn
     public static void initBoundsFromFiles() {
+        initBoundsFromFiles(null);
+    }
+
+    // Same, drawn while it is read: every ROAD_BATCH lane shapes the part read so far is installed
+    // and onProgress runs (any thread; MapPanel.repaint is fine). TLS markers come with the last update.
+    public static Network initBoundsFromFiles(Runnable onProgress) {
+        Network net = loadNetwork(Main.SUMOCFG_PATH, onProgress == null ? null : partial -> {
+            NETWORK = partial;
+            onProgress.run();
+        });
+        NETWORK = net;
+        if (onProgress != null) onProgress.run();
+        return net;
+    }
+
+    public static Network loadNetwork(String sumocfgPath) {
+        return loadNetwork(sumocfgPath, null);
+    }
+
+    // One streaming pass over net.xml (bounds, lane shapes, TLS positions).
+    // partial != null receives growing prefixes of the road list (bounds already set) during the parse.
+    public static Network loadNetwork(String sumocfgPath, java.util.function.Consumer<Network> partial) {
         try {
-            String netPath = readNetFileFromSumocfg(Main.SUMOCFG_PATH);
-            if (netPath == null || netPath.isBlank()) netPath = "final.net.xml";
-            File netFile = resolveRelativeToSumocfg(netPath);
+            File netFile = netFileOf(sumocfgPath);
+            if (netFile == null || !netFile.exists()) {
+                Logging.LOG.warning("convBoundary not found; using fallback bounds.");
+                return Network.EMPTY;
+            }
+
+            NetHandler h = new NetHandler(partial);
+            SAXParserFactory spf = SAXParserFactory.newInstance();
+            spf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            spf.newSAXParser().parse(netFile, h);
 
-            Bounds b = readConvBoundaryFromNet(netFile);
+            Bounds b = h.bounds;
             if (b != null && b.sane()) {
-                NET_BOUNDS = addPadding(b, 0.03);
                 Logging.LOG.info("Map bounds loaded: " + netFile.getPath());
-                ROAD_GEOMS = loadRoadGeometriesFromNet(netFile);
-                TLS_POSITIONS = loadTlsPositionsFromNet(netFile);
-                TLS_LABELS = buildTlsLabels(TLS_POSITIONS.keySet());
-            } else {
-                Logging.LOG.warning("convBoundary not found; using fallback bounds.");
+                Logging.LOG.info("Road geometry loaded: " + h.roads.size() + " lane-shapes from " + netFile.getPath());
+                Map<String, Point2D.Double> tlsPositions = h.tlsPositions();
+                return new Network(addPadding(b, 0.03), h.roads, tlsPositions, buildTlsLabels(tlsPositions.keySet()));
             }
+            Logging.LOG.warning("convBoundary not found; using fallback bounds.");
         } catch (Exception e) {
             Logging.LOG.log(java.util.logging.Level.WARNING, "Bounds init failed; using fallback.", e);
         }
+        return Network.EMPTY;
     }
 
     private static Bounds addPadding(Bounds b, double frac) {
@@ -104,187 +154,143 @@ public final class MapVisualisation {
         return new Bounds(b.minX - dx, b.minY - dy, b.maxX + dx, b.maxY + dy);
     }
 
-    private static Bounds readConvBoundaryFromNet(File netFile) {
-        try {
-            if (netFile == null || !netFile.exists()) return null;
-
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            dbf.setExpandEntityReferences(false);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(netFile);
-            doc.getDocumentElement().normalize();
+    // ===================== net.xml (single SAX pass) =====================
+    // <location> comes first in SUMO nets, so bounds are known before the first lane.
+    // Connections / tlLogics are resolved against edges and junctions at the end (any order in the file).
+    private static final int ROAD_BATCH = 500;
+
+    private static final class NetHandler extends org.xml.sax.helpers.DefaultHandler {
+        private final java.util.function.Consumer<Network> partial;
+
+        Bounds bounds = null;
+        private boolean locationSeen = false;
+        final java.util.List<RoadGeom> roads = new java.util.ArrayList<>();
+
+        // current <edge>, null outside
+        private String edgeId = null;
+        private boolean edgeInternal = false;
+
+        private final Map<String, Point2D.Double> junctionPos = new HashMap<>();
+        private final Map<String, String> edgeToNode = new HashMap<>();
+        // (tl, from edge) of every <connection tl=...>, in file order
+        private final java.util.List<String[]> tlsConnections = new java.util.ArrayList<>();
+        private final java.util.List<String> tlLogicIds = new java.util.ArrayList<>();
+
+        NetHandler(java.util.function.Consumer<Network> partial) { this.partial = partial; }
+
+        @Override public void startElement(String uri, String localName, String qName, org.xml.sax.Attributes a) {
+            switch (qName) {
+                case "location": if (!locationSeen) { locationSeen = true; bounds = parseBoundary(attr(a, "convBoundary")); } break;
+                case "edge": startEdge(a); break;
+                case "lane": if (edgeId != null) lane(a); break;
+                case "junction": junction(a); break;
+                case "connection": {
+                    String tl = attr(a, "tl");
+                    String from = attr(a, "from");
+                    if (!tl.isBlank() && !from.isBlank()) tlsConnections.add(new String[]{tl.trim(), from.trim()});
+                    break;
+                }
+                case "tlLogic": {
+                    String id = attr(a, "id");
+                    if (!id.isBlank()) tlLogicIds.add(id.trim());
+                    break;
+                }
+                default: break;
+            }
+        }
 
-            NodeList locs = doc.getElementsByTagName("location");
-            if (locs.getLength() == 0) return null;
+        @Override public void endElement(String uri, String localName, String qName) {
+            if ("edge".equals(qName)) edgeId = null;
+        }
 
-            Element loc = (Element) locs.item(0);
-            String cb = loc.getAttribute("convBoundary");
-            if (cb == null || cb.isBlank()) return null;
+        // missing attribute -> "" (same as DOM getAttribute)
+        private static String attr(org.xml.sax.Attributes a, String name) {
+            String v = a.getValue(name);
+            return v == null ? "" : v;
+        }
 
+        private static Bounds parseBoundary(String cb) {
+            if (cb.isBlank()) return null;
             String[] p = cb.split(",");
             if (p.length != 4) return null;
-
-            double minX = Double.parseDouble(p[0].trim());
-            double minY = Double.parseDouble(p[1].trim());
-            double maxX = Double.parseDouble(p[2].trim());
-            double maxY = Double.parseDouble(p[3].trim());
-            return new Bounds(minX, minY, maxX, maxY);
-        } catch (Exception ex) {
-            Logging.LOG.log(java.util.logging.Level.WARNING, "Failed reading convBoundary from net.xml", ex);
-            return null;
+            try {
+                return new Bounds(Double.parseDouble(p[0].trim()), Double.parseDouble(p[1].trim()),
+                        Double.parseDouble(p[2].trim()), Double.parseDouble(p[3].trim()));
+            } catch (NumberFormatException ex) {
+                Logging.LOG.log(java.util.logging.Level.WARNING, "Failed reading convBoundary from net.xml", ex);
+                return null;
+            }
         }
-    }
 
-    private static java.util.List<RoadGeom> loadRoadGeometriesFromNet(File netFile) {
-        java.util.List<RoadGeom> out = new java.util.ArrayList<>();
-        try {
-            if (netFile == null || !netFile.exists()) return out;
+        private void startEdge(org.xml.sax.Attributes a) {
+            String id = attr(a, "id");
+            String fn = attr(a, "function");
+            edgeId = id;
+            edgeInternal = id.startsWith(":") || "internal".equalsIgnoreCase(fn);
 
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            dbf.setExpandEntityReferences(false);
+            // TLS position lookup: normal edges only
+            if (id.isBlank() || edgeInternal) return;
+            String to = attr(a, "to");
+            if (!to.isBlank()) edgeToNode.put(id.trim(), to.trim());
+        }
 
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(netFile);
-            doc.getDocumentElement().normalize();
+        private void lane(org.xml.sax.Attributes a) {
+            if (edgeInternal && !DRAW_INTERNAL_EDGES) return;
+            String idxStr = attr(a, "index");
+            if (!DRAW_ALL_LANES && !idxStr.isBlank() && !"0".equals(idxStr.trim())) return;
 
-            NodeList edges = doc.getElementsByTagName("edge");
-            for (int i = 0; i < edges.getLength(); i++) {
-                Node n = edges.item(i);
-                if (!(n instanceof Element)) continue;
-                Element edge = (Element) n;
-
-                String id = edge.getAttribute("id");
-                String fn = edge.getAttribute("function");
-                boolean internal = (id != null && id.startsWith(":")) || "internal".equalsIgnoreCase(fn);
-                if (internal && !DRAW_INTERNAL_EDGES) continue;
-
-                NodeList lanes = edge.getElementsByTagName("lane");
-                for (int j = 0; j < lanes.getLength(); j++) {
-                    Node ln = lanes.item(j);
-                    if (!(ln instanceof Element)) continue;
-                    Element lane = (Element) ln;
-
-                    if (!DRAW_ALL_LANES) {
-                        String idxStr = lane.getAttribute("index");
-                        if (idxStr != null && !idxStr.isBlank() && !"0".equals(idxStr.trim())) continue;
-                    }
+            String shape = attr(a, "shape");
+            if (shape.isBlank()) return;
 
-                    String shape = lane.getAttribute("shape");
-                    if (shape == null || shape.isBlank()) continue;
+            float w = 3.2f;
+            try {
+                String wStr = attr(a, "width");
+                if (!wStr.isBlank()) w = Float.parseFloat(wStr.trim());
+            } catch (Exception ignore) {}
 
-                    float w = 3.2f;
-                    try {
-                        String wStr = lane.getAttribute("width");
-                        if (wStr != null && !wStr.isBlank()) w = Float.parseFloat(wStr.trim());
-                    } catch (Exception ignore) {}
+            double[] xy = parseShape(shape);
 
-                    double[] xy = parseShape(shape);
+            int laneIndex = 0;
+            try {
+                if (!idxStr.isBlank()) laneIndex = Integer.parseInt(idxStr.trim());
+            } catch (Exception ignore) {}
 
-                    int laneIndex = 0;
-                    try {
-                        String idxStr2 = lane.getAttribute("index");
-                        if (idxStr2 != null && !idxStr2.isBlank()) laneIndex = Integer.parseInt(idxStr2.trim());
-                    } catch (Exception ignore) {}
+            if (xy.length < 4) return;
+            roads.add(new RoadGeom(edgeId, laneIndex, edgeInternal, w, xy));
 
-                    if (xy.length >= 4) out.add(new RoadGeom(id, laneIndex, internal, w, xy));
-                }
+            if (partial != null && roads.size() % ROAD_BATCH == 0 && bounds != null && bounds.sane()) {
+                partial.accept(new Network(addPadding(bounds, 0.03), new java.util.ArrayList<>(roads),
+                        java.util.Collections.emptyMap(), java.util.Collections.emptyMap()));
             }
-
-            Logging.LOG.info("Road geometry loaded: " + out.size() + " lane-shapes from " + netFile.getPath());
-        } catch (Exception e) {
-            Logging.LOG.log(java.util.logging.Level.WARNING, "Road geometry load failed; continuing without roads.", e);
         }
-        return out;
-    }
-
-    private static Map<String, Point2D.Double> loadTlsPositionsFromNet(File netFile) {
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(false);
-            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(netFile);
-            doc.getDocumentElement().normalize();
 
-            Map<String, Point2D.Double> junctionPos = new HashMap<>();
-            NodeList junctions = doc.getElementsByTagName("junction");
-            for (int i = 0; i < junctions.getLength(); i++) {
-                Node n = junctions.item(i);
-                if (!(n instanceof Element)) continue;
-                Element j = (Element) n;
-                String id = j.getAttribute("id");
-                String xs = j.getAttribute("x");
-                String ys = j.getAttribute("y");
-                if (id == null || id.isBlank() || xs == null || ys == null) continue;
-                try {
-                    double x = Double.parseDouble(xs.trim());
-                    double y = Double.parseDouble(ys.trim());
-                    junctionPos.put(id.trim(), new Point2D.Double(x, y));
-                } catch (Exception ignore) {}
-            }
-
-            Map<String, String> edgeToNode = new HashMap<>();
-            NodeList edges = doc.getElementsByTagName("edge");
-            for (int i = 0; i < edges.getLength(); i++) {
-                Node n = edges.item(i);
-                if (!(n instanceof Element)) continue;
-                Element e = (Element) n;
-                String id = e.getAttribute("id");
-                if (id == null || id.isBlank()) continue;
-
-                if (id.startsWith(":")) continue;
-                String func = e.getAttribute("function");
-                if (func != null && func.equalsIgnoreCase("internal")) continue;
-
-                String to = e.getAttribute("to");
-                if (to != null && !to.isBlank()) edgeToNode.put(id.trim(), to.trim());
-            }
+        private void junction(org.xml.sax.Attributes a) {
+            String id = attr(a, "id");
+            if (id.isBlank()) return;
+            try {
+                double x = Double.parseDouble(attr(a, "x").trim());
+                double y = Double.parseDouble(attr(a, "y").trim());
+                junctionPos.put(id.trim(), new Point2D.Double(x, y));
+            } catch (Exception ignore) {}
+        }
 
+        Map<String, Point2D.Double> tlsPositions() {
             Map<String, String> tlsToJunction = new LinkedHashMap<>();
-            NodeList conns = doc.getElementsByTagName("connection");
-            for (int i = 0; i < conns.getLength(); i++) {
-                Node n = conns.item(i);
-                if (!(n instanceof Element)) continue;
-                Element c = (Element) n;
-                String tl = c.getAttribute("tl");
-                if (tl == null || tl.isBlank()) continue;
-                tl = tl.trim();
-
-                String fromEdge = c.getAttribute("from");
-                if (fromEdge != null && !fromEdge.isBlank()) {
-                    String jId = edgeToNode.get(fromEdge.trim());
-                    if (jId != null && !jId.isBlank() && !tlsToJunction.containsKey(tl)) {
-                        tlsToJunction.put(tl, jId);
-                    }
-                }
+            for (String[] c : tlsConnections) {
+                String jId = edgeToNode.get(c[1]);
+                if (jId != null && !jId.isBlank() && !tlsToJunction.containsKey(c[0])) tlsToJunction.put(c[0], jId);
             }
-
-            NodeList tlLogics = doc.getElementsByTagName("tlLogic");
-            for (int i = 0; i < tlLogics.getLength(); i++) {
-                Node n = tlLogics.item(i);
-                if (!(n instanceof Element)) continue;
-                Element tl = (Element) n;
-                String id = tl.getAttribute("id");
-                if (id != null && !id.isBlank() && !tlsToJunction.containsKey(id.trim())) {
-                    tlsToJunction.put(id.trim(), id.trim());
-                }
+            for (String id : tlLogicIds) {
+                if (!tlsToJunction.containsKey(id)) tlsToJunction.put(id, id);
             }
 
             Map<String, Point2D.Double> out = new LinkedHashMap<>();
             for (Map.Entry<String, String> e : tlsToJunction.entrySet()) {
-                String tlsId = e.getKey();
-                String jId = e.getValue();
-                Point2D.Double p = junctionPos.get(jId);
-                if (p == null) p = junctionPos.get(tlsId);
-                if (p != null) out.put(tlsId, p);
+                Point2D.Double p = junctionPos.get(e.getValue());
+                if (p == null) p = junctionPos.get(e.getKey());
+                if (p != null) out.put(e.getKey(), p);
             }
-
             return out;
-        } catch (Exception ex) {
-            Logging.LOG.log(java.util.logging.Level.WARNING, "Failed to load TLS positions from net.xml: " + netFile.getPath(), ex);
-            return java.util.Collections.emptyMap();
         }
     }
 
@@ -297,23 +303,32 @@ public final class MapVisualisation {
         return out;
     }
 
+    // "x,y x,y ..." -> {x0,y0,x1,y1,...}; malformed points are skipped
     private static double[] parseShape(String shape) {
         String[] pts = shape.trim().split("\\s+");
-        java.util.List<Double> coords = new java.util.ArrayList<>(pts.length * 2);
+        double[] arr = new double[pts.length * 2];
+        int n = 0;
         for (String pt : pts) {
             String[] xy = pt.split(",");
             if (xy.length != 2) continue;
             try {
-                coords.add(Double.parseDouble(xy[0]));
-                coords.add(Double.parseDouble(xy[1]));
+                double x = Double.parseDouble(xy[0]);
+                double y = Double.parseDouble(xy[1]);
+                arr[n++] = x;
+                arr[n++] = y;
             } catch (Exception ignore) {}
         }
-        double[] arr = new double[coords.size()];
-        for (int i = 0; i < coords.size(); i++) arr[i] = coords.get(i);
-        return arr;
+        return n == arr.length ? arr : Arrays.copyOf(arr, n);
     }
 
     // ===================== SUMOCFG PARSING =====================
+    // net-file of the config (relative to it), final.net.xml when the config names none
+    static File netFileOf(String sumocfgPath) {
+        String netPath = readNetFileFromSumocfg(sumocfgPath);
+        if (netPath == null || netPath.isBlank()) netPath = "final.net.xml";
+        return resolveRelativeToSumocfg(sumocfgPath, netPath);
+    }
+
     private static String readNetFileFromSumocfg(String sumocfgPath) {
         try {
             File f = new File(sumocfgPath);
@@ -338,11 +353,11 @@ public final class MapVisualisation {
         return null;
     }
 
-    private static File resolveRelativeToSumocfg(String pathMaybeRelative) {
+    private static File resolveRelativeToSumocfg(String sumocfgPath, String pathMaybeRelative) {
         File f = new File(pathMaybeRelative);
         if (f.exists()) return f;
 
-        File cfg = new File(Main.SUMOCFG_PATH);
+        File cfg = new File(sumocfgPath);
         File baseDir = cfg.getParentFile();
         if (baseDir == null) baseDir = new File(".");
         File alt = new File(baseDir, pathMaybeRelative);
@@ -354,9 +369,12 @@ public final class MapVisualisation {
     // ===================== MapPanel (Zoom/Pan/Rotation + filter-aware) =====================
     public static class MapPanel extends JPanel {
 
-        private final Map<String, Point2D.Double> vehicles = new ConcurrentHashMap<>();
-        private final Map<String, String> vehicleTypes = new ConcurrentHashMap<>();
-        private final Map<String, Double> vehicleSpeeds = new ConcurrentHashMap<>();
+        // vehicles of the last applied frame, reused across frames (EDT only)
+        private int vehicleCount = 0;
+        private double[] vehX = new double[256];
+        private double[] vehY = new double[256];
+        private double[] vehSpeed = new double[256];
+        private byte[] vehType = new byte[256];
         private final Filter filter;
 
         private double viewZoom = 1.0;
@@ -508,11 +526,24 @@ public final class MapVisualisation {
             viewPanY = finalY - cy - ry;
         }
 
-        public void updateVehicles(Map<String, Point2D.Double> newPos, Map<String, String> newTypes, Map<String, Double> newSpeeds) {
-            vehicles.clear(); vehicleTypes.clear(); vehicleSpeeds.clear();
-            if (newPos != null) vehicles.putAll(newPos);
-            if (newTypes != null) vehicleTypes.putAll(newTypes);
-            if (newSpeeds != null) vehicleSpeeds.putAll(newSpeeds);
+        // EDT only. Copies what painting needs; the frame can be released afterwards.
+        void updateVehicles(VehicleFrame vf) {
+            int n = vf.size;
+            if (n > vehX.length) {
+                int cap = Math.max(n, vehX.length * 2);
+                vehX = new double[cap];
+                vehY = new double[cap];
+                vehSpeed = new double[cap];
+                vehType = new byte[cap];
+            }
+            System.arraycopy(vf.x, 0, vehX, 0, n);
+            System.arraycopy(vf.y, 0, vehY, 0, n);
+            System.arraycopy(vf.types, 0, vehType, 0, n);
+            for (int i = 0; i < n; i++) {
+                double sp = vf.speed[i];
+                vehSpeed[i] = Double.isNaN(sp) ? 0.0 : sp;
+            }
+            vehicleCount = n;
             repaint();
         }
 
@@ -568,7 +599,8 @@ public final class MapVisualisation {
         }
 
         private void drawRoads(Graphics2D g2, Bounds b) {
-            if (ROAD_GEOMS == null || ROAD_GEOMS.isEmpty()) return;
+            java.util.List<RoadGeom> roadGeoms = NETWORK.roadGeoms;
+            if (roadGeoms == null || roadGeoms.isEmpty()) return;
 
             double sc = currentScale(b);
 
@@ -578,7 +610,7 @@ public final class MapVisualisation {
             Color shoulder = new Color(0x2A2F36);
             Color marking = new Color(255,255,255,180);
 
-            for (RoadGeom rg : ROAD_GEOMS) {
+            for (RoadGeom rg : roadGeoms) {
                 if (!DRAW_INTERNAL_CONNECTORS && rg.internal) continue;
                 if (rg.xy.length < 4) continue;
 
@@ -591,7 +623,7 @@ public final class MapVisualisation {
                 g2.draw(path);
             }
 
-            for (RoadGeom rg : ROAD_GEOMS) {
+            for (RoadGeom rg : roadGeoms) {
                 if (!DRAW_INTERNAL_CONNECTORS && rg.internal) continue;
                 if (rg.xy.length < 4) continue;
 
@@ -604,7 +636,7 @@ public final class MapVisualisation {
                 g2.draw(path);
             }
 
-            for (RoadGeom rg : ROAD_GEOMS) {
+            for (RoadGeom rg : roadGeoms) {
                 if (!DRAW_INTERNAL_CONNECTORS && rg.internal) continue;
                 if (rg.xy.length < 4) continue;
 
@@ -618,7 +650,7 @@ public final class MapVisualisation {
             }
 
             if (DRAW_LANE_MARKINGS) {
-                for (RoadGeom rg : ROAD_GEOMS) {
+                for (RoadGeom rg : roadGeoms) {
                     if (rg.internal) continue;
                     if (rg.laneIndex != 0) continue;
                     if (rg.xy.length < 4) continue;
@@ -639,7 +671,8 @@ public final class MapVisualisation {
         }
 
         private void drawTlsMarkers(Graphics2D g2, Bounds b) {
-            Map<String, Point2D.Double> pos = TLS_POSITIONS;
+            Network net = NETWORK;
+            Map<String, Point2D.Double> pos = net.tlsPositions;
             if (pos == null || pos.isEmpty()) return;
 
             Font oldF = g2.getFont();
@@ -655,7 +688,7 @@ public final class MapVisualisation {
                 Point s = worldToScreen(p.x, p.y, b);
                 int sx = s.x, sy = s.y;
 
-                String tag = TLS_LABELS != null ? TLS_LABELS.getOrDefault(tlsId, tlsId) : tlsId;
+                String tag = net.tlsLabels != null ? net.tlsLabels.getOrDefault(tlsId, tlsId) : tlsId;
 
                 g2.setColor(new Color(255, 255, 255, 220));
                 g2.fillOval(sx - 5, sy - 5, 10, 10);
@@ -679,28 +712,35 @@ public final class MapVisualisation {
             g2.setFont(oldF);
         }
 
-        private void drawVehicle(Graphics2D g2, int sx, int sy, String type) {
-            g2.setColor(new Color(0,0,0,70));
+        private static final Color VEH_SHADOW = new Color(0, 0, 0, 70);
+        private static final Color VEH_WHEEL = new Color(0x111827);
+        private static final Color VEH_CAR = new Color(0xFB923C);
+        private static final Color VEH_TRUCK = new Color(0x94A3B8);
+        private static final Color VEH_TRUCK_CAB = new Color(0xFDE68A);
+        private static final Color VEH_BUS = new Color(0xFACC15);
+
+        private void drawVehicle(Graphics2D g2, int sx, int sy, byte type) {
+            g2.setColor(VEH_SHADOW);
             g2.fillOval(sx - 8, sy + 2, 16, 8);
 
-            if (Main.TYPE_CAR.equals(type)) {
-                g2.setColor(new Color(0xFB923C));
+            if (type == VehicleRegistry.TYPE_CAR) {
+                g2.setColor(VEH_CAR);
                 g2.fillRoundRect(sx - 7, sy - 5, 14, 10, 6, 6);
-                g2.setColor(new Color(0x111827));
+                g2.setColor(VEH_WHEEL);
                 g2.fillOval(sx - 6, sy + 4, 4, 4);
                 g2.fillOval(sx + 2, sy + 4, 4, 4);
-            } else if (Main.TYPE_TRUCK.equals(type)) {
-                g2.setColor(new Color(0x94A3B8));
+            } else if (type == VehicleRegistry.TYPE_TRUCK) {
+                g2.setColor(VEH_TRUCK);
                 g2.fillRoundRect(sx - 12, sy - 6, 24, 12, 4, 4);
-                g2.setColor(new Color(0xFDE68A));
+                g2.setColor(VEH_TRUCK_CAB);
                 g2.fillRoundRect(sx + 2, sy - 6, 10, 12, 3, 3);
-                g2.setColor(new Color(0x111827));
+                g2.setColor(VEH_WHEEL);
                 g2.fillOval(sx - 10, sy + 5, 4, 4);
                 g2.fillOval(sx + 6, sy + 5, 4, 4);
             } else {
-                g2.setColor(new Color(0xFACC15));
+                g2.setColor(VEH_BUS);
                 g2.fillRoundRect(sx - 14, sy - 6, 28, 12, 6, 6);
-                g2.setColor(new Color(0x111827));
+                g2.setColor(VEH_WHEEL);
                 g2.fillOval(sx - 12, sy + 5, 4, 4);
                 g2.fillOval(sx + 8, sy + 5, 4, 4);
             }
@@ -716,18 +756,29 @@ public final class MapVisualisation {
             drawRoads(g2, b);
             drawTlsMarkers(g2, b);
 
-            for (Map.Entry<String, Point2D.Double> e : vehicles.entrySet()) {
-                String id = e.getKey();
-                Point2D.Double p = e.getValue();
-                if (p == null) continue;
-
-                String type = vehicleTypes.getOrDefault(id, Main.TYPE_CAR);
-                double sp = vehicleSpeeds.getOrDefault(id, 0.0);
-
-                if (filter != null && !filter.allows(type, sp)) continue;
-
-                Point s = worldToScreen(p.x, p.y, b);
-                drawVehicle(g2, s.x, s.y, type);
+            // worldToScreen folded into one affine map, no objects per vehicle
+            double panelW = Math.max(1, getWidth());
+            double panelH = Math.max(1, getHeight());
+            double worldW = Math.max(1e-9, b.maxX - b.minX);
+            double worldH = Math.max(1e-9, b.maxY - b.minY);
+            double fit = Math.min(panelW / worldW, panelH / worldH);
+            double cx = getWidth() / 2.0, cy = getHeight() / 2.0;
+            double p = (panelW - worldW * fit) / 2.0 - b.minX * fit - cx;
+            double q = panelH - (panelH - worldH * fit) / 2.0 + b.minY * fit - cy;
+            double zc = viewZoom * Math.cos(viewRotationRad), zs = viewZoom * Math.sin(viewRotationRad);
+            double ax = zc * fit, bx = zs * fit, tx = cx + viewPanX + zc * p - zs * q;
+            double ay = zs * fit, by = -zc * fit, ty = cy + viewPanY + zs * p + zc * q;
+
+            for (int i = 0; i < vehicleCount; i++) {
+                double wx = vehX[i], wy = vehY[i];
+                if (Double.isNaN(wx) || Double.isNaN(wy)) continue;
+
+                byte type = vehType[i];
+                if (filter != null && !filter.allows(VehicleRegistry.typeName(type), vehSpeed[i])) continue;
+
+                int sx = (int) Math.round(ax * wx + bx * wy + tx);
+                int sy = (int) Math.round(ay * wx + by * wy + ty);
+                drawVehicle(g2, sx, sy, type);
             }
         }
     }
@@ -756,6 +807,16 @@ public final class MapVisualisation {
             repaint();
         }
 
+        // replay seek: the old samples belong to another point in time
+        public void clear() {
+            synchronized (this) {
+                avgWaitSec.clear();
+                throughputVph.clear();
+                congestion.clear();
+            }
+            repaint();
+        }
+
         private void push(java.util.List<Double> series, double v) {
             series.add(v);
             while (series.size() > maxPoints) series.remove(0);
@@ -854,4 +915,4 @@ public final class MapVisualisation {
         }
         return img;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
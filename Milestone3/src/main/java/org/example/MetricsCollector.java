@@ -0,0 +1,315 @@
+// ===================== MetricsCollector.java =====================
+package org.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.List;
+
+// Swing-free, TraCI-free metrics over published frames (GUI metrics stage and headless runner).
+public final class MetricsCollector {
+
+    public static final double LOG_EVERY_SIM_SECONDS = 0.5;
+
+    // ===================== Export-data log =====================
+    public static class MetricRow {
+        final String exportLocalTime;
+        final double simTime;
+        final int activeVehicles;
+        final int stoppedVehicles;
+        final double congestionIndex;
+        final double avgWaitSeconds;
+        final double meanSpeedMps;
+        final double throughputVph;
+        final int speedFactorUi;
+
+        final int visibleVehicles;
+        final int visibleCars;
+        final int visibleTrucks;
+        final int visibleBuses;
+
+        final boolean ruleBasedEnabled;
+
+        // p50 / p90 / p99 over the throughput window, all vehicles; -1 when there were no samples
+        final double[] waitPct;
+        final double[] travelPct;
+        final double[] speedPct;
+
+        MetricRow(String exportLocalTime, double simTime, int activeVehicles, int stoppedVehicles,
+                  double congestionIndex, double avgWaitSeconds, double meanSpeedMps,
+                  double throughputVph, int speedFactorUi,
+                  int visibleVehicles, int visibleCars, int visibleTrucks, int visibleBuses,
+                  boolean ruleBasedEnabled, double[] waitPct, double[] travelPct, double[] speedPct) {
+            this.exportLocalTime = exportLocalTime;
+            this.simTime = simTime;
+            this.activeVehicles = activeVehicles;
+            this.stoppedVehicles = stoppedVehicles;
+            this.congestionIndex = congestionIndex;
+            this.avgWaitSeconds = avgWaitSeconds;
+            this.meanSpeedMps = meanSpeedMps;
+            this.throughputVph = throughputVph;
+            this.speedFactorUi = speedFactorUi;
+            this.visibleVehicles = visibleVehicles;
+            this.visibleCars = visibleCars;
+            this.visibleTrucks = visibleTrucks;
+            this.visibleBuses = visibleBuses;
+            this.ruleBasedEnabled = ruleBasedEnabled;
+            this.waitPct = waitPct;
+            this.travelPct = travelPct;
+            this.speedPct = speedPct;
+        }
+    }
+
+    private final List<MetricRow> metricsLog = Collections.synchronizedList(new ArrayList<>());
+
+    // ---- sliding windows (WindowedStats series) ----
+    static final int SERIES_ARRIVALS = 0;
+    // per-frame mean speed / average wait
+    static final int SERIES_SPEED = 1;
+    static final int SERIES_WAIT = 2;
+    private final WindowedStats windows = WindowedStats.fromProperties(3, Main.THROUGHPUT_WINDOW_SEC);
+    // the window behind StepFrame.throughputVph
+    private final int throughputWindow = windows.indexOf(Main.THROUGHPUT_WINDOW_SEC);
+
+    // ---- quantiles (WindowedQuantiles series), same windows ----
+    // wait / travel: one sample per finished trip (arrived list), its total waiting and travel time;
+    // speed: every vehicle on the road, once per quantile slot (first frame of the slot), so a
+    // percentile is over vehicles on the road at those instants
+    static final int Q_WAIT = 0;
+    static final int Q_TRAVEL = 1;
+    static final int Q_SPEED = 2;
+    static final String[] Q_NAMES = {"wait", "travel", "speed"};
+    static final String[] Q_UNITS = {"s", "s", "m/s"};
+    static final double[] PERCENTILES = {0.50, 0.90, 0.99};
+    private final WindowedQuantiles quantiles = WindowedQuantiles.fromProperties(3, windows);
+
+    private double lastLoggedSimTime = -1.0;
+
+    // one instance for every frame (metrics stage / headless loop only)
+    private final StepFrame frame = new StepFrame();
+
+    public MetricsCollector() {}
+
+    // ===================== Per-frame update =====================
+    // Pure Java (no TraCI): safe to run on the metrics stage thread.
+    // filter == null: every vehicle counts as visible
+    // The returned StepFrame is reused: valid until the next onFrame() call.
+    public StepFrame onFrame(VehicleFrame vf, MapVisualisation.Filter filter) {
+        StepFrame f = frame;
+        f.simTime = vf.simTime;
+        f.sweep(vf, filter);
+
+        for (int i = 0; i < vf.arrivalCount; i++) windows.add(SERIES_ARRIVALS, vf.arrivalTimes[i], 1.0);
+        if (f.active > 0) {
+            windows.add(SERIES_SPEED, vf.simTime, f.meanSpeed);
+            if (f.avgWaitSec >= 0) windows.add(SERIES_WAIT, vf.simTime, f.avgWaitSec);
+        }
+        windows.advance(vf.simTime);
+
+        // NaN (not read) is skipped by the sketches
+        if (quantiles.opensSlot(vf.simTime)) {
+            for (int i = 0; i < vf.size; i++) quantiles.add(Q_SPEED, vf.types[i], vf.simTime, vf.speed[i]);
+        }
+        for (int i = 0; i < vf.tripCount; i++) {
+            quantiles.add(Q_TRAVEL, vf.tripTypes[i], vf.simTime, vf.tripTimes[i]);
+            quantiles.add(Q_WAIT, vf.tripTypes[i], vf.simTime, vf.tripWaits[i]);
+        }
+        quantiles.advance(vf.simTime);
+        f.throughputVph = windows.perHour(throughputWindow, SERIES_ARRIVALS);
+        return f;
+    }
+
+    // Windows as of the last onFrame(); same thread as onFrame().
+    WindowedStats windows() { return windows; }
+
+    WindowedQuantiles quantiles() { return quantiles; }
+
+    // p50 / p90 / p99 of series q in window w for group g, -1 when empty
+    private double[] percentiles(int w, int q, int g) {
+        double[] out = new double[PERCENTILES.length];
+        for (int i = 0; i < out.length; i++) {
+            double v = quantiles.quantile(w, q, g, PERCENTILES[i]);
+            out[i] = Double.isNaN(v) ? -1.0 : v;
+        }
+        return out;
+    }
+
+    // "p50/p90/p99 wait 1.0 / 12.5 / 48.0 s" (all vehicles, throughput window); same thread as onFrame()
+    public List<String> quantileSummary() {
+        List<String> out = new ArrayList<>(Q_NAMES.length);
+        for (int q = 0; q < Q_NAMES.length; q++) {
+            out.add(Q_NAMES[q] + " p50/p90/p99: "
+                    + formatPct(percentiles(throughputWindow, q, WindowedQuantiles.GROUP_ALL), Q_UNITS[q]));
+        }
+        return out;
+    }
+
+    // one line per window, series and group (types without samples left out); same thread as onFrame()
+    public List<String> quantileLines() {
+        List<String> out = new ArrayList<>();
+        for (int w = 0; w < quantiles.windows(); w++) {
+            for (int q = 0; q < Q_NAMES.length; q++) {
+                StringBuilder sb = new StringBuilder(String.format(Locale.US, "last %s %s p50/p90/p99: %s",
+                        WindowedStats.label(quantiles.windowSec(w)), Q_NAMES[q],
+                        formatPct(percentiles(w, q, WindowedQuantiles.GROUP_ALL), Q_UNITS[q])));
+                for (int g = 1; g < WindowedQuantiles.GROUPS; g++) {
+                    if (quantiles.count(w, q, g) == 0) continue;
+                    sb.append(" | ").append(VehicleRegistry.typeName((byte) (g - 1))).append(' ')
+                            .append(formatPct(percentiles(w, q, g), ""));
+                }
+                out.add(sb.toString());
+            }
+        }
+        return out;
+    }
+
+    static String formatPct(double[] p, String unit) {
+        if (p[0] < 0) return "N/A";
+        return String.format(Locale.US, "%.1f / %.1f / %.1f", p[0], p[1], p[2]) + (unit.isEmpty() ? "" : " " + unit);
+    }
+    // one line per window: throughput, mean speed (min..max), mean wait; same thread as onFrame()
+    public List<String> windowLines() {
+        List<String> out = new ArrayList<>(windows.windows());
+        for (int w = 0; w < windows.windows(); w++) {
+            String wait = windows.count(w, SERIES_WAIT) == 0 ? "N/A"
+                    : String.format(Locale.US, "%.1f s", windows.mean(w, SERIES_WAIT));
+            String speed = windows.count(w, SERIES_SPEED) == 0 ? "N/A"
+                    : String.format(Locale.US, "%.2f m/s (%.2f..%.2f)", windows.mean(w, SERIES_SPEED),
+                    windows.min(w, SERIES_SPEED), windows.max(w, SERIES_SPEED));
+            out.add(String.format(Locale.US, "last %s: throughput %.1f v/h | mean speed %s | avg wait %s",
+                    WindowedStats.label(windows.windowSec(w)), windows.perHour(w, SERIES_ARRIVALS), speed, wait));
+        }
+        return out;
+    }
+
+    public boolean logDue(double simTime) {
+        return lastLoggedSimTime < 0 || (simTime - lastLoggedSimTime) >= LOG_EVERY_SIM_SECONDS;
+    }
+
+    public MetricRow log(StepFrame f, int speedFactorUi, boolean ruleBasedEnabled) {
+        lastLoggedSimTime = f.simTime;
+        MetricRow row = new MetricRow(
+                Logging.nowTag(), f.simTime, f.active, f.stopped, f.congestion,
+                f.avgWaitSec, f.meanSpeed, f.throughputVph, speedFactorUi,
+                f.visible, f.visCar, f.visTruck, f.visBus,
+                ruleBasedEnabled,
+                percentiles(throughputWindow, Q_WAIT, WindowedQuantiles.GROUP_ALL),
+                percentiles(throughputWindow, Q_TRAVEL, WindowedQuantiles.GROUP_ALL),
+                percentiles(throughputWindow, Q_SPEED, WindowedQuantiles.GROUP_ALL)
+        );
+        metricsLog.add(row);
+        return row;
+    }
+
+    public List<MetricRow> rows() {
+        synchronized (metricsLog) { return new ArrayList<>(metricsLog); }
+    }
+
+    // ===================== Run KPIs =====================
+    // One line per run for sweep / runner result tables.
+    public static final class Kpis {
+        public static final String[] COLUMNS = {
+                "rows", "mean_congestion", "mean_wait_s", "mean_speed_mps",
+                "mean_throughput_vph", "final_throughput_vph", "peak_active"
+        };
+
+        int rows;
+        double meanCongestion;
+        // -1 when waiting time was never available
+        double meanWaitSec = -1.0;
+        double meanSpeedMps;
+        double meanThroughputVph;
+        double finalThroughputVph;
+        int peakActive;
+
+        // values in COLUMNS order, formatted for CSV
+        public String[] values() {
+            return new String[]{
+                    String.valueOf(rows),
+                    String.format(Locale.US, "%.4f", meanCongestion),
+                    String.format(Locale.US, "%.3f", meanWaitSec),
+                    String.format(Locale.US, "%.3f", meanSpeedMps),
+                    String.format(Locale.US, "%.2f", meanThroughputVph),
+                    String.format(Locale.US, "%.2f", finalThroughputVph),
+                    String.valueOf(peakActive)
+            };
+        }
+    }
+
+    public static Kpis kpis(List<MetricRow> rows) {
+        Kpis k = new Kpis();
+        k.rows = rows.size();
+        if (rows.isEmpty()) return k;
+
+        double cong = 0.0, speed = 0.0, thr = 0.0, wait = 0.0;
+        int waitCnt = 0;
+        for (MetricRow r : rows) {
+            cong += r.congestionIndex;
+            speed += r.meanSpeedMps;
+            thr += r.throughputVph;
+            if (r.avgWaitSeconds >= 0) { wait += r.avgWaitSeconds; waitCnt++; }
+            if (r.activeVehicles > k.peakActive) k.peakActive = r.activeVehicles;
+        }
+        k.meanCongestion = cong / rows.size();
+        k.meanSpeedMps = speed / rows.size();
+        k.meanThroughputVph = thr / rows.size();
+        k.meanWaitSec = waitCnt == 0 ? -1.0 : wait / waitCnt;
+        k.finalThroughputVph = rows.get(rows.size() - 1).throughputVph;
+        return k;
+    }
+
+    // ===================== Warm start (WarmStart sidecar) =====================
+    // Only the sliding windows, quantiles and the log cadence; rows of the saved session stay in its export.
+    // Metrics stage thread (or after the pipeline went idle).
+    void writeState(DataOutput out) throws IOException {
+        out.writeDouble(lastLoggedSimTime);
+        windows.writeState(out);
+        quantiles.writeState(out);
+    }
+
+    // before the first frame; the windows must be configured as when saving (-Dsumo.metrics.*)
+    void readState(DataInput in) throws IOException {
+        lastLoggedSimTime = in.readDouble();
+        windows.readState(in);
+        quantiles.readState(in);
+    }
+
+    // ===================== CSV =====================
+    static String csvEscape(String s) {
+        if (s == null) return "";
+        boolean needs = s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r");
+        String t = s.replace("\"", "\"\"");
+        return needs ? ("\"" + t + "\"") : t;
+    }
+
+    public static void writeCsv(File file, List<MetricRow> rows, String selectedRouteName, double minSpeedFilterMps)
+            throws IOException {
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            pw.println("export_local_time,sim_time,active_vehicles,stopped_vehicles,congestion_index,avg_wait_seconds,mean_speed_mps,throughput_vph,speed_factor_ui,selected_route,visible_vehicles,visible_cars,visible_trucks,visible_buses,min_speed_filter_mps,rule_based_enabled,"
+                    + "wait_p50_s,wait_p90_s,wait_p99_s,travel_p50_s,travel_p90_s,travel_p99_s,"
+                    + "speed_p50_mps,speed_p90_mps,speed_p99_mps");
+            for (MetricRow r : rows) {
+                pw.print(csvEscape(r.exportLocalTime)); pw.print(",");
+                pw.print(String.format(Locale.US, "%.2f", r.simTime)); pw.print(",");
+                pw.print(r.activeVehicles); pw.print(",");
+                pw.print(r.stoppedVehicles); pw.print(",");
+                pw.print(String.format(Locale.US, "%.4f", r.congestionIndex)); pw.print(",");
+                pw.print(String.format(Locale.US, "%.3f", r.avgWaitSeconds)); pw.print(",");
+                pw.print(String.format(Locale.US, "%.3f", r.meanSpeedMps)); pw.print(",");
+                pw.print(String.format(Locale.US, "%.2f", r.throughputVph)); pw.print(",");
+                pw.print(r.speedFactorUi); pw.print(",");
+                pw.print(csvEscape(selectedRouteName)); pw.print(",");
+                pw.print(r.visibleVehicles); pw.print(",");
+                pw.print(r.visibleCars); pw.print(",");
+                pw.print(r.visibleTrucks); pw.print(",");
+                pw.print(r.visibleBuses); pw.print(",");
+                pw.print(String.format(Locale.US, "%.2f", minSpeedFilterMps)); pw.print(",");
+                pw.print(r.ruleBasedEnabled ? "1" : "0");
+                for (double[] pct : new double[][]{r.waitPct, r.travelPct, r.speedPct}) {
+                    for (double v : pct) { pw.print(","); pw.print(String.format(Locale.US, "%.1f", v)); }
+                }
+                pw.println();
+            }
+            if (pw.checkError()) throw new IOException("write failed: " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,370 @@
+// ===================== ParameterSweep.java =====================
+package org.example;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+
+// Headless parameter sweep over any headless option that takes a value
+// (rule-stop, rule-go, branch-split, long-tries, steps-per-sample, duration, ...).
+//
+//   java -jar app.jar --sweep --scenario final.sumocfg
+//        --param rule-stop=4,6,8 --param rule-go=8,12,16
+//        --param branch-split=0.3/0.4/0.2/0.1,0.25/0.25/0.25/0.25
+//        [--random N] [--replicates 3] [--base-seed 42]
+//        [--mode process|thread] [--parallel N] [--out-dir sweep]
+//        [headless options shared by every run, e.g. --duration 1800 --rule-tls --inject ...]
+//
+// Design: full grid of the listed values, or with --random N, N points drawn with the base
+// seed (a "lo..hi" value is only allowed there and is sampled uniformly). The design only
+// depends on the arguments, so a rerun with the same arguments yields the same run ids.
+//
+// Seeding: replicate r of every point uses seed base+r (SUMO --seed and the injection RNG),
+// so points are compared on the same random streams.
+//
+// Resume: every finished run is appended to <out-dir>/sweep_results.csv right away; a rerun
+// skips run ids that already have an "ok" row. <out-dir>/sweep_points.csv holds the
+// per-point means over replicates.
+public final class ParameterSweep {
+
+    static final String RESULTS_FILE = "sweep_results.csv";
+    static final String POINTS_FILE = "sweep_points.csv";
+
+    // ===================== Options =====================
+    static final class SweepOptions {
+        String scenario = Main.SUMOCFG_PATH;
+        int randomPoints = 0; // 0 = full grid
+        int replicates = 1;
+        long baseSeed = 42L;
+        // name -> values as given ("4", "0.3/0.4/0.2/0.1", "4..10")
+        final LinkedHashMap<String, List<String>> params = new LinkedHashMap<>();
+        // passed on to the runner (mode, parallel, out-dir) and to every run (headless options)
+        final List<String> runnerArgs = new ArrayList<>();
+    }
+
+    static SweepOptions parseArgs(String[] args) throws Main.Milestone3Exception {
+        SweepOptions o = new SweepOptions();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            switch (a) {
+                case "--sweep": break;
+                case "--scenario": o.scenario = value(args, ++i, a); break;
+                case "--random": o.randomPoints = (int) number(value(args, ++i, a), a); break;
+                case "--replicates": o.replicates = (int) number(value(args, ++i, a), a); break;
+                case "--base-seed": o.baseSeed = (long) number(value(args, ++i, a), a); break;
+                case "--param": addParam(o, value(args, ++i, a)); break;
+                case "--seed":
+                    throw new Main.Milestone3Exception("--seed is set per run by the sweep (use --base-seed)");
+                default:
+                    o.runnerArgs.add(a);
+            }
+        }
+        if (o.params.isEmpty()) throw new Main.Milestone3Exception("--sweep needs at least one --param name=v1,v2,...");
+        if (o.replicates < 1) throw new Main.Milestone3Exception("--replicates must be >= 1");
+        if (o.randomPoints < 0) throw new Main.Milestone3Exception("--random must be >= 0");
+        return o;
+    }
+
+    private static void addParam(SweepOptions o, String spec) throws Main.Milestone3Exception {
+        int eq = spec.indexOf('=');
+        if (eq <= 0 || eq == spec.length() - 1) throw new Main.Milestone3Exception("Bad --param (want name=v1,v2,...): " + spec);
+        String name = spec.substring(0, eq).trim().replaceFirst("^--", "");
+        if (name.equals("scenario") || name.equals("seed") || name.equals("label") || name.endsWith("-out")) {
+            throw new Main.Milestone3Exception("--param " + name + " cannot be swept");
+        }
+        List<String> values = new ArrayList<>();
+        for (String v : spec.substring(eq + 1).split(",")) if (!v.isBlank()) values.add(v.trim());
+        if (values.isEmpty()) throw new Main.Milestone3Exception("--param " + name + " has no values");
+        if (o.params.put(name, values) != null) throw new Main.Milestone3Exception("--param " + name + " given twice");
+    }
+
+    private static String value(String[] args, int i, String opt) throws Main.Milestone3Exception {
+        if (i >= args.length) throw new Main.Milestone3Exception("Missing value for " + opt);
+        return args[i];
+    }
+
+    private static double number(String s, String opt) throws Main.Milestone3Exception {
+        try { return Double.parseDouble(s.trim()); }
+        catch (NumberFormatException ex) { throw new Main.Milestone3Exception("Not a number for " + opt + ": " + s); }
+    }
+
+    // ===================== Design =====================
+    // one design point: param name -> value (as passed to the headless option)
+    static final class Point {
+        final int index;
+        final LinkedHashMap<String, String> values;
+        Point(int index, LinkedHashMap<String, String> values) { this.index = index; this.values = values; }
+
+        List<String> args() {
+            List<String> out = new ArrayList<>();
+            for (Map.Entry<String, String> e : values.entrySet()) { out.add("--" + e.getKey()); out.add(e.getValue()); }
+            return out;
+        }
+    }
+
+    static List<Point> design(SweepOptions o) throws Main.Milestone3Exception {
+        List<String> names = new ArrayList<>(o.params.keySet());
+        boolean hasRange = false;
+        long gridSize = 1;
+        for (List<String> vs : o.params.values()) {
+            for (String v : vs) if (isRange(v)) hasRange = true;
+            gridSize *= vs.size();
+        }
+        if (hasRange && o.randomPoints == 0) {
+            throw new Main.Milestone3Exception("lo..hi values need --random N");
+        }
+
+        List<Point> out = new ArrayList<>();
+        if (!hasRange && (o.randomPoints == 0 || o.randomPoints >= gridSize)) {
+            int[] idx = new int[names.size()];
+            for (int p = 0; p < gridSize; p++) {
+                LinkedHashMap<String, String> values = new LinkedHashMap<>();
+                for (int k = 0; k < names.size(); k++) values.put(names.get(k), o.params.get(names.get(k)).get(idx[k]));
+                out.add(new Point(p, values));
+                // odometer: last parameter varies fastest
+                for (int k = names.size() - 1; k >= 0; k--) {
+                    if (++idx[k] < o.params.get(names.get(k)).size()) break;
+                    idx[k] = 0;
+                }
+            }
+            return out;
+        }
+
+        Random rnd = new Random(o.baseSeed);
+        Set<String> seen = new HashSet<>();
+        int attempts = 0;
+        while (out.size() < o.randomPoints && attempts++ < o.randomPoints * 100) {
+            LinkedHashMap<String, String> values = new LinkedHashMap<>();
+            for (String n : names) {
+                List<String> vs = o.params.get(n);
+                values.put(n, sample(vs.get(rnd.nextInt(vs.size())), rnd));
+            }
+            if (seen.add(values.toString())) out.add(new Point(out.size(), values));
+        }
+        return out;
+    }
+
+    private static boolean isRange(String v) {
+        return v.contains("..");
+    }
+
+    private static String sample(String v, Random rnd) throws Main.Milestone3Exception {
+        if (!isRange(v)) return v;
+        String[] p = v.split("\\.\\.", 2);
+        double lo = number(p[0], v), hi = number(p[1], v);
+        if (!(hi >= lo)) throw new Main.Milestone3Exception("Bad range (lo..hi): " + v);
+        boolean integers = !p[0].contains(".") && !p[1].contains(".");
+        if (integers) return String.valueOf((long) lo + (long) Math.floor(rnd.nextDouble() * ((long) hi - (long) lo + 1)));
+        return String.format(Locale.US, "%.3f", lo + rnd.nextDouble() * (hi - lo));
+    }
+
+    static String runId(Point p, int replicate) {
+        return String.format(Locale.US, "p%04d_r%d", p.index, replicate);
+    }
+
+    // ===================== Run =====================
+    private final SweepOptions opt;
+    private final SimulationRunner runner;
+    private final SimulationRunner.RunnerOptions runnerOpt;
+    private final List<String> paramNames;
+    private final List<String> header;
+
+    ParameterSweep(SweepOptions opt) throws Main.Milestone3Exception {
+        this.opt = opt;
+        List<String> ra = new ArrayList<>(opt.runnerArgs);
+        ra.add("--scenario"); ra.add(opt.scenario);
+        if (!ra.contains("--out-dir")) { ra.add("--out-dir"); ra.add("sweep"); }
+        this.runnerOpt = SimulationRunner.parseArgs(ra.toArray(new String[0]));
+        this.runner = new SimulationRunner(runnerOpt);
+        this.paramNames = new ArrayList<>(opt.params.keySet());
+
+        header = new ArrayList<>(Arrays.asList("run_id", "point", "replicate", "seed"));
+        header.addAll(paramNames);
+        header.addAll(Arrays.asList("status", "wall_s"));
+        header.addAll(Arrays.asList(SimulationRunner.RUN_KPI_COLUMNS));
+    }
+
+    void run() throws Exception {
+        runner.ensureOutDir();
+        File results = new File(runnerOpt.outDir, RESULTS_FILE);
+
+        List<Point> points = design(opt);
+        // every point must be a valid headless command line before anything starts
+        for (Point p : points) {
+            List<String> args = new ArrayList<>(runnerOpt.headlessArgs);
+            args.addAll(p.args());
+            HeadlessRunner.parseArgs(args.toArray(new String[0]));
+        }
+
+        Map<String, List<String>> previous = readResults(results);
+        List<SimulationRunner.Job> jobs = new ArrayList<>();
+        Map<String, Point> pointOf = new HashMap<>();
+        Map<String, Integer> replicateOf = new HashMap<>();
+        int skipped = 0;
+
+        for (Point p : points) {
+            for (int r = 0; r < opt.replicates; r++) {
+                String id = runId(p, r);
+                List<String> prev = previous.get(id);
+                if (prev != null) {
+                    if (!prev.subList(4, 4 + paramNames.size()).equals(new ArrayList<>(p.values.values()))) {
+                        throw new Main.Milestone3Exception(results.getPath() + " was written by a different design ("
+                                + id + "); use another --out-dir");
+                    }
+                    if ("ok".equals(prev.get(4 + paramNames.size()))) { skipped++; continue; }
+                }
+                List<String> args = new ArrayList<>(p.args());
+                args.add("--seed"); args.add(String.valueOf(opt.baseSeed + r));
+                jobs.add(new SimulationRunner.Job(id, opt.scenario, args));
+                pointOf.put(id, p);
+                replicateOf.put(id, r);
+            }
+        }
+
+        // the runner sizes the pool for one scenario; here it is the number of runs left
+        if (!opt.runnerArgs.contains("--parallel")) runnerOpt.parallel = SimulationRunner.defaultParallelism(jobs.size());
+
+        Logging.LOG.info("Sweep: " + points.size() + " point(s) x " + opt.replicates + " replicate(s), "
+                + skipped + " already done, " + jobs.size() + " to run (mode=" + runnerOpt.mode
+                + ", parallel=" + runnerOpt.parallel + ")");
+
+        if (!results.exists()) appendLine(results, String.join(",", header));
+
+        long wallStart = System.nanoTime();
+        List<SimulationRunner.Outcome> outcomes = runner.executeAll(jobs, oc -> {
+            Point p = pointOf.get(oc.job.label);
+            int r = replicateOf.get(oc.job.label);
+            List<String> cells = new ArrayList<>(Arrays.asList(
+                    oc.job.label, String.valueOf(p.index), String.valueOf(r), String.valueOf(opt.baseSeed + r)));
+            for (String n : paramNames) cells.add(MetricsCollector.csvEscape(p.values.get(n)));
+            cells.add(MetricsCollector.csvEscape(oc.status));
+            cells.add(String.format(Locale.US, "%.3f", oc.wallSec));
+            cells.addAll(SimulationRunner.kpiCells(oc));
+            try {
+                appendLine(results, String.join(",", cells));
+            } catch (IOException ex) {
+                Logging.LOG.log(java.util.logging.Level.SEVERE, "Could not record " + oc.job.label, ex);
+            }
+        });
+
+        int failed = 0;
+        for (SimulationRunner.Outcome oc : outcomes) if (!oc.ok()) failed++;
+
+        File pointsFile = new File(runnerOpt.outDir, POINTS_FILE);
+        writePointMeans(pointsFile, points, readResults(results));
+        Logging.LOG.info(String.format(Locale.US, "Sweep finished in %.1f s: %d run(s), %d failed. Results: %s, %s",
+                (System.nanoTime() - wallStart) / 1e9, outcomes.size(), failed,
+                results.getAbsolutePath(), pointsFile.getAbsolutePath()));
+        if (failed > 0) System.exit(1);
+    }
+
+    // ===================== Results file =====================
+    // one append per finished run, so a crash loses at most the line being written
+    private static synchronized void appendLine(File f, String line) throws IOException {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(f, true), StandardCharsets.UTF_8)) {
+            w.write(line);
+            w.write(System.lineSeparator());
+        }
+    }
+
+    // run_id -> cells; later rows win (a retried run appends a new row), broken lines are ignored
+    private Map<String, List<String>> readResults(File f) throws IOException, Main.Milestone3Exception {
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        if (!f.isFile()) return out;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String first = br.readLine();
+            if (first == null) return out;
+            if (!splitCsv(first).equals(header)) {
+                throw new Main.Milestone3Exception(f.getPath() + " has different columns; use another --out-dir");
+            }
+            String line;
+            while ((line = br.readLine()) != null) {
+                List<String> cells = splitCsv(line);
+                if (cells.size() != header.size()) continue;
+                out.put(cells.get(0), cells);
+            }
+        }
+        return out;
+    }
+
+    static List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') { cur.append('"'); i++; }
+                else if (c == '"') quoted = false;
+                else cur.append(c);
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+
+    // ===================== Per-point means =====================
+    private void writePointMeans(File file, List<Point> points, Map<String, List<String>> rows) throws IOException {
+        int firstKpi = 4 + paramNames.size() + 2;
+        List<String> kpiNames = header.subList(firstKpi, header.size());
+
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            List<String> h = new ArrayList<>(Collections.singletonList("point"));
+            h.addAll(paramNames);
+            h.add("ok_runs");
+            for (String k : kpiNames) if (!k.equals("stop_reason")) h.add("mean_" + k.replaceFirst("^mean_", ""));
+            pw.println(String.join(",", h));
+
+            for (Point p : points) {
+                int okRuns = 0;
+                double[] sum = new double[kpiNames.size()];
+                int[] cnt = new int[kpiNames.size()];
+                for (int r = 0; r < opt.replicates; r++) {
+                    List<String> row = rows.get(runId(p, r));
+                    if (row == null || !"ok".equals(row.get(4 + paramNames.size()))) continue;
+                    okRuns++;
+                    for (int k = 0; k < kpiNames.size(); k++) {
+                        try {
+                            double v = Double.parseDouble(row.get(firstKpi + k));
+                            // -1 marks "not available" (waiting time)
+                            if (v >= 0) { sum[k] += v; cnt[k]++; }
+                        } catch (NumberFormatException ignored) {}
+                    }
+                }
+
+                List<String> cells = new ArrayList<>(Collections.singletonList(String.valueOf(p.index)));
+                for (String n : paramNames) cells.add(MetricsCollector.csvEscape(p.values.get(n)));
+                cells.add(String.valueOf(okRuns));
+                for (int k = 0; k < kpiNames.size(); k++) {
+                    if (kpiNames.get(k).equals("stop_reason")) continue;
+                    cells.add(cnt[k] == 0 ? "" : String.format(Locale.US, "%.4f", sum[k] / cnt[k]));
+                }
+                pw.println(String.join(",", cells));
+            }
+        }
+    }
+
+    // ===================== Entry =====================
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            SweepOptions o = parseArgs(args);
+            Main.validateScenario(o.scenario);
+            new ParameterSweep(o).run();
+        } catch (Main.Milestone3Exception ex) {
+            Logging.LOG.severe("Sweep setup error: " + ex.getMessage());
+            System.exit(2);
+        } catch (Exception ex) {
+            Logging.LOG.log(java.util.logging.Level.SEVERE, "Sweep failed", ex);
+            System.exit(1);
+        }
+    }
+}
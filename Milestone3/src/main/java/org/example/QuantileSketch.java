@@ -0,0 +1,101 @@
+// ===================== QuantileSketch.java =====================
+package org.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Streaming quantiles of non-negative doubles (seconds, m/s) in a fixed array: values are rounded to
+// UNIT and counted in LatencyHistogram's log-linear buckets, so every quantile is within 1/32 (~3 %)
+// of the true one (exact below 32 units), whatever the number of samples. Sketches merge and
+// unmerge by adding / subtracting counts, which is what the sliding windows do (WindowedQuantiles).
+// Not thread-safe: one owner thread.
+final class QuantileSketch {
+
+    // resolution of the rounded values (0.1 s, 0.1 m/s)
+    static final double UNIT = 0.1;
+    // values are clamped below 2^21 units (~58 h / ~210 km/s)
+    private static final long MAX_UNITS = (1L << 21) - 1;
+    static final int BUCKETS = LatencyHistogram.index(MAX_UNITS) + 1;
+
+    private final int[] counts = new int[BUCKETS];
+    private long total = 0;
+
+    // NaN / infinite / negative values are ignored
+    void add(double v) {
+        int i = index(v);
+        if (i < 0) return;
+        counts[i]++;
+        total++;
+    }
+
+    // -1 when the value is not recorded
+    static int index(double v) {
+        if (!(v >= 0) || Double.isInfinite(v)) return -1;
+        return LatencyHistogram.index(Math.min(MAX_UNITS, Math.round(v / UNIT)));
+    }
+
+    void add(int bucket) {
+        counts[bucket]++;
+        total++;
+    }
+
+    void merge(QuantileSketch o) {
+        for (int i = 0; i < BUCKETS; i++) counts[i] += o.counts[i];
+        total += o.total;
+    }
+
+    // o must have been merged into this before
+    void subtract(QuantileSketch o) {
+        if (o.total == 0) return;
+        for (int i = 0; i < BUCKETS; i++) counts[i] -= o.counts[i];
+        total -= o.total;
+    }
+
+    void clear() {
+        if (total == 0) return;
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    long count() { return total; }
+
+    // q in [0,1]; NaN when empty. Reports the bucket's upper bound, like LatencyHistogram.
+    double quantile(double q) {
+        if (total == 0) return Double.NaN;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return LatencyHistogram.upperBound(i) * UNIT;
+        }
+        return LatencyHistogram.upperBound(BUCKETS - 1) * UNIT;
+    }
+
+    // ===================== State (WarmStart sidecar) =====================
+    // sparse: non-empty buckets only
+    void writeState(DataOutput out) throws IOException {
+        int nonEmpty = 0;
+        for (int c : counts) if (c != 0) nonEmpty++;
+        out.writeInt(nonEmpty);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] == 0) continue;
+            out.writeShort(i);
+            out.writeInt(counts[i]);
+        }
+    }
+
+    void readState(DataInput in) throws IOException {
+        Arrays.fill(counts, 0);
+        total = 0;
+        int n = in.readInt();
+        for (int k = 0; k < n; k++) {
+            int i = in.readUnsignedShort();
+            int c = in.readInt();
+            if (i >= BUCKETS) throw new IOException("quantile bucket out of range: " + i);
+            counts[i] = c;
+            total += c;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+// ===================== ReplayPlayer.java =====================
+package org.example;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.util.Locale;
+
+// --replay <file>: plays a FrameRecording into the same FrameView the live loop feeds.
+// No SUMO involved; speed / max speed / pause / seek come from the UI, pacing reuses SimPacer.
+public final class ReplayPlayer implements Runnable {
+
+    // called on the EDT
+    public interface Listener {
+        void position(double simTime);
+        void playing(boolean on);
+    }
+
+    private static final long IDLE_SLEEP_MS = 30;
+
+    private final FrameRecording recording;
+    private final FrameView view;
+    private final Listener listener;
+    private final Runnable onStopped;
+
+    private final SimPacer pacer = new SimPacer(GUI.RTF_PER_SPEED_STEP);
+
+    private volatile boolean running = true;
+    private volatile boolean playing = false;
+    private volatile double seekTo = Double.NaN;
+    private volatile String selectedTls = null;
+    private volatile boolean refresh = false;
+    private volatile boolean atEnd = false;
+
+    // replay-thread state
+    private FrameRecording.Frame current = null;
+    private double lastTrendTime = -1.0;
+
+    public ReplayPlayer(FrameRecording recording, FrameView view, Listener listener, Runnable onStopped) {
+        this.recording = recording;
+        this.view = view;
+        this.listener = listener;
+        this.onStopped = onStopped;
+        // position follows what the view actually shows, at its refresh rate
+        view.setOnShown(listener::position);
+        new Thread(this, "Replay-Thread").start();
+    }
+
+    public FrameRecording recording() { return recording; }
+
+    // play at the end starts over
+    public void setPlaying(boolean on) {
+        if (on && atEnd) seekTo = recording.startTime();
+        playing = on;
+        pacer.reset();
+        Logging.LOG.info("Replay " + (on ? "PLAY" : "PAUSE"));
+    }
+
+    public boolean isPlaying() { return playing; }
+
+    public void setTargetRtf(double rtf) { pacer.setTargetRtf(rtf); }
+
+    public void setMaxSpeed(boolean on) { pacer.setMaxSpeed(on); }
+
+    public void seek(double simTime) { seekTo = simTime; }
+
+    // TLS whose recorded state goes into the TL label
+    public void setSelectedTls(String tlsId) {
+        selectedTls = tlsId;
+        refresh = true;
+    }
+
+    public void stop() { running = false; Logging.LOG.info("Replay STOP pressed."); }
+
+    // ===================== Replay loop =====================
+    @Override public void run() {
+        try {
+            seekTo = recording.startTime();
+
+            while (running) {
+                double target = seekTo;
+                if (!Double.isNaN(target)) {
+                    seekTo = Double.NaN;
+                    atEnd = false;
+                    recording.seek(target);
+                    view.clearTrend();
+                    lastTrendTime = -1.0;
+                    pacer.reset();
+                    FrameRecording.Frame f = recording.next();
+                    if (f != null) {
+                        current = f;
+                        show(f);
+                    }
+                    continue;
+                }
+                if (refresh) {
+                    refresh = false;
+                    if (current != null) show(current);
+                }
+                if (!playing) {
+                    Thread.sleep(IDLE_SLEEP_MS);
+                    pacer.reset();
+                    continue;
+                }
+
+                FrameRecording.Frame f = recording.next();
+                if (f == null) {
+                    atEnd = true;
+                    playing = false;
+                    SwingUtilities.invokeLater(() -> listener.playing(false));
+                    Logging.LOG.info("Replay reached the end of " + recording.scenario());
+                    if (current != null) show(current);
+                    continue;
+                }
+                current = f;
+                double simTime = f.vehicles.simTime;
+
+                // same cadence as the live trend chart
+                if (lastTrendTime < 0 || simTime - lastTrendTime >= MetricsCollector.LOG_EVERY_SIM_SECONDS) {
+                    lastTrendTime = simTime;
+                    view.addTrendSample(f.metrics);
+                }
+                if (pacer.frameDue(simTime)) show(f);
+
+                pacer.awaitDeadline(simTime);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            Logging.LOG.log(java.util.logging.Level.SEVERE, "Replay failed", ex);
+        } finally {
+            try { recording.close(); } catch (IOException ignored) {}
+            if (onStopped != null) SwingUtilities.invokeLater(onStopped);
+        }
+    }
+
+    private void show(FrameRecording.Frame f) {
+        double simTime = f.vehicles.simTime;
+        String status;
+        if (!playing) {
+            status = String.format(Locale.US, "Replay: t=%.1f / %.1f s (paused)", simTime, recording.endTime());
+        } else if (pacer.isMaxSpeed()) {
+            status = String.format(Locale.US, "Replay: t=%.1f / %.1f s | RTF %.1fx (target: max)",
+                    simTime, recording.endTime(), pacer.achievedRtf());
+        } else {
+            status = String.format(Locale.US, "Replay: t=%.1f / %.1f s | RTF %.1fx (target %.0fx)",
+                    simTime, recording.endTime(), pacer.achievedRtf(), pacer.targetRtf());
+        }
+        view.show(f.vehicles, f.metrics.throughputVph, tlsStatus(f), status);
+    }
+
+    // same shape as TrafficControl.buildTlsStatusString, from the recorded states
+    private String tlsStatus(FrameRecording.Frame f) {
+        String tlsId = selectedTls;
+        String rbTxt = f.vehicles.ruleBasedEnabled ? "RULE=ON" : "RULE=OFF";
+        if (tlsId == null || tlsId.isBlank()) return "TL: none | " + rbTxt;
+
+        int i = recording.tlsIds().indexOf(tlsId);
+        String ry = (i >= 0 && f.tlsStates[i] != null) ? f.tlsStates[i] : "(not recorded)";
+        return "<html>TL: " + tlsId + "<br>" + ry + " | REPLAY | " + rbTxt + "</html>";
+    }
+}
@@ -0,0 +1,57 @@
+// ===================== SimAdvancer.java =====================
+package org.example;
+
+// Advances the simulation by one sampling interval.
+// stepsPerSample == 1 is the classic one-step loop. For k > 1 the intermediate steps skip
+// metrics sampling and rendering; per-step controllers, the departed / arrived / teleport lists
+// and the edge subscription results are still handled on every step, since SUMO only keeps the
+// last step's. Only a build without an arrived list (churn is found by the sweep anyway) and with
+// no controller that needs per-step control does the whole interval in one Simulation.step(t) call.
+public final class SimAdvancer {
+
+    private final SimulationBackend sumo = Backends.get();
+    // arrived list available, resolved on first use like deltaT (capabilities are probed lazily)
+    private Boolean exactChurn = null;
+    private volatile int stepsPerSample = 1;
+    private double deltaT = -1.0;
+
+    public void setStepsPerSample(int k) { stepsPerSample = Math.max(1, k); }
+    public int stepsPerSample() { return stepsPerSample; }
+
+    // Returns the sim time of the sampled step. Never advances past limitSimTime (except by
+    // the one step that is always taken). trafficControl.applyPerStep for the sampled step is
+    // left to the caller, same as in the single-step loop.
+    public double advance(TrafficControl trafficControl, FrameCapture capture, EdgeMetricsStore edges,
+                          double limitSimTime) {
+        int k = stepsPerSample;
+        if (k <= 1) {
+            sumo.step();
+            return sumo.currentTime();
+        }
+
+        if (deltaT <= 0) deltaT = sumo.deltaT();
+        if (exactChurn == null) exactChurn = sumo.capabilities().arrivedIds != null;
+        double now = sumo.currentTime();
+        double target = Math.min(now + k * deltaT, limitSimTime);
+        if (target <= now + deltaT * 0.5) {
+            sumo.step();
+            return sumo.currentTime();
+        }
+
+        if (!exactChurn && !trafficControl.needsPerStepControl()) {
+            capture.onGap();
+            sumo.stepTo(target);
+            return sumo.currentTime();
+        }
+
+        double simTime = now;
+        while (true) {
+            sumo.step();
+            simTime = sumo.currentTime();
+            if (simTime >= target - deltaT * 0.5) return simTime;
+            trafficControl.applyPerStep(simTime);
+            capture.onSubStep(simTime);
+            edges.update(simTime);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+// ===================== SimPacer.java =====================
+package org.example;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Paces the simulation loop against the wall clock.
+// Target is a real-time factor (sim-seconds per wall-second); the loop sleeps only until the
+// next step's deadline, so step/metrics work is absorbed instead of added on top.
+public final class SimPacer {
+
+    // if we fall further behind than this, give up catching up and re-anchor
+    private static final long MAX_LAG_NANOS = 1_000_000_000L;
+    // UI still gets a frame at least this often, even when behind / in max-speed mode
+    private static final long MIN_FRAME_INTERVAL_NANOS = 100_000_000L;
+    // achieved RTF is re-measured over windows of this length
+    private static final long MEASURE_WINDOW_NANOS = 500_000_000L;
+
+    private volatile double targetRtf;
+    private volatile boolean maxSpeed = false;
+    private volatile boolean reanchor = true;
+
+    // loop-thread state
+    private long anchorWall;
+    private double anchorSim;
+    private long lastFrameWall = 0;
+    private long measureWall = 0;
+    private double measureSim = 0;
+
+    private volatile double achievedRtf = 0.0;
+    private volatile long droppedFrames = 0;
+
+    public SimPacer(double targetRtf) {
+        this.targetRtf = Math.max(0.01, targetRtf);
+    }
+
+    public void setTargetRtf(double rtf) {
+        targetRtf = Math.max(0.01, rtf);
+        reanchor = true;
+    }
+
+    public void setMaxSpeed(boolean on) {
+        maxSpeed = on;
+        reanchor = true;
+    }
+
+    public double targetRtf() { return targetRtf; }
+    public boolean isMaxSpeed() { return maxSpeed; }
+    public double achievedRtf() { return achievedRtf; }
+    public long droppedFrames() { return droppedFrames; }
+
+    // Call after a pause (or before the first step) so idle time is not counted as lag.
+    public void reset() { reanchor = true; }
+
+    // Decide whether this step's render payload is worth building/posting.
+    // On schedule: always. Behind schedule or max speed: at most one frame per MIN_FRAME_INTERVAL.
+    public boolean frameDue(double simTime) {
+        long now = System.nanoTime();
+        anchorIfNeeded(now, simTime);
+
+        boolean behind = maxSpeed || now > deadlineFor(simTime);
+        if (!behind || now - lastFrameWall >= MIN_FRAME_INTERVAL_NANOS) {
+            lastFrameWall = now;
+            return true;
+        }
+        droppedFrames++;
+        return false;
+    }
+
+    // Sleep until simTime is due on the wall clock (no-op in max-speed mode).
+    public void awaitDeadline(double simTime) throws InterruptedException {
+        long now = System.nanoTime();
+        anchorIfNeeded(now, simTime);
+        measure(now, simTime);
+
+        if (maxSpeed) return;
+
+        long deadline = deadlineFor(simTime);
+        if (now - deadline > MAX_LAG_NANOS) {
+            // too far behind (slow machine / debugger): drop the backlog instead of bursting
+            anchorWall = now;
+            anchorSim = simTime;
+            return;
+        }
+
+        while (now < deadline) {
+            LockSupport.parkNanos(deadline - now);
+            if (Thread.interrupted()) throw new InterruptedException();
+            now = System.nanoTime();
+        }
+    }
+
+    private void anchorIfNeeded(long now, double simTime) {
+        if (!reanchor) return;
+        reanchor = false;
+        anchorWall = now;
+        anchorSim = simTime;
+        measureWall = now;
+        measureSim = simTime;
+    }
+
+    private long deadlineFor(double simTime) {
+        return anchorWall + (long) ((simTime - anchorSim) / targetRtf * 1e9);
+    }
+
+    private void measure(long now, double simTime) {
+        long dt = now - measureWall;
+        if (dt < MEASURE_WINDOW_NANOS) return;
+        achievedRtf = (simTime - measureSim) / (dt / 1e9);
+        measureWall = now;
+        measureSim = simTime;
+    }
+}
@@ -0,0 +1,90 @@
+// ===================== SimulationBackend.java =====================
+package org.example;
+
+import java.util.List;
+
+// Every SUMO call the app makes, independent of the Java binding behind it.
+//   libtraci: SUMO runs as its own process, each call is a socket round trip (sumo-gui possible)
+//   libsumo : SUMO runs inside this JVM, each call is a plain JNI call (no sumo-gui, one run per JVM)
+// The SWIG classes of both bindings have the same names but are different types, so the
+// interface only uses plain Java types. Picked once at startup, see Backends.
+public interface SimulationBackend {
+
+    // Receives the subscription results of one step. vehicle() starts a vehicle, the calls
+    // after it belong to that vehicle. Values the binding hands back in an unknown shape
+    // arrive as their text form in stringVar().
+    interface VehicleVarSink {
+        void vehicle(String id);
+        void position(double x, double y);
+        void doubleVar(int varId, double value);
+        void stringVar(int varId, String value);
+    }
+
+    // Same for edge subscriptions: edge() starts an edge, every value arrives as a number.
+    interface EdgeVarSink {
+        void edge(String id);
+        void var(int varId, double value);
+    }
+
+    Backends.Kind kind();
+
+    // false: no sumo-gui window, the run uses the plain "sumo" binary (the Swing map still works)
+    boolean supportsSumoGui();
+
+    // false: only one simulation at a time in this JVM
+    boolean supportsMultipleConnections();
+
+    // optional API, probed once per backend
+    TraciCapabilities capabilities();
+
+    // ===================== Lifecycle =====================
+    void preloadLibraries();
+    void start(List<String> cmd, String label);
+    void switchConnection(String label);
+    void close();
+
+    // ===================== Simulation =====================
+    void step();
+    void stepTo(double simTime);
+    double currentTime();
+    double deltaT();
+    int minExpectedNumber();
+    List<String> departedIds();
+
+    // SUMO's own snapshot (network, vehicles, TLS programs, RNG), written / read by SUMO itself.
+    // Java-side state is not in there, see WarmStart.
+    void saveState(String file);
+    void loadState(String file);
+
+    // ===================== Vehicles =====================
+    List<String> vehicleIds();
+    void subscribeVehicle(String vehId, int[] varIds);
+    void readVehicleSubscriptions(VehicleVarSink sink);
+    // false when the position could not be read
+    boolean vehiclePosition(String vehId, double[] xyOut);
+    double vehicleSpeed(String vehId);
+
+    // static attributes, read once per vehicle when it departs (VehicleRegistry)
+    String vehicleTypeId(String vehId);
+    String vehicleClass(String vehId);
+    // 0xAARRGGBB
+    int vehicleColor(String vehId);
+    String vehicleRouteId(String vehId);
+    double vehicleDepartTime(String vehId);
+
+    // ===================== Routes / edges =====================
+    void addRoute(String routeId, List<String> edges);
+    int edgeLaneCount(String edgeId);
+    // every edge of the network, internal (":...") ones included
+    List<String> edgeIds();
+    void subscribeEdge(String edgeId, int[] varIds);
+    void readEdgeSubscriptions(EdgeVarSink sink);
+
+    // ===================== Traffic lights =====================
+    List<String> trafficLightIds();
+    String tlsProgram(String tlsId);
+    void setTlsProgram(String tlsId, String programId);
+    void setTlsPhaseDuration(String tlsId, double seconds);
+    String tlsState(String tlsId);
+    void setTlsState(String tlsId, String state);
+}
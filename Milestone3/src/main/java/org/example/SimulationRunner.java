@@ -0,0 +1,345 @@
+// ===================== SimulationRunner.java =====================
+package org.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Runs several headless scenarios at once from one launch.
+//
+//   java -jar app.jar --runner --scenario a.sumocfg --scenario b.sumocfg [--scenario ...]
+//        [--mode process|thread] [--parallel N] [--out-dir runs] [--record]
+//        [any headless option: --duration --seed --inject --rule-tls --sumo --steps-per-sample]
+//
+// --mode process (default): one child JVM + SUMO per scenario. libtraci has one active
+//     connection per process, so this is the mode that scales with cores.
+// --mode thread: labeled libtraci connections in this JVM, one HeadlessRunner per thread.
+//     TraCI calls, Simulation.step included, are serialized by TraciSession.LOCK, so runs
+//     effectively take turns (only the Java side overlaps) and --parallel N does not scale;
+//     useful when spawning JVMs is not possible, not for timing comparisons.
+//
+// Per run: <out-dir>/<label>_metrics.csv, <label>_summary.txt, <label>_kpi.properties
+// (and <label>.log in process mode, <label>.rec with --record), plus <out-dir>/runner_summary.csv over all runs.
+public final class SimulationRunner {
+
+    enum Mode { PROCESS, THREAD }
+
+    // ===================== Options =====================
+    static final class RunnerOptions {
+        Mode mode = Mode.PROCESS;
+        int parallel = 0; // 0 = pick from core count
+        String outDir = "runs";
+        // every run writes <label>.rec for --replay
+        boolean record = false;
+        final List<String> scenarios = new ArrayList<>();
+        // everything else goes to every run unchanged
+        final List<String> headlessArgs = new ArrayList<>();
+    }
+
+    // one headless run; args are added after the shared headless args (later options win)
+    static final class Job {
+        final String label;
+        final String scenario;
+        final List<String> args;
+        Job(String label, String scenario, List<String> args) {
+            this.label = label; this.scenario = scenario; this.args = args;
+        }
+    }
+
+    static RunnerOptions parseArgs(String[] args) throws Main.Milestone3Exception {
+        RunnerOptions o = new RunnerOptions();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            switch (a) {
+                case "--runner": break;
+                case "--scenario": o.scenarios.add(value(args, ++i, a)); break;
+                case "--out-dir": o.outDir = value(args, ++i, a); break;
+                case "--record":
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        throw new Main.Milestone3Exception("--record takes no file with --runner (each run writes <out-dir>/<label>.rec)");
+                    }
+                    o.record = true;
+                    break;
+                case "--mode":
+                    String m = value(args, ++i, a).trim().toUpperCase(Locale.ROOT);
+                    try { o.mode = Mode.valueOf(m); }
+                    catch (IllegalArgumentException ex) { throw new Main.Milestone3Exception("--mode must be process or thread: " + m); }
+                    break;
+                case "--parallel":
+                    try { o.parallel = Integer.parseInt(value(args, ++i, a).trim()); }
+                    catch (NumberFormatException ex) { throw new Main.Milestone3Exception("Not a number for --parallel: " + args[i]); }
+                    break;
+                case "--metrics-out":
+                case "--summary-out":
+                case "--kpi-out":
+                case "--label":
+                    throw new Main.Milestone3Exception(a + " is set per run by the runner (use --out-dir)");
+                default:
+                    o.headlessArgs.add(a);
+            }
+        }
+        if (o.scenarios.isEmpty()) throw new Main.Milestone3Exception("--runner needs at least one --scenario");
+        // validates the shared options once, before anything is started
+        HeadlessRunner.parseArgs(o.headlessArgs.toArray(new String[0]));
+        if (o.parallel <= 0) o.parallel = defaultParallelism(o.scenarios.size());
+        return o;
+    }
+
+    // each run is a SUMO process plus its client
+    static int defaultParallelism(int runs) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(runs, cores / 2));
+    }
+
+    private static String value(String[] args, int i, String opt) throws Main.Milestone3Exception {
+        if (i >= args.length) throw new Main.Milestone3Exception("Missing value for " + opt);
+        return args[i];
+    }
+
+    static List<Job> jobs(List<String> scenarios) {
+        List<Job> out = new ArrayList<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (String sc : scenarios) {
+            String base = new File(sc).getName().replaceFirst("\\.sumocfg$", "").replaceAll("[^a-zA-Z0-9_.-]", "_");
+            if (base.isBlank()) base = "run";
+            int n = seen.merge(base, 1, Integer::sum);
+            out.add(new Job(n == 1 ? base : base + "_" + n, sc, Collections.emptyList()));
+        }
+        return out;
+    }
+
+    // ===================== Run =====================
+    static final class Outcome {
+        final Job job;
+        final String status;
+        final double wallSec;
+        // contents of the run's KPI file, null when the run did not complete
+        final Properties kpis;
+        Outcome(Job job, String status, double wallSec, Properties kpis) {
+            this.job = job; this.status = status; this.wallSec = wallSec; this.kpis = kpis;
+        }
+        boolean ok() { return "ok".equals(status); }
+    }
+
+    private final RunnerOptions opt;
+    private final File outDir;
+
+    SimulationRunner(RunnerOptions opt) {
+        this.opt = opt;
+        this.outDir = new File(opt.outDir);
+    }
+
+    void run() throws Exception {
+        ensureOutDir();
+
+        List<Job> jobs = jobs(opt.scenarios);
+        Logging.LOG.info("Runner: " + jobs.size() + " scenario(s), mode=" + opt.mode + ", parallel=" + opt.parallel
+                + ", out=" + outDir.getAbsolutePath());
+
+        long wallStart = System.nanoTime();
+        List<Outcome> outcomes = executeAll(jobs, null);
+
+        double wallSec = (System.nanoTime() - wallStart) / 1e9;
+        double sumRunSec = 0.0;
+        int ok = 0;
+        for (Outcome oc : outcomes) {
+            sumRunSec += oc.wallSec;
+            if (oc.ok()) ok++;
+        }
+
+        File summary = new File(outDir, "runner_summary.csv");
+        writeSummary(summary, outcomes);
+        Logging.LOG.info(String.format(Locale.US,
+                "Runner finished: %d/%d ok in %.1f s wall (sum of runs %.1f s, speedup %.2fx). Summary: %s",
+                ok, outcomes.size(), wallSec, sumRunSec, wallSec > 0 ? sumRunSec / wallSec : 0.0,
+                summary.getAbsolutePath()));
+        if (ok < outcomes.size()) System.exit(1);
+    }
+
+    void ensureOutDir() throws Main.Milestone3Exception {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new Main.Milestone3Exception("Cannot create output directory: " + outDir.getAbsolutePath());
+        }
+    }
+
+    // Runs the jobs on a pool of opt.parallel workers. onDone (may be null) is called from
+    // the worker thread as each run finishes; outcomes come back in job order.
+    List<Outcome> executeAll(List<Job> jobs, java.util.function.Consumer<Outcome> onDone) throws Exception {
+        if (opt.mode == Mode.THREAD && opt.parallel > 1 && !Backends.get().supportsMultipleConnections()) {
+            throw new Main.Milestone3Exception(Backends.get().kind()
+                    + " holds one simulation per JVM: use --mode process or --parallel 1");
+        }
+        if (opt.mode == Mode.THREAD && opt.parallel > 1) {
+            Logging.LOG.warning("Thread mode with " + opt.parallel + " workers: every TraCI call (steps included) is serialized"
+                    + " across runs, so they effectively run one at a time; use --mode process to scale with cores"
+                    + " and for any timing comparison.");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(opt.parallel, r -> {
+            Thread t = new Thread(r, "Runner-Worker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<Future<Outcome>> futures = new ArrayList<>();
+        for (Job job : jobs) {
+            futures.add(pool.submit(() -> {
+                Outcome oc = opt.mode == Mode.PROCESS ? runProcess(job) : runThread(job);
+                if (onDone != null) onDone.accept(oc);
+                return oc;
+            }));
+        }
+
+        List<Outcome> outcomes = new ArrayList<>();
+        try {
+            for (Future<Outcome> f : futures) outcomes.add(f.get());
+        } finally {
+            pool.shutdown();
+        }
+        return outcomes;
+    }
+
+    private String outFile(Job job, String suffix) {
+        return new File(outDir, job.label + suffix).getPath();
+    }
+
+    // shared args, then the job's own, then the per-run outputs
+    private List<String> headlessArgs(Job job) {
+        List<String> args = new ArrayList<>(opt.headlessArgs);
+        args.addAll(job.args);
+        args.add("--scenario"); args.add(job.scenario);
+        args.add("--label"); args.add(job.label);
+        args.add("--metrics-out"); args.add(outFile(job, "_metrics.csv"));
+        args.add("--summary-out"); args.add(outFile(job, "_summary.txt"));
+        args.add("--kpi-out"); args.add(outFile(job, "_kpi.properties"));
+        if (opt.record) { args.add("--record"); args.add(outFile(job, ".rec")); }
+        return args;
+    }
+
+    private Properties readKpis(Job job) {
+        File f = new File(outFile(job, "_kpi.properties"));
+        if (!f.isFile()) return null;
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(f)) {
+            p.load(in);
+            return p;
+        } catch (IOException ex) {
+            Logging.LOG.warning("[" + job.label + "] unreadable KPI file " + f.getPath() + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private Outcome finish(Job job, String status, long t0) {
+        Properties kpis = readKpis(job);
+        if ("ok".equals(status) && kpis == null) status = "no kpi file";
+        return new Outcome(job, status, (System.nanoTime() - t0) / 1e9, kpis);
+    }
+
+    // ===================== Process mode =====================
+    private Outcome runProcess(Job job) {
+        // a stale KPI file from an earlier attempt must not count as this run's result
+        new File(outFile(job, "_kpi.properties")).delete();
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        String libPath = System.getProperty("java.library.path");
+        if (libPath != null && !libPath.isBlank()) cmd.add("-Djava.library.path=" + libPath);
+        // children use the same binding as this JVM unless the run args say otherwise
+        cmd.add("-D" + Backends.PROPERTY + "=" + Backends.get().kind());
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("sumo.fake.")) cmd.add("-D" + key + "=" + System.getProperty(key));
+        }
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(Main.class.getName());
+        cmd.add("--headless");
+        cmd.addAll(headlessArgs(job));
+
+        File log = new File(outFile(job, ".log"));
+        long t0 = System.nanoTime();
+        try {
+            Process p = new ProcessBuilder(cmd)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log)
+                    .start();
+            Logging.LOG.info("[" + job.label + "] started pid=" + p.pid() + " (" + job.scenario + ")");
+            int exit = p.waitFor();
+            Outcome oc = finish(job, exit == 0 ? "ok" : "exit " + exit, t0);
+            Logging.LOG.info(String.format(Locale.US, "[%s] %s in %.1f s (log: %s)", job.label, oc.status, oc.wallSec, log.getPath()));
+            return oc;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new Outcome(job, "interrupted", (System.nanoTime() - t0) / 1e9, null);
+        } catch (IOException ex) {
+            Logging.LOG.log(java.util.logging.Level.SEVERE, "[" + job.label + "] could not start child JVM", ex);
+            return new Outcome(job, "failed: " + ex.getMessage(), (System.nanoTime() - t0) / 1e9, null);
+        }
+    }
+
+    // ===================== Thread mode =====================
+    private Outcome runThread(Job job) {
+        new File(outFile(job, "_kpi.properties")).delete();
+        long t0 = System.nanoTime();
+        try {
+            HeadlessRunner.Options o = HeadlessRunner.parseArgs(headlessArgs(job).toArray(new String[0]));
+            Main.validateScenario(o.scenario);
+            new HeadlessRunner(o).run();
+            return finish(job, "ok", t0);
+        } catch (Exception ex) {
+            Logging.LOG.log(java.util.logging.Level.SEVERE, "[" + job.label + "] run failed", ex);
+            return new Outcome(job, "failed: " + ex.getMessage(), (System.nanoTime() - t0) / 1e9, null);
+        }
+    }
+
+    // ===================== Summary =====================
+    // KPI file keys written by HeadlessRunner, in table order
+    static final String[] RUN_KPI_COLUMNS;
+    static {
+        List<String> c = new ArrayList<>(Arrays.asList("stop_reason", "steps", "sim_time_s", "injected"));
+        c.addAll(Arrays.asList(MetricsCollector.Kpis.COLUMNS));
+        RUN_KPI_COLUMNS = c.toArray(new String[0]);
+    }
+
+    static List<String> kpiCells(Outcome oc) {
+        List<String> cells = new ArrayList<>();
+        for (String k : RUN_KPI_COLUMNS) {
+            cells.add(oc.kpis == null ? "" : MetricsCollector.csvEscape(oc.kpis.getProperty(k, "")));
+        }
+        return cells;
+    }
+
+    private void writeSummary(File file, List<Outcome> outcomes) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            List<String> header = new ArrayList<>(Arrays.asList("label", "scenario", "mode", "status", "wall_s"));
+            header.addAll(Arrays.asList(RUN_KPI_COLUMNS));
+            pw.println(String.join(",", header));
+            for (Outcome oc : outcomes) {
+                List<String> cells = new ArrayList<>(Arrays.asList(
+                        MetricsCollector.csvEscape(oc.job.label),
+                        MetricsCollector.csvEscape(oc.job.scenario),
+                        opt.mode.name().toLowerCase(Locale.ROOT),
+                        MetricsCollector.csvEscape(oc.status),
+                        String.format(Locale.US, "%.3f", oc.wallSec)));
+                cells.addAll(kpiCells(oc));
+                pw.println(String.join(",", cells));
+            }
+        }
+    }
+
+    // ===================== Entry =====================
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            RunnerOptions o = parseArgs(args);
+            for (String sc : o.scenarios) Main.validateScenario(sc);
+            new SimulationRunner(o).run();
+        } catch (Main.Milestone3Exception ex) {
+            Logging.LOG.severe("Runner setup error: " + ex.getMessage());
+            System.exit(2);
+        } catch (Exception ex) {
+            Logging.LOG.log(java.util.logging.Level.SEVERE, "Runner failed", ex);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// ===================== Startup.java =====================
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// GUI launch: the slow startup pieces run side by side instead of one after the other.
+//   net.xml parse (map, drawn while it is read)   thread Startup-1
+//   rou.xml trip parse                            thread Startup-2
+//   SUMO launch + connect                         simulation thread (LiveConnectionSumo)
+//   window                                        main thread
+// The simulation thread joins both parses once SUMO is up, before it builds routes.
+// finish() logs where the time went.
+public final class Startup {
+
+    private final long t0 = System.nanoTime();
+    private final ExecutorService pool;
+
+    private final CompletableFuture<MapVisualisation.Network> network;
+    private final CompletableFuture<Void> trips;
+    private final VehicleInjection injection;
+
+    // repaint hook for the map panel, set once the window exists
+    private volatile Runnable onMapProgress = null;
+
+    // "phase=ms" in the order they finished
+    private final List<String> timings = new ArrayList<>();
+
+    private Startup(String sumocfgPath) {
+        AtomicInteger n = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "Startup-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        network = CompletableFuture.supplyAsync(() -> {
+            long t = System.nanoTime();
+            MapVisualisation.Network net = MapVisualisation.initBoundsFromFiles(() -> {
+                Runnable r = onMapProgress;
+                if (r != null) r.run();
+            });
+            mark("net.xml", t);
+            return net;
+        }, pool);
+
+        // route variants need the road list, VehicleInjection waits for it when it gets there
+        injection = new VehicleInjection(sumocfgPath, network::join);
+        trips = CompletableFuture.runAsync(() -> {
+            long t = System.nanoTime();
+            injection.loadTripRoutesFromRou();
+            mark("trips", t);
+        }, pool);
+        pool.shutdown();
+    }
+
+    // starts both parses, returns at once
+    public static Startup begin(String sumocfgPath) {
+        return new Startup(sumocfgPath);
+    }
+
+    public VehicleInjection injection() { return injection; }
+
+    // map panel repaint; runs from the parse thread, so it has to be thread-safe
+    public void setOnMapProgress(Runnable r) {
+        onMapProgress = r;
+        if (network.isDone() && r != null) r.run();
+    }
+
+    // ===================== Timing =====================
+    // phase took from startNanos until now
+    public void mark(String phase, long startNanos) {
+        long now = System.nanoTime();
+        synchronized (timings) {
+            timings.add(String.format(Locale.US, "%s=%.0f ms (done at +%.0f ms)",
+                    phase, (now - startNanos) / 1e6, (now - t0) / 1e6));
+        }
+    }
+
+    public long started() { return t0; }
+
+    // ===================== Simulation thread =====================
+    // Blocks until net + trips are parsed (usually long done while SUMO started).
+    public void awaitParsed() {
+        long t = System.nanoTime();
+        network.join();
+        trips.join();
+        mark("waited for parsing", t);
+    }
+
+    public void finish() {
+        mark("ready", t0);
+        synchronized (timings) {
+            Logging.LOG.info("Startup breakdown: " + String.join(" | ", timings));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// ===================== StepFrame.java =====================
+package org.example;
+
+// Per-step metrics, filled by a single sweep over a published VehicleFrame.
+public final class StepFrame {
+
+    public double simTime;
+
+    // ---- metrics ----
+    public int active;
+    public int stopped;
+    public double congestion;
+    public double meanSpeed;
+    // -1 when the waiting time is not available from this libtraci build
+    public double avgWaitSec;
+    public double throughputVph;
+
+    // ---- filtered counts ----
+    public int visible;
+    public int visCar;
+    public int visTruck;
+    public int visBus;
+
+    // One pass over the frame's arrays. filter == null counts every vehicle as visible.
+    void sweep(VehicleFrame vf, MapVisualisation.Filter filter) {
+        int n = vf.size;
+        active = n;
+        stopped = 0;
+        visible = 0; visCar = 0; visTruck = 0; visBus = 0;
+
+        double speedSum = 0.0, waitSum = 0.0;
+        int speedCnt = 0, waitCnt = 0;
+
+        for (int i = 0; i < n; i++) {
+            double sp = vf.speed[i];
+            double w = vf.waiting[i];
+            byte type = vf.types[i];
+
+            if (!Double.isNaN(sp)) {
+                speedSum += sp;
+                speedCnt++;
+                if (sp < 0.1) stopped++;
+            }
+            if (!Double.isNaN(w) && !Double.isInfinite(w)) {
+                waitSum += w;
+                waitCnt++;
+            }
+
+            double spOr0 = Double.isNaN(sp) ? 0.0 : sp;
+
+            if (filter == null || filter.allows(VehicleRegistry.typeName(type), spOr0)) {
+                visible++;
+                if (type == VehicleRegistry.TYPE_CAR) visCar++;
+                else if (type == VehicleRegistry.TYPE_TRUCK) visTruck++;
+                else if (type == VehicleRegistry.TYPE_BUS) visBus++;
+            }
+        }
+
+        congestion = n > 0 ? (double) stopped / n : 0.0;
+        meanSpeed = speedCnt == 0 ? 0.0 : speedSum / speedCnt;
+        if (n == 0) avgWaitSec = 0.0;
+        else avgWaitSec = waitCnt == 0 ? -1.0 : waitSum / waitCnt;
+    }
+}
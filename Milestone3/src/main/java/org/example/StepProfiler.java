@@ -0,0 +1,201 @@
+// ===================== StepProfiler.java =====================
+package org.example;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Where a slow GUI step goes: one latency histogram per phase of the simulation loop and its stages,
+// a stall warning when a phase exceeds its budget, and a periodic p50/p99/max report in the log.
+//
+//   -Dsumo.stall.ms=250              budget for every phase (stall warning above it)
+//   -Dsumo.stall.<phase>.ms=...      per phase, e.g. -Dsumo.stall.step.ms=500
+//   -Dsumo.profile.reportSec=60      log report interval, 0 = only the final report
+public final class StepProfiler {
+
+    public enum Phase {
+        COMMANDS("queued UI commands", true),
+        STEP("simulation step", true),
+        TLS_RULES("TLS rules", true),
+        TLS_STATUS("TLS status text", true),
+        EDGES("edge metrics", true),
+        CAPTURE("frame capture", true),
+        PUBLISH("publish (ring + UI slot)", true),
+        LOOP("loop total", true),
+        // intentional sleep: measured, never a stall
+        PACE_WAIT("pacing wait", false),
+        METRICS("metrics stage", true),
+        // handoff -> Swing timer tick picking the frame up
+        FRAME_AGE("UI frame age", true),
+        UI_TICK("UI tick (EDT)", true);
+
+        final String label;
+        final boolean budgeted;
+
+        Phase(String label, boolean budgeted) {
+            this.label = label;
+            this.budgeted = budgeted;
+        }
+    }
+
+    static final String PROP_BUDGET_MS = "sumo.stall.ms";
+    static final String PROP_REPORT_SEC = "sumo.profile.reportSec";
+    static final double DEFAULT_BUDGET_MS = 250.0;
+    static final long DEFAULT_REPORT_SEC = 60;
+
+    // at most one stall warning per phase in this interval, the rest are counted
+    private static final long STALL_LOG_INTERVAL_NANOS = 5_000_000_000L;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final String name;
+    private final LatencyHistogram[] hist = new LatencyHistogram[PHASES.length];
+    private final long[] budgetNanos = new long[PHASES.length];
+    private final AtomicLongArray stalls = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray lastStallLog = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray suppressed = new AtomicLongArray(PHASES.length);
+
+    private volatile double simTime = Double.NaN;
+
+    private ScheduledExecutorService reporter;
+    private Snapshot lastReported;
+
+    public StepProfiler(String name) {
+        this.name = name;
+        double globalMs = doubleProperty(PROP_BUDGET_MS, DEFAULT_BUDGET_MS);
+        for (Phase p : PHASES) {
+            hist[p.ordinal()] = new LatencyHistogram();
+            double ms = doubleProperty("sumo.stall." + p.name().toLowerCase(Locale.ROOT) + ".ms", globalMs);
+            budgetNanos[p.ordinal()] = (long) (ms * 1e6);
+            lastStallLog.set(p.ordinal(), Long.MIN_VALUE / 2);
+        }
+    }
+
+    private static double doubleProperty(String key, double def) {
+        String v = System.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        try { return Double.parseDouble(v.trim()); }
+        catch (NumberFormatException ex) {
+            Logging.LOG.warning("Ignoring -D" + key + "=" + v + " (not a number)");
+            return def;
+        }
+    }
+
+    public double budgetMs(Phase p) { return budgetNanos[p.ordinal()] / 1e6; }
+
+    // sim time shown in stall warnings
+    public void setSimTime(double simTime) { this.simTime = simTime; }
+
+    // ===================== Recording =====================
+    // Records now - startNanos and returns now, so phases chain: t = prof.lap(STEP, t);
+    public long lap(Phase p, long startNanos) {
+        long now = System.nanoTime();
+        record(p, now - startNanos);
+        return now;
+    }
+
+    public void record(Phase p, long nanos) {
+        int i = p.ordinal();
+        hist[i].record(nanos);
+        if (p.budgeted && nanos > budgetNanos[i]) stall(p, nanos);
+    }
+
+    private void stall(Phase p, long nanos) {
+        int i = p.ordinal();
+        stalls.incrementAndGet(i);
+        long now = System.nanoTime();
+        long last = lastStallLog.get(i);
+        if (now - last < STALL_LOG_INTERVAL_NANOS || !lastStallLog.compareAndSet(i, last, now)) {
+            suppressed.incrementAndGet(i);
+            return;
+        }
+        long more = suppressed.getAndSet(i, 0);
+        double t = simTime;
+        Logging.LOG.warning(String.format(Locale.US, "[%s] Stall: %s took %.1f ms (budget %.0f ms)%s%s",
+                name, p.label, nanos / 1e6, budgetMs(p),
+                Double.isNaN(t) ? "" : String.format(Locale.US, " at t=%.1f", t),
+                more > 0 ? " (+" + more + " more since the last warning)" : ""));
+    }
+
+    // ===================== Snapshots =====================
+    public static final class Snapshot {
+        private final long[][] counts;
+        private final long[] stalls;
+
+        private Snapshot(long[][] counts, long[] stalls) {
+            this.counts = counts;
+            this.stalls = stalls;
+        }
+
+        // what happened between base and this snapshot (base == null: since start)
+        public Snapshot since(Snapshot base) {
+            if (base == null) return this;
+            long[][] c = new long[counts.length][];
+            long[] s = new long[stalls.length];
+            for (int i = 0; i < counts.length; i++) {
+                c[i] = LatencyHistogram.minus(counts[i], base.counts[i]);
+                s[i] = stalls[i] - base.stalls[i];
+            }
+            return new Snapshot(c, s);
+        }
+
+        public long count(Phase p) { return LatencyHistogram.total(counts[p.ordinal()]); }
+        public double p50Ms(Phase p) { return LatencyHistogram.percentile(counts[p.ordinal()], 0.50) / 1e6; }
+        public double p99Ms(Phase p) { return LatencyHistogram.percentile(counts[p.ordinal()], 0.99) / 1e6; }
+        public double maxMs(Phase p) { return LatencyHistogram.max(counts[p.ordinal()]) / 1e6; }
+        public long stalls(Phase p) { return stalls[p.ordinal()]; }
+    }
+
+    public Snapshot snapshot() {
+        long[][] c = new long[PHASES.length][];
+        long[] s = new long[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            c[i] = hist[i].counts();
+            s[i] = stalls.get(i);
+        }
+        return new Snapshot(c, s);
+    }
+
+    // ===================== Log report =====================
+    public static String format(Snapshot s) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-24s %9s %9s %9s %9s %7s", "phase", "count", "p50 ms", "p99 ms", "max ms", "stalls"));
+        for (Phase p : PHASES) {
+            long n = s.count(p);
+            if (n == 0) continue;
+            sb.append('\n').append(String.format(Locale.US, "%-24s %9d %9.3f %9.3f %9.3f %7d",
+                    p.label, n, s.p50Ms(p), s.p99Ms(p), s.maxMs(p), s.stalls(p)));
+        }
+        return sb.toString();
+    }
+
+    public synchronized void startReporting() {
+        long sec = (long) doubleProperty(PROP_REPORT_SEC, DEFAULT_REPORT_SEC);
+        if (sec <= 0 || reporter != null) return;
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Step-Profiler-Report");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> report("last " + sec + " s"), sec, sec, TimeUnit.SECONDS);
+    }
+
+    // stops the periodic report and logs the whole run
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        Logging.LOG.info("[" + name + "] Step profile (whole run):\n" + format(snapshot()));
+    }
+
+    private synchronized void report(String window) {
+        Snapshot now = snapshot();
+        Snapshot interval = now.since(lastReported);
+        lastReported = now;
+        if (interval.count(Phase.LOOP) == 0 && interval.count(Phase.COMMANDS) == 0) return;
+        Logging.LOG.info("[" + name + "] Step profile (" + window + "):\n" + format(interval));
+    }
+}
@@ -0,0 +1,47 @@
+// ===================== SumoLauncher.java =====================
+package org.example;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds the SUMO command line shared by the GUI loop and the headless runner.
+public final class SumoLauncher {
+
+    private SumoLauncher() {}
+
+    // binary: "sumo-gui" or "sumo"; extra args are appended as-is
+    public static List<String> command(String binary, String... extra) throws IOException {
+        return commandFor(Main.SUMOCFG_PATH, binary, extra);
+    }
+
+    // same, for a scenario other than Main.SUMOCFG_PATH (several runs in one JVM)
+    public static List<String> commandFor(String sumocfgPath, String binary, String... extra) throws IOException {
+        String manualRou = buildRoutesFileWithVTypesOnly();
+
+        List<String> cmd = new ArrayList<>();
+        cmd.add(binary);
+        cmd.add("-c"); cmd.add(sumocfgPath);
+        cmd.add("--route-files"); cmd.add(manualRou);
+        for (String a : extra) cmd.add(a);
+        return cmd;
+    }
+
+    // ===================== Routing file override for manual injection only =====================
+    private static String buildRoutesFileWithVTypesOnly() throws IOException {
+        File tmp = File.createTempFile("manual_only_", ".rou.xml");
+        tmp.deleteOnExit();
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"))) {
+            pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            pw.println("<routes xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+            pw.println("        xsi:noNamespaceSchemaLocation=\"http://sumo.dlr.de/xsd/routes_file.xsd\">");
+            pw.println("  <!-- Manual injection only (no trips/vehicles here) -->");
+            pw.println("  <vType id=\"car\"   vClass=\"passenger\" length=\"5.0\"  accel=\"2.6\" decel=\"4.5\" maxSpeed=\"33\"/>");
+            pw.println("  <vType id=\"truck\" vClass=\"truck\"     length=\"8.0\"  accel=\"1.3\" decel=\"4.0\" maxSpeed=\"25\"/>");
+            pw.println("  <vType id=\"bus\"   vClass=\"bus\"       length=\"12.0\" accel=\"1.1\" decel=\"4.0\" maxSpeed=\"22\"/>");
+            pw.println("</routes>");
+        }
+        Logging.LOG.info("Temp manual routes file: " + tmp.getAbsolutePath());
+        return tmp.getAbsolutePath();
+    }
+}
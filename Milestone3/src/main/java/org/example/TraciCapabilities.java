@@ -0,0 +1,360 @@
+// ===================== TraciCapabilities.java =====================
+package org.example;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+// Optional libtraci API differs between SUMO releases. Everything is probed ONCE here and
+// turned into a cached MethodHandle (or a fallback lambda), so hot paths never reflect.
+// The probe runs against the classes of one binding (libtraci and libsumo share the API);
+// their StringVector is a java.util.List<String>, so results are handed out as List.
+public final class TraciCapabilities {
+
+    public interface RouteFinder {
+        // null when SUMO finds no route (or the build has no findRoute at all)
+        List<String> edges(String fromEdge, String toEdge, String vTypeId);
+    }
+
+    public interface VehicleAdder {
+        void add(String vehId, String routeId, String typeId) throws Exception;
+    }
+
+    // NaN when unavailable
+    public final ToDoubleFunction<String> vehicleWaitingTime;
+    // null when unavailable (caller sweeps unseen vehicles instead)
+    public final Supplier<List<String>> arrivedIds;
+    // vehicles that started / ended a teleport in the last step, null when unavailable
+    public final Supplier<List<String>> teleportStartIds;
+    public final Supplier<List<String>> teleportEndIds;
+    // null when unavailable
+    public final Function<String, List<String>> controlledLanes;
+    // halting (or plain vehicle) count per lane, -1 when unavailable
+    public final ToIntFunction<String> laneDemand;
+    // null when unavailable (caller treats the lane as open)
+    public final Function<String, List<String>> laneAllowed;
+    // NaN when unavailable
+    public final ToDoubleFunction<String> laneLength;
+    public final RouteFinder findRoute;
+    public final VehicleAdder addVehicle;
+
+    // capability -> resolved code path, for the startup log
+    private final Map<String, String> paths = new LinkedHashMap<>();
+
+    private final String binding;
+    private final Class<?> simulationApi;
+    private final Class<?> vehicleApi;
+    private final Class<?> trafficLightApi;
+    private final Class<?> laneApi;
+    private final MethodHandle currentTime;
+
+    // capabilities of the active backend
+    public static TraciCapabilities get() {
+        return Backends.get().capabilities();
+    }
+
+    TraciCapabilities(String binding, Class<?> simulationApi, Class<?> vehicleApi,
+                      Class<?> trafficLightApi, Class<?> laneApi) {
+        this.binding = binding;
+        this.simulationApi = simulationApi;
+        this.vehicleApi = vehicleApi;
+        this.trafficLightApi = trafficLightApi;
+        this.laneApi = laneApi;
+
+        MethodHandle now = findStatic(simulationApi, "getCurrentTime");
+        if (now == null) throw new IllegalStateException(binding + ": Simulation.getCurrentTime() not found");
+        currentTime = MethodHandles.explicitCastArguments(now, MethodType.methodType(double.class));
+
+        vehicleWaitingTime = resolveVehicleWaitingTime();
+        arrivedIds = resolveIdList("arrivedIds", "getArrivedIDList", "FALLBACK: registry sweep of unseen vehicles");
+        teleportStartIds = resolveIdList("teleportStartIds", "getStartingTeleportIDList",
+                "FALLBACK: not available (teleporting vehicles look gone)");
+        teleportEndIds = resolveIdList("teleportEndIds", "getEndingTeleportIDList",
+                "FALLBACK: not available (teleporting vehicles look gone)");
+        controlledLanes = resolveStringListGetter("controlledLanes", trafficLightApi, "getControlledLanes");
+        laneDemand = resolveLaneDemand();
+        laneAllowed = resolveStringListGetter("laneAllowed", laneApi, "getAllowed");
+        laneLength = resolveLaneLength();
+        findRoute = resolveFindRoute();
+        addVehicle = resolveVehicleAdd();
+    }
+
+    // backends written in Java implement every capability themselves, nothing to probe
+    TraciCapabilities(String binding, ToDoubleFunction<String> vehicleWaitingTime, Supplier<List<String>> arrivedIds,
+                      Supplier<List<String>> teleportStartIds, Supplier<List<String>> teleportEndIds,
+                      Function<String, List<String>> controlledLanes, ToIntFunction<String> laneDemand,
+                      Function<String, List<String>> laneAllowed, ToDoubleFunction<String> laneLength,
+                      RouteFinder findRoute, VehicleAdder addVehicle) {
+        this.binding = binding;
+        this.simulationApi = null;
+        this.vehicleApi = null;
+        this.trafficLightApi = null;
+        this.laneApi = null;
+        this.currentTime = null;
+
+        this.vehicleWaitingTime = vehicleWaitingTime;
+        this.arrivedIds = arrivedIds;
+        this.teleportStartIds = teleportStartIds;
+        this.teleportEndIds = teleportEndIds;
+        this.controlledLanes = controlledLanes;
+        this.laneDemand = laneDemand;
+        this.laneAllowed = laneAllowed;
+        this.laneLength = laneLength;
+        this.findRoute = findRoute;
+        this.addVehicle = addVehicle;
+        paths.put("all", "built into the backend");
+    }
+
+    public String describe() {
+        StringBuilder sb = new StringBuilder(binding + " capabilities (probed once):");
+        for (Map.Entry<String, String> e : paths.entrySet()) {
+            sb.append("\n    ").append(e.getKey()).append(" -> ").append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+    // ===================== Lookup helpers =====================
+    private static MethodHandle findStatic(Class<?> clazz, String name, Class<?>... sig) {
+        try {
+            Method m = clazz.getMethod(name, sig);
+            if (!java.lang.reflect.Modifier.isStatic(m.getModifiers())) return null;
+            return MethodHandles.publicLookup().unreflect(m);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static MethodHandle findVirtual(Class<?> clazz, String name) {
+        try {
+            Method m = clazz.getMethod(name);
+            return MethodHandles.publicLookup().unreflect(m);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static String sig(Class<?> clazz, String name, MethodHandle mh) {
+        return clazz.getSimpleName() + "." + name + mh.type().toString();
+    }
+
+    private double now() throws Throwable {
+        return (double) currentTime.invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> asStrings(Object list) {
+        return (List<String>) list;
+    }
+
+    // ===================== Resolvers =====================
+    private ToDoubleFunction<String> resolveVehicleWaitingTime() {
+        for (String name : new String[]{"getWaitingTime", "getAccumulatedWaitingTime"}) {
+            MethodHandle raw = findStatic(vehicleApi, name, String.class);
+            if (raw == null) continue;
+            try {
+                final MethodHandle mh = MethodHandles.explicitCastArguments(raw,
+                        MethodType.methodType(double.class, String.class));
+                paths.put("vehicleWaitingTime", sig(vehicleApi, name, raw));
+                return id -> {
+                    try { return (double) mh.invokeExact(id); }
+                    catch (Throwable t) { return Double.NaN; }
+                };
+            } catch (Exception ignore) {}
+        }
+        paths.put("vehicleWaitingTime", "FALLBACK: not available (avg wait shows N/A)");
+        return id -> Double.NaN;
+    }
+
+    // Simulation id list of the last step; null (not a supplier) when the build does not have it
+    private Supplier<List<String>> resolveIdList(String key, String name, String fallback) {
+        MethodHandle raw = findStatic(simulationApi, name);
+        if (raw != null && List.class.isAssignableFrom(raw.type().returnType())) {
+            final MethodHandle mh = raw.asType(MethodType.methodType(List.class));
+            paths.put(key, sig(simulationApi, name, raw));
+            return () -> {
+                try { return asStrings((List<?>) mh.invokeExact()); }
+                catch (Throwable t) { return null; }
+            };
+        }
+        paths.put(key, fallback);
+        return null;
+    }
+
+    private Function<String, List<String>> resolveStringListGetter(String key, Class<?> clazz, String name) {
+        MethodHandle raw = findStatic(clazz, name, String.class);
+        if (raw != null && List.class.isAssignableFrom(raw.type().returnType())) {
+            final MethodHandle mh = raw.asType(MethodType.methodType(List.class, String.class));
+            paths.put(key, sig(clazz, name, raw));
+            return id -> {
+                try { return asStrings((List<?>) mh.invokeExact(id)); }
+                catch (Throwable t) { return null; }
+            };
+        }
+        paths.put(key, "FALLBACK: not available");
+        return id -> null;
+    }
+
+    private ToIntFunction<String> resolveLaneDemand() {
+        for (String name : new String[]{"getLastStepHaltingNumber", "getLastStepVehicleNumber"}) {
+            MethodHandle raw = findStatic(laneApi, name, String.class);
+            if (raw == null) continue;
+            try {
+                final MethodHandle mh = MethodHandles.explicitCastArguments(raw,
+                        MethodType.methodType(int.class, String.class));
+                paths.put("laneDemand", sig(laneApi, name, raw));
+                return laneId -> {
+                    try { return (int) mh.invokeExact(laneId); }
+                    catch (Throwable t) { return -1; }
+                };
+            } catch (Exception ignore) {}
+        }
+        paths.put("laneDemand", "FALLBACK: not available (rule-based TLS sees no demand)");
+        return laneId -> -1;
+    }
+
+    private ToDoubleFunction<String> resolveLaneLength() {
+        MethodHandle raw = findStatic(laneApi, "getLength", String.class);
+        if (raw != null) {
+            try {
+                final MethodHandle mh = MethodHandles.explicitCastArguments(raw,
+                        MethodType.methodType(double.class, String.class));
+                paths.put("laneLength", sig(laneApi, "getLength", raw));
+                return laneId -> {
+                    try { return (double) mh.invokeExact(laneId); }
+                    catch (Throwable t) { return Double.NaN; }
+                };
+            } catch (Exception ignore) {}
+        }
+        paths.put("laneLength", "FALLBACK: fixed 5 m per edge");
+        return laneId -> Double.NaN;
+    }
+
+    private RouteFinder resolveFindRoute() {
+        String[] s3 = {"from", "to", "vType"};
+        Class<?>[][] sigs = {
+                {String.class, String.class, String.class},
+                {String.class, String.class, String.class, double.class},
+                {String.class, String.class, String.class, double.class, int.class}
+        };
+
+        for (Class<?>[] sig : sigs) {
+            MethodHandle raw = findStatic(simulationApi, "findRoute", sig);
+            if (raw == null) continue;
+
+            MethodHandle edgesOf = edgesExtractor(raw.type().returnType());
+            if (edgesOf == null) continue;
+
+            final MethodHandle mh = MethodHandles.filterReturnValue(raw, edgesOf);
+            final int arity = sig.length;
+            paths.put("findRoute", sig(simulationApi, "findRoute", raw) + " (" + String.join(",", s3)
+                    + (arity > 3 ? ",depart=now" : "") + (arity > 4 ? ",routingMode=0" : "") + ")");
+
+            return (from, to, vType) -> {
+                try {
+                    List<String> edges;
+                    if (arity == 3) edges = asStrings(mh.invoke(from, to, vType));
+                    else if (arity == 4) edges = asStrings(mh.invoke(from, to, vType, now()));
+                    else edges = asStrings(mh.invoke(from, to, vType, now(), 0));
+                    return (edges != null && !edges.isEmpty()) ? edges : null;
+                } catch (Throwable t) {
+                    return null;
+                }
+            };
+        }
+
+        paths.put("findRoute", "FALLBACK: not available (no long-route variants)");
+        return (from, to, vType) -> null;
+    }
+
+    // findRoute returns a TraCIStage in current builds, a plain StringVector in very old ones
+    private static MethodHandle edgesExtractor(Class<?> resultType) {
+        if (List.class.isAssignableFrom(resultType)) {
+            return MethodHandles.identity(resultType).asType(MethodType.methodType(List.class, resultType));
+        }
+        for (String name : new String[]{"getEdges", "getEdgeList"}) {
+            MethodHandle getter = findVirtual(resultType, name);
+            if (getter == null) continue;
+            if (!List.class.isAssignableFrom(getter.type().returnType())) continue;
+            MethodHandle nullSafe = MethodHandles.guardWithTest(
+                    isNull(resultType),
+                    MethodHandles.dropArguments(MethodHandles.constant(List.class, null), 0, resultType),
+                    getter.asType(MethodType.methodType(List.class, resultType)));
+            return nullSafe;
+        }
+        return null;
+    }
+
+    private static MethodHandle isNull(Class<?> type) {
+        try {
+            MethodHandle h = MethodHandles.lookup().findStatic(java.util.Objects.class, "isNull",
+                    MethodType.methodType(boolean.class, Object.class));
+            return h.asType(MethodType.methodType(boolean.class, type));
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private VehicleAdder resolveVehicleAdd() {
+        MethodHandle plainRaw = findStatic(vehicleApi, "add", String.class, String.class, String.class);
+        if (plainRaw == null) throw new IllegalStateException(binding + ": Vehicle.add(String,String,String) not found");
+        final MethodHandle plain = plainRaw.asType(MethodType.methodType(void.class,
+                String.class, String.class, String.class));
+
+        // libtraci: add(id, route, type, depart, departLane, departPos, departSpeed, ...) as strings
+        MethodHandle raw = findStatic(vehicleApi, "add",
+                String.class, String.class, String.class,
+                String.class, String.class, String.class, String.class);
+        if (raw != null) {
+            final MethodHandle mh = raw.asType(MethodType.methodType(void.class,
+                    String.class, String.class, String.class,
+                    String.class, String.class, String.class, String.class));
+            paths.put("addVehicle", sig(vehicleApi, "add", raw) + " (depart=now, lane=best)");
+            return (vehId, routeId, typeId) -> {
+                try {
+                    mh.invokeExact(vehId, routeId, typeId, "now", "best", "base", "0");
+                } catch (Throwable t) {
+                    addPlain(plain, vehId, routeId, typeId);
+                }
+            };
+        }
+
+        // older numeric overload
+        raw = findStatic(vehicleApi, "add",
+                String.class, String.class, String.class,
+                double.class, String.class, double.class, double.class);
+        if (raw != null) {
+            final MethodHandle mh = raw.asType(MethodType.methodType(void.class,
+                    String.class, String.class, String.class,
+                    double.class, String.class, double.class, double.class));
+            paths.put("addVehicle", sig(vehicleApi, "add", raw) + " (depart=now, lane=best)");
+            return (vehId, routeId, typeId) -> {
+                try {
+                    mh.invokeExact(vehId, routeId, typeId, now(), "best", 0.0, -1.0);
+                } catch (Throwable t) {
+                    addPlain(plain, vehId, routeId, typeId);
+                }
+            };
+        }
+
+        paths.put("addVehicle", "FALLBACK: Vehicle.add(String,String,String) (SUMO defaults)");
+        return (vehId, routeId, typeId) -> addPlain(plain, vehId, routeId, typeId);
+    }
+
+    private static void addPlain(MethodHandle plain, String vehId, String routeId, String typeId) throws Exception {
+        try {
+            plain.invokeExact(vehId, routeId, typeId);
+        } catch (Exception | Error ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+// ===================== TraciCommandQueue.java =====================
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Single writer for UI-initiated TraCI traffic.
+// Any thread may submit(); only the simulation thread calls drain(), between two steps,
+// so libtraci is never entered from the EDT or a helper thread.
+//
+//   - consecutive commands of the same kind (and target) are applied once
+//   - drain() stops when its time budget is used up, the rest waits for the next step
+//   - callers get a CompletableFuture (completed on the simulation thread)
+public final class TraciCommandQueue {
+
+    // vehicles added per slice of a large injection (lets the budget split it across steps)
+    static final int INJECT_SLICE = 25;
+
+    // ===================== Commands =====================
+    public abstract static class Command<R> {
+        final CompletableFuture<R> done = new CompletableFuture<>();
+
+        public CompletableFuture<R> future() { return done; }
+
+        // commands with equal keys may be merged when they are next to each other
+        abstract String batchKey();
+    }
+
+    // result: vehicles added, -1 if no long routes exist for this scenario/type
+    public static final class InjectVehicles extends Command<Integer> {
+        final String typeId;
+        final VehicleInjection.RouteDef route;
+        final int count;
+
+        public InjectVehicles(String typeId, VehicleInjection.RouteDef route, int count) {
+            this.typeId = Objects.requireNonNull(typeId);
+            this.route = Objects.requireNonNull(route);
+            this.count = Math.max(0, count);
+        }
+
+        @Override String batchKey() { return "inject|" + typeId + "|" + route.baseId; }
+    }
+
+    public static final class ForceTls extends Command<Void> {
+        final String tlsId;
+        final boolean red;
+
+        public ForceTls(String tlsId, boolean red) {
+            this.tlsId = Objects.requireNonNull(tlsId);
+            this.red = red;
+        }
+
+        // red/green on the same light: only the last one matters
+        @Override String batchKey() { return "force|" + tlsId; }
+    }
+
+    public static final class ResetTls extends Command<Void> {
+        @Override String batchKey() { return "reset"; }
+    }
+
+    public static final class SetRuleBased extends Command<Void> {
+        final boolean enabled;
+
+        public SetRuleBased(boolean enabled) { this.enabled = enabled; }
+
+        @Override String batchKey() { return "rule"; }
+    }
+
+    // ===================== State =====================
+    private final ConcurrentLinkedQueue<Command<?>> inbox = new ConcurrentLinkedQueue<>();
+
+    // simulation thread only: commands taken from the inbox but not finished yet
+    private final ArrayDeque<Command<?>> backlog = new ArrayDeque<>();
+    // simulation thread only: injection batch that is being worked off in slices
+    private InjectBatch activeInject = null;
+
+    private volatile boolean closed = false;
+
+    public <R> CompletableFuture<R> submit(Command<R> cmd) {
+        if (closed) {
+            cmd.done.completeExceptionally(new CancellationException("simulation stopped"));
+            return cmd.done;
+        }
+        inbox.add(cmd);
+        // close() may have drained the inbox between the check and the add
+        if (closed && inbox.remove(cmd)) {
+            cmd.done.completeExceptionally(new CancellationException("simulation stopped"));
+        }
+        return cmd.done;
+    }
+
+    // ===================== Drain (simulation thread) =====================
+    // Returns the number of commands completed. At least one unit of work is done per call,
+    // so a budget smaller than a single command cannot starve the queue.
+    public int drain(TrafficControl trafficControl, VehicleInjection injection, long budgetNanos) {
+        Command<?> c;
+        while ((c = inbox.poll()) != null) backlog.addLast(c);
+        if (backlog.isEmpty() && activeInject == null) return 0;
+
+        long deadline = System.nanoTime() + budgetNanos;
+        int completed = 0;
+        boolean first = true;
+
+        while (first || System.nanoTime() < deadline) {
+            first = false;
+
+            if (activeInject != null) {
+                if (activeInject.runSlice()) {
+                    completed += activeInject.members.size();
+                    activeInject = null;
+                }
+                continue;
+            }
+
+            Command<?> head = backlog.pollFirst();
+            if (head == null) break;
+
+            // take every directly following command of the same kind
+            ArrayDeque<Command<?>> run = new ArrayDeque<>();
+            run.add(head);
+            String key = head.batchKey();
+            while (!backlog.isEmpty() && key.equals(backlog.peekFirst().batchKey())) run.add(backlog.pollFirst());
+
+            if (head instanceof InjectVehicles) {
+                activeInject = new InjectBatch(injection, run);
+                continue;
+            }
+            completed += applyRun(trafficControl, run);
+        }
+        return completed;
+    }
+
+    private static int applyRun(TrafficControl trafficControl, ArrayDeque<Command<?>> run) {
+        Command<?> last = run.peekLast();
+        try {
+            if (last instanceof ForceTls) {
+                ForceTls f = (ForceTls) last;
+                if (f.red) trafficControl.forceTrafficLightRed(f.tlsId);
+                else trafficControl.forceTrafficLightGreen(f.tlsId);
+            } else if (last instanceof ResetTls) {
+                trafficControl.resetAllForcedTrafficLights();
+            } else if (last instanceof SetRuleBased) {
+                trafficControl.setRuleBasedTlsEnabled(((SetRuleBased) last).enabled);
+            }
+            for (Command<?> c : run) c.done.complete(null);
+        } catch (RuntimeException ex) {
+            Logging.LOG.log(java.util.logging.Level.WARNING, "TraCI command failed: " + last.batchKey(), ex);
+            for (Command<?> c : run) c.done.completeExceptionally(ex);
+        }
+        return run.size();
+    }
+
+    // Same type + route injections run as one batch; the route variants are built once and
+    // the vehicles are added in slices, each future gets its own share of the added count.
+    private static final class InjectBatch {
+        final VehicleInjection injection;
+        final ArrayDeque<Command<?>> members;
+        final String typeId;
+        final VehicleInjection.RouteDef route;
+        int remaining;
+        int added = 0;
+
+        InjectBatch(VehicleInjection injection, ArrayDeque<Command<?>> members) {
+            this.injection = injection;
+            this.members = members;
+            InjectVehicles head = (InjectVehicles) members.peekFirst();
+            this.typeId = head.typeId;
+            this.route = head.route;
+            int total = 0;
+            for (Command<?> c : members) total += ((InjectVehicles) c).count;
+            this.remaining = total;
+        }
+
+        // true once the batch is finished (all futures completed)
+        boolean runSlice() {
+            int n = Math.min(INJECT_SLICE, remaining);
+            int r;
+            try {
+                r = n == 0 ? 0 : injection.injectVehicles(typeId, route, n);
+            } catch (RuntimeException ex) {
+                Logging.LOG.log(java.util.logging.Level.WARNING, "Injection failed: " + typeId + " / " + route, ex);
+                for (Command<?> c : members) c.done.completeExceptionally(ex);
+                return true;
+            }
+
+            if (r < 0) {
+                for (Command<?> c : members) complete(c, -1);
+                return true;
+            }
+
+            added += r;
+            remaining -= n;
+            if (remaining > 0) return false;
+
+            int left = added;
+            for (Command<?> c : members) {
+                int share = Math.min(left, ((InjectVehicles) c).count);
+                left -= share;
+                complete(c, share);
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static void complete(Command<?> c, int value) {
+            ((Command<Integer>) c).done.complete(value);
+        }
+    }
+
+    // ===================== Shutdown =====================
+    // Simulation thread, after the loop: fails everything that has not run;
+    // later submits fail immediately.
+    public void close() {
+        closed = true;
+        CancellationException stopped = new CancellationException("simulation stopped");
+        Command<?> c;
+        while ((c = inbox.poll()) != null) c.done.completeExceptionally(stopped);
+        while ((c = backlog.poll()) != null) c.done.completeExceptionally(stopped);
+        if (activeInject != null) {
+            for (Command<?> m : activeInject.members) m.done.completeExceptionally(stopped);
+            activeInject = null;
+        }
+    }
+}
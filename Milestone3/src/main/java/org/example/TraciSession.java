@@ -0,0 +1,53 @@
+// ===================== TraciSession.java =====================
+package org.example;
+
+import java.util.List;
+
+// One labeled simulation connection (through the active SimulationBackend).
+// libtraci has a single *active* connection per process (Simulation.switchConnection), so
+// runs sharing a JVM take LOCK, activate() their label and only then talk to TraCI.
+// The lock is also held while SUMO computes the step, i.e. in-process runs are serial on
+// the TraCI side; only their Java work overlaps. For real parallelism use separate JVMs
+// (SimulationRunner --mode process). libsumo holds only one simulation per JVM at all.
+final class TraciSession {
+
+    static final String DEFAULT_LABEL = "default";
+    static final Object LOCK = new Object();
+
+    // guarded by LOCK
+    private static String activeLabel = null;
+
+    final String label;
+    private final SimulationBackend sumo = Backends.get();
+
+    TraciSession(String label) {
+        this.label = (label == null || label.isBlank()) ? DEFAULT_LABEL : label;
+    }
+
+    void start(List<String> cmd) {
+        synchronized (LOCK) {
+            sumo.start(cmd, label);
+            // a new connection becomes the active one
+            activeLabel = label;
+        }
+    }
+
+    // caller must hold LOCK
+    void activate() {
+        if (label.equals(activeLabel)) return;
+        sumo.switchConnection(label);
+        activeLabel = label;
+    }
+
+    void close() {
+        synchronized (LOCK) {
+            try {
+                activate();
+                sumo.close();
+            } catch (Exception ignored) {
+            } finally {
+                if (label.equals(activeLabel)) activeLabel = null;
+            }
+        }
+    }
+}
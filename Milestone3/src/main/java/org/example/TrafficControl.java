@@ -1,10 +1,10 @@
 // ===================== TrafficControl.java =====================
 package org.example;
 
-import org.eclipse.sumo.libtraci.*;
-
 import javax.swing.*;
-import java.lang.reflect.Method;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -22,6 +22,7 @@ public class TrafficControl {
 
     private final JComboBox<TlsItem> tlComboRef;
     private final JLabel tlStateLabel;
+    private final SimulationBackend sumo = Backends.get();
 
     private volatile java.util.List<String> tlsIdsCached = new ArrayList<>();
     private volatile String selectedTlsId = null;
@@ -33,8 +34,11 @@ public class TrafficControl {
 
     // Rule-based TLS
     private volatile boolean ruleBasedTlsEnabled = false;
-    private static final double RULE_STOP_SEC = 6.0;
-    private static final double RULE_GO_SEC   = 12.0;
+    static final double DEFAULT_RULE_STOP_SEC = 6.0;
+    static final double DEFAULT_RULE_GO_SEC   = 12.0;
+    // overridable per run (parameter sweeps)
+    private volatile double ruleStopSec = DEFAULT_RULE_STOP_SEC;
+    private volatile double ruleGoSec   = DEFAULT_RULE_GO_SEC;
 
     enum RulePhase { AUTO, HOLD_RED, HOLD_GREEN }
     static class RuleState {
@@ -45,30 +49,61 @@ public class TrafficControl {
     private final Map<String, String> ruleOriginalPrograms = new ConcurrentHashMap<>();
     private final Set<String> ruleTouchedTls = ConcurrentHashMap.newKeySet();
 
+    // both may be null (headless): status text then only goes to the log
     public TrafficControl(JComboBox<TlsItem> tlComboRef, JLabel tlStateLabel) {
         this.tlComboRef = tlComboRef;
         this.tlStateLabel = tlStateLabel;
     }
 
+    private void status(String text) {
+        if (tlStateLabel == null) { Logging.LOG.fine(text); return; }
+        SwingUtilities.invokeLater(() -> tlStateLabel.setText(text));
+    }
+
     public boolean isRuleBasedTlsEnabled() { return ruleBasedTlsEnabled; }
 
+    // ids as of the last rebuildTrafficLightDropdown()
+    public java.util.List<String> tlsIds() { return tlsIdsCached; }
+
+    // false -> applyPerStep is a no-op, so steps may be skipped in one Simulation.step(t)
+    public boolean needsPerStepControl() {
+        if (ruleBasedTlsEnabled) return true;
+        for (ManualTlsMode m : manualTlsMode.values()) {
+            if (m != null && m != ManualTlsMode.NONE) return true;
+        }
+        return false;
+    }
+
     public void setSelectedTls(String tlsId) { this.selectedTlsId = tlsId; }
 
+    // red / green hold times of the rule-based controller
+    public void setRuleTiming(double stopSec, double goSec) {
+        if (!(stopSec > 0) || !(goSec > 0)) throw new IllegalArgumentException("rule hold times must be > 0");
+        this.ruleStopSec = stopSec;
+        this.ruleGoSec = goSec;
+    }
+
     public void setRuleBasedTlsEnabled(boolean enabled) {
         this.ruleBasedTlsEnabled = enabled;
         if (!enabled) restoreRuleBasedToAuto();
-        SwingUtilities.invokeLater(() -> tlStateLabel.setText(enabled ? "Rule-based TLS: ON" : "Rule-based TLS: OFF"));
+        status(enabled ? "Rule-based TLS: ON" : "Rule-based TLS: OFF");
     }
 
     // ===================== TLS dropdown populate =====================
     public void rebuildTrafficLightDropdown() {
         try {
-            StringVector ids = TrafficLight.getIDList();
+            java.util.List<String> ids = sumo.trafficLightIds();
             final java.util.List<String> list = new ArrayList<>();
             for (int i = 0; i < ids.size(); i++) list.add(ids.get(i));
 
             tlsIdsCached = new ArrayList<>(list);
 
+            if (tlComboRef == null) {
+                selectedTlsId = list.isEmpty() ? null : list.get(0);
+                Logging.LOG.info(list.isEmpty() ? "TL State: none" : "TL State: ready (" + list.size() + ")");
+                return;
+            }
+
             SwingUtilities.invokeLater(() -> {
                 tlComboRef.removeAllItems();
                 Map<String, String> labels = MapVisualisation.getTlsLabels();
@@ -84,6 +119,7 @@ public class TrafficControl {
             });
         } catch (Exception ex) {
             Logging.LOG.log(java.util.logging.Level.WARNING, "Failed to read traffic light IDs", ex);
+            if (tlComboRef == null) return;
             SwingUtilities.invokeLater(() -> {
                 tlComboRef.removeAllItems();
                 tlComboRef.setEnabled(false);
@@ -103,7 +139,7 @@ public class TrafficControl {
         if (tlsId == null) return;
         if (originalTlsPrograms.containsKey(tlsId)) return;
         try {
-            String prog = TrafficLight.getProgram(tlsId);
+            String prog = sumo.tlsProgram(tlsId);
             originalTlsPrograms.put(tlsId, (prog == null || prog.isBlank()) ? "0" : prog);
         } catch (Exception ex) {
             originalTlsPrograms.put(tlsId, "0");
@@ -117,14 +153,14 @@ public class TrafficControl {
             if (mode == null || mode == ManualTlsMode.NONE) continue;
 
             try {
-                String current = TrafficLight.getRedYellowGreenState(tlsId);
+                String current = sumo.tlsState(tlsId);
                 int n = current.length();
                 StringBuilder sb = new StringBuilder(n);
 
                 if (mode == ManualTlsMode.FORCE_RED) for (int i = 0; i < n; i++) sb.append('r');
                 else if (mode == ManualTlsMode.FORCE_GREEN) for (int i = 0; i < n; i++) sb.append('G');
 
-                TrafficLight.setRedYellowGreenState(tlsId, sb.toString());
+                sumo.setTlsState(tlsId, sb.toString());
             } catch (Exception ignored) {}
         }
     }
@@ -134,16 +170,16 @@ public class TrafficControl {
             rememberOriginalProgram(tlsId);
             manualTlsMode.put(tlsId, ManualTlsMode.FORCE_RED);
 
-            String current = TrafficLight.getRedYellowGreenState(tlsId);
+            String current = sumo.tlsState(tlsId);
             int n = current.length();
             StringBuilder sb = new StringBuilder(n);
             for (int i = 0; i < n; i++) sb.append('r');
-            TrafficLight.setRedYellowGreenState(tlsId, sb.toString());
+            sumo.setTlsState(tlsId, sb.toString());
 
-            SwingUtilities.invokeLater(() -> tlStateLabel.setText("TL " + tlsId + " forced RED (persistent)"));
+            status("TL " + tlsId + " forced RED (persistent)");
         } catch (Exception ex) {
             Logging.LOG.log(java.util.logging.Level.WARNING, "forceTrafficLightRed failed for " + tlsId, ex);
-            SwingUtilities.invokeLater(() -> tlStateLabel.setText("TL " + tlsId + " error (red)"));
+            status("TL " + tlsId + " error (red)");
         }
     }
 
@@ -152,16 +188,16 @@ public class TrafficControl {
             rememberOriginalProgram(tlsId);
             manualTlsMode.put(tlsId, ManualTlsMode.FORCE_GREEN);
 
-            String current = TrafficLight.getRedYellowGreenState(tlsId);
+            String current = sumo.tlsState(tlsId);
             int n = current.length();
             StringBuilder sb = new StringBuilder(n);
             for (int i = 0; i < n; i++) sb.append('G');
-            TrafficLight.setRedYellowGreenState(tlsId, sb.toString());
+            sumo.setTlsState(tlsId, sb.toString());
 
-            SwingUtilities.invokeLater(() -> tlStateLabel.setText("TL " + tlsId + " forced GREEN (persistent)"));
+            status("TL " + tlsId + " forced GREEN (persistent)");
         } catch (Exception ex) {
             Logging.LOG.log(java.util.logging.Level.WARNING, "forceTrafficLightGreen failed for " + tlsId, ex);
-            SwingUtilities.invokeLater(() -> tlStateLabel.setText("TL " + tlsId + " error (green)"));
+            status("TL " + tlsId + " error (green)");
         }
     }
 
@@ -174,8 +210,8 @@ public class TrafficControl {
                 String prog = originalTlsPrograms.get(tlsId);
                 if (prog == null || prog.isBlank()) prog = "0";
 
-                TrafficLight.setProgram(tlsId, prog);
-                try { TrafficLight.setPhaseDuration(tlsId, 0.0); } catch (Exception ignore) {}
+                sumo.setTlsProgram(tlsId, prog);
+                try { sumo.setTlsPhaseDuration(tlsId, 0.0); } catch (Exception ignore) {}
 
                 manualTlsMode.put(tlsId, ManualTlsMode.NONE);
                 ok++;
@@ -188,12 +224,9 @@ public class TrafficControl {
         manualTlsMode.entrySet().removeIf(e -> e.getValue() == ManualTlsMode.NONE);
         originalTlsPrograms.clear();
 
-        final int okF = ok, failF = fail;
-        SwingUtilities.invokeLater(() -> {
-            if (okF > 0 && failF == 0) tlStateLabel.setText("TL Reset: all back to NORMAL (" + okF + ")");
-            else if (okF > 0) tlStateLabel.setText("TL Reset: normal=" + okF + ", failed=" + failF);
-            else tlStateLabel.setText("TL Reset: nothing to reset");
-        });
+        if (ok > 0 && fail == 0) status("TL Reset: all back to NORMAL (" + ok + ")");
+        else if (ok > 0) status("TL Reset: normal=" + ok + ", failed=" + fail);
+        else status("TL Reset: nothing to reset");
     }
 
     // ===================== Rule-based TLS =====================
@@ -201,7 +234,7 @@ public class TrafficControl {
         if (tlsId == null) return;
         if (ruleOriginalPrograms.containsKey(tlsId)) return;
         try {
-            String prog = TrafficLight.getProgram(tlsId);
+            String prog = sumo.tlsProgram(tlsId);
             ruleOriginalPrograms.put(tlsId, (prog == null || prog.isBlank()) ? "0" : prog);
         } catch (Exception ex) {
             ruleOriginalPrograms.put(tlsId, "0");
@@ -213,8 +246,8 @@ public class TrafficControl {
             try {
                 String prog = ruleOriginalPrograms.get(tlsId);
                 if (prog == null || prog.isBlank()) prog = "0";
-                TrafficLight.setProgram(tlsId, prog);
-                try { TrafficLight.setPhaseDuration(tlsId, 0.0); } catch (Exception ignore) {}
+                sumo.setTlsProgram(tlsId, prog);
+                try { sumo.setTlsPhaseDuration(tlsId, 0.0); } catch (Exception ignore) {}
             } catch (Exception ignore) {}
         }
         ruleTouchedTls.clear();
@@ -222,55 +255,39 @@ public class TrafficControl {
         ruleStates.clear();
     }
 
-    private StringVector safeGetControlledLanes(String tlsId) {
-        try {
-            Method m = TrafficLight.class.getMethod("getControlledLanes", String.class);
-            Object o = m.invoke(null, tlsId);
-            if (o instanceof StringVector) return (StringVector) o;
-        } catch (Exception ignore) {}
-        return null;
+    private java.util.List<String> safeGetControlledLanes(String tlsId) {
+        return caps().controlledLanes.apply(tlsId);
     }
 
     private int haltingVehiclesNearTls(String tlsId) {
-        StringVector lanes = safeGetControlledLanes(tlsId);
+        java.util.List<String> lanes = safeGetControlledLanes(tlsId);
         if (lanes == null || lanes.size() == 0) return 0;
 
+        TraciCapabilities caps = caps();
         int sum = 0;
         int any = 0;
 
         for (int i = 0; i < lanes.size(); i++) {
-            String laneId = lanes.get(i);
-
-            Integer h = tryInvokeInt(Lane.class, "getLastStepHaltingNumber",
-                    new Class<?>[]{String.class}, new Object[]{laneId});
-            if (h != null) { sum += h; any++; continue; }
-
-            Integer v = tryInvokeInt(Lane.class, "getLastStepVehicleNumber",
-                    new Class<?>[]{String.class}, new Object[]{laneId});
-            if (v != null) { sum += v; any++; }
+            int h = caps.laneDemand.applyAsInt(lanes.get(i));
+            if (h >= 0) { sum += h; any++; }
         }
 
         if (any == 0) return 0;
         return sum;
     }
 
-    private static Integer tryInvokeInt(Class<?> clazz, String methodName, Class<?>[] sig, Object[] args) {
-        try {
-            Method m = clazz.getMethod(methodName, sig);
-            Object o = m.invoke(null, args);
-            if (o instanceof Number) return ((Number) o).intValue();
-        } catch (Exception ignored) {}
-        return null;
+    private TraciCapabilities caps() {
+        return sumo.capabilities();
     }
 
     private void setTlsAll(String tlsId, char c) {
         try {
-            String current = TrafficLight.getRedYellowGreenState(tlsId);
+            String current = sumo.tlsState(tlsId);
             if (current == null) return;
             int n = current.length();
             StringBuilder sb = new StringBuilder(n);
             for (int i = 0; i < n; i++) sb.append(c);
-            TrafficLight.setRedYellowGreenState(tlsId, sb.toString());
+            sumo.setTlsState(tlsId, sb.toString());
         } catch (Exception ignore) {}
     }
 
@@ -292,8 +309,8 @@ public class TrafficControl {
                     try {
                         String prog = ruleOriginalPrograms.get(tlsId);
                         if (prog == null || prog.isBlank()) prog = "0";
-                        TrafficLight.setProgram(tlsId, prog);
-                        try { TrafficLight.setPhaseDuration(tlsId, 0.0); } catch (Exception ignore) {}
+                        sumo.setTlsProgram(tlsId, prog);
+                        try { sumo.setTlsPhaseDuration(tlsId, 0.0); } catch (Exception ignore) {}
                     } catch (Exception ignore) {}
                     rs.phase = RulePhase.AUTO;
                     rs.untilSimTime = -1.0;
@@ -306,7 +323,7 @@ public class TrafficControl {
 
             if (rs.phase == RulePhase.AUTO) {
                 rs.phase = RulePhase.HOLD_RED;
-                rs.untilSimTime = simTime + RULE_STOP_SEC;
+                rs.untilSimTime = simTime + ruleStopSec;
                 setTlsAll(tlsId, 'r');
                 continue;
             }
@@ -314,17 +331,84 @@ public class TrafficControl {
             if (rs.untilSimTime > 0 && simTime >= rs.untilSimTime) {
                 if (rs.phase == RulePhase.HOLD_RED) {
                     rs.phase = RulePhase.HOLD_GREEN;
-                    rs.untilSimTime = simTime + RULE_GO_SEC;
+                    rs.untilSimTime = simTime + ruleGoSec;
                     setTlsAll(tlsId, 'G');
                 } else if (rs.phase == RulePhase.HOLD_GREEN) {
                     rs.phase = RulePhase.HOLD_RED;
-                    rs.untilSimTime = simTime + RULE_STOP_SEC;
+                    rs.untilSimTime = simTime + ruleStopSec;
                     setTlsAll(tlsId, 'r');
                 }
             }
         }
     }
 
+    // ===================== Warm start (WarmStart sidecar) =====================
+    // Forced lights, the rule controller's holds and the programs to go back to. SUMO's state file
+    // has the lights' current program and phase, but not why we set them. Simulation thread only.
+    void writeState(DataOutput out) throws IOException {
+        out.writeBoolean(ruleBasedTlsEnabled);
+
+        out.writeInt(manualTlsMode.size());
+        for (Map.Entry<String, ManualTlsMode> e : manualTlsMode.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeByte(e.getValue().ordinal());
+        }
+        writeMap(out, originalTlsPrograms);
+
+        out.writeInt(ruleStates.size());
+        for (Map.Entry<String, RuleState> e : ruleStates.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeByte(e.getValue().phase.ordinal());
+            out.writeDouble(e.getValue().untilSimTime);
+        }
+        writeMap(out, ruleOriginalPrograms);
+
+        out.writeInt(ruleTouchedTls.size());
+        for (String id : ruleTouchedTls) out.writeUTF(id);
+    }
+
+    // after rebuildTrafficLightDropdown(); replaces whatever was set before
+    void readState(DataInput in) throws IOException {
+        ruleBasedTlsEnabled = in.readBoolean();
+
+        manualTlsMode.clear();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) manualTlsMode.put(in.readUTF(), ManualTlsMode.values()[in.readByte()]);
+        readMap(in, originalTlsPrograms);
+
+        ruleStates.clear();
+        n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            RuleState rs = new RuleState();
+            String id = in.readUTF();
+            rs.phase = RulePhase.values()[in.readByte()];
+            rs.untilSimTime = in.readDouble();
+            ruleStates.put(id, rs);
+        }
+        readMap(in, ruleOriginalPrograms);
+
+        ruleTouchedTls.clear();
+        n = in.readInt();
+        for (int i = 0; i < n; i++) ruleTouchedTls.add(in.readUTF());
+
+        long forced = manualTlsMode.values().stream().filter(m -> m != ManualTlsMode.NONE).count();
+        status("Warm start: rule-based TLS " + (ruleBasedTlsEnabled ? "ON" : "OFF") + ", forced lights=" + forced);
+    }
+
+    private static void writeMap(DataOutput out, Map<String, String> m) throws IOException {
+        out.writeInt(m.size());
+        for (Map.Entry<String, String> e : m.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+    }
+
+    private static void readMap(DataInput in, Map<String, String> m) throws IOException {
+        m.clear();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) m.put(in.readUTF(), in.readUTF());
+    }
+
     // ===================== Status text helper =====================
     public String buildTlsStatusString() {
         String tlsShow = selectedTlsId;
@@ -335,7 +419,7 @@ public class TrafficControl {
         }
 
         try {
-            String ry = TrafficLight.getRedYellowGreenState(tlsShow);
+            String ry = sumo.tlsState(tlsShow);
             ManualTlsMode mm = manualTlsMode.getOrDefault(tlsShow, ManualTlsMode.NONE);
             String mmTxt = (mm == ManualTlsMode.NONE) ? "AUTO" : (mm == ManualTlsMode.FORCE_RED ? "FORCED RED" : "FORCED GREEN");
             String rbTxt = ruleBasedTlsEnabled ? "RULE=ON" : "RULE=OFF";
@@ -353,4 +437,4 @@ public class TrafficControl {
             return "<html>TL: " + tlsShow + "<br>(read error)</html>";
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
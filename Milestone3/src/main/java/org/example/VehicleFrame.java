@@ -0,0 +1,191 @@
+// ===================== VehicleFrame.java =====================
+package org.example;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Copy of one sampled step, published by the simulation thread to the metrics stage and the view.
+// Nothing in here touches libtraci after it is filled, and nobody writes to it while it is published.
+// Live frames come from a Pool and are reused: every consumer holds a reference (retain/release) and
+// the last release hands the arrays back, so the steady-state loop allocates no per-vehicle arrays.
+public final class VehicleFrame {
+
+    double simTime;
+    int size;
+    // arrays are at least `size` long (pooled frames keep their capacity)
+    String[] ids;
+    double[] x;
+    double[] y;
+    // NaN when not read
+    double[] speed;
+    double[] waiting;
+    // VehicleRegistry.TYPE_*, already resolved
+    byte[] types;
+
+    // sim times of arrivals since the previous frame, first arrivalCount entries
+    double[] arrivalTimes;
+    int arrivalCount;
+    // travel times (s), waiting times (s) and VehicleRegistry.TYPE_* of trips ended since the previous
+    // frame, first tripCount entries, NaN when unknown; live frames only (not recorded)
+    double[] tripTimes;
+    double[] tripWaits;
+    byte[] tripTypes;
+    int tripCount;
+
+    int speedFactorUi;
+    boolean ruleBasedEnabled;
+    // true when the pacer wants this step on screen
+    boolean render;
+    // only built for rendered frames (needs TraCI), else null
+    String tlsStatus;
+    // every TLS state in TrafficControl.tlsIds() order, only while recording, else null
+    String[] tlsStates;
+
+    // null = not pooled (replay), release() is then a no-op
+    private final Pool pool;
+    private final AtomicInteger refs = new AtomicInteger();
+
+    private VehicleFrame(Pool pool, int capacity) {
+        this.pool = pool;
+        ids = new String[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        speed = new double[capacity];
+        waiting = new double[capacity];
+        types = new byte[capacity];
+        arrivalTimes = new double[16];
+        tripTimes = new double[16];
+        tripWaits = new double[16];
+        tripTypes = new byte[16];
+    }
+
+    // from already decoded arrays (replay), the arrays are taken over, not copied
+    VehicleFrame(double simTime, int size, String[] ids, double[] x, double[] y, double[] speed,
+                 double[] waiting, byte[] types, double[] arrivalTimes,
+                 int speedFactorUi, boolean ruleBasedEnabled, boolean render, String tlsStatus,
+                 String[] tlsStates) {
+        this.pool = null;
+        this.simTime = simTime;
+        this.size = size;
+        this.ids = ids;
+        this.x = x;
+        this.y = y;
+        this.speed = speed;
+        this.waiting = waiting;
+        this.types = types;
+        this.arrivalTimes = arrivalTimes;
+        this.arrivalCount = arrivalTimes.length;
+        this.tripTimes = new double[0];
+        this.tripWaits = new double[0];
+        this.tripTypes = new byte[0];
+        this.tripCount = 0;
+        this.speedFactorUi = speedFactorUi;
+        this.ruleBasedEnabled = ruleBasedEnabled;
+        this.render = render;
+        this.tlsStatus = tlsStatus;
+        this.tlsStates = tlsStates;
+    }
+
+    // ===================== Fill (simulation thread, before publishing) =====================
+    void fill(VehicleSnapshot snap, double simTime, double[] arrivals, int arrivalCount,
+              int speedFactorUi, boolean ruleBasedEnabled, boolean render, String tlsStatus) {
+        int n = snap.size();
+        ensureCapacity(n);
+        this.simTime = simTime;
+        this.size = n;
+        for (int i = 0; i < n; i++) {
+            ids[i] = snap.id(i);
+            x[i] = snap.x(i);
+            y[i] = snap.y(i);
+            speed[i] = snap.speed(i);
+            waiting[i] = snap.waiting(i);
+            types[i] = snap.typeCode(i);
+        }
+        // drop id references past the end so arrived vehicles' strings can be collected
+        if (n < ids.length && ids[n] != null) Arrays.fill(ids, n, ids.length, null);
+
+        if (arrivalTimes.length < arrivalCount) arrivalTimes = new double[Math.max(arrivalCount, arrivalTimes.length * 2)];
+        System.arraycopy(arrivals, 0, arrivalTimes, 0, arrivalCount);
+        this.arrivalCount = arrivalCount;
+
+        this.speedFactorUi = speedFactorUi;
+        this.ruleBasedEnabled = ruleBasedEnabled;
+        this.render = render;
+        this.tlsStatus = tlsStatus;
+    }
+
+    void fillTrips(double[] times, double[] waits, byte[] types, int count) {
+        if (tripTimes.length < count) {
+            int cap = Math.max(count, tripTimes.length * 2);
+            tripTimes = new double[cap];
+            tripWaits = new double[cap];
+            tripTypes = new byte[cap];
+        }
+        System.arraycopy(times, 0, tripTimes, 0, count);
+        System.arraycopy(waits, 0, tripWaits, 0, count);
+        System.arraycopy(types, 0, tripTypes, 0, count);
+        this.tripCount = count;
+    }
+
+    // reused between fills; null when TLS states are not captured
+    String[] tlsStatesBuffer(int n) {
+        if (n < 0) return tlsStates = null;
+        if (tlsStates == null || tlsStates.length != n) tlsStates = new String[n];
+        return tlsStates;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= ids.length) return;
+        int cap = Math.max(n, ids.length + ids.length / 2);
+        ids = Arrays.copyOf(ids, cap);
+        x = new double[cap];
+        y = new double[cap];
+        speed = new double[cap];
+        waiting = new double[cap];
+        types = new byte[cap];
+    }
+
+    // ===================== References =====================
+    // one more consumer (before handing the frame to it)
+    void retain() {
+        if (pool != null) refs.incrementAndGet();
+    }
+
+    // consumer done; the last release returns the frame to its pool
+    void release() {
+        if (pool == null) return;
+        int left = refs.decrementAndGet();
+        if (left == 0) pool.give(this);
+        else if (left < 0) throw new IllegalStateException("VehicleFrame released more often than retained");
+    }
+
+    // ===================== Pool =====================
+    // Frames wait here between uses. Taken by the simulation thread, given back by whichever consumer
+    // releases last; in steady state its size is the number of frames in flight (metrics ring + view).
+    static final class Pool {
+        private VehicleFrame[] free = new VehicleFrame[8];
+        private int freeCount = 0;
+        private int created = 0;
+
+        // a frame with one reference (the caller's)
+        synchronized VehicleFrame take(int sizeHint) {
+            VehicleFrame f;
+            if (freeCount > 0) {
+                f = free[--freeCount];
+                free[freeCount] = null;
+            } else {
+                f = new VehicleFrame(this, Math.max(256, sizeHint));
+                created++;
+            }
+            f.refs.set(1);
+            return f;
+        }
+
+        private synchronized void give(VehicleFrame f) {
+            if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = f;
+        }
+
+        synchronized int created() { return created; }
+    }
+}
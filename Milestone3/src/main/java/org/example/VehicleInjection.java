@@ -1,23 +1,23 @@
 // ===================== VehicleInjection.java =====================
 package org.example;
 
-import org.eclipse.sumo.libtraci.*;
-
 import javax.swing.*;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import java.io.File;
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.*;
 
+// One instance per simulation run (route cache, installed routes and RNG belong to that
+// run's SUMO connection); the GUI owns one, each headless run its own.
 public final class VehicleInjection {
 
-    private VehicleInjection() {}
-
     // ===================== ROUTE DEFINITIONS =====================
     public static class RouteDef {
         public final String baseId;
@@ -47,27 +47,75 @@ public final class VehicleInjection {
         }
     }
 
-    public static final LinkedHashMap<String, RouteDef> TRIP_ROUTES = new LinkedHashMap<>();
-    public static final java.util.List<RouteDef> ALLOWED_ROUTES = Collections.synchronizedList(new ArrayList<>());
+    private final String sumocfgPath;
+    // asked for when the via pool is built (GUI startup: the net may still be parsing)
+    private final java.util.function.Supplier<MapVisualisation.Network> network;
 
-    private static final Random RNG = new Random();
+    private final LinkedHashMap<String, RouteDef> tripRoutes = new LinkedHashMap<>();
+    private final java.util.List<RouteDef> allowedRoutes = Collections.synchronizedList(new ArrayList<>());
+
+    // replaced when a warm start restores it
+    private Random rng = new Random();
+    private final java.util.concurrent.atomic.AtomicLong vehSeq = new java.util.concurrent.atomic.AtomicLong();
 
     // long-route cache + installed routes
-    private static final Set<String> installedRoutes = ConcurrentHashMap.newKeySet();
-    private static final ConcurrentHashMap<String, java.util.List<RouteVariant>> variantsByScenarioType = new ConcurrentHashMap<>();
-    private static final ArrayList<String> viaPool = new ArrayList<>();
+    private final Set<String> installedRoutes = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, java.util.List<RouteVariant>> variantsByScenarioType = new ConcurrentHashMap<>();
+    private final ArrayList<String> viaPool = new ArrayList<>();
 
-    // 30/40/20/10
-    private static final double[] BRANCH_P = new double[]{0.30, 0.40, 0.20, 0.10};
+    // 30/40/20/10 (overridable per run)
+    static final double[] DEFAULT_BRANCH_P = new double[]{0.30, 0.40, 0.20, 0.10};
+    private double[] branchP = DEFAULT_BRANCH_P.clone();
 
     private static final int LONG_MIN_EDGES = 14;
-    private static final int LONG_TRIES = 800;
+    static final int DEFAULT_LONG_TRIES = 800;
+    private int longTries = DEFAULT_LONG_TRIES;
     private static final int PREFIX_EDGES_FOR_SPLIT = 4;
     private static final boolean DISALLOW_EDGE_REPEATS = true;
 
-    private static volatile boolean ready = false;
+    private volatile boolean ready = false;
+
+    // network: road geometry of the same scenario (extra via-edge candidates)
+    public VehicleInjection(String sumocfgPath, MapVisualisation.Network network) {
+        this(sumocfgPath, () -> network);
+    }
+
+    public VehicleInjection(String sumocfgPath, java.util.function.Supplier<MapVisualisation.Network> network) {
+        this.sumocfgPath = sumocfgPath;
+        this.network = () -> {
+            MapVisualisation.Network n = network.get();
+            return n == null ? MapVisualisation.Network.EMPTY : n;
+        };
+    }
+
+    public boolean isReady() { return ready; }
+
+    public java.util.List<RouteDef> allowedRoutes() { return allowedRoutes; }
+
+    // fixed seed -> same via-pool order and branch picks (call before rebuildAllowedRoutesAndDropdown)
+    public void setSeed(long seed) { rng.setSeed(seed); }
+
+    // share of injected vehicles per variant A/B/C/D; normalized to sum 1
+    public void setBranchSplit(double[] p) {
+        if (p == null || p.length != DEFAULT_BRANCH_P.length) {
+            throw new IllegalArgumentException("branch split needs " + DEFAULT_BRANCH_P.length + " values");
+        }
+        double sum = 0.0;
+        for (double v : p) {
+            if (!(v >= 0)) throw new IllegalArgumentException("branch split values must be >= 0");
+            sum += v;
+        }
+        if (!(sum > 0)) throw new IllegalArgumentException("branch split must not be all zero");
+        double[] norm = new double[p.length];
+        for (int i = 0; i < p.length; i++) norm[i] = p[i] / sum;
+        this.branchP = norm;
+    }
 
-    public static boolean isReady() { return ready; }
+    // random via-edge attempts per long-route build (call before rebuildAllowedRoutesAndDropdown)
+    public void setLongTries(int tries) {
+        if (tries <= 0) throw new IllegalArgumentException("long tries must be > 0");
+        this.longTries = tries;
+    }
 
     // ===================== SUMOCFG PARSING =====================
     private static String readRouteFilesFromSumocfg(String sumocfgPath) {
@@ -94,11 +142,11 @@ public final class VehicleInjection {
         return null;
     }
 
-    private static File resolveRelativeToSumocfg(String pathMaybeRelative) {
+    private static File resolveRelativeToSumocfg(String sumocfgPath, String pathMaybeRelative) {
         File f = new File(pathMaybeRelative);
         if (f.exists()) return f;
 
-        File cfg = new File(Main.SUMOCFG_PATH);
+        File cfg = new File(sumocfgPath);
         File baseDir = cfg.getParentFile();
         if (baseDir == null) baseDir = new File(".");
         File alt = new File(baseDir, pathMaybeRelative);
@@ -113,10 +161,10 @@ public final class VehicleInjection {
     }
 
     // ===================== LOAD TRIPS FROM ROU =====================
-    public static void loadTripRoutesFromRou() {
-        TRIP_ROUTES.clear();
+    public void loadTripRoutesFromRou() {
+        tripRoutes.clear();
 
-        String routeFiles = readRouteFilesFromSumocfg(Main.SUMOCFG_PATH);
+        String routeFiles = readRouteFilesFromSumocfg(sumocfgPath);
         if (routeFiles == null || routeFiles.isBlank()) {
             Logging.LOG.warning("sumocfg has no <route-files>. Put your final.rou.xml there.");
             return;
@@ -125,7 +173,7 @@ public final class VehicleInjection {
         String[] parts = routeFiles.split("[,\\s]+");
         for (String p : parts) {
             if (p == null || p.isBlank()) continue;
-            File rou = resolveRelativeToSumocfg(p.trim());
+            File rou = resolveRelativeToSumocfg(sumocfgPath, p.trim());
             if (!rou.exists()) {
                 Logging.LOG.warning("Route file not found: " + rou.getPath());
                 continue;
@@ -133,10 +181,10 @@ public final class VehicleInjection {
             parseTrips(rou);
         }
 
-        Logging.LOG.info("Trips loaded: " + TRIP_ROUTES.size());
+        Logging.LOG.info("Trips loaded: " + tripRoutes.size());
     }
 
-    private static void parseTrips(File rouFile) {
+    private void parseTrips(File rouFile) {
         try {
             DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
             dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
@@ -158,7 +206,7 @@ public final class VehicleInjection {
                 String id   = t.getAttribute("id");
 
                 if (from == null || from.isBlank() || to == null || to.isBlank()) continue;
-                if (TRIP_ROUTES.containsKey(from)) continue;
+                if (tripRoutes.containsKey(from)) continue;
 
                 java.util.List<String> viaEdges = new ArrayList<>();
                 if (via != null && !via.isBlank()) {
@@ -169,57 +217,31 @@ public final class VehicleInjection {
 
                 String baseId = "rt_trip_" + sanitizeId(from) + "_" + sanitizeId(id == null ? ("t" + i) : id);
                 String label = "TRIP: " + from + " -> " + to;
-                TRIP_ROUTES.put(from, new RouteDef(baseId, label, from.trim(), to.trim(), viaEdges));
+                tripRoutes.put(from, new RouteDef(baseId, label, from.trim(), to.trim(), viaEdges));
             }
         } catch (Exception ex) {
             Logging.LOG.log(java.util.logging.Level.WARNING, "Failed parsing rou file: " + rouFile.getPath(), ex);
         }
     }
 
-    // ===================== Reflection helpers =====================
-    private static Object tryInvokeRet(Class<?> clazz, String methodName, Class<?>[] sig, Object[] args) {
-        try {
-            Method m = clazz.getMethod(methodName, sig);
-            return m.invoke(null, args);
-        } catch (Exception ignored) { return null; }
-    }
-
-    private static Double tryInvokeDouble(Class<?> clazz, String methodName, Class<?>[] sig, Object[] args) {
-        try {
-            Method m = clazz.getMethod(methodName, sig);
-            Object o = m.invoke(null, args);
-            if (o instanceof Number) return ((Number) o).doubleValue();
-        } catch (Exception ignored) {}
-        return null;
-    }
-
-    private static Integer tryInvokeInt(Class<?> clazz, String methodName, Class<?>[] sig, Object[] args) {
-        try {
-            Method m = clazz.getMethod(methodName, sig);
-            Object o = m.invoke(null, args);
-            if (o instanceof Number) return ((Number) o).intValue();
-        } catch (Exception ignored) {}
-        return null;
-    }
-
     // ===================== Long-route building helpers =====================
-    private static void buildViaPoolOnce() {
+    private void buildViaPoolOnce() {
         if (!viaPool.isEmpty()) return;
 
         HashSet<String> pool = new HashSet<>();
-        for (RouteDef rd : TRIP_ROUTES.values()) {
+        for (RouteDef rd : tripRoutes.values()) {
             addEdgeToPool(pool, rd.fromEdge);
             addEdgeToPool(pool, rd.toEdge);
             if (rd.viaEdges != null) for (String v : rd.viaEdges) addEdgeToPool(pool, v);
         }
-        java.util.List<MapVisualisation.RoadGeom> geoms = MapVisualisation.getRoadGeoms();
+        java.util.List<MapVisualisation.RoadGeom> geoms = network.get().roadGeoms();
         if (geoms != null) {
             for (MapVisualisation.RoadGeom rg : geoms) addEdgeToPool(pool, rg.edgeId);
         }
 
         viaPool.addAll(pool);
         viaPool.removeIf(e -> e == null || e.isBlank() || e.startsWith(":"));
-        Collections.shuffle(viaPool, RNG);
+        Collections.shuffle(viaPool, rng);
 
         Logging.LOG.info("Via-edge pool built: " + viaPool.size());
     }
@@ -232,7 +254,7 @@ public final class VehicleInjection {
         pool.add(e);
     }
 
-    private static java.util.List<String> toList(StringVector sv) {
+    private static java.util.List<String> toList(java.util.List<String> sv) {
         if (sv == null || sv.size() == 0) return null;
         ArrayList<String> out = new ArrayList<>(sv.size());
         for (int i = 0; i < sv.size(); i++) {
@@ -242,54 +264,18 @@ public final class VehicleInjection {
         return out.isEmpty() ? null : out;
     }
 
-    private static StringVector extractEdgesFromFindRouteResult(Object obj) {
-        if (obj == null) return null;
-        if (obj instanceof StringVector) return (StringVector) obj;
-
-        try {
-            Method m = obj.getClass().getMethod("getEdges");
-            Object edges = m.invoke(obj);
-            if (edges instanceof StringVector) return (StringVector) edges;
-        } catch (Exception ignored) {}
-
-        try {
-            Method m = obj.getClass().getMethod("getEdgeList");
-            Object edges = m.invoke(obj);
-            if (edges instanceof StringVector) return (StringVector) edges;
-        } catch (Exception ignored) {}
-
-        return null;
-    }
-
-    private static StringVector findRouteEdges(String fromEdge, String toEdge, String vTypeId) {
-        Object r2 = tryInvokeRet(Simulation.class, "findRoute",
-                new Class<?>[]{String.class, String.class, String.class},
-                new Object[]{fromEdge, toEdge, vTypeId});
-        StringVector sv = extractEdgesFromFindRouteResult(r2);
-        if (sv != null && sv.size() > 0) return sv;
-
-        Object r3 = tryInvokeRet(Simulation.class, "findRoute",
-                new Class<?>[]{String.class, String.class, String.class, double.class},
-                new Object[]{fromEdge, toEdge, vTypeId, Simulation.getCurrentTime()});
-        sv = extractEdgesFromFindRouteResult(r3);
-        if (sv != null && sv.size() > 0) return sv;
-
-        return null;
+    private static java.util.List<String> findRouteEdges(String fromEdge, String toEdge, String vTypeId) {
+        return TraciCapabilities.get().findRoute.edges(fromEdge, toEdge, vTypeId);
     }
 
     private static boolean edgeAllowsVType(String edgeId, String vTypeId) {
         try {
-            int ln = Edge.getLaneNumber(edgeId);
+            int ln = Backends.get().edgeLaneCount(edgeId);
             if (ln <= 0) return true;
 
             String laneId = edgeId + "_0";
-            Method m = Lane.class.getMethod("getAllowed", String.class);
-            Object allowedObj = m.invoke(null, laneId);
-
-            if (!(allowedObj instanceof StringVector)) return true;
-            StringVector allowed = (StringVector) allowedObj;
-
-            if (allowed.size() == 0) return true;
+            java.util.List<String> allowed = TraciCapabilities.get().laneAllowed.apply(laneId);
+            if (allowed == null || allowed.size() == 0) return true;
 
             String want = "passenger";
             if (Main.TYPE_TRUCK.equals(vTypeId)) want = "truck";
@@ -307,8 +293,8 @@ public final class VehicleInjection {
     private static double safeEdgeLengthMeters(String edgeId) {
         try {
             String lane0 = edgeId + "_0";
-            Double len = tryInvokeDouble(Lane.class, "getLength", new Class<?>[]{String.class}, new Object[]{lane0});
-            if (len != null && len > 0 && Double.isFinite(len)) return len;
+            double len = TraciCapabilities.get().laneLength.applyAsDouble(lane0);
+            if (len > 0 && Double.isFinite(len)) return len;
         } catch (Exception ignore) {}
         return 5.0;
     }
@@ -347,7 +333,7 @@ public final class VehicleInjection {
         return true;
     }
 
-    private static java.util.List<RouteVariant> buildAndInstallLongVariants(RouteDef rd, String typeId) {
+    private java.util.List<RouteVariant> buildAndInstallLongVariants(RouteDef rd, String typeId) {
         String key = rd.baseId + "|" + typeId;
         java.util.List<RouteVariant> cached = variantsByScenarioType.get(key);
         if (cached != null && cached.size() >= 4) return cached;
@@ -379,9 +365,9 @@ public final class VehicleInjection {
             Logging.LOG.warning("Via pool very small (" + poolN + "). Long route variety may be limited.");
         }
 
-        for (int t = 0; t < LONG_TRIES; t++) {
-            String via1 = viaPool.get(RNG.nextInt(Math.max(1, poolN)));
-            String via2 = viaPool.get(RNG.nextInt(Math.max(1, poolN)));
+        for (int t = 0; t < longTries; t++) {
+            String via1 = viaPool.get(rng.nextInt(Math.max(1, poolN)));
+            String via2 = viaPool.get(rng.nextInt(Math.max(1, poolN)));
 
             if (via1 == null || via2 == null) continue;
             via1 = via1.trim(); via2 = via2.trim();
@@ -436,8 +422,8 @@ public final class VehicleInjection {
 
         // fallback: 1 via
         if (best.size() < 4 && poolN > 0) {
-            for (int t = 0; t < LONG_TRIES; t++) {
-                String via1 = viaPool.get(RNG.nextInt(Math.max(1, poolN)));
+            for (int t = 0; t < longTries; t++) {
+                String via1 = viaPool.get(rng.nextInt(Math.max(1, poolN)));
                 if (via1 == null) continue;
                 via1 = via1.trim();
                 if (via1.isBlank() || via1.startsWith(":")) continue;
@@ -492,9 +478,7 @@ public final class VehicleInjection {
         for (RouteVariant v : top) {
             if (installedRoutes.contains(v.routeId)) continue;
             try {
-                StringVector sv = new StringVector();
-                for (String e : v.edges) sv.add(e);
-                Route.add(v.routeId, sv);
+                Backends.get().addRoute(v.routeId, v.edges);
                 installedRoutes.add(v.routeId);
             } catch (Exception ex) {
                 Logging.LOG.warning("Route.add failed for " + v.routeId + " (" + v.label + "): " + ex.getMessage());
@@ -514,98 +498,140 @@ public final class VehicleInjection {
         return top;
     }
 
-    private static int pickVariantIndex() {
-        double r = RNG.nextDouble();
+    private int pickVariantIndex() {
+        double r = rng.nextDouble();
         double acc = 0.0;
-        for (int i = 0; i < BRANCH_P.length; i++) {
-            acc += BRANCH_P[i];
+        for (int i = 0; i < branchP.length; i++) {
+            acc += branchP[i];
             if (r <= acc) return i;
         }
-        return BRANCH_P.length - 1;
+        return branchP.length - 1;
     }
 
     // ===================== Build dropdown scenarios (called after SUMO starts) =====================
-    public static void rebuildAllowedRoutesAndDropdown(JComboBox<RouteDef> routeCombo) {
-        ALLOWED_ROUTES.clear();
+    public void rebuildAllowedRoutesAndDropdown(JComboBox<RouteDef> routeCombo) {
+        allowedRoutes.clear();
 
-        for (RouteDef rd : TRIP_ROUTES.values()) {
+        for (RouteDef rd : tripRoutes.values()) {
             java.util.List<String> base = toList(findRouteEdges(rd.fromEdge, rd.toEdge, Main.TYPE_CAR));
-            if (base != null && !base.isEmpty()) ALLOWED_ROUTES.add(rd);
+            if (base != null && !base.isEmpty()) allowedRoutes.add(rd);
             else Logging.LOG.warning("Dropping invalid trip route (car can't route): " + rd.name);
         }
 
-        if (Main.DROP_SECOND_ROUTE && ALLOWED_ROUTES.size() >= 2) {
-            RouteDef removed = ALLOWED_ROUTES.remove(1);
+        if (Main.DROP_SECOND_ROUTE && allowedRoutes.size() >= 2) {
+            RouteDef removed = allowedRoutes.remove(1);
             Logging.LOG.warning("Removed 2nd dropdown route (forced): " + removed.name);
         }
 
         String[] niceNames = {"Route 1", "Route 2", "Route 3", "Route 4", "Route 5", "Route 6"};
-        for (int i = 0; i < ALLOWED_ROUTES.size(); i++) {
-            if (i < niceNames.length) ALLOWED_ROUTES.get(i).name = niceNames[i];
-            else ALLOWED_ROUTES.get(i).name = "Route " + (i + 1);
+        for (int i = 0; i < allowedRoutes.size(); i++) {
+            if (i < niceNames.length) allowedRoutes.get(i).name = niceNames[i];
+            else allowedRoutes.get(i).name = "Route " + (i + 1);
         }
 
-        SwingUtilities.invokeLater(() -> {
+        if (routeCombo != null) SwingUtilities.invokeLater(() -> {
             DefaultComboBoxModel<RouteDef> model = new DefaultComboBoxModel<>();
-            for (RouteDef rd : ALLOWED_ROUTES) model.addElement(rd);
+            for (RouteDef rd : allowedRoutes) model.addElement(rd);
             routeCombo.setModel(model);
             routeCombo.setEnabled(model.getSize() > 0);
             if (model.getSize() > 0) routeCombo.setSelectedIndex(0);
         });
 
         // prebuild variants
-        for (RouteDef rd : ALLOWED_ROUTES) {
+        for (RouteDef rd : allowedRoutes) {
             buildAndInstallLongVariants(rd, Main.TYPE_CAR);
             buildAndInstallLongVariants(rd, Main.TYPE_TRUCK);
             buildAndInstallLongVariants(rd, Main.TYPE_BUS);
         }
 
-        ready = !ALLOWED_ROUTES.isEmpty();
-        Logging.LOG.info("Dropdown built. Scenarios=" + ALLOWED_ROUTES.size());
+        ready = !allowedRoutes.isEmpty();
+        Logging.LOG.info("Dropdown built. Scenarios=" + allowedRoutes.size());
+    }
+
+    // ===================== Warm start (WarmStart sidecar) =====================
+    // Built variants, the vehicle id sequence and the RNG. Restoring the variants skips the long-route
+    // search on the next launch; the id sequence keeps new vehicles clear of those in the saved state.
+    void writeState(ObjectOutput out) throws IOException {
+        out.writeLong(vehSeq.get());
+        out.writeObject(rng);
+        out.writeInt(variantsByScenarioType.size());
+        for (Map.Entry<String, java.util.List<RouteVariant>> e : variantsByScenarioType.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue().size());
+            for (RouteVariant v : e.getValue()) {
+                out.writeUTF(v.routeId);
+                out.writeUTF(v.label);
+                out.writeDouble(v.score);
+                out.writeInt(v.edges.size());
+                for (String edge : v.edges) out.writeUTF(edge);
+            }
+        }
+    }
+
+    // Call before rebuildAllowedRoutesAndDropdown (and after setSeed, the saved RNG wins).
+    // Routes SUMO did not keep in its state file are added again.
+    void readState(ObjectInput in) throws IOException, ClassNotFoundException {
+        vehSeq.set(in.readLong());
+        rng = (Random) in.readObject();
+
+        variantsByScenarioType.clear();
+        installedRoutes.clear();
+        int readded = 0;
+        int keys = in.readInt();
+        for (int k = 0; k < keys; k++) {
+            String key = in.readUTF();
+            int n = in.readInt();
+            ArrayList<RouteVariant> vars = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                String routeId = in.readUTF();
+                String label = in.readUTF();
+                double score = in.readDouble();
+                int edgeCount = in.readInt();
+                ArrayList<String> edges = new ArrayList<>(edgeCount);
+                for (int j = 0; j < edgeCount; j++) edges.add(in.readUTF());
+                vars.add(new RouteVariant(routeId, label, edges, score));
+
+                try {
+                    Backends.get().addRoute(routeId, edges);
+                    readded++;
+                } catch (Exception alreadyInState) {
+                    // SUMO restored it with the vehicles that use it
+                }
+                installedRoutes.add(routeId);
+            }
+            variantsByScenarioType.put(key, vars);
+        }
+        Logging.LOG.info("Warm start: " + keys + " route variant sets restored (" + readded + " routes added again), next vehicle #" + (vehSeq.get() + 1));
     }
 
     // ===================== Vehicle injection =====================
     private static void addVehicleRobust(String vehId, String routeId, String typeId) throws Exception {
-        boolean used = false;
-        try {
-            Method m = Vehicle.class.getMethod("add",
-                    String.class, String.class, String.class,
-                    double.class, String.class, double.class, double.class);
-            m.invoke(null, vehId, routeId, typeId,
-                    Simulation.getCurrentTime(),
-                    "best", 0.0, -1.0);
-            used = true;
-        } catch (Exception ignored) {}
-        if (!used) Vehicle.add(vehId, routeId, typeId);
+        TraciCapabilities.get().addVehicle.add(vehId, routeId, typeId);
     }
 
-    public static void injectVehicles(JFrame owner, String typeId, RouteDef rd, int n) {
-        if (!ready) {
-            JOptionPane.showMessageDialog(owner, "Not ready yet. Press Start Simulation first.",
-                    "Not Ready", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-        if (rd == null) return;
+    // Simulation thread only (GUI goes through TraciCommandQueue).
+    // Returns how many vehicles were added, -1 if no long routes exist.
+    public int injectVehicles(String typeId, RouteDef rd, int n) {
+        if (!ready || rd == null) return 0;
 
         java.util.List<RouteVariant> vars = buildAndInstallLongVariants(rd, typeId);
-        if (vars == null || vars.isEmpty()) {
-            JOptionPane.showMessageDialog(owner,
-                    "Could not build long routes for this scenario/type.\nTry another scenario.",
-                    "No Long Routes", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
+        if (vars == null || vars.isEmpty()) return -1;
+
+        int added = 0;
 
         for (int i = 0; i < n; i++) {
             int idx = pickVariantIndex();
             if (idx >= vars.size()) idx = vars.size() - 1;
             RouteVariant chosen = vars.get(idx);
 
-            String vehId = typeId + "_" + (System.nanoTime() & 0x7FFFFFFF);
+            String vehId = typeId + "_" + vehSeq.incrementAndGet();
             try {
                 addVehicleRobust(vehId, chosen.routeId, typeId);
+                added++;
             } catch (Exception ex) {
                 Logging.LOG.log(java.util.logging.Level.SEVERE, "Vehicle.add failed for " + vehId + " route=" + chosen.routeId, ex);
             }
         }
+        return added;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
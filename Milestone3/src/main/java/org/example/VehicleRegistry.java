@@ -0,0 +1,203 @@
+// ===================== VehicleRegistry.java =====================
+package org.example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// id <-> reusable int slot for every vehicle currently in the simulation.
+// A slot is handed out when a vehicle departs and goes back to the free list when it is gone (arrival),
+// so per-vehicle data lives in primitive arrays indexed by slot instead of maps keyed by id.
+// Static attributes (vType, vClass, colour, route, depart time) are stored once per vehicle at
+// registration and kept until arrival; per-step code only reads dynamic state. Simulation thread only.
+public final class VehicleRegistry {
+
+    // type codes, also the on-disk code in recordings
+    static final byte TYPE_CAR = 0;
+    static final byte TYPE_TRUCK = 1;
+    static final byte TYPE_BUS = 2;
+    static final String[] TYPE_NAMES = {Main.TYPE_CAR, Main.TYPE_TRUCK, Main.TYPE_BUS};
+
+    private final Map<String, Integer> slotOf = new HashMap<>();
+    private String[] idOf = new String[256];
+    private int[] seenStep = new int[256];
+
+    // static attributes by slot
+    private byte[] typeOf = new byte[256];
+    private String[] typeIdOf = new String[256];
+    private String[] vClassOf = new String[256];
+    private int[] colorOf = new int[256];
+    private String[] routeIdOf = new String[256];
+    private double[] departOf = new double[256];
+
+    // waiting time of the trip so far: SUMO's waiting time restarts at 0 whenever the vehicle moves,
+    // so a finished stop is added to waitDoneOf once a smaller value is read; NaN until first read
+    private double[] waitDoneOf = new double[256];
+    private double[] waitLastOf = new double[256];
+    // off the network between a teleport's start and end: missing from the step's results, not gone
+    private boolean[] teleportingOf = new boolean[256];
+
+    private int[] free = new int[256];
+    private int freeCount = 0;
+    // slots ever handed out; every slot < highWater is either live or on the free list
+    private int highWater = 0;
+    private int step = 0;
+
+    public int size() { return slotOf.size(); }
+
+    // upper bound (exclusive) of live slots, for arrays indexed by slot
+    public int slotLimit() { return highWater; }
+
+    public boolean contains(String id) { return slotOf.containsKey(id); }
+
+    // -1 when not registered
+    public int slot(String id) {
+        Integer s = slotOf.get(id);
+        return s == null ? -1 : s;
+    }
+
+    public String id(int slot) { return idOf[slot]; }
+
+    // VehicleRegistry.TYPE_*
+    public byte type(int slot) { return typeOf[slot]; }
+    // null when it could not be read
+    public String typeId(int slot) { return typeIdOf[slot]; }
+    public String vehicleClass(int slot) { return vClassOf[slot]; }
+    // 0xAARRGGBB, 0 when unknown
+    public int color(int slot) { return colorOf[slot]; }
+    public String routeId(int slot) { return routeIdOf[slot]; }
+    // NaN when unknown
+    public double departTime(int slot) { return departOf[slot]; }
+
+    // Seconds below 0.1 m/s so far, NaN when never read. Read on sampled steps only: a stop that starts
+    // and ends between two reads is missed, one that ends counts up to its last read.
+    public double tripWaiting(int slot) { return waitDoneOf[slot] + waitLastOf[slot]; }
+
+    // ===================== Departure / arrival =====================
+    // Slot of id, registered on first sighting (static attributes still unset: see setStatics).
+    public int acquire(String id) {
+        Integer s = slotOf.get(id);
+        if (s != null) return s;
+
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            slot = highWater++;
+            ensureCapacity(highWater);
+        }
+        idOf[slot] = id;
+        seenStep[slot] = step;
+        setStatics(slot, null, null, 0, null, Double.NaN);
+        waitDoneOf[slot] = 0.0;
+        waitLastOf[slot] = Double.NaN;
+        teleportingOf[slot] = false;
+        slotOf.put(id, slot);
+        return slot;
+    }
+
+    public void release(int slot) {
+        String id = idOf[slot];
+        if (id == null) return;
+        slotOf.remove(id);
+        idOf[slot] = null;
+        typeIdOf[slot] = null;
+        vClassOf[slot] = null;
+        routeIdOf[slot] = null;
+        if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+        free[freeCount++] = slot;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= idOf.length) return;
+        int cap = Math.max(n, idOf.length * 2);
+        idOf = Arrays.copyOf(idOf, cap);
+        seenStep = Arrays.copyOf(seenStep, cap);
+        typeOf = Arrays.copyOf(typeOf, cap);
+        typeIdOf = Arrays.copyOf(typeIdOf, cap);
+        vClassOf = Arrays.copyOf(vClassOf, cap);
+        colorOf = Arrays.copyOf(colorOf, cap);
+        routeIdOf = Arrays.copyOf(routeIdOf, cap);
+        departOf = Arrays.copyOf(departOf, cap);
+        waitDoneOf = Arrays.copyOf(waitDoneOf, cap);
+        waitLastOf = Arrays.copyOf(waitLastOf, cap);
+        teleportingOf = Arrays.copyOf(teleportingOf, cap);
+    }
+
+    // ===================== Per-step presence =====================
+    // beginStep(), seen() for every vehicle in this step's results, then (when the arrived list
+    // cannot be trusted) releaseUnseen(). Both sweeps are O(slots) but allocation-free.
+    public void beginStep() { step++; }
+
+    // back in the results: also ends a teleport whose end was not reported
+    public void seen(int slot) {
+        seenStep[slot] = step;
+        teleportingOf[slot] = false;
+    }
+
+    public void setTeleporting(int slot, boolean teleporting) { teleportingOf[slot] = teleporting; }
+    public boolean teleporting(int slot) { return teleportingOf[slot]; }
+
+    // this step's waiting time of the vehicle (NaN = not read, ignored)
+    public void trackWaiting(int slot, double waiting) {
+        if (!(waiting >= 0)) return;
+        double last = waitLastOf[slot];
+        if (waiting < last) waitDoneOf[slot] += last;
+        waitLastOf[slot] = waiting;
+    }
+
+    // finished stops and last read waiting time, from a warm start
+    public void restoreWaiting(int slot, double done, double last) {
+        waitDoneOf[slot] = done;
+        waitLastOf[slot] = last;
+    }
+
+    public double waitingDone(int slot) { return waitDoneOf[slot]; }
+    public double waitingLast(int slot) { return waitLastOf[slot]; }
+
+    // Frees every slot not seen since beginStep(), except teleporting vehicles; returns how many
+    // (vehicles that left).
+    public int releaseUnseen() {
+        int released = 0;
+        for (int s = 0; s < highWater; s++) {
+            if (idOf[s] != null && seenStep[s] != step && !teleportingOf[s]) {
+                release(s);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    // Frees slots not seen during the last maxUnseen steps, teleporting or not; returns how many.
+    public int releaseStale(int maxUnseen) {
+        int released = 0;
+        for (int s = 0; s < highWater; s++) {
+            if (idOf[s] != null && step - seenStep[s] > maxUnseen) {
+                release(s);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    // ===================== Static attributes (once per vehicle) =====================
+    // also resolves the type category: vType id, then vClass, then the id prefix
+    public void setStatics(int slot, String typeId, String vClass, int color, String routeId, double departTime) {
+        typeIdOf[slot] = typeId;
+        vClassOf[slot] = vClass;
+        colorOf[slot] = color;
+        routeIdOf[slot] = routeId;
+        departOf[slot] = departTime;
+        typeOf[slot] = typeCode(VehicleSnapshot.typeCategory(typeId, vClass, idOf[slot]));
+    }
+
+    static byte typeCode(String category) {
+        if (Main.TYPE_TRUCK.equals(category)) return TYPE_TRUCK;
+        if (Main.TYPE_BUS.equals(category)) return TYPE_BUS;
+        return TYPE_CAR;
+    }
+
+    static String typeName(byte code) {
+        return code >= 0 && code < TYPE_NAMES.length ? TYPE_NAMES[code] : Main.TYPE_CAR;
+    }
+}
@@ -0,0 +1,352 @@
+// ===================== VehicleSnapshot.java =====================
+package org.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class VehicleSnapshot implements SimulationBackend.VehicleVarSink {
+
+    // TraCI variable ids (protocol constants, same values as TraCIConstants.h)
+    static final int VAR_SPEED = 0x40;
+    static final int VAR_POSITION = 0x42;
+    static final int VAR_TYPE = 0x4f;
+    static final int VAR_ROAD_ID = 0x50;
+    static final int VAR_WAITING_TIME = 0x7a;
+
+    private final boolean useSubscriptions;
+    // dynamic state only: static attributes are read once at departure (VehicleRegistry)
+    private static final int[] SUBSCRIBED_VARS = {VAR_POSITION, VAR_SPEED, VAR_WAITING_TIME, VAR_ROAD_ID};
+
+    // sampled steps between stale-slot checks (and how long a slot may go unseen)
+    private static final int RECONCILE_EVERY_STEPS = 600;
+
+    private final SimulationBackend sumo = Backends.get();
+    private final TraciCapabilities caps = sumo.capabilities();
+    private boolean primed = false;
+    // next refresh frees every slot it did not see (after a gap, or without an arrived list)
+    private boolean sweepPending = false;
+    private int sinceReconcile = 0;
+    // every vehicle seen in the last refresh has a slot; also what a resync after a gap skips
+    private final VehicleRegistry registry = new VehicleRegistry();
+    // warm start: trip waiting of the saved vehicles ({done, last} by id), handed to their slots when
+    // the first applyChurn() registers them
+    private Map<String, double[]> restoredWaiting = null;
+
+    // per-step data, reused across steps (grown on demand)
+    private int size = 0;
+    private String[] ids = new String[256];
+    private int[] slots = new int[256];
+    private double[] x = new double[256];
+    private double[] y = new double[256];
+    private double[] speed = new double[256];
+    private double[] waiting = new double[256];
+    private String[] roadIds = new String[256];
+    private final double[] xy = new double[2];
+
+    // trips ended by the last applyChurn() (arrived list only): depart time, waiting time and type
+    private int finishedCount = 0;
+    private double[] finishedDepart = new double[64];
+    private double[] finishedWaiting = new double[64];
+    private byte[] finishedType = new byte[64];
+
+    public VehicleSnapshot(boolean useSubscriptions) {
+        this.useSubscriptions = useSubscriptions;
+    }
+
+    public boolean usesSubscriptions() { return useSubscriptions; }
+
+    public VehicleRegistry registry() { return registry; }
+
+    public int size() { return size; }
+    public String id(int i) { return ids[i]; }
+    public int slot(int i) { return slots[i]; }
+    public double x(int i) { return x[i]; }
+    public double y(int i) { return y[i]; }
+    // NaN when the value could not be read this step
+    public double speed(int i) { return speed[i]; }
+    // NaN when the waiting time is not available from this libtraci build
+    public double waiting(int i) { return waiting[i]; }
+    public String roadId(int i) { return roadIds[i]; }
+
+    // VehicleRegistry.TYPE_*, resolved once per vehicle
+    public byte typeCode(int i) { return registry.type(slots[i]); }
+    public String type(int i) { return VehicleRegistry.typeName(typeCode(i)); }
+
+    // vehicles reported arrived by the last applyChurn(); depart / waiting time NaN when unknown
+    public int finishedTrips() { return finishedCount; }
+    public double finishedDepart(int k) { return finishedDepart[k]; }
+    // VehicleRegistry.tripWaiting() at arrival
+    public double finishedWaiting(int k) { return finishedWaiting[k]; }
+    public byte finishedType(int k) { return finishedType[k]; }
+
+    // ===================== Refresh (once per step) =====================
+    // Reads this step's dynamic state. Call applyChurn() first. Returns the vehicles that left without
+    // being reported by an arrived list (found by the sweep after a gap / on builds without one).
+    public int refresh() {
+        registry.beginStep();
+        if (useSubscriptions) refreshFromSubscriptions();
+        else refreshFromGetters();
+
+        if (sweepPending) {
+            sweepPending = false;
+            sinceReconcile = 0;
+            return registry.releaseUnseen();
+        }
+        // safety net: a slot nobody reported for this long (long teleport, lost arrival) is dropped;
+        // it is registered again if the vehicle shows up later
+        if (++sinceReconcile >= RECONCILE_EVERY_STEPS) {
+            sinceReconcile = 0;
+            int stale = registry.releaseStale(RECONCILE_EVERY_STEPS);
+            if (stale > 0) Logging.LOG.fine("Vehicle registry: released " + stale + " stale slot(s)");
+        }
+        return 0;
+    }
+
+    // Steps were advanced with Simulation.step(t) (builds without an arrived list only, see SimAdvancer):
+    // the departed, arrived and teleport lists in between are lost, so the next applyChurn() resyncs
+    // against the full id list and the next refresh() sweeps. Not exact: a vehicle that departed and
+    // arrived inside the jump is never seen, and one that started a teleport there counts as gone.
+    public void markGap() {
+        primed = false;
+    }
+
+    // ===================== Churn (once per simulation step) =====================
+    // Keeps the registry current from the last step's departed / arrived lists, so the bookkeeping
+    // scales with departures + arrivals, not with the fleet. Call after every step, sampled or not.
+    // SUMO also reports vehicles removed via TraCI or at a teleport as arrived; a vehicle that is
+    // teleporting keeps its slot (teleport start / end lists), so the sweep does not count it as gone.
+    // Returns the arrivals, -1 when this build has no arrived list.
+    public int applyChurn() {
+        if (!primed) {
+            // first call (or after a gap) picks up everything already running
+            primed = true;
+            sweepPending = true;
+            List<String> all = sumo.vehicleIds();
+            for (int i = 0; i < all.size(); i++) {
+                String id = all.get(i);
+                if (!registry.contains(id)) depart(id);
+            }
+            restoredWaiting = null;
+        } else {
+            List<String> departed = sumo.departedIds();
+            for (int i = 0; i < departed.size(); i++) depart(departed.get(i));
+        }
+        markTeleports(caps.teleportStartIds, true);
+        markTeleports(caps.teleportEndIds, false);
+
+        finishedCount = 0;
+        List<String> arrived = caps.arrivedIds == null ? null : caps.arrivedIds.get();
+        if (arrived == null) {
+            sweepPending = true;
+            return -1;
+        }
+        for (int i = 0; i < arrived.size(); i++) {
+            int s = registry.slot(arrived.get(i));
+            if (s < 0) continue;
+            if (finishedCount == finishedDepart.length) {
+                finishedDepart = java.util.Arrays.copyOf(finishedDepart, finishedCount * 2);
+                finishedWaiting = java.util.Arrays.copyOf(finishedWaiting, finishedCount * 2);
+                finishedType = java.util.Arrays.copyOf(finishedType, finishedCount * 2);
+            }
+            finishedDepart[finishedCount] = registry.departTime(s);
+            finishedWaiting[finishedCount] = registry.tripWaiting(s);
+            finishedType[finishedCount++] = registry.type(s);
+            registry.release(s);
+        }
+        return arrived.size();
+    }
+
+    private void markTeleports(java.util.function.Supplier<List<String>> list, boolean teleporting) {
+        List<String> teleports = list == null ? null : list.get();
+        if (teleports == null) return;
+        for (int i = 0; i < teleports.size(); i++) {
+            int s = registry.slot(teleports.get(i));
+            if (s >= 0) registry.setTeleporting(s, teleporting);
+        }
+    }
+
+    private void depart(String id) {
+        register(id);
+        if (!useSubscriptions) return;
+        try {
+            sumo.subscribeVehicle(id, SUBSCRIBED_VARS);
+        } catch (Exception ex) {
+            Logging.LOG.fine("Vehicle.subscribe failed for " + id + ": " + ex.getMessage());
+        }
+    }
+
+    private void refreshFromSubscriptions() {
+        // arrived vehicles drop out of the subscription results on their own
+        size = 0;
+        sumo.readVehicleSubscriptions(this);
+        for (int i = 0; i < size; i++) registry.trackWaiting(slots[i], waiting[i]);
+    }
+
+    // ===================== Subscription sink =====================
+    @Override public void vehicle(String id) {
+        ensureCapacity(size + 1);
+        int i = size++;
+        ids[i] = id;
+        slots[i] = register(id);
+        registry.seen(slots[i]);
+        x[i] = Double.NaN; y[i] = Double.NaN;
+        speed[i] = Double.NaN; waiting[i] = Double.NaN;
+        roadIds[i] = null;
+    }
+
+    @Override public void position(double px, double py) {
+        x[size - 1] = px;
+        y[size - 1] = py;
+    }
+
+    @Override public void doubleVar(int varId, double value) {
+        int i = size - 1;
+        if (varId == VAR_SPEED) speed[i] = value;
+        else if (varId == VAR_WAITING_TIME) waiting[i] = value;
+    }
+
+    @Override public void stringVar(int varId, String value) {
+        int i = size - 1;
+        switch (varId) {
+            case VAR_POSITION: readPosition(value, i); break;
+            case VAR_SPEED: speed[i] = asDouble(value); break;
+            case VAR_WAITING_TIME: waiting[i] = asDouble(value); break;
+            case VAR_ROAD_ID: roadIds[i] = value; break;
+            default: break;
+        }
+    }
+
+    private void refreshFromGetters() {
+        List<String> vIds = sumo.vehicleIds();
+        int n = vIds.size();
+        size = 0;
+        ensureCapacity(n);
+
+        for (int k = 0; k < n; k++) {
+            int i = size++;
+            String id = vIds.get(k);
+            ids[i] = id;
+            slots[i] = register(id);
+            registry.seen(slots[i]);
+            roadIds[i] = null;
+
+            try {
+                if (sumo.vehiclePosition(id, xy)) { x[i] = xy[0]; y[i] = xy[1]; }
+                else { x[i] = Double.NaN; y[i] = Double.NaN; }
+            } catch (Exception ex) {
+                x[i] = Double.NaN; y[i] = Double.NaN;
+            }
+
+            try { speed[i] = sumo.vehicleSpeed(id); }
+            catch (Exception ex) { speed[i] = Double.NaN; }
+
+            waiting[i] = caps.vehicleWaitingTime.applyAsDouble(id);
+            registry.trackWaiting(slots[i], waiting[i]);
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= ids.length) return;
+        int cap = Math.max(n, ids.length * 2);
+        ids = java.util.Arrays.copyOf(ids, cap);
+        slots = java.util.Arrays.copyOf(slots, cap);
+        x = java.util.Arrays.copyOf(x, cap);
+        y = java.util.Arrays.copyOf(y, cap);
+        speed = java.util.Arrays.copyOf(speed, cap);
+        waiting = java.util.Arrays.copyOf(waiting, cap);
+        roadIds = java.util.Arrays.copyOf(roadIds, cap);
+    }
+
+    // ===================== Departure =====================
+    // Slot of id; on first sighting the static attributes are read, once for the vehicle's lifetime.
+    private int register(String id) {
+        int s = registry.slot(id);
+        if (s >= 0) return s;
+        s = registry.acquire(id);
+
+        String typeId = null, vClass = null, routeId = null;
+        int color = 0;
+        double depart = Double.NaN;
+        try { typeId = sumo.vehicleTypeId(id); } catch (Exception ignore) {}
+        try { vClass = sumo.vehicleClass(id); } catch (Exception ignore) {}
+        try { color = sumo.vehicleColor(id); } catch (Exception ignore) {}
+        try { routeId = sumo.vehicleRouteId(id); } catch (Exception ignore) {}
+        try { depart = sumo.vehicleDepartTime(id); } catch (Exception ignore) {}
+        registry.setStatics(s, typeId, vClass, color, routeId, depart);
+
+        double[] w = restoredWaiting == null ? null : restoredWaiting.remove(id);
+        if (w != null) registry.restoreWaiting(s, w[0], w[1]);
+        return s;
+    }
+
+    // ===================== Warm start =====================
+    // Trip waiting so far of every registered vehicle; the rest is read from SUMO again after a load.
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(registry.size());
+        for (int s = 0; s < registry.slotLimit(); s++) {
+            String id = registry.id(s);
+            if (id == null) continue;
+            out.writeUTF(id);
+            out.writeDouble(registry.waitingDone(s));
+            out.writeDouble(registry.waitingLast(s));
+        }
+    }
+
+    // before the first applyChurn()
+    void readState(DataInput in) throws IOException {
+        int n = in.readInt();
+        restoredWaiting = new HashMap<>(n * 2);
+        for (int k = 0; k < n; k++) {
+            String id = in.readUTF();
+            restoredWaiting.put(id, new double[]{in.readDouble(), in.readDouble()});
+        }
+    }
+
+    // ===================== Result decoding =====================
+    // Text form of values some libtraci builds hand back as a plain TraCIResult proxy.
+    static double asDouble(String s) {
+        if (s == null) return Double.NaN;
+        try { return Double.parseDouble(s.trim()); }
+        catch (Exception ex) { return Double.NaN; }
+    }
+
+    private void readPosition(String s, int i) {
+        if (s == null) return;
+        // "TraCIPosition(x,y,z)"
+        try {
+            int a = s.indexOf('('), b = s.lastIndexOf(')');
+            String[] p = s.substring(a + 1, b < 0 ? s.length() : b).split(",");
+            x[i] = Double.parseDouble(p[0].trim());
+            y[i] = Double.parseDouble(p[1].trim());
+        } catch (Exception ignore) {}
+    }
+
+    // ===================== Type category =====================
+    // vType id (ours), then vClass (route-file vehicles with their own vTypes), then the id prefix
+    static String typeCategory(String vTypeId, String vClass, String vehId) {
+        if (vTypeId != null) {
+            if (vTypeId.equals(Main.TYPE_CAR)) return Main.TYPE_CAR;
+            if (vTypeId.equals(Main.TYPE_TRUCK)) return Main.TYPE_TRUCK;
+            if (vTypeId.equals(Main.TYPE_BUS)) return Main.TYPE_BUS;
+        }
+        if (vClass != null && !vClass.isEmpty()) {
+            switch (vClass) {
+                case "bus": case "coach": case "tram": return Main.TYPE_BUS;
+                case "truck": case "trailer": case "delivery": return Main.TYPE_TRUCK;
+                case "passenger": case "taxi": case "private": case "evehicle": case "emergency":
+                case "authority": case "army": case "vip": case "custom1": case "custom2": return Main.TYPE_CAR;
+                default: break;
+            }
+        }
+        if (vehId != null) {
+            if (vehId.startsWith("car_")) return Main.TYPE_CAR;
+            if (vehId.startsWith("truck_")) return Main.TYPE_TRUCK;
+            if (vehId.startsWith("bus_")) return Main.TYPE_BUS;
+        }
+        return Main.TYPE_CAR;
+    }
+}
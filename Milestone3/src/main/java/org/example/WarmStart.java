@@ -0,0 +1,149 @@
+// ===================== WarmStart.java =====================
+package org.example;
+
+import java.io.*;
+import java.util.Locale;
+
+// Skip the warm-up of a scenario: save SUMO's state at a chosen sim time together with the Java-side
+// state SUMO knows nothing about, and let a later launch start from there instead of t=0.
+//
+//   --save-state warm.xml --save-at 3600   (GUI and headless) saved at the first sample >= 3600 s
+//   --load-state warm.xml                  start from it (the run then begins at the saved time)
+//
+// SUMO writes <file> itself (Simulation.saveState: vehicles, lights, its RNG). Next to it goes
+// <file>.m3s with our side: installed route variants + vehicle id sequence + injection RNG
+// (VehicleInjection), forced lights and rule holds (TrafficControl), metric windows (MetricsCollector),
+// waiting so far of the vehicles on the road (FrameCapture).
+//
+// Sidecar (java.io.ObjectOutputStream): "M3WS" u8 version, UTF scenario, double simTime, then the four
+// sections in that order. A state without sidecar (e.g. from sumo --save-state.times) loads with
+// empty Java-side state.
+public final class WarmStart {
+
+    static final byte[] MAGIC = {'M', '3', 'W', 'S'};
+    static final int VERSION = 4;
+    static final String SIDECAR_SUFFIX = ".m3s";
+
+    // ===================== Plan (command line) =====================
+    public static final class Plan {
+        File loadFrom = null;
+        File saveTo = null;
+        double saveAt = Double.NaN;
+        private boolean saved = false;
+
+        // --load-state / --save-state / --save-at from a GUI command line
+        static Plan fromArgs(String[] args) throws Main.Milestone3Exception {
+            Plan p = new Plan();
+            String load = Main.optionValue(args, "--load-state");
+            String save = Main.optionValue(args, "--save-state");
+            String at = Main.optionValue(args, "--save-at");
+            if (load != null) p.loadFrom = new File(load);
+            if (save != null) p.saveTo = new File(save);
+            if (at != null) {
+                try { p.saveAt = Double.parseDouble(at.trim()); }
+                catch (NumberFormatException ex) { throw new Main.Milestone3Exception("Not a number for --save-at: " + at); }
+            }
+            p.validate();
+            return p;
+        }
+
+        void validate() throws Main.Milestone3Exception {
+            if (saveTo != null && !(saveAt >= 0)) throw new Main.Milestone3Exception("--save-state needs --save-at <sim seconds>");
+            if (saveTo == null && !Double.isNaN(saveAt)) throw new Main.Milestone3Exception("--save-at needs --save-state <file>");
+            if (loadFrom != null && !loadFrom.isFile()) {
+                throw new Main.Milestone3Exception("State file not found: " + loadFrom.getAbsolutePath());
+            }
+        }
+
+        boolean loads() { return loadFrom != null; }
+
+        // true once, at the first sampled step at or after --save-at
+        boolean saveDue(double simTime) { return saveTo != null && !saved && simTime >= saveAt - 1e-9; }
+
+        // keeps a multi-step advance from jumping over the save time
+        double limit(double limitSimTime) {
+            return saveTo != null && !saved ? Math.min(limitSimTime, saveAt) : limitSimTime;
+        }
+    }
+
+    private WarmStart() {}
+
+    static File sidecarOf(File state) { return new File(state.getPath() + SIDECAR_SUFFIX); }
+
+    // ===================== Save (simulation thread, metrics up to date) =====================
+    // Marks the plan as done even when writing fails, so the run does not retry every step.
+    static void save(Plan plan, String scenario, VehicleInjection injection, TrafficControl trafficControl,
+                     MetricsCollector metrics, FrameCapture capture) {
+        plan.saved = true;
+        SimulationBackend sumo = Backends.get();
+        double simTime = sumo.currentTime();
+        long t0 = System.nanoTime();
+        try {
+            sumo.saveState(plan.saveTo.getAbsolutePath());
+
+            File sidecar = sidecarOf(plan.saveTo);
+            File tmp = new File(sidecar.getPath() + ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeUTF(scenario);
+                out.writeDouble(simTime);
+                injection.writeState(out);
+                trafficControl.writeState(out);
+                metrics.writeState(out);
+                capture.writeState(out);
+            }
+            if (sidecar.exists() && !sidecar.delete()) throw new IOException("cannot replace " + sidecar.getAbsolutePath());
+            if (!tmp.renameTo(sidecar)) throw new IOException("cannot write " + sidecar.getAbsolutePath());
+
+            Logging.LOG.info(String.format(Locale.US, "Warm start saved at t=%.1f in %.0f ms: %s (+ %s)",
+                    simTime, (System.nanoTime() - t0) / 1e6, plan.saveTo.getAbsolutePath(), sidecar.getName()));
+        } catch (Exception ex) {
+            Logging.LOG.log(java.util.logging.Level.WARNING, "Saving warm start failed: " + plan.saveTo, ex);
+        }
+    }
+
+    // ===================== Load (right after SUMO started) =====================
+    // Call after trafficControl.rebuildTrafficLightDropdown() and the injection settings (seed etc.),
+    // before injection.rebuildAllowedRoutesAndDropdown() and before capture.prime().
+    // Returns the sim time the run continues from.
+    static double load(Plan plan, String scenario, VehicleInjection injection, TrafficControl trafficControl,
+                       MetricsCollector metrics, FrameCapture capture) throws IOException {
+        SimulationBackend sumo = Backends.get();
+        long t0 = System.nanoTime();
+        sumo.loadState(plan.loadFrom.getAbsolutePath());
+        double simTime = sumo.currentTime();
+
+        File sidecar = sidecarOf(plan.loadFrom);
+        if (!sidecar.isFile()) {
+            Logging.LOG.warning("Warm start: no " + sidecar.getName() + " next to the state, Java-side state starts empty");
+        } else {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+                byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+                if (!java.util.Arrays.equals(magic, MAGIC)) throw new IOException("not a warm start sidecar: " + sidecar);
+                int version = in.readUnsignedByte();
+                if (version != VERSION) throw new IOException("unsupported warm start version " + version + ": " + sidecar);
+                String savedScenario = in.readUTF();
+                double savedTime = in.readDouble();
+                if (!new File(savedScenario).getAbsoluteFile().equals(new File(scenario).getAbsoluteFile())) {
+                    Logging.LOG.warning("Warm start was saved for " + savedScenario + ", running " + scenario);
+                }
+                if (Math.abs(savedTime - simTime) > 1e-6) {
+                    Logging.LOG.warning(String.format(Locale.US,
+                            "Warm start sidecar is from t=%.1f, SUMO state from t=%.1f", savedTime, simTime));
+                }
+                injection.readState(in);
+                trafficControl.readState(in);
+                metrics.readState(in);
+                capture.readState(in);
+            } catch (ClassNotFoundException ex) {
+                throw new IOException("corrupt warm start sidecar: " + sidecar, ex);
+            }
+        }
+
+        Logging.LOG.info(String.format(Locale.US, "Warm start loaded in %.0f ms, continuing at t=%.1f: %s",
+                (System.nanoTime() - t0) / 1e6, simTime, plan.loadFrom.getAbsolutePath()));
+        return simTime;
+    }
+}
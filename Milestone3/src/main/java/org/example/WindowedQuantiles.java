@@ -0,0 +1,246 @@
+// ===================== WindowedQuantiles.java =====================
+package org.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Sliding sim-time windows of QuantileSketches, per series and per group (all vehicles + each type).
+// Same layout as WindowedStats, with coarser slots: a ring of per-slot sketches sized for the longest
+// window, plus one running sketch per window that a slot is merged into when sampled and subtracted
+// from when it leaves. add() costs a few counter increments, a quantile is one scan over the sketch's
+// buckets, and the memory is fixed by the slot count (not by vehicles or run length).
+//
+// A window of W seconds at time T covers the slots from floor((T - W) / slot) on, so it may hold up
+// to one slot more than W. Samples must come in non-decreasing time order. Single thread.
+//
+//   -Dsumo.metrics.quantileSlot=10   slot width in sim seconds
+public final class WindowedQuantiles {
+
+    static final String PROP_SLOT = "sumo.metrics.quantileSlot";
+    static final double DEFAULT_SLOT = 10.0;
+
+    // group 0 = every vehicle, 1 + VehicleRegistry.TYPE_* = that type
+    static final int GROUP_ALL = 0;
+    static final int GROUPS = 1 + VehicleRegistry.TYPE_NAMES.length;
+
+    private final int series;
+    private final double slotSec;
+    private final double[] windowSec;
+
+    // ---- slot ring, [ring][series][group], sketches allocated on first sample ----
+    private final int ring;
+    private final QuantileSketch[][][] slots;
+    private long firstSlot = 0;
+    private long curSlot = Long.MIN_VALUE;
+
+    // ---- per window ----
+    private final long[] lo;
+    private final QuantileSketch[][][] window;
+
+    public WindowedQuantiles(int series, double slotSec, double... windowSec) {
+        if (series < 1) throw new IllegalArgumentException("series < 1");
+        if (!(slotSec > 0)) throw new IllegalArgumentException("slot width must be > 0: " + slotSec);
+        if (windowSec.length == 0) throw new IllegalArgumentException("no windows");
+        double longest = 0.0;
+        for (double w : windowSec) {
+            if (!(w > 0)) throw new IllegalArgumentException("window must be > 0: " + w);
+            longest = Math.max(longest, w);
+        }
+        this.series = series;
+        this.slotSec = slotSec;
+        this.windowSec = windowSec.clone();
+
+        ring = (int) Math.ceil(longest / slotSec) + 2;
+        slots = new QuantileSketch[ring][series][GROUPS];
+        lo = new long[windowSec.length];
+        window = new QuantileSketch[windowSec.length][series][GROUPS];
+        for (int w = 0; w < windowSec.length; w++) {
+            for (int s = 0; s < series; s++) {
+                for (int g = 0; g < GROUPS; g++) window[w][s][g] = new QuantileSketch();
+            }
+        }
+    }
+
+    // same windows as `stats`, slot width from -Dsumo.metrics.quantileSlot
+    static WindowedQuantiles fromProperties(int series, WindowedStats stats) {
+        double slot = DEFAULT_SLOT;
+        String p = System.getProperty(PROP_SLOT);
+        if (p != null) {
+            try { slot = Double.parseDouble(p.trim()); }
+            catch (NumberFormatException ex) { slot = -1; }
+            if (!(slot > 0)) {
+                Logging.LOG.warning("Ignoring -D" + PROP_SLOT + "=" + p + ", using " + DEFAULT_SLOT);
+                slot = DEFAULT_SLOT;
+            }
+        }
+        double[] windows = new double[stats.windows()];
+        for (int w = 0; w < windows.length; w++) windows[w] = stats.windowSec(w);
+        return new WindowedQuantiles(series, slot, windows);
+    }
+
+    public int windows() { return windowSec.length; }
+
+    public double windowSec(int w) { return windowSec[w]; }
+
+    // ===================== Update =====================
+    // type: VehicleRegistry.TYPE_*, counted under its group and GROUP_ALL; bad values are ignored
+    public void add(int s, byte type, double t, double value) {
+        int bucket = QuantileSketch.index(value);
+        if (bucket < 0) return;
+        long k = slotOf(t);
+        if (curSlot == Long.MIN_VALUE || k > curSlot) moveTo(k);
+        else if (k < firstSlot) k = curSlot;
+
+        int g = 1 + type;
+        if (g < 1 || g >= GROUPS) g = 1 + VehicleRegistry.TYPE_CAR;
+        QuantileSketch[] sl = slots[index(k)][s];
+        sketch(sl, GROUP_ALL).add(bucket);
+        sketch(sl, g).add(bucket);
+        for (int w = 0; w < lo.length; w++) {
+            if (k < lo[w]) continue;
+            window[w][s][GROUP_ALL].add(bucket);
+            window[w][s][g].add(bucket);
+        }
+    }
+
+    // true when t falls in a slot no sample or advance() reached yet (fixed-cadence sampling)
+    public boolean opensSlot(double t) {
+        return curSlot == Long.MIN_VALUE || slotOf(t) > curSlot;
+    }
+
+    public double slotSec() { return slotSec; }
+
+    private static QuantileSketch sketch(QuantileSketch[] row, int g) {
+        QuantileSketch q = row[g];
+        if (q == null) row[g] = q = new QuantileSketch();
+        return q;
+    }
+
+    // moves every window to end at simTime (expires old slots); call before querying
+    public void advance(double simTime) {
+        moveTo(slotOf(simTime));
+        for (int w = 0; w < lo.length; w++) expire(w, (long) Math.floor((simTime - windowSec[w]) / slotSec));
+    }
+
+    public void clear() {
+        for (QuantileSketch[][] sl : slots) clear(sl);
+        for (QuantileSketch[][] win : window) clear(win);
+        curSlot = Long.MIN_VALUE;
+        firstSlot = 0;
+        Arrays.fill(lo, 0L);
+    }
+
+    private static void clear(QuantileSketch[][] sg) {
+        for (QuantileSketch[] row : sg) for (QuantileSketch q : row) if (q != null) q.clear();
+    }
+
+    private long slotOf(double t) { return (long) Math.floor(t / slotSec); }
+
+    private int index(long k) { return (int) Math.floorMod(k, (long) ring); }
+
+    // opens slots up to k (empty); slots about to be reused leave every window first
+    private void moveTo(long k) {
+        if (curSlot == Long.MIN_VALUE) {
+            curSlot = k;
+            firstSlot = k;
+            Arrays.fill(lo, k);
+            return;
+        }
+        if (k <= curSlot) return;
+        if (k - curSlot >= ring) {
+            clear();
+            moveTo(k);
+            return;
+        }
+        long oldest = k - ring + 1;
+        for (int w = 0; w < lo.length; w++) if (lo[w] < oldest) expire(w, oldest);
+        if (firstSlot < oldest) firstSlot = oldest;
+
+        for (long j = curSlot + 1; j <= k; j++) clear(slots[index(j)]);
+        curSlot = k;
+    }
+
+    private void expire(int w, long newLo) {
+        if (newLo <= lo[w]) return;
+        for (long j = Math.max(lo[w], firstSlot); j < newLo && j <= curSlot; j++) {
+            QuantileSketch[][] sl = slots[index(j)];
+            for (int s = 0; s < series; s++) {
+                for (int g = 0; g < GROUPS; g++) {
+                    if (sl[s][g] != null) window[w][s][g].subtract(sl[s][g]);
+                }
+            }
+        }
+        lo[w] = newLo;
+        long first = Long.MAX_VALUE;
+        for (long l : lo) first = Math.min(first, l);
+        if (first > firstSlot) firstSlot = Math.min(first, curSlot);
+    }
+
+    // ===================== Queries (after advance) =====================
+    public long count(int w, int s, int g) { return window[w][s][g].count(); }
+
+    // NaN when the window has no samples
+    public double quantile(int w, int s, int g, double q) { return window[w][s][g].quantile(q); }
+
+    // ===================== Warm start =====================
+    // Slot sketches of everything still inside the longest window; windows are rebuilt on read.
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(series);
+        out.writeInt(GROUPS);
+        out.writeDouble(slotSec);
+        out.writeLong(curSlot);
+        out.writeInt(lo.length);
+        for (int w = 0; w < lo.length; w++) { out.writeDouble(windowSec[w]); out.writeLong(lo[w]); }
+        if (curSlot == Long.MIN_VALUE) return;
+        out.writeLong(firstSlot);
+        for (long k = firstSlot; k <= curSlot; k++) {
+            QuantileSketch[][] sl = slots[index(k)];
+            for (int s = 0; s < series; s++) {
+                for (int g = 0; g < GROUPS; g++) {
+                    boolean has = sl[s][g] != null && sl[s][g].count() > 0;
+                    out.writeBoolean(has);
+                    if (has) sl[s][g].writeState(out);
+                }
+            }
+        }
+    }
+
+    // must be configured like the writer (same series, slot width and windows)
+    void readState(DataInput in) throws IOException {
+        clear();
+        int ser = in.readInt();
+        int groups = in.readInt();
+        double slot = in.readDouble();
+        long cur = in.readLong();
+        int nw = in.readInt();
+        if (ser != series || groups != GROUPS || slot != slotSec || nw != lo.length) {
+            throw new IOException("windowed quantiles configured differently than when the state was saved");
+        }
+        long[] savedLo = new long[nw];
+        for (int w = 0; w < nw; w++) {
+            if (in.readDouble() != windowSec[w]) {
+                throw new IOException("windowed quantiles configured differently than when the state was saved");
+            }
+            savedLo[w] = in.readLong();
+        }
+        if (cur == Long.MIN_VALUE) return;
+        long first = in.readLong();
+
+        curSlot = cur;
+        firstSlot = first;
+        System.arraycopy(savedLo, 0, lo, 0, nw);
+        for (long k = first; k <= cur; k++) {
+            QuantileSketch[][] sl = slots[index(k)];
+            for (int s = 0; s < series; s++) {
+                for (int g = 0; g < GROUPS; g++) {
+                    if (!in.readBoolean()) continue;
+                    QuantileSketch q = sketch(sl[s], g);
+                    q.readState(in);
+                    for (int w = 0; w < nw; w++) if (k >= lo[w]) window[w][s][g].merge(q);
+                }
+            }
+        }
+    }
+}
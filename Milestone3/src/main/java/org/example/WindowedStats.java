@@ -0,0 +1,354 @@
+// ===================== WindowedStats.java =====================
+package org.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Sliding sim-time windows over a few numeric series, all on primitive arrays.
+// Samples land in fixed-width time buckets (a ring sized for the longest window). Every window keeps
+// running count/sum of the buckets it covers plus a monotonic deque of bucket minima and maxima, so
+// add() and every query are O(1) (amortized: a bucket enters and leaves each window once).
+//
+// A window of W seconds at time T covers the buckets from floor((T - W) / bucket) on. With sample
+// times on the bucket grid (whole seconds, default 1 s buckets) that is exactly "T - t <= W".
+//
+// Samples must come in non-decreasing time order (earlier ones are put into the current bucket).
+// Single thread (metrics stage / headless loop).
+//
+//   -Dsumo.metrics.windows=60,300,900   window lengths in sim seconds
+//   -Dsumo.metrics.bucket=1             bucket width in sim seconds
+public final class WindowedStats {
+
+    static final String PROP_WINDOWS = "sumo.metrics.windows";
+    static final String PROP_BUCKET = "sumo.metrics.bucket";
+    static final double[] DEFAULT_WINDOWS = {60.0, 300.0, 900.0};
+    static final double DEFAULT_BUCKET = 1.0;
+
+    private final int series;
+    private final double bucketSec;
+    private final double[] windowSec;
+
+    // ---- bucket ring, [series][ring] ----
+    private final int ring;
+    private final long[][] count;
+    private final double[][] sum;
+    private final double[][] min;
+    private final double[][] max;
+    // oldest bucket still in the ring, newest bucket written; buckets in between are all valid
+    private long firstBucket = 0;
+    private long curBucket = Long.MIN_VALUE;
+
+    // ---- per window ----
+    // first bucket inside window w
+    private final long[] lo;
+    // running totals, [w][series]
+    private final long[][] wCount;
+    private final double[][] wSum;
+    private final Deque[][] wMin;
+    private final Deque[][] wMax;
+
+    public WindowedStats(int series, double bucketSec, double... windowSec) {
+        if (series < 1) throw new IllegalArgumentException("series < 1");
+        if (!(bucketSec > 0)) throw new IllegalArgumentException("bucket width must be > 0: " + bucketSec);
+        if (windowSec.length == 0) throw new IllegalArgumentException("no windows");
+        double longest = 0.0;
+        for (double w : windowSec) {
+            if (!(w > 0)) throw new IllegalArgumentException("window must be > 0: " + w);
+            longest = Math.max(longest, w);
+        }
+        this.series = series;
+        this.bucketSec = bucketSec;
+        this.windowSec = windowSec.clone();
+
+        ring = (int) Math.ceil(longest / bucketSec) + 2;
+        count = new long[series][ring];
+        sum = new double[series][ring];
+        min = new double[series][ring];
+        max = new double[series][ring];
+
+        int nw = windowSec.length;
+        lo = new long[nw];
+        wCount = new long[nw][series];
+        wSum = new double[nw][series];
+        wMin = new Deque[nw][series];
+        wMax = new Deque[nw][series];
+        for (int w = 0; w < nw; w++) {
+            for (int s = 0; s < series; s++) {
+                wMin[w][s] = new Deque(ring + 1);
+                wMax[w][s] = new Deque(ring + 1);
+            }
+        }
+    }
+
+    // windows / bucket width from -Dsumo.metrics.*, `required` (seconds) always among the windows
+    static WindowedStats fromProperties(int series, double required) {
+        double bucket = DEFAULT_BUCKET;
+        String b = System.getProperty(PROP_BUCKET);
+        if (b != null) {
+            try { bucket = Double.parseDouble(b.trim()); }
+            catch (NumberFormatException ex) { bucket = -1; }
+            if (!(bucket > 0)) {
+                Logging.LOG.warning("Ignoring -D" + PROP_BUCKET + "=" + b + ", using " + DEFAULT_BUCKET);
+                bucket = DEFAULT_BUCKET;
+            }
+        }
+
+        double[] windows = DEFAULT_WINDOWS;
+        String ws = System.getProperty(PROP_WINDOWS);
+        if (ws != null) {
+            try {
+                windows = Arrays.stream(ws.split(",")).map(String::trim).filter(x -> !x.isEmpty())
+                        .mapToDouble(Double::parseDouble).filter(x -> x > 0).sorted().distinct().toArray();
+            } catch (NumberFormatException ex) {
+                windows = new double[0];
+            }
+            if (windows.length == 0) {
+                Logging.LOG.warning("Ignoring -D" + PROP_WINDOWS + "=" + ws + ", using 60,300,900");
+                windows = DEFAULT_WINDOWS;
+            }
+        }
+        if (Arrays.stream(windows).noneMatch(w -> w == required)) {
+            windows = Arrays.copyOf(windows, windows.length + 1);
+            windows[windows.length - 1] = required;
+            Arrays.sort(windows);
+        }
+        return new WindowedStats(series, bucket, windows);
+    }
+
+    public int windows() { return windowSec.length; }
+
+    public double windowSec(int w) { return windowSec[w]; }
+
+    // index of the window of exactly `seconds`, -1 when there is none
+    public int indexOf(double seconds) {
+        for (int w = 0; w < windowSec.length; w++) if (windowSec[w] == seconds) return w;
+        return -1;
+    }
+
+    // ===================== Update =====================
+    public void add(int s, double t, double value) {
+        merge(s, bucketOf(t), 1, value, value, value);
+    }
+
+    // moves every window to end at simTime (expires old buckets); call before querying
+    public void advance(double simTime) {
+        moveTo(bucketOf(simTime));
+        for (int w = 0; w < lo.length; w++) expire(w, (long) Math.floor((simTime - windowSec[w]) / bucketSec));
+    }
+
+    public void clear() {
+        for (int s = 0; s < series; s++) Arrays.fill(count[s], 0L);
+        curBucket = Long.MIN_VALUE;
+        firstBucket = 0;
+        for (int w = 0; w < lo.length; w++) {
+            lo[w] = 0;
+            Arrays.fill(wCount[w], 0L);
+            Arrays.fill(wSum[w], 0.0);
+            for (int s = 0; s < series; s++) { wMin[w][s].clear(); wMax[w][s].clear(); }
+        }
+    }
+
+    private long bucketOf(double t) { return (long) Math.floor(t / bucketSec); }
+
+    private void merge(int s, long b, long n, double sm, double mn, double mx) {
+        if (curBucket == Long.MIN_VALUE || b > curBucket) moveTo(b);
+        else if (b < firstBucket) b = curBucket;
+
+        int i = slot(b);
+        if (count[s][i] == 0) { min[s][i] = mn; max[s][i] = mx; sum[s][i] = 0.0; }
+        else { if (mn < min[s][i]) min[s][i] = mn; if (mx > max[s][i]) max[s][i] = mx; }
+        count[s][i] += n;
+        sum[s][i] += sm;
+
+        for (int w = 0; w < lo.length; w++) {
+            if (b < lo[w]) continue;
+            wCount[w][s] += n;
+            wSum[w][s] += sm;
+            wMin[w][s].pushMin(b, mn);
+            wMax[w][s].pushMax(b, mx);
+        }
+    }
+
+    // opens buckets up to b (empty), dropping whatever falls out of the ring
+    private void moveTo(long b) {
+        if (curBucket == Long.MIN_VALUE) {
+            curBucket = b;
+            firstBucket = b;
+            for (int w = 0; w < lo.length; w++) lo[w] = b;
+            return;
+        }
+        if (b <= curBucket) return;
+        if (b - curBucket >= ring) {
+            // jumped past everything: all windows are empty
+            clear();
+            moveTo(b);
+            return;
+        }
+        // buckets about to be overwritten leave every window first (normally advance() already did that)
+        long oldest = b - ring + 1;
+        for (int w = 0; w < lo.length; w++) if (lo[w] < oldest) expire(w, oldest);
+        if (firstBucket < oldest) firstBucket = oldest;
+
+        for (long k = curBucket + 1; k <= b; k++) {
+            int i = slot(k);
+            for (int s = 0; s < series; s++) count[s][i] = 0;
+        }
+        curBucket = b;
+    }
+
+    private void expire(int w, long newLo) {
+        if (newLo <= lo[w]) return;
+        for (long k = Math.max(lo[w], firstBucket); k < newLo && k <= curBucket; k++) {
+            int i = slot(k);
+            for (int s = 0; s < series; s++) {
+                if (count[s][i] == 0) continue;
+                wCount[w][s] -= count[s][i];
+                wSum[w][s] -= sum[s][i];
+            }
+        }
+        lo[w] = newLo;
+        for (int s = 0; s < series; s++) {
+            wMin[w][s].expire(newLo);
+            wMax[w][s].expire(newLo);
+            // keep the running sum from drifting below zero / away from 0 when the window empties
+            if (wCount[w][s] == 0) wSum[w][s] = 0.0;
+        }
+        long first = Long.MAX_VALUE;
+        for (long l : lo) first = Math.min(first, l);
+        if (first > firstBucket) firstBucket = Math.min(first, curBucket);
+    }
+
+    private int slot(long b) { return (int) Math.floorMod(b, (long) ring); }
+
+    // ===================== Queries (after advance) =====================
+    public long count(int w, int s) { return wCount[w][s]; }
+
+    public double sum(int w, int s) { return wSum[w][s]; }
+
+    // NaN when the window has no samples
+    public double mean(int w, int s) { return wCount[w][s] == 0 ? Double.NaN : wSum[w][s] / wCount[w][s]; }
+
+    public double min(int w, int s) { return wMin[w][s].isEmpty() ? Double.NaN : wMin[w][s].frontValue(); }
+
+    public double max(int w, int s) { return wMax[w][s].isEmpty() ? Double.NaN : wMax[w][s].frontValue(); }
+
+    // samples per hour of sim time over the full window length
+    public double perHour(int w, int s) {
+        double windowHours = windowSec[w] / 3600.0;
+        if (windowHours <= 1e-9) return 0.0;
+        return wCount[w][s] / windowHours;
+    }
+
+    // "60s" / "5min" / "1.5h"
+    static String label(double seconds) {
+        if (seconds < 60 || seconds % 60 != 0) return String.format(Locale.US, "%.0fs", seconds);
+        if (seconds < 3600 || seconds % 3600 != 0) return String.format(Locale.US, "%.0fmin", seconds / 60);
+        return String.format(Locale.US, "%.0fh", seconds / 3600);
+    }
+
+    // ===================== Warm start =====================
+    // Bucket aggregates of everything still inside the longest window; windows are rebuilt on read.
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(series);
+        out.writeDouble(bucketSec);
+        out.writeLong(curBucket);
+        out.writeInt(lo.length);
+        for (int w = 0; w < lo.length; w++) { out.writeDouble(windowSec[w]); out.writeLong(lo[w]); }
+        if (curBucket == Long.MIN_VALUE) return;
+        out.writeLong(firstBucket);
+        for (long k = firstBucket; k <= curBucket; k++) {
+            int i = slot(k);
+            for (int s = 0; s < series; s++) {
+                out.writeLong(count[s][i]);
+                if (count[s][i] == 0) continue;
+                out.writeDouble(sum[s][i]);
+                out.writeDouble(min[s][i]);
+                out.writeDouble(max[s][i]);
+            }
+        }
+    }
+
+    // must be configured like the writer (same series, bucket width and windows)
+    void readState(DataInput in) throws IOException {
+        clear();
+        int ser = in.readInt();
+        double bucket = in.readDouble();
+        long cur = in.readLong();
+        int nw = in.readInt();
+        if (ser != series || bucket != bucketSec || nw != lo.length) {
+            throw new IOException("windowed metrics configured differently than when the state was saved");
+        }
+        long[] savedLo = new long[nw];
+        for (int w = 0; w < nw; w++) {
+            if (in.readDouble() != windowSec[w]) {
+                throw new IOException("windowed metrics configured differently than when the state was saved");
+            }
+            savedLo[w] = in.readLong();
+        }
+        if (cur == Long.MIN_VALUE) return;
+        long first = in.readLong();
+
+        curBucket = cur;
+        firstBucket = first;
+        System.arraycopy(savedLo, 0, lo, 0, nw);
+        for (long k = first; k <= cur; k++) {
+            for (int s = 0; s < series; s++) {
+                long n = in.readLong();
+                if (n == 0) continue;
+                double sm = in.readDouble(), mn = in.readDouble(), mx = in.readDouble();
+                merge(s, k, n, sm, mn, mx);
+            }
+        }
+    }
+
+    // ===================== Monotonic deque =====================
+    // (bucket, value) pairs, buckets ascending; values strictly ascending (pushMin) or descending
+    // (pushMax), so the front is the window's extreme. Fixed ring, no boxing.
+    private static final class Deque {
+        private final long[] bucket;
+        private final double[] value;
+        private int head = 0, size = 0;
+
+        Deque(int capacity) {
+            bucket = new long[capacity];
+            value = new double[capacity];
+        }
+
+        boolean isEmpty() { return size == 0; }
+
+        double frontValue() { return value[head]; }
+
+        void clear() { head = 0; size = 0; }
+
+        void pushMin(long b, double v) {
+            while (size > 0 && value[back()] >= v) size--;
+            if (size > 0 && bucket[back()] == b) return;
+            push(b, v);
+        }
+
+        void pushMax(long b, double v) {
+            while (size > 0 && value[back()] <= v) size--;
+            if (size > 0 && bucket[back()] == b) return;
+            push(b, v);
+        }
+
+        void expire(long lo) {
+            while (size > 0 && bucket[head] < lo) {
+                head = (head + 1) % bucket.length;
+                size--;
+            }
+        }
+
+        private int back() { return (head + size - 1) % bucket.length; }
+
+        private void push(long b, double v) {
+            int i = (head + size) % bucket.length;
+            bucket[i] = b;
+            value[i] = v;
+            size++;
+        }
+    }
+}
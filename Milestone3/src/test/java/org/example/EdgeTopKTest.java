@@ -0,0 +1,94 @@
+// ===================== EdgeTopKTest.java =====================
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdgeTopKTest {
+
+    // edges with key > 0, key descending, lower index first on ties
+    private static int[] expectedTop(double[] keys, int k) {
+        return IntStream.range(0, keys.length)
+                .filter(e -> keys[e] > 0)
+                .boxed()
+                .sorted((a, b) -> keys[a] != keys[b] ? Double.compare(keys[b], keys[a]) : Integer.compare(a, b))
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    @Test
+    void emptyHeap() {
+        EdgeTopK top = new EdgeTopK(5);
+        assertEquals(-1, top.peek());
+        assertEquals(0, top.size());
+        assertEquals(0, top.top(3, new int[3]));
+    }
+
+    @Test
+    void nonPositiveKeysAreNotRanked() {
+        EdgeTopK top = new EdgeTopK(4);
+        top.update(0, 3);
+        top.update(1, 0);
+        top.update(2, -2);
+        top.update(3, Double.NaN);
+        assertEquals(1, top.size());
+        assertEquals(0, top.peek());
+
+        top.update(0, 0);
+        assertEquals(0, top.size());
+        assertEquals(-1, top.peek());
+    }
+
+    @Test
+    void tiesGoToTheLowerIndex() {
+        EdgeTopK top = new EdgeTopK(6);
+        for (int e = 5; e >= 0; e--) top.update(e, 2.0);
+        int[] out = new int[6];
+        assertEquals(6, top.top(6, out));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5}, out);
+    }
+
+    @Test
+    void matchesASortUnderRandomUpdates() {
+        Random rnd = new Random(3);
+        int edges = 200;
+        EdgeTopK top = new EdgeTopK(edges);
+        double[] keys = new double[edges];
+        int[] out = new int[edges];
+
+        for (int round = 0; round < 5000; round++) {
+            // a few changed edges per step; small integer keys give many ties, 0 removes
+            int changes = 1 + rnd.nextInt(10);
+            for (int c = 0; c < changes; c++) {
+                int e = rnd.nextInt(edges);
+                double k = rnd.nextInt(4) == 0 ? 0 : rnd.nextInt(8);
+                keys[e] = k;
+                top.update(e, k);
+            }
+            int k = 1 + rnd.nextInt(12);
+            int[] expected = expectedTop(keys, k);
+            int n = top.top(k, out);
+            assertArrayEquals(expected, Arrays.copyOf(out, n), "round " + round);
+            assertEquals(expected.length == 0 ? -1 : expected[0], top.peek());
+            assertEquals(expectedTop(keys, edges).length, top.size());
+        }
+    }
+
+    @Test
+    void topAskedForMoreThanRankedReturnsAll() {
+        EdgeTopK top = new EdgeTopK(10);
+        top.update(7, 1.5);
+        top.update(2, 4.0);
+        int[] out = new int[50];
+        assertEquals(2, top.top(50, out));
+        assertEquals(2, out[0]);
+        assertEquals(7, out[1]);
+        assertEquals(4.0, top.key(2));
+    }
+}
@@ -0,0 +1,205 @@
+// ===================== FrameRecordingTest.java =====================
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameRecordingTest {
+
+    private static final List<String> TLS = List.of("J1", "J2", "J3");
+    private static final int FRAMES = 200;
+    private static final String[] PHASES = {"GGrr", "yyrr", "rrGG", "rryy"};
+
+    @TempDir
+    File dir;
+
+    // what was recorded, frame by frame, with the TLS states a reader must report after each frame
+    private static final class Written {
+        final List<VehicleFrame> vehicles = new ArrayList<>();
+        final List<StepFrame> metrics = new ArrayList<>();
+        final List<String[]> tlsAfter = new ArrayList<>();
+    }
+
+    // 1 s frames; vehicles come and go (new ids all through the file), TLS states change now and then
+    // and are sometimes not read at all (null)
+    private static Written record(FrameRecorder rec, long seed) throws IOException {
+        Written w = new Written();
+        Random rnd = new Random(seed);
+        String[] known = new String[TLS.size()];
+        List<String> live = new ArrayList<>();
+        int nextId = 0;
+        for (int k = 0; k < FRAMES; k++) {
+            double t = k;
+            for (int i = 0, d = rnd.nextInt(4); i < d; i++) live.add("veh_" + nextId++);
+            for (int i = 0, a = rnd.nextInt(3); i < a && !live.isEmpty(); i++) live.remove(rnd.nextInt(live.size()));
+
+            int n = live.size();
+            double[] x = new double[n], y = new double[n], speed = new double[n], waiting = new double[n];
+            byte[] types = new byte[n];
+            for (int i = 0; i < n; i++) {
+                // float precision on disk
+                x[i] = (float) (rnd.nextDouble() * 1000);
+                y[i] = (float) (rnd.nextDouble() * 1000);
+                speed[i] = (float) (rnd.nextDouble() * 15);
+                waiting[i] = i % 7 == 0 ? Float.NaN : (float) rnd.nextInt(60);
+                types[i] = (byte) rnd.nextInt(VehicleRegistry.TYPE_NAMES.length);
+            }
+
+            String[] states = null;
+            if (rnd.nextInt(10) != 0) {
+                states = new String[TLS.size()];
+                for (int j = 0; j < states.length; j++) {
+                    states[j] = rnd.nextInt(5) == 0 ? PHASES[rnd.nextInt(PHASES.length)] : known[j];
+                    if (states[j] != null) known[j] = states[j];
+                }
+            }
+
+            VehicleFrame vf = new VehicleFrame(t, n, live.toArray(new String[0]), x, y, speed, waiting, types,
+                    new double[0], k % 5, k % 2 == 0, true, null, states);
+            StepFrame m = new StepFrame();
+            m.simTime = t;
+            m.active = n;
+            m.stopped = rnd.nextInt(n + 1);
+            m.congestion = rnd.nextDouble();
+            m.meanSpeed = rnd.nextDouble() * 15;
+            m.avgWaitSec = k % 11 == 0 ? -1 : rnd.nextDouble() * 30;
+            m.throughputVph = rnd.nextInt(2000);
+            m.visible = n;
+            m.visCar = rnd.nextInt(n + 1);
+            m.visTruck = rnd.nextInt(n + 1);
+            m.visBus = rnd.nextInt(n + 1);
+            rec.append(vf, m);
+
+            w.vehicles.add(vf);
+            w.metrics.add(m);
+            w.tlsAfter.add(known.clone());
+        }
+        return w;
+    }
+
+    private static void assertFrame(Written w, int k, FrameRecording.Frame f) {
+        assertNotNull(f, "frame " + k);
+        VehicleFrame want = w.vehicles.get(k), got = f.vehicles;
+        String at = "frame " + k;
+        assertEquals(want.simTime, got.simTime, at);
+        assertEquals(want.size, got.size, at);
+        for (int i = 0; i < want.size; i++) {
+            assertEquals(want.ids[i], got.ids[i], at);
+            assertEquals(want.types[i], got.types[i], at);
+            assertEquals(want.x[i], got.x[i], at);
+            assertEquals(want.y[i], got.y[i], at);
+            assertEquals(want.speed[i], got.speed[i], at);
+            assertEquals(want.waiting[i], got.waiting[i], at);
+        }
+        assertEquals(want.speedFactorUi, got.speedFactorUi, at);
+        assertEquals(want.ruleBasedEnabled, got.ruleBasedEnabled, at);
+
+        StepFrame wm = w.metrics.get(k), gm = f.metrics;
+        assertEquals(wm.active, gm.active, at);
+        assertEquals(wm.stopped, gm.stopped, at);
+        assertEquals(wm.congestion, gm.congestion, at);
+        assertEquals(wm.meanSpeed, gm.meanSpeed, at);
+        assertEquals(wm.avgWaitSec, gm.avgWaitSec, at);
+        assertEquals(wm.throughputVph, gm.throughputVph, at);
+        assertEquals(wm.visible, gm.visible, at);
+        assertEquals(wm.visCar, gm.visCar, at);
+        assertEquals(wm.visTruck, gm.visTruck, at);
+        assertEquals(wm.visBus, gm.visBus, at);
+
+        assertArrayEquals(w.tlsAfter.get(k), f.tlsStates, at);
+        assertEquals(k % (int) FrameRecorder.KEY_FRAME_EVERY_SEC == 0, f.keyFrame, at);
+    }
+
+    private static void assertSeeks(FrameRecording r, Written w) throws IOException {
+        double[] targets = {0, 0.5, 17.5, 29, 30, 31, 59.99, 60, 61.25, 89, 150, 199, -5};
+        for (double t : targets) {
+            r.seek(t);
+            int k = (int) Math.max(0, Math.ceil(t));
+            // the sought frame and a few after it, TLS states as of each frame
+            for (int j = k; j < Math.min(FRAMES, k + 35); j++) assertFrame(w, j, r.next());
+        }
+        r.seek(FRAMES + 10);
+        assertNull(r.next());
+    }
+
+    @Test
+    void framesReadBackInOrder() throws IOException {
+        File file = new File(dir, "run.rec");
+        Written w;
+        try (FrameRecorder rec = new FrameRecorder(file, "scenario.sumocfg", TLS)) {
+            w = record(rec, 1);
+        }
+        try (FrameRecording r = FrameRecording.open(file)) {
+            assertEquals(new File("scenario.sumocfg").getAbsolutePath(), r.scenario());
+            assertEquals(TLS, r.tlsIds());
+            assertEquals(FRAMES, r.frameCount());
+            assertEquals(0.0, r.startTime());
+            assertEquals(FRAMES - 1, r.endTime());
+            for (int k = 0; k < FRAMES; k++) assertFrame(w, k, r.next());
+            assertNull(r.next());
+        }
+    }
+
+    @Test
+    void seekLandsOnTheFirstFrameAtOrAfterTheTimeWithItsTlsStates() throws IOException {
+        File file = new File(dir, "seek.rec");
+        Written w;
+        try (FrameRecorder rec = new FrameRecorder(file, "scenario.sumocfg", TLS)) {
+            w = record(rec, 2);
+        }
+        try (FrameRecording r = FrameRecording.open(file)) {
+            // part way through first, so seek cannot rely on the cursor's TLS states
+            for (int k = 0; k < 45; k++) r.next();
+            assertSeeks(r, w);
+        }
+    }
+
+    @Test
+    void unclosedRecordingIsScanned() throws IOException {
+        File file = new File(dir, "live.rec");
+        File crashed = new File(dir, "crashed.rec");
+        try (FrameRecorder rec = new FrameRecorder(file, "scenario.sumocfg", TLS)) {
+            Written w = record(rec, 3);
+            // what is on disk before close(): no trailer, no footer; plus a record cut off mid-write
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            Files.write(crashed.toPath(), bytes);
+            Files.write(crashed.toPath(), new byte[]{FrameRecorder.TAG_FRAME, 0, 0, 1, 0, 1, 0, 0},
+                    StandardOpenOption.APPEND);
+
+            try (FrameRecording r = FrameRecording.open(crashed)) {
+                assertEquals(TLS, r.tlsIds());
+                assertEquals(FRAMES, r.frameCount());
+                assertEquals(0.0, r.startTime());
+                assertEquals(FRAMES - 1, r.endTime());
+                for (int k = 0; k < FRAMES; k++) assertFrame(w, k, r.next());
+                assertNull(r.next());
+                assertSeeks(r, w);
+            }
+        }
+        // the closed file has its index and reads the same
+        try (FrameRecording r = FrameRecording.open(file)) {
+            assertEquals(FRAMES, r.frameCount());
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File file = new File(dir, "other.rec");
+        Files.write(file.toPath(), "not a recording".getBytes());
+        assertThrows(IOException.class, () -> FrameRecording.open(file));
+
+        Files.write(file.toPath(), Arrays.copyOf(FrameRecorder.MAGIC, FrameRecorder.MAGIC.length + 1));
+        assertThrows(IOException.class, () -> FrameRecording.open(file));
+    }
+}
@@ -0,0 +1,82 @@
+// ===================== FrameRingTest.java =====================
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameRingTest {
+
+    @Test
+    void keepsOrderAcrossWrapAround() {
+        FrameRing<Integer> ring = new FrameRing<>(4);
+        int next = 0;
+        for (int round = 0; round < 50; round++) {
+            assertTrue(ring.offer(2 * round));
+            assertTrue(ring.offer(2 * round + 1));
+            assertEquals(next++, ring.poll());
+            assertEquals(next++, ring.poll());
+        }
+        assertNull(ring.poll());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void capacityIsRoundedUpAndAFullRingBlocksTheProducer() throws Exception {
+        FrameRing<Integer> ring = new FrameRing<>(3);
+        for (int i = 0; i < 4; i++) assertTrue(ring.offer(i));
+        assertEquals(4, ring.size());
+
+        CompletableFuture<Boolean> fifth = CompletableFuture.supplyAsync(() -> ring.offer(4));
+        Thread.sleep(100);
+        assertFalse(fifth.isDone(), "offer into a full ring must wait");
+
+        assertEquals(0, ring.poll());
+        assertTrue(fifth.get(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) assertEquals(i, ring.poll());
+        assertTrue(ring.producerWaitNanos() > 0);
+    }
+
+    @Test
+    void offerAfterCloseIsRefused() {
+        FrameRing<Integer> ring = new FrameRing<>(4);
+        ring.close();
+        assertFalse(ring.offer(1));
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void closeReleasesAWaitingProducerWithFalse() throws Exception {
+        FrameRing<Integer> ring = new FrameRing<>(2);
+        assertTrue(ring.offer(0));
+        assertTrue(ring.offer(1));
+
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> ring.offer(2));
+        Thread.sleep(50);
+        ring.close();
+        assertFalse(blocked.get(5, TimeUnit.SECONDS));
+
+        // what was already in the ring is still drained, the refused entry is not
+        assertEquals(0, ring.take());
+        assertEquals(1, ring.take());
+        assertNull(ring.take());
+    }
+
+    @Test
+    void concurrentProducerAndConsumerLoseNothing() throws Exception {
+        FrameRing<Integer> ring = new FrameRing<>(8);
+        int n = 100_000;
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < n; i++) assertTrue(ring.offer(i));
+            ring.close();
+        });
+        int expected = 0;
+        Integer item;
+        while ((item = ring.take()) != null) assertEquals(expected++, item);
+        producer.get(10, TimeUnit.SECONDS);
+        assertEquals(n, expected);
+    }
+}
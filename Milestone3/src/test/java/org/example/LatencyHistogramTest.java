@@ -0,0 +1,84 @@
+// ===================== LatencyHistogramTest.java =====================
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void valuesBelowSubBucketCountAreExact() {
+        for (long v = 0; v < 32; v++) {
+            assertEquals(v, LatencyHistogram.index(v));
+            assertEquals(v, LatencyHistogram.upperBound((int) v));
+        }
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++) {
+            long hi = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.index(hi), "upper bound of bucket " + i);
+            assertEquals(i + 1, LatencyHistogram.index(hi + 1), "first value after bucket " + i);
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+    }
+
+    @Test
+    void upperBoundIsWithinOneThirtySecond() {
+        Random rnd = new Random(42);
+        for (int k = 0; k < 100_000; k++) {
+            long v = (rnd.nextLong() >>> 1) >>> rnd.nextInt(63);
+            long hi = LatencyHistogram.upperBound(LatencyHistogram.index(v));
+            assertTrue(hi >= v, "bucket of " + v + " ends below it: " + hi);
+            assertTrue(hi - v <= v / 32, "bucket of " + v + " too wide: " + hi);
+        }
+    }
+
+    @Test
+    void negativeValuesGoToBucketZero() {
+        assertEquals(0, LatencyHistogram.index(-5));
+    }
+
+    @Test
+    void percentilesOfRecordedValues() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 1000; v++) h.record(v);
+        long[] c = h.counts();
+
+        assertEquals(1000, LatencyHistogram.total(c));
+        assertEquals(1, LatencyHistogram.percentile(c, 0.0));
+        long p50 = LatencyHistogram.percentile(c, 0.50);
+        assertTrue(p50 >= 500 && p50 <= 500 + 500 / 32, "p50 " + p50);
+        long p99 = LatencyHistogram.percentile(c, 0.99);
+        assertTrue(p99 >= 990 && p99 <= 990 + 990 / 32, "p99 " + p99);
+        long max = LatencyHistogram.max(c);
+        assertTrue(max >= 1000 && max <= 1000 + 1000 / 32, "max " + max);
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        long[] c = new LatencyHistogram().counts();
+        assertEquals(0, LatencyHistogram.total(c));
+        assertEquals(0, LatencyHistogram.percentile(c, 0.99));
+        assertEquals(0, LatencyHistogram.max(c));
+    }
+
+    @Test
+    void minusGivesTheInterval() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(10);
+        long[] before = h.counts();
+        h.record(10);
+        h.record(5000);
+        long[] delta = LatencyHistogram.minus(h.counts(), before);
+
+        assertEquals(2, LatencyHistogram.total(delta));
+        assertEquals(1, delta[LatencyHistogram.index(10)]);
+        assertEquals(1, delta[LatencyHistogram.index(5000)]);
+        assertArrayEquals(h.counts(), LatencyHistogram.minus(h.counts(), null));
+    }
+}
@@ -0,0 +1,123 @@
+// ===================== QuantileSketchTest.java =====================
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+
+    private static final double[] QS = {0.0, 0.01, 0.25, 0.5, 0.9, 0.99, 0.999, 1.0};
+
+    // exact rank-based quantile, same definition as the sketch (smallest value with rank >= ceil(q n))
+    private static double exact(double[] sorted, double q) {
+        int rank = (int) Math.max(1, Math.ceil(q * sorted.length));
+        return sorted[rank - 1];
+    }
+
+    @Test
+    void emptySketchHasNoQuantiles() {
+        QuantileSketch s = new QuantileSketch();
+        assertEquals(0, s.count());
+        assertTrue(Double.isNaN(s.quantile(0.5)));
+    }
+
+    @Test
+    void invalidValuesAreIgnored() {
+        QuantileSketch s = new QuantileSketch();
+        s.add(Double.NaN);
+        s.add(-0.5);
+        s.add(Double.POSITIVE_INFINITY);
+        assertEquals(0, s.count());
+        assertEquals(-1, QuantileSketch.index(Double.NaN));
+        assertEquals(-1, QuantileSketch.index(-1));
+    }
+
+    @Test
+    void smallValuesAreExactToTheUnit() {
+        QuantileSketch s = new QuantileSketch();
+        for (int i = 0; i <= 30; i++) s.add(i * QuantileSketch.UNIT);
+        assertEquals(0.0, s.quantile(0.0), 1e-9);
+        assertEquals(1.5, s.quantile(0.5), 1e-9);
+        assertEquals(3.0, s.quantile(1.0), 1e-9);
+    }
+
+    @Test
+    void quantilesAreWithinTheBucketError() {
+        Random rnd = new Random(5);
+        for (int round = 0; round < 20; round++) {
+            int n = 1 + rnd.nextInt(20_000);
+            double[] values = new double[n];
+            QuantileSketch s = new QuantileSketch();
+            for (int i = 0; i < n; i++) {
+                // long-tailed, like waiting and travel times
+                values[i] = Math.exp(rnd.nextGaussian() * 1.5 + 3.0);
+                s.add(values[i]);
+            }
+            Arrays.sort(values);
+            assertEquals(n, s.count());
+            for (double q : QS) {
+                double want = exact(values, q);
+                double got = s.quantile(q);
+                // rounded to UNIT, then at most 1/32 above (the bucket's upper bound)
+                assertTrue(got >= want - QuantileSketch.UNIT / 2, "q=" + q + " want " + want + " got " + got);
+                assertTrue(got <= want * (1 + 1.0 / 32) + QuantileSketch.UNIT, "q=" + q + " want " + want + " got " + got);
+            }
+        }
+    }
+
+    @Test
+    void hugeValuesAreClamped() {
+        QuantileSketch s = new QuantileSketch();
+        s.add(1e12);
+        assertEquals(1, s.count());
+        assertTrue(s.quantile(1.0) > 200_000);
+    }
+
+    @Test
+    void mergeThenSubtractRestoresTheOriginal() {
+        Random rnd = new Random(9);
+        QuantileSketch a = new QuantileSketch(), b = new QuantileSketch(), all = new QuantileSketch();
+        for (int i = 0; i < 5000; i++) {
+            double v = rnd.nextDouble() * 600;
+            (i % 3 == 0 ? b : a).add(v);
+            all.add(v);
+        }
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(a);
+        merged.merge(b);
+        assertEquals(all.count(), merged.count());
+        for (double q : QS) assertEquals(all.quantile(q), merged.quantile(q), "q=" + q);
+
+        merged.subtract(b);
+        assertEquals(a.count(), merged.count());
+        for (double q : QS) assertEquals(a.quantile(q), merged.quantile(q), "q=" + q);
+
+        merged.clear();
+        assertEquals(0, merged.count());
+        assertTrue(Double.isNaN(merged.quantile(0.5)));
+    }
+
+    @Test
+    void stateRoundTrip() throws Exception {
+        QuantileSketch s = new QuantileSketch();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 1000; i++) s.add(rnd.nextDouble() * 100);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        s.writeState(new DataOutputStream(bytes));
+        QuantileSketch t = new QuantileSketch();
+        t.add(42);
+        t.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(s.count(), t.count());
+        for (double q : QS) assertEquals(s.quantile(q), t.quantile(q), "q=" + q);
+    }
+}
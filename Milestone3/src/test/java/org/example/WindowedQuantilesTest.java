@@ -0,0 +1,159 @@
+// ===================== WindowedQuantilesTest.java =====================
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowedQuantilesTest {
+
+    private static final double SLOT = 10.0;
+    private static final double[] WINDOWS = {60.0, 300.0};
+    private static final int SERIES = 2;
+    private static final double[] QS = {0.5, 0.9, 0.99};
+
+    private static final class Sample {
+        final int s; final byte type; final double t; final double v;
+        Sample(int s, byte type, double t, double v) { this.s = s; this.type = type; this.t = t; this.v = v; }
+    }
+
+    // the windows must hold exactly the samples of their slots: same sketch as one built from scratch
+    private static void assertMatches(WindowedQuantiles wq, List<Sample> all, double now) {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            long from = (long) Math.floor((now - WINDOWS[w]) / SLOT);
+            for (int s = 0; s < SERIES; s++) {
+                for (int g = 0; g < WindowedQuantiles.GROUPS; g++) {
+                    QuantileSketch ref = new QuantileSketch();
+                    for (Sample x : all) {
+                        if (x.s != s || (long) Math.floor(x.t / SLOT) < from) continue;
+                        if (g != WindowedQuantiles.GROUP_ALL && g != 1 + x.type) continue;
+                        ref.add(x.v);
+                    }
+                    String at = "t=" + now + " window=" + WINDOWS[w] + " series=" + s + " group=" + g;
+                    assertEquals(ref.count(), wq.count(w, s, g), at);
+                    for (double q : QS) assertEquals(ref.quantile(q), wq.quantile(w, s, g, q), at + " q=" + q);
+                }
+            }
+        }
+    }
+
+    private static Sample randomSample(Random rnd, double t) {
+        byte type = (byte) rnd.nextInt(VehicleRegistry.TYPE_NAMES.length);
+        return new Sample(rnd.nextInt(SERIES), type, t, rnd.nextDouble() * rnd.nextInt(500));
+    }
+
+    @Test
+    void windowsMatchFreshSketchesUnderRandomSamplesAndGaps() {
+        WindowedQuantiles wq = new WindowedQuantiles(SERIES, SLOT, WINDOWS);
+        List<Sample> all = new ArrayList<>();
+        Random rnd = new Random(21);
+        double t = 0;
+        for (int step = 0; step < 1500; step++) {
+            // mostly 1 s steps, sometimes a gap longer than the ring
+            int r = rnd.nextInt(200);
+            t += r == 0 ? 400 + rnd.nextInt(400) : r < 10 ? 20 + rnd.nextInt(60) : 1;
+            int k = rnd.nextInt(5);
+            for (int i = 0; i < k; i++) {
+                Sample x = randomSample(rnd, t);
+                wq.add(x.s, x.type, x.t, x.v);
+                all.add(x);
+            }
+            wq.advance(t);
+            if (step % 10 == 0) assertMatches(wq, all, t);
+        }
+        assertMatches(wq, all, t);
+    }
+
+    @Test
+    void badValuesAndUnknownTypes() {
+        WindowedQuantiles wq = new WindowedQuantiles(1, SLOT, 60.0);
+        wq.add(0, VehicleRegistry.TYPE_BUS, 0, Double.NaN);
+        wq.add(0, (byte) 9, 0, 5.0);
+        wq.advance(0);
+        assertEquals(1, wq.count(0, 0, WindowedQuantiles.GROUP_ALL));
+        // unknown types count as cars
+        assertEquals(1, wq.count(0, 0, 1 + VehicleRegistry.TYPE_CAR));
+        assertEquals(0, wq.count(0, 0, 1 + VehicleRegistry.TYPE_BUS));
+    }
+
+    @Test
+    void opensSlotOncePerSlot() {
+        WindowedQuantiles wq = new WindowedQuantiles(1, SLOT, 60.0);
+        assertTrue(wq.opensSlot(0));
+        wq.advance(0);
+        assertFalse(wq.opensSlot(5));
+        wq.advance(5);
+        assertFalse(wq.opensSlot(9.5));
+        assertTrue(wq.opensSlot(10));
+        wq.advance(10);
+        assertFalse(wq.opensSlot(10));
+    }
+
+    @Test
+    void samplesLeaveTheWindow() {
+        WindowedQuantiles wq = new WindowedQuantiles(1, SLOT, 60.0);
+        wq.add(0, VehicleRegistry.TYPE_CAR, 0, 100.0);
+        wq.add(0, VehicleRegistry.TYPE_CAR, 35, 1.0);
+        wq.advance(35);
+        assertEquals(100.0, wq.quantile(0, 0, 0, 1.0), 100.0 / 32);
+
+        // t = 75 covers slots from floor(15 / 10) = 1 on: the sample at t = 0 is gone
+        wq.advance(75);
+        assertEquals(1, wq.count(0, 0, 0));
+        assertEquals(1.0, wq.quantile(0, 0, 0, 1.0), 1e-9);
+
+        wq.advance(200);
+        assertEquals(0, wq.count(0, 0, 0));
+        assertTrue(Double.isNaN(wq.quantile(0, 0, 0, 0.5)));
+    }
+
+    @Test
+    void stateRoundTripContinuesIdentically() throws Exception {
+        WindowedQuantiles a = new WindowedQuantiles(SERIES, SLOT, WINDOWS);
+        List<Sample> all = new ArrayList<>();
+        Random rnd = new Random(4);
+        double t = 0;
+        for (int i = 0; i < 400; i++) {
+            t += rnd.nextInt(3);
+            Sample x = randomSample(rnd, t);
+            a.add(x.s, x.type, x.t, x.v);
+            all.add(x);
+            a.advance(t);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        a.writeState(new DataOutputStream(bytes));
+        WindowedQuantiles b = new WindowedQuantiles(SERIES, SLOT, WINDOWS);
+        b.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertMatches(b, all, t);
+
+        for (int i = 0; i < 400; i++) {
+            t += rnd.nextInt(3);
+            Sample x = randomSample(rnd, t);
+            a.add(x.s, x.type, x.t, x.v);
+            b.add(x.s, x.type, x.t, x.v);
+            all.add(x);
+            a.advance(t);
+            b.advance(t);
+        }
+        assertMatches(a, all, t);
+        assertMatches(b, all, t);
+    }
+
+    @Test
+    void stateFromADifferentConfigurationIsRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new WindowedQuantiles(SERIES, SLOT, WINDOWS).writeState(new DataOutputStream(bytes));
+        WindowedQuantiles other = new WindowedQuantiles(SERIES, 5.0, WINDOWS);
+        assertThrows(java.io.IOException.class,
+                () -> other.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+}
@@ -0,0 +1,152 @@
+// ===================== WindowedStatsTest.java =====================
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowedStatsTest {
+
+    private static final double BUCKET = 1.0;
+    private static final double[] WINDOWS = {5.0, 20.0, 60.0};
+    private static final int SERIES = 2;
+
+    // every sample ever added, checked against the windows by brute force
+    private static final class Sample {
+        final int s; final double t; final double v;
+        Sample(int s, double t, double v) { this.s = s; this.t = t; this.v = v; }
+    }
+
+    private static void assertMatches(WindowedStats ws, List<Sample> all, double now) {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            long from = (long) Math.floor((now - WINDOWS[w]) / BUCKET);
+            for (int s = 0; s < SERIES; s++) {
+                long n = 0;
+                double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                for (Sample x : all) {
+                    if (x.s != s || (long) Math.floor(x.t / BUCKET) < from) continue;
+                    n++;
+                    sum += x.v;
+                    min = Math.min(min, x.v);
+                    max = Math.max(max, x.v);
+                }
+                String at = "t=" + now + " window=" + WINDOWS[w] + " series=" + s;
+                assertEquals(n, ws.count(w, s), at);
+                assertEquals(sum, ws.sum(w, s), 1e-6, at);
+                if (n == 0) {
+                    assertTrue(Double.isNaN(ws.mean(w, s)), at);
+                    assertTrue(Double.isNaN(ws.min(w, s)), at);
+                    assertTrue(Double.isNaN(ws.max(w, s)), at);
+                } else {
+                    assertEquals(sum / n, ws.mean(w, s), 1e-9, at);
+                    assertEquals(min, ws.min(w, s), 0.0, at);
+                    assertEquals(max, ws.max(w, s), 0.0, at);
+                }
+            }
+        }
+    }
+
+    @Test
+    void windowsMatchBruteForceUnderRandomSamplesAndGaps() {
+        WindowedStats ws = new WindowedStats(SERIES, BUCKET, WINDOWS);
+        List<Sample> all = new ArrayList<>();
+        Random rnd = new Random(7);
+        double t = 0.0;
+        for (int step = 0; step < 3000; step++) {
+            // mostly small steps, sometimes a gap longer than every window (ring jump)
+            int r = rnd.nextInt(100);
+            t += r < 2 ? 100 + rnd.nextInt(200) : r < 10 ? 5 + rnd.nextInt(20) : rnd.nextInt(3) * 0.5;
+            int k = rnd.nextInt(4);
+            for (int i = 0; i < k; i++) {
+                Sample x = new Sample(rnd.nextInt(SERIES), t, Math.round(rnd.nextGaussian() * 100) / 10.0);
+                ws.add(x.s, x.t, x.v);
+                all.add(x);
+            }
+            ws.advance(t);
+            assertMatches(ws, all, t);
+        }
+    }
+
+    @Test
+    void minAndMaxFollowExpiry() {
+        WindowedStats ws = new WindowedStats(1, 1.0, 3.0);
+        double[] values = {5, 1, 4, 2, 3, 0.5, 6};
+        for (int t = 0; t < values.length; t++) {
+            ws.add(0, t, values[t]);
+            ws.advance(t);
+        }
+        // t = 6 covers buckets 3..6: 2, 3, 0.5, 6
+        assertEquals(4, ws.count(0, 0));
+        assertEquals(0.5, ws.min(0, 0));
+        assertEquals(6.0, ws.max(0, 0));
+
+        ws.advance(9);
+        // buckets 6..9: only the 6
+        assertEquals(1, ws.count(0, 0));
+        assertEquals(6.0, ws.min(0, 0));
+        assertEquals(6.0, ws.max(0, 0));
+
+        ws.advance(10);
+        assertEquals(0, ws.count(0, 0));
+        assertTrue(Double.isNaN(ws.min(0, 0)));
+        assertEquals(0.0, ws.sum(0, 0));
+    }
+
+    @Test
+    void perHourUsesTheFullWindowLength() {
+        WindowedStats ws = new WindowedStats(1, 1.0, 60.0);
+        for (int t = 0; t < 30; t++) ws.add(0, t, 1.0);
+        ws.advance(29);
+        assertEquals(30 * 60.0, ws.perHour(0, 0), 1e-9);
+    }
+
+    @Test
+    void stateRoundTripContinuesIdentically() throws Exception {
+        WindowedStats a = new WindowedStats(SERIES, BUCKET, WINDOWS);
+        List<Sample> all = new ArrayList<>();
+        Random rnd = new Random(11);
+        double t = 0;
+        for (int i = 0; i < 200; i++) {
+            t += rnd.nextInt(3);
+            Sample x = new Sample(rnd.nextInt(SERIES), t, rnd.nextInt(50));
+            a.add(x.s, x.t, x.v);
+            all.add(x);
+            a.advance(t);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        a.writeState(new DataOutputStream(bytes));
+        WindowedStats b = new WindowedStats(SERIES, BUCKET, WINDOWS);
+        b.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertMatches(b, all, t);
+
+        for (int i = 0; i < 200; i++) {
+            t += rnd.nextInt(3);
+            Sample x = new Sample(rnd.nextInt(SERIES), t, rnd.nextInt(50));
+            a.add(x.s, x.t, x.v);
+            b.add(x.s, x.t, x.v);
+            all.add(x);
+            a.advance(t);
+            b.advance(t);
+            assertMatches(a, all, t);
+            assertMatches(b, all, t);
+        }
+    }
+
+    @Test
+    void labels() {
+        assertEquals("30s", WindowedStats.label(30));
+        assertEquals("1min", WindowedStats.label(60));
+        assertEquals("5min", WindowedStats.label(300));
+        assertEquals("90min", WindowedStats.label(5400));
+        assertEquals("2h", WindowedStats.label(7200));
+    }
+}
@@ -0,0 +1,246 @@
+package org.example;
+import org.eclipse.sumo.libtraci.Edge;
+import org.eclipse.sumo.libtraci.IntVector;
+import org.eclipse.sumo.libtraci.SubscriptionResults;
+import org.eclipse.sumo.libtraci.TraCIDouble;
+import org.eclipse.sumo.libtraci.TraCIInt;
+import org.eclipse.sumo.libtraci.TraCIResult;
+import org.eclipse.sumo.libtraci.TraCIResults;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EdgeMetricsStore: Live Per-Edge Metrics
+ * Vehicle count, mean speed, halting vehicles and occupancy of every street (non-internal edge).
+ *
+ * Port of Milestone3's EdgeMetricsStore, which is the source: change that one first and keep this in step.
+ *
+ * EdgeMetricsStore: 实时路段指标
+ * 每条街道 (非路口内部 Edge) 的车辆数、平均速度、停车数和占有率。
+ * 移植自 Milestone3 的 EdgeMetricsStore (原版)：先改那边，再同步到这里。
+ */
+public class EdgeMetricsStore {
+
+    /**
+     * Ranking modes: vehicle count, halting vehicles, speed drop (1 - mean speed / free speed, occupied edges only).
+     * 排名方式：车辆数、停车数、速度下降 (1 - 平均速度 / 畅通速度，仅限有车的路段)。
+     */
+    public enum Ranking {
+        VEHICLES("vehicles"),
+        HALTING("halting"),
+        SPEED_DROP("speed drop");
+
+        final String label;
+        Ranking(String label) { this.label = label; }
+
+        @Override
+        public String toString() { return "Top edges by " + label; }
+    }
+
+    // TraCI edge variables (value of the last step).
+    // TraCI Edge 变量 (上一步的值)。
+    static final int LAST_STEP_VEHICLE_NUMBER = 0x10;
+    static final int LAST_STEP_MEAN_SPEED = 0x11;
+    static final int LAST_STEP_OCCUPANCY = 0x13;
+    static final int LAST_STEP_VEHICLE_HALTING_NUMBER = 0x14;
+
+    // Edge index <-> ID. Why arrays?
+    // Every edge is subscribed once and SUMO computes its values itself, so one step costs a single
+    // subscription read instead of a getRoadID call per vehicle. The values are written in place into
+    // primitive arrays indexed by edge: no map rebuilt per step, and a scan over all edges is O(edges).
+    // Simulation thread only.
+    //
+    // Edge 下标 <-> ID。为什么用数组？
+    // 每条 Edge 只订阅一次，由 SUMO 自己计算数值，因此每一步只需读取一次订阅结果，
+    // 而不是对每辆车调用一次 getRoadID。数值原地写入按 Edge 下标索引的基本类型数组：
+    // 每步不再重建 Map，遍历所有路段的代价为 O(路段数)。仅限仿真线程使用。
+    private String[] ids = new String[0];
+    private final Map<String, Integer> indexOf = new HashMap<>();
+
+    private int[] vehicles = new int[0];
+    private int[] halting = new int[0];
+    private double[] meanSpeed = new double[0];  // m/s (speed limit when empty / 无车时为限速)
+    private double[] occupancy = new double[0];  // % of the edge length / 占路段长度的百分比
+    private boolean subscribed = false;
+
+    // Free speed: SUMO reports the speed limit as mean speed of an empty edge, so keep the highest seen.
+    // 畅通速度：SUMO 将空路段的平均速度报告为限速，因此保留见过的最大值。
+    private double[] freeSpeed = new double[0];
+
+    // Rankings: one indexed heap per Ranking, touched only for edges whose values changed (see EdgeTopK).
+    // 排名：每种 Ranking 一个索引堆，只更新数值有变化的路段 (见 EdgeTopK)。
+    private final EdgeTopK[] rank = new EdgeTopK[Ranking.values().length];
+    private int[] dirty = new int[0];            // edges changed this step / 本步变化的路段
+    private boolean[] isDirty = new boolean[0];
+    private int dirtyCount = 0;
+
+    /**
+     * Subscribe every non-internal edge (called by the first update(), after SUMO is connected).
+     * 订阅所有非内部 Edge (由第一次 update() 调用，此时 SUMO 已连接)。
+     */
+    public void subscribeAll() {
+        List<String> all = Edge.getIDList();
+
+        // Skip internal junction edges (IDs starting with ":").
+        // 跳过路口内部 Edge (以 ":" 开头的 ID)。
+        ids = all.stream().filter(id -> !id.startsWith(":")).toArray(String[]::new);
+        indexOf.clear();
+        for (int e = 0; e < ids.length; e++) indexOf.put(ids[e], e);
+        vehicles = new int[ids.length];
+        halting = new int[ids.length];
+        meanSpeed = new double[ids.length];
+        occupancy = new double[ids.length];
+        freeSpeed = new double[ids.length];
+        for (int r = 0; r < rank.length; r++) rank[r] = new EdgeTopK(ids.length);
+        dirty = new int[ids.length];
+        isDirty = new boolean[ids.length];
+        dirtyCount = 0;
+
+        IntVector vars = new IntVector();
+        vars.add(LAST_STEP_VEHICLE_NUMBER);
+        vars.add(LAST_STEP_MEAN_SPEED);
+        vars.add(LAST_STEP_VEHICLE_HALTING_NUMBER);
+        vars.add(LAST_STEP_OCCUPANCY);
+        for (String id : ids) {
+            try {
+                Edge.subscribe(id, vars);
+            } catch (Exception e) {
+                System.err.println("Edge subscribe failed: " + id);
+            }
+        }
+        subscribed = true;
+    }
+
+    /**
+     * Read the subscription results of all edges (once per simulation step).
+     * Only edges whose values changed are re-ranked.
+     *
+     * 读取所有 Edge 的订阅结果 (每个仿真步一次)。
+     * 只有数值变化的路段才会重新排名。
+     */
+    public void update() {
+        if (!subscribed) subscribeAll();
+
+        // SUMO returns every subscribed edge each step; a missing edge keeps its last values.
+        // SUMO 每一步都会返回所有已订阅的 Edge；缺失的 Edge 保留上一步的值。
+
+        SubscriptionResults all = Edge.getAllSubscriptionResults();
+        for (Map.Entry<String, TraCIResults> entry : all.entrySet()) {
+            Integer e = indexOf.get(entry.getKey());
+            if (e == null || entry.getValue() == null) continue;
+            for (Map.Entry<Integer, TraCIResult> v : entry.getValue().entrySet()) {
+                if (v.getKey() == null || v.getValue() == null) continue;
+                double value = toDouble(v.getValue());
+                boolean changed;
+                switch (v.getKey()) {
+                    case LAST_STEP_VEHICLE_NUMBER:
+                        changed = vehicles[e] != (int) value;
+                        vehicles[e] = (int) value;
+                        break;
+                    case LAST_STEP_VEHICLE_HALTING_NUMBER:
+                        changed = halting[e] != (int) value;
+                        halting[e] = (int) value;
+                        break;
+                    case LAST_STEP_MEAN_SPEED:
+                        changed = meanSpeed[e] != value;
+                        meanSpeed[e] = value;
+                        break;
+                    case LAST_STEP_OCCUPANCY:
+                        // Not ranked. / 不参与排名。
+                        occupancy[e] = value;
+                        changed = false;
+                        break;
+                    default:
+                        changed = false;
+                        break;
+                }
+                if (changed && !isDirty[e]) {
+                    isDirty[e] = true;
+                    dirty[dirtyCount++] = e;
+                }
+            }
+        }
+
+        // Re-rank the changed edges only.
+        // 只对变化的路段重新排名。
+        for (int i = 0; i < dirtyCount; i++) {
+            int e = dirty[i];
+            isDirty[e] = false;
+            if (vehicles[e] == 0 && meanSpeed[e] > freeSpeed[e]) freeSpeed[e] = meanSpeed[e];
+            rank[Ranking.VEHICLES.ordinal()].update(e, vehicles[e]);
+            rank[Ranking.HALTING.ordinal()].update(e, halting[e]);
+            rank[Ranking.SPEED_DROP.ordinal()].update(e, speedDrop(e));
+        }
+        dirtyCount = 0;
+    }
+
+    // Some builds return the generic TraCIResult proxy: fall back to its text.
+    // 某些版本返回通用的 TraCIResult 代理：退回到解析其文本。
+    private static double toDouble(TraCIResult r) {
+        if (r instanceof TraCIDouble) return ((TraCIDouble) r).getValue();
+        if (r instanceof TraCIInt) return ((TraCIInt) r).getValue();
+        try {
+            return Double.parseDouble(r.getString().trim());
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    // --- Data Access / 数据访问 ---
+    public int size() { return ids.length; }
+    public String id(int e) { return ids[e]; }
+
+    // -1 for internal / unknown edges / 内部或未知 Edge 返回 -1
+    public int index(String edgeId) {
+        Integer e = indexOf.get(edgeId);
+        return e == null ? -1 : e;
+    }
+
+    public int vehicles(int e) { return vehicles[e]; }
+    public int halting(int e) { return halting[e]; }
+    public double meanSpeed(int e) { return meanSpeed[e]; }
+    public double occupancy(int e) { return occupancy[e]; }
+
+    // 0..1; 0 for empty edges or before the free speed is known / 空路段或畅通速度未知时为 0
+    public double speedDrop(int e) {
+        double free = freeSpeed[e];
+        if (vehicles[e] == 0 || !(free > 0)) return 0.0;
+        return Math.max(0.0, Math.min(1.0, 1.0 - meanSpeed[e] / free));
+    }
+
+    /**
+     * Index of the edge with the most vehicles (lowest index on ties), -1 when all edges are empty.
+     * 车辆最多的 Edge 下标 (相同时取下标小的)，全部为空时返回 -1。
+     */
+    public int busiest() {
+        return subscribed ? rank[Ranking.VEHICLES.ordinal()].peek() : -1;
+    }
+
+    /**
+     * Up to k edges by the given ranking, best first, into out; returns how many (edges with value > 0 only).
+     * 按指定排名将最多 k 条路段 (从高到低) 写入 out，返回数量 (仅包含数值 > 0 的路段)。
+     */
+    public int top(Ranking r, int k, int[] out) {
+        return subscribed ? rank[r.ordinal()].top(k, out) : 0;
+    }
+
+    /**
+     * Text of the ranked list, one "1. id (...)" line per edge.
+     * 排名列表的文本，每条路段一行 "1. id (...)"。
+     */
+    public List<String> topLines(Ranking r, int k) {
+        int[] out = new int[k];
+        int n = top(r, k, out);
+        List<String> lines = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int e = out[i];
+            String line = String.format("%d. %s (%d veh, %d halting, %.1f m/s)",
+                    i + 1, ids[e], vehicles[e], halting[e], meanSpeed[e]);
+            if (r == Ranking.SPEED_DROP) line += String.format(" -%.0f%%", 100.0 * speedDrop(e));
+            lines.add(line);
+        }
+        return lines;
+    }
+}
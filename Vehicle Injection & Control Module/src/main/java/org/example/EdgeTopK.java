@@ -0,0 +1,175 @@
+package org.example;
+import java.util.Arrays;
+
+/**
+ * EdgeTopK: Indexed Max-Heap over Edges
+ * The K highest-ranked edges at any time, without scanning every edge.
+ *
+ * Port of Milestone3's EdgeTopK, which is the source: change that one first and keep this in step.
+ *
+ * EdgeTopK: 按 Edge 下标索引的最大堆
+ * 随时得到排名最高的 K 条路段，而无需遍历所有路段。
+ * 移植自 Milestone3 的 EdgeTopK (原版)：先改那边，再同步到这里。
+ */
+public class EdgeTopK {
+
+    // Why an indexed heap?
+    // pos[] remembers where each edge sits in the heap, so update(e, key) only moves that one edge:
+    // O(log edges), and nothing at all when the key did not change. A step therefore costs
+    // O(changed edges * log edges) instead of a full scan, and top(k) costs O(k log k).
+    // Edges with key <= 0 are not in the heap. Ties: lower edge index first (stable ranking).
+    // Simulation thread only.
+    //
+    // 为什么用索引堆？
+    // pos[] 记录每条 Edge 在堆中的位置，因此 update(e, key) 只移动这一条 Edge：
+    // O(log 路段数)，数值未变化时不做任何事。每一步的代价是 O(变化的路段数 * log 路段数)，
+    // 而不是完整遍历；top(k) 的代价为 O(k log k)。
+    // key <= 0 的 Edge 不在堆中。数值相同时下标小的在前 (排名稳定)。仅限仿真线程使用。
+    private final int[] heap;   // edge indices, heap[0] = best / Edge 下标，heap[0] 为最大
+    private final int[] pos;    // edge -> heap position, -1 = absent / Edge -> 堆中位置，-1 表示不在堆中
+    private final double[] key;
+    private int size = 0;
+
+    // Candidate heap used by top(), reused between calls.
+    // top() 使用的候选堆，可重复使用。
+    private int[] cand = new int[16];
+
+    public EdgeTopK(int edges) {
+        heap = new int[edges];
+        pos = new int[edges];
+        key = new double[edges];
+        Arrays.fill(pos, -1);
+    }
+
+    public int size() { return size; }
+    public double key(int e) { return key[e]; }
+
+    // -1 when the heap is empty / 堆为空时返回 -1
+    public int peek() { return size == 0 ? -1 : heap[0]; }
+
+    /**
+     * Set the key of an edge (no-op when unchanged).
+     * 设置 Edge 的数值 (未变化时不做任何事)。
+     */
+    public void update(int e, double k) {
+        if (!(k > 0)) k = 0.0;
+        double old = key[e];
+        if (k == old && (pos[e] >= 0) == (k > 0)) return;
+        key[e] = k;
+
+        int p = pos[e];
+        if (k <= 0) {
+            if (p >= 0) remove(p);
+            return;
+        }
+        if (p < 0) {
+            p = size++;
+            heap[p] = e;
+            pos[e] = p;
+            siftUp(p);
+        } else if (k > old) {
+            siftUp(p);
+        } else {
+            siftDown(p);
+        }
+    }
+
+    private void remove(int p) {
+        int e = heap[p];
+        int last = --size;
+        pos[e] = -1;
+        if (p == last) return;
+        int moved = heap[last];
+        heap[p] = moved;
+        pos[moved] = p;
+        siftDown(p);
+        if (pos[moved] == p) siftUp(p);
+    }
+
+    // a ranks before b / a 排在 b 之前
+    private boolean above(int a, int b) {
+        return key[a] > key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int p) {
+        int e = heap[p];
+        while (p > 0) {
+            int parent = (p - 1) >>> 1;
+            int pe = heap[parent];
+            if (!above(e, pe)) break;
+            heap[p] = pe;
+            pos[pe] = p;
+            p = parent;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+
+    private void siftDown(int p) {
+        int e = heap[p];
+        while (true) {
+            int c = 2 * p + 1;
+            if (c >= size) break;
+            if (c + 1 < size && above(heap[c + 1], heap[c])) c++;
+            int ce = heap[c];
+            if (!above(ce, e)) break;
+            heap[p] = ce;
+            pos[ce] = p;
+            p = c;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+
+    /**
+     * Write up to k edges, best first, into out; returns how many.
+     * Walks the heap best-first with a small candidate heap instead of sorting it.
+     *
+     * 将最多 k 条 Edge (从高到低) 写入 out，返回数量。
+     * 使用一个小的候选堆按顺序遍历，而不是对整个堆排序。
+     */
+    public int top(int k, int[] out) {
+        int n = Math.min(k, size);
+        if (n <= 0) return 0;
+        if (cand.length < n + 1) cand = new int[Math.max(n + 1, cand.length * 2)];
+
+        int cs = 0;
+        cand[cs++] = 0;
+        for (int i = 0; i < n; i++) {
+            int p = cand[0];
+            out[i] = heap[p];
+            cand[0] = cand[--cs];
+            candDown(cs);
+            for (int c = 2 * p + 1; c <= 2 * p + 2 && c < size; c++) {
+                cand[cs] = c;
+                candUp(cs++);
+            }
+        }
+        return n;
+    }
+
+    private void candUp(int i) {
+        int v = cand[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(heap[v], heap[cand[parent]])) break;
+            cand[i] = cand[parent];
+            i = parent;
+        }
+        cand[i] = v;
+    }
+
+    private void candDown(int cs) {
+        if (cs == 0) return;
+        int i = 0, v = cand[0];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= cs) break;
+            if (c + 1 < cs && above(heap[cand[c + 1]], heap[cand[c]])) c++;
+            if (!above(heap[cand[c]], heap[v])) break;
+            cand[i] = cand[c];
+            i = c;
+        }
+        cand[i] = v;
+    }
+}
@@ -102,6 +102,22 @@ public class Main {
         statusPanel.add(dummyCongestionLabel);
         frame.add(statusPanel, BorderLayout.SOUTH);
 
+        // Ranked list of congested edges on the right; the combo box picks the ranking.
+        // 右侧为拥堵路段排名列表；下拉框选择排名方式。
+        JComboBox<EdgeMetricsStore.Ranking> topEdgesCombo = new JComboBox<>(EdgeMetricsStore.Ranking.values());
+        JTextArea topEdgesArea = new JTextArea("-", 5, 28);
+        topEdgesArea.setEditable(false);
+        topEdgesCombo.addActionListener(e ->
+                simManager.setTopEdgesRanking((EdgeMetricsStore.Ranking) topEdgesCombo.getSelectedItem()));
+        simManager.setTopEdgesView(topEdgesArea);
+        JPanel topEdgesPanel = new JPanel(new BorderLayout(0, 5));
+        topEdgesPanel.setBorder(BorderFactory.createTitledBorder("Congested Edges"));
+        topEdgesPanel.add(topEdgesCombo, BorderLayout.NORTH);
+        topEdgesPanel.add(topEdgesArea, BorderLayout.CENTER);
+        JPanel eastPanel = new JPanel(new BorderLayout());
+        eastPanel.add(topEdgesPanel, BorderLayout.NORTH);
+        frame.add(eastPanel, BorderLayout.EAST);
+
         // 4. Finalize and Show Window.
         // Center the window on the screen.
         //
@@ -2,7 +2,10 @@ package org.example;
 import org.eclipse.sumo.libtraci.Simulation;
 
 import java.awt.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import org.eclipse.sumo.libtraci.Vehicle;
 import java.awt.Color;
@@ -11,6 +14,7 @@ import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.swing.JLabel;
+import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
 import org.eclipse.sumo.libtraci.TraCIColor;
 
@@ -25,13 +29,23 @@ public class SimulationManager implements Runnable {
     private static final Logger LOGGER = Logger.getLogger(SimulationManager.class.getName());
 
     // 1. Communication Queue: Asynchronous command buffer.
-    // Why: The GUI thread calls 'injectVehicle', but the Simulation thread executes it.
-    // ConcurrentLinkedQueue is thread-safe, allowing safe data passing between threads (Producer-Consumer pattern).
+    // Why: The GUI thread calls 'injectVehicle', 'setVehicleSpeed' etc., but only the Simulation thread
+    // talks to TraCI. ConcurrentLinkedQueue is thread-safe, allowing safe data passing between threads
+    // (Producer-Consumer pattern). Every command carries a future that completes once it was applied.
     //
     // 1. 通信队列：异步命令缓冲区。
-    // 原因：GUI 线程调用 'injectVehicle'，但仿真线程负责执行它。
+    // 原因：GUI 线程调用 'injectVehicle'、'setVehicleSpeed' 等，但只有仿真线程访问 TraCI。
     // ConcurrentLinkedQueue 是线程安全的，允许在线程之间安全地传递数据（生产者-消费者模式）。
-    private final ConcurrentLinkedQueue<InjectionRequest> injectionQueue = new ConcurrentLinkedQueue<>();
+    // 每个命令都带有一个 future，执行完成后即被完成。
+    private final ConcurrentLinkedQueue<VehicleCommand> commandQueue = new ConcurrentLinkedQueue<>();
+
+    // Commands taken from the queue but not executed yet (Simulation thread only).
+    // 已从队列取出但尚未执行的命令（仅限仿真线程）。
+    private final ArrayDeque<VehicleCommand> pendingCommands = new ArrayDeque<>();
+
+    // Time budget per step for queued commands (large batches are spread over several steps).
+    // 每一步处理命令的时间预算（大批量命令会被分摊到多个步长中）。
+    private static final long COMMAND_BUDGET_NANOS = 10_000_000L;
 
     // Data Collector: Aggregates statistics.
     // 数据收集器：聚合统计信息。
@@ -50,6 +64,12 @@ public class SimulationManager implements Runnable {
     private final JLabel activeVehiclesLabel;
     private final JLabel congestionLabel;
 
+    // Ranked list of congested edges (optional) and its ranking mode, chosen in the GUI.
+    // 拥堵路段排名列表 (可选) 及其排名方式，由 GUI 选择。
+    private JTextArea topEdgesArea;
+    private volatile EdgeMetricsStore.Ranking topEdgesRanking = EdgeMetricsStore.Ranking.VEHICLES;
+    private static final int TOP_EDGES = 5;
+
     // Running Flag: Controls the simulation loop.
     // 运行标志：控制仿真循环。
     private volatile boolean running = true;
@@ -70,19 +90,27 @@ public class SimulationManager implements Runnable {
         this.filterMinSpeed = speed;
     }
 
+    // Text area for the ranked edge list (set before the thread starts).
+    // 拥堵路段排名的文本框 (在线程启动前设置)。
+    public void setTopEdgesView(JTextArea area) {
+        this.topEdgesArea = area;
+    }
+
+    // Ranking mode of the list (GUI thread, applied on the next step).
+    // 列表的排名方式 (GUI 线程调用，下一步生效)。
+    public void setTopEdgesRanking(EdgeMetricsStore.Ranking ranking) {
+        this.topEdgesRanking = ranking;
+    }
+
     /**
      * Control Function: Emergency Stop / Resume.
-     * Sets the maximum speed of a vehicle in SUMO.
+     * Sets the maximum speed of a vehicle in SUMO (queued, applied by the Simulation thread).
      *
      * 控制功能：紧急停车 / 恢复。
-     * 在 SUMO 中设置车辆的最大速度。
+     * 在 SUMO 中设置车辆的最大速度（入队，由仿真线程执行）。
      */
-    public void setVehicleSpeed(String id, double speed) {
-        try {
-            traCIWrapper.setVehicleMaxSpeed(id, speed); // 需在 VehicleInjection 中实现此方法
-        } catch (Exception e) {
-            System.err.println("Failed to set speed: " + e.getMessage());
-        }
+    public CompletableFuture<Void> setVehicleSpeed(String id, double speed) {
+        return submit(new VehicleCommand(CommandKind.SPEED, id, null, null, null, speed));
     }
 
     /**
@@ -106,26 +134,42 @@ public class SimulationManager implements Runnable {
      * * 方法 A: 基于 Route ID 注入。
      * 注意：此方法立即返回（非阻塞）。它只是将请求添加到队列中。
      */
-    public void injectVehicle(String id, String route) {
+    public CompletableFuture<Void> injectVehicle(String id, String route) {
         // 这里的颜色仅用于占位(因为 addVehicle 暂时没用它)，或者你可以去修改 addVehicle 也支持颜色
         TraCIColor defaultColor = new TraCIColor(255, 0, 0, 255);
-        // useRoute = true
-        injectionQueue.add(new InjectionRequest(id, route,true, "car", defaultColor));
+        return submit(new VehicleCommand(CommandKind.INJECT_ROUTE, id, route, "car", defaultColor, 0.0));
     }
 
     /**
      * Method B: Inject based on Edge ID (Dynamic Routing).
      * * 方法 B: 基于 Edge ID 注入（动态路由）。
      */
-    public void injectVehicleOnEdge(String id, String edgeId,String type, Color awtColor) {
+    public CompletableFuture<Void> injectVehicleOnEdge(String id, String edgeId,String type, Color awtColor) {
         // Convert Java AWT Color to SUMO TraCI Color.
         // 将 Java AWT 颜色 转换为 SUMO TraCI 颜色。
         TraCIColor sumoColor = new TraCIColor(awtColor.getRed(), awtColor.getGreen(), awtColor.getBlue(), 255);
 
         // Package type and color into the request.
         // 将车型和颜色打包进请求。
-        injectionQueue.add(new InjectionRequest(id, edgeId, false, type, sumoColor));
+        return submit(new VehicleCommand(CommandKind.INJECT_EDGE, id, edgeId, type, sumoColor, 0.0));
+    }
 
+    /**
+     * Adds a command to the queue. After stop() the future fails immediately.
+     * 将命令加入队列。stop() 之后 future 会立即失败。
+     */
+    private CompletableFuture<Void> submit(VehicleCommand cmd) {
+        if (!running) {
+            cmd.done.completeExceptionally(new CancellationException("simulation stopped"));
+            return cmd.done;
+        }
+        commandQueue.add(cmd);
+        // The loop may have ended (and drained the queue) between the check and the add.
+        // 检查与入队之间循环可能已结束（并清空了队列）。
+        if (!running && commandQueue.remove(cmd)) {
+            cmd.done.completeExceptionally(new CancellationException("simulation stopped"));
+        }
+        return cmd.done;
     }
 
     /**
@@ -147,12 +191,12 @@ public class SimulationManager implements Runnable {
             // Main Simulation Loop / 主仿真循环
             while (running) {
 
-                // A. Process Injection Queue (Before stepping)
+                // A. Process Command Queue (Before stepping)
                 // Why: We process user inputs before calculating the physics of the next frame.
                 //
-                // A. 处理注入队列 (在步进前)
+                // A. 处理命令队列 (在步进前)
                 // 原因：我们在计算下一帧的物理逻辑之前，先处理用户的输入。
-                processInjectionQueue();
+                processCommandQueue(COMMAND_BUDGET_NANOS);
 
                 // B. Advance Simulation
                 // Ask SUMO to calculate the next time step (physics, movement, traffic lights).
@@ -180,23 +224,19 @@ public class SimulationManager implements Runnable {
                 //
                 /// >>> E. 计算拥堵情况 (繁重计算) <<<
                 // 原因：我们在后台线程处理这些繁重的数学计算，而不是在 GUI 线程中，以免卡顿。
-                Map<String, Integer> density = statsCollector.getEdgeDensities();
-                String maxEdge = "None";
-                int maxCount = 0;
-
-                // Find the edge with the highest number of vehicles.
-                // 找出车辆数最多的路段。
-                for (Map.Entry<String, Integer> entry : density.entrySet()) {
-                    if (entry.getValue() > maxCount) {
-                        maxCount = entry.getValue();
-                        maxEdge = entry.getKey();
-                    }
-                }
+                // The edge with the most vehicles is the top of the ranking heap (no scan over all edges).
+                // 车辆数最多的路段就是排名堆的堆顶 (无需遍历所有路段)。
+                EdgeMetricsStore edges = statsCollector.getEdgeMetrics();
+                int hot = edges.busiest();
+                String maxEdge = hot < 0 ? "None" : edges.id(hot);
+                int maxCount = hot < 0 ? 0 : edges.vehicles(hot);
 
                 // Prepare "final" variables for lambda expression (variables inside lambda must be final or effectively final).
                 // 为 Lambda 表达式准备 "final" 变量（Lambda 内部的变量必须是 final 或 实际上的 final）。
                 final String congestionText = "Hottest Edge: " + maxEdge + " (" + maxCount + ")";
                 final int activeCount = ids.size();
+                final String topEdgesText = topEdgesArea == null ? null
+                        : String.join("\n", edges.topLines(topEdgesRanking, TOP_EDGES));
 
                 // --- Filtering Logic (Clean Code with Java Streams) ---
                 // Get a snapshot of all vehicle data.
@@ -240,6 +280,7 @@ public class SimulationManager implements Runnable {
                     // 更新文本标签。
                     activeVehiclesLabel.setText("Active Vehicles: " + activeCount);
                     congestionLabel.setText(congestionText);
+                    if (topEdgesText != null) topEdgesArea.setText(topEdgesText.isEmpty() ? "-" : topEdgesText);
                 });
 
                 /// Frame Rate Control
@@ -256,6 +297,8 @@ public class SimulationManager implements Runnable {
             System.err.println(">>> [线程崩溃] 模拟循环发生异常退出: " + e.getMessage());
         } finally {
             System.out.println(">>> [线程状态] Simulation Thread 结束运行。");
+            running = false;
+            cancelPendingCommands();
             Simulation.close();
             System.exit(0);
         }
@@ -270,78 +313,149 @@ public class SimulationManager implements Runnable {
         // 获取全系统平均速度
         double avgSpeed = statsCollector.getSystemAverageSpeed();
 
-        // Get hottest edge info.
-        // 获取拥堵路段数据
-        Map<String, Integer> density = statsCollector.getEdgeDensities();
-        String hottestEdge = "None";
-        int maxCount = 0;
-        for (Map.Entry<String, Integer> entry : density.entrySet()) {
-            if (entry.getValue() > maxCount) {
-                maxCount = entry.getValue();
-                hottestEdge = entry.getKey();
-            }
-        }
+        // Get hottest edge info (top of the ranking heap).
+        // 获取拥堵路段数据 (排名堆的堆顶)
+        EdgeMetricsStore edges = statsCollector.getEdgeMetrics();
+        int hot = edges.busiest();
+        String hottestEdge = hot < 0 ? "None" : edges.id(hot);
+        int maxCount = hot < 0 ? 0 : edges.vehicles(hot);
 
         // 格式化打印
         System.out.println("--------------------------------------------------");
         System.out.println(">> [Step Status] Active Vehicles: " + activeCount);
         System.out.printf(">> [System Avg Speed] %.2f m/s%n", avgSpeed);
         System.out.println(">> [Hottest Edge] " + hottestEdge + " (Load: " + maxCount + ")");
+        TripStore trips = statsCollector.getTrips();
+        System.out.printf(">> [Finished Trips] %d (avg travel %.1f s, avg wait %.1f s)%n",
+                trips.totalTrips(), trips.averageTravelTime(), trips.averageWaitTime());
+        for (String line : edges.topLines(EdgeMetricsStore.Ranking.HALTING, 3)) {
+            System.out.println(">>   [Halting] " + line);
+        }
         System.out.println("--------------------------------------------------");
     }
 
     /**
      * Private Helper: Process the queue
      * Why: Decouples the request (user click) from execution (TraCI call).
+     * Consecutive commands of the same kind are executed together as one batch;
+     * once the time budget is used up, the rest waits for the next step.
      * * 私有助手方法：处理队列
      * 原因：将请求（用户点击）与执行（TraCI 调用）解耦。
+     * 连续的同类命令作为一批一起执行；时间预算用完后，其余命令留到下一步处理。
      */
-    private void processInjectionQueue() {
-        InjectionRequest req;
+    private void processCommandQueue(long budgetNanos) {
+        VehicleCommand cmd;
         // Poll removes the head of the queue, returns null if empty.
         // Poll 移除并返回队列头部元素，如果为空则返回 null
-        while ((req = injectionQueue.poll()) != null) {
-            System.out.println(">>> 3. Manager 收到了请求，正在处理 ID: " + req.id); // [调试]
-            try {
-                if (req.isRoute) {
+        while ((cmd = commandQueue.poll()) != null) pendingCommands.addLast(cmd);
+
+        long deadline = System.nanoTime() + budgetNanos;
+        while (!pendingCommands.isEmpty() && System.nanoTime() < deadline) {
+            CommandKind kind = pendingCommands.peekFirst().kind;
+
+            // Speed / color: only the last command per vehicle in a batch is sent to SUMO,
+            // the ones it replaced share its outcome.
+            // 速度 / 颜色：同一批次中每辆车只发送最后一条命令，被替换的命令共享其结果。
+            java.util.LinkedHashMap<String, VehicleCommand> latest = new java.util.LinkedHashMap<>();
+            List<VehicleCommand> batch = new ArrayList<>();
+            while (!pendingCommands.isEmpty() && pendingCommands.peekFirst().kind == kind
+                    && System.nanoTime() < deadline) {
+                VehicleCommand c = pendingCommands.pollFirst();
+                if (kind == CommandKind.SPEED || kind == CommandKind.COLOR) {
+                    batch.add(c);
+                    latest.remove(c.id);
+                    latest.put(c.id, c);
+                } else {
+                    complete(c, execute(c));
+                }
+            }
+            java.util.Map<String, Exception> failed = new java.util.HashMap<>();
+            for (VehicleCommand c : latest.values()) {
+                Exception e = execute(c);
+                if (e != null) failed.put(c.id, e);
+            }
+            for (VehicleCommand c : batch) complete(c, failed.get(c.id));
+        }
+    }
+
+    private static void complete(VehicleCommand c, Exception failure) {
+        if (failure == null) c.done.complete(null);
+        else c.done.completeExceptionally(failure);
+    }
 
+    /**
+     * Sends one command to SUMO. Returns the failure, null on success.
+     * 向 SUMO 发送一条命令。返回失败原因，成功时返回 null。
+     */
+    private Exception execute(VehicleCommand c) {
+        try {
+            switch (c.kind) {
+                case INJECT_ROUTE:
+                    System.out.println(">>> 3. Manager 收到了请求，正在处理 ID: " + c.id); // [调试]
                     // Use pre-defined route.
                     // 使用预设路由
-                    traCIWrapper.addVehicle(req.id, req.target, "car");
-                } else {
-
+                    traCIWrapper.addVehicle(c.id, c.target, "car");
+                    break;
+                case INJECT_EDGE:
+                    System.out.println(">>> 3. Manager 收到了请求，正在处理 ID: " + c.id); // [调试]
                     // Dynamic spawn on edge.
                     // [新功能] 使用指定 Edge 动态生成
-                    traCIWrapper.addVehicleOnEdge(req.id, req.target, req.type,req.color);
-                }
-
-            } catch (Exception e) {
-                // Robustness: If one vehicle fails, catch it so the simulation doesn't crash.
-                // 健壮性：如果一辆车生成失败，捕获异常，确保仿真本身不会崩溃。
-                System.err.println(">>> [严重错误] 注入失败！原因: " + e.getMessage()); // [调试]
-                e.printStackTrace(); // 打印完整堆栈
-
+                    traCIWrapper.addVehicleOnEdge(c.id, c.target, c.type, c.color);
+                    break;
+                case SPEED:
+                    traCIWrapper.setVehicleMaxSpeed(c.id, c.speed);
+                    break;
+                case COLOR:
+                    traCIWrapper.setVehicleColor(c.id, c.color);
+                    break;
             }
+            return null;
+        } catch (Exception e) {
+            // Robustness: If one command fails, catch it so the simulation doesn't crash;
+            // the caller fails the command's future with it.
+            // 健壮性：如果一条命令执行失败，捕获异常，确保仿真本身不会崩溃；调用方用它让该命令的 future 失败。
+            System.err.println(">>> [严重错误] 命令执行失败！原因: " + e.getMessage()); // [调试]
+            e.printStackTrace(); // 打印完整堆栈
+            return e;
         }
     }
 
+    /**
+     * Fails every command that was not executed (called when the loop ends).
+     * 让所有未执行的命令失败（在循环结束时调用）。
+     */
+    private void cancelPendingCommands() {
+        CancellationException stopped = new CancellationException("simulation stopped");
+        VehicleCommand c;
+        while ((c = pendingCommands.poll()) != null) c.done.completeExceptionally(stopped);
+        while ((c = commandQueue.poll()) != null) c.done.completeExceptionally(stopped);
+    }
+
+    // Command types handled by the Simulation thread.
+    // 由仿真线程处理的命令类型。
+    private enum CommandKind { INJECT_ROUTE, INJECT_EDGE, SPEED, COLOR }
+
     // DTO (Data Transfer Object) class
-    // Simple container to hold request data in the queue.
+    // Simple container to hold command data in the queue.
     //
     // DTO (数据传输对象) 类
-    // 简单的容器，用于在队列中保存请求数据。
-    private static class InjectionRequest {
-        String id;
-        String target;   // RouteID or EdgeID / 路由ID 或 道路ID
-        boolean isRoute; // true=Route, false=Edge
-        TraCIColor color;
-        String type;
-        public InjectionRequest(String id, String target,boolean isRoute,String type,TraCIColor color) {
+    // 简单的容器，用于在队列中保存命令数据。
+    private static class VehicleCommand {
+        final CommandKind kind;
+        final String id;
+        final String target;   // RouteID or EdgeID / 路由ID 或 道路ID
+        final String type;
+        final TraCIColor color;
+        final double speed;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        VehicleCommand(CommandKind kind, String id, String target, String type, TraCIColor color, double speed) {
+            this.kind = kind;
             this.id = id;
             this.target = target;
-            this.isRoute = isRoute;
-            this.type = type;   // [新增]
-            this.color = color; // [新增]
+            this.type = type;
+            this.color = color;
+            this.speed = speed;
         }
     }
 
@@ -355,17 +469,17 @@ public class SimulationManager implements Runnable {
      * Change vehicle color command.
      * 改变车辆颜色命令。
      */
-    public void changeVehicleColor(String id, Color awtColor) {
+    public CompletableFuture<Void> changeVehicleColor(String id, Color awtColor) {
         TraCIColor sumoColor = new TraCIColor(awtColor.getRed(), awtColor.getGreen(), awtColor.getBlue(), 255);
-        traCIWrapper.setVehicleColor(id, sumoColor);
+        return submit(new VehicleCommand(CommandKind.COLOR, id, null, null, sumoColor, 0.0));
     }
 
     /**
      * Stop vehicle command (Set max speed to 0).
      * 停止车辆命令 (将最大速度设为 0)。
      */
-    public void stopVehicle(String id) {
-        traCIWrapper.setVehicleMaxSpeed(id, 0.0); // 速度设为0即停车
+    public CompletableFuture<Void> stopVehicle(String id) {
+        return setVehicleSpeed(id, 0.0); // 速度设为0即停车
     }
 }
 
@@ -1,7 +1,9 @@
 package org.example;
+import org.eclipse.sumo.libtraci.Simulation;
 import org.eclipse.sumo.libtraci.Vehicle;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -15,23 +17,46 @@ import java.awt.geom.Point2D;
  */
 public class StatisticsCollector {
 
-    // 1. Long-term History Storage / 长期历史存储
+    // 1. Live Vehicles (Departure Registry) / 实时车辆 (出发登记表)
+    // Vehicles currently driving. Static attributes (type, vClass, color, route, depart time) are
+    // fetched once when the vehicle departs and kept here until it arrives, so the per-step loop
+    // below only asks SUMO for dynamic state (speed, edge, position).
+    // On arrival the record is finalized into the trip store and removed, so this map only ever
+    // holds the active vehicles and does not grow over long runs.
+    //
     // Why ConcurrentHashMap?
     // The Simulation Thread writes to this continuously. The GUI Thread (potentially) reads from it.
     // Standard HashMap would throw ConcurrentModificationException.
     //
+    // 当前正在行驶的车辆。静态属性 (类型、vClass、颜色、路线、出发时间) 只在车辆出发时获取一次，
+    // 并保存到车辆到达为止；因此下面的每步循环只向 SUMO 查询动态状态 (速度、路段、位置)。
+    // 车辆到达时记录被写入行程存储并移除，因此此 Map 只保存活跃车辆，长时间运行也不会增长。
+    //
     // 为什么使用 ConcurrentHashMap?
     // 仿真线程会不断写入此 Map。GUI 线程（可能）会从中读取。
     // 标准的 HashMap 在这种并发读写下会抛出 ConcurrentModificationException 异常。
-    private final Map<String, VehicleData> vehicleHistory = new ConcurrentHashMap<>();
+    private final Map<String, VehicleData> activeVehicles = new ConcurrentHashMap<>();
+
+    // 1b. Finished Trips / 已完成的行程
+    // Compact columnar records of arrived vehicles (see TripStore). Simulation thread only.
+    // 已到达车辆的紧凑列式记录 (见 TripStore)。仅限仿真线程。
+    private final TripStore trips = new TripStore();
+
+    // Sum of the average speeds of the active vehicles, kept up to date in update() so the
+    // system average never iterates over vehicles (see getSystemAverageSpeed).
+    // 活跃车辆平均速度之和，在 update() 中增量维护，使系统平均值无需遍历车辆 (见 getSystemAverageSpeed)。
+    private double activeAvgSpeedSum = 0.0;
+
+    // Simulation step length [s], read once. / 仿真步长 [秒]，只读取一次。
+    private double stepLength = Double.NaN;
 
-    // 2. Real-time Snapshot Storage / 实时快照存储
-    // Stores: Edge ID -> Number of Cars (Density)
-    // Used to determine the "Hottest Edge".
+    // 2. Real-time Edge Metrics / 实时路段指标
+    // Vehicle count, mean speed, halting number and occupancy per edge, from edge subscriptions
+    // (see EdgeMetricsStore). Used to determine the "Hottest Edge".
     //
-    // 存储：Edge ID -> 车辆数量 (密度)
+    // 每条路段的车辆数、平均速度、停车数和占有率，来自 Edge 订阅 (见 EdgeMetricsStore)。
     // 用于确定“最拥堵的路段”。
-    private final Map<String, Integer> currentEdgeDensity = new ConcurrentHashMap<>();
+    private final EdgeMetricsStore edgeMetrics = new EdgeMetricsStore();
 
     /**
      * Core Update Logic
@@ -42,12 +67,34 @@ public class StatisticsCollector {
      * @param activeVehicleIds List of all vehicles currently in the simulation / 当前仿真中所有活跃的车辆 ID 列表
      */
     public void update(List<String> activeVehicleIds) {
-        // A. Clear previous frame data
-        // We only care about density *right now*, so we wipe the slate clean every 50ms.
+        // A. Edge metrics of this step
+        // One read of all edge subscriptions replaces the per-vehicle getRoadID calls;
+        // internal junction edges (":...") are not subscribed at all.
         //
-        // A. 清空上一帧数据
-        // 我们只关心*此时此刻*的密度，所以每 50ms 都要将数据清零。
-        currentEdgeDensity.clear();
+        // A. 本步的路段指标
+        // 一次读取所有 Edge 订阅结果，取代逐车调用 getRoadID；
+        // 路口内部 Edge (":...") 根本不订阅。
+        try {
+            edgeMetrics.update();
+        } catch (Exception e) {
+            System.err.println("Error reading edge subscriptions: " + e.getMessage());
+        }
+
+        // A2. Departures / arrivals of the last step
+        // Register new vehicles (static data, once) and forget arrived ones.
+        //
+        // A2. 上一步的出发 / 到达车辆
+        // 登记新车辆 (静态数据，仅一次)，并移除已到达的车辆。
+        double now = Double.NaN;
+        try {
+            if (Double.isNaN(stepLength)) stepLength = Simulation.getDeltaT();
+            now = Simulation.getTime();
+            for (String id : Simulation.getDepartedIDList()) registerDeparture(id);
+            for (String id : Simulation.getArrivedIDList()) finishTrip(id, now);
+        } catch (Exception e) {
+            System.err.println("Error reading departed/arrived lists: " + e.getMessage());
+        }
+        double dt = Double.isNaN(stepLength) ? 0.0 : stepLength;
 
         for (String id : activeVehicleIds) {
             try {
@@ -57,46 +104,23 @@ public class StatisticsCollector {
                 // B. 从 SUMO 获取原始数据 (TraCI 调用)
                 // 这些涉及 C++ 本地接口调用。
                 double speed = Vehicle.getSpeed(id);
-                String edge = Vehicle.getRoadID(id);
                 var traciPos = Vehicle.getPosition(id);
                 Point2D.Double pos = new Point2D.Double(traciPos.getX(), traciPos.getY());
 
                 // C. Update History (Persistent Data)
-                // Logic: If vehicle is new, create data; otherwise, update existing.
-                // 'putIfAbsent' is atomic and thread-safe.
+                // Static data comes from the departure registry; a vehicle that was already driving
+                // before the first departed list we saw is registered here instead (once).
                 //
                 // C. 更新历史 (持久化数据)
-                // 逻辑：如果是新车，创建数据；否则，更新现有数据。
-                // 'putIfAbsent' 是原子操作且线程安全的。
-                vehicleHistory.computeIfAbsent(id, k->{
-                    try {
-                        var c = Vehicle.getColor(id);
-                        String t = Vehicle.getTypeID(id);
-                        java.awt.Color awtColor = new java.awt.Color(c.getR(), c.getG(), c.getB());
-                        return new VehicleData(id, t, awtColor);
-                    } catch (Exception e) {
-                        return new VehicleData(id, "unknown", java.awt.Color.GRAY);
-                    }
-                        });
-
-                // Update dynamic data (Speed, Position).
-                // 更新动态数据 (速度, 位置)。
-                VehicleData data = vehicleHistory.get(id);
-                if(data != null) {data.update(speed, edge,pos);}
-
-                // D. Update Density (Snapshot Data)
-                // Filter: Ignore internal junctions (edges starting with ":").
-                // In SUMO, moving inside an intersection is technically an edge,
-                // but for analytics, we only care about actual streets.
-                //
-                // D. 更新密度 (快照数据)
-                // 过滤：忽略内部路口 (以 ":" 开头的 Edge)。
-                // 在 SUMO 中，在路口内部移动在技术上也算作在 Edge 上，
-                // 但对于统计分析，我们只关心实际的街道
-                if (!edge.startsWith(":")) {
-                    // Increment count for this edge / 该路段计数 +1
-                    currentEdgeDensity.put(edge, currentEdgeDensity.getOrDefault(edge, 0) + 1);
-                }
+                // 静态数据来自出发登记表；在我们看到第一个出发列表之前就已在行驶的车辆，在这里补登记 (仅一次)。
+                VehicleData data = activeVehicles.get(id);
+                if (data == null) data = registerDeparture(id);
+
+                // Update dynamic data (Speed, Position) and the running sum of average speeds.
+                // 更新动态数据 (速度, 位置) 以及平均速度的累计和。
+                activeAvgSpeedSum -= data.getAverageSpeed();
+                data.update(speed, pos, dt);
+                activeAvgSpeedSum += data.getAverageSpeed();
 
             } catch (Exception e) {
 
@@ -108,64 +132,114 @@ public class StatisticsCollector {
                 System.err.println("Error updating stats for " + id);
             }
         }
+
+        // D. Safety net: vehicles that left without showing up in an arrived list
+        // (e.g. a missed step) are finalized here, so the live map cannot grow.
+        //
+        // D. 安全措施：没有出现在到达列表中就离开的车辆 (例如漏掉了某一步) 在这里结束行程，
+        // 保证实时 Map 不会增长。
+        if (activeVehicles.size() > activeVehicleIds.size()) {
+            HashSet<String> onMap = new HashSet<>(activeVehicleIds);
+            for (String id : new ArrayList<>(activeVehicles.keySet())) {
+                if (!onMap.contains(id)) finishTrip(id, now);
+            }
+        }
+        if (activeVehicles.isEmpty()) activeAvgSpeedSum = 0.0; // drop rounding drift / 清除舍入误差
+    }
+
+    /**
+     * Finalize the trip of an arrived vehicle into the trip store and forget the vehicle.
+     * 将已到达车辆的行程写入行程存储，并移除该车辆。
+     */
+    private void finishTrip(String id, double arriveTime) {
+        VehicleData data = activeVehicles.remove(id);
+        if (data == null) return;
+        activeAvgSpeedSum -= data.getAverageSpeed();
+        trips.add(data.getDepartTime(), arriveTime, data.getDistance(), data.getAverageSpeed(),
+                data.getWaitTime(), data.getRouteId());
+    }
+
+    /**
+     * Fetch the static attributes of a departing vehicle (exactly once per vehicle).
+     * 获取出发车辆的静态属性 (每辆车仅一次)。
+     */
+    private VehicleData registerDeparture(String id) {
+        VehicleData existing = activeVehicles.get(id);
+        if (existing != null) return existing;
+
+        VehicleData data;
+        try {
+            var c = Vehicle.getColor(id);
+            java.awt.Color awtColor = new java.awt.Color(c.getR(), c.getG(), c.getB());
+            data = new VehicleData(id, Vehicle.getTypeID(id), Vehicle.getVehicleClass(id), awtColor,
+                    Vehicle.getRouteID(id), Vehicle.getDeparture(id));
+        } catch (Exception e) {
+            data = new VehicleData(id, "unknown", java.awt.Color.GRAY);
+        }
+        activeVehicles.put(id, data);
+        return data;
     }
 
     // --- Data Access Methods for GUI (View) / 供 GUI (视图) 使用的数据访问方法 ---
     /**
-     * Get average speed for a specific car.
-     * 获取特定车辆的平均速度。
+     * Get average speed for a specific car (active vehicles only).
+     * 获取特定车辆的平均速度 (仅限活跃车辆)。
      */
     public double getVehicleAverageSpeed(String vehicleId) {
-        if (vehicleHistory.containsKey(vehicleId)) {
-            return vehicleHistory.get(vehicleId).getAverageSpeed();
-        }
-        return 0.0;
+        VehicleData data = activeVehicles.get(vehicleId);
+        return data == null ? 0.0 : data.getAverageSpeed();
     }
 
     /**
-     * Get the density map safely.
-     * Returns a Defensive Copy to prevent ConcurrentModificationException in GUI.
+     * Get the density map (Edge ID -> Number of Cars, occupied edges only).
+     * Built fresh from the edge arrays on every call; call it from the Simulation thread.
      *
-     * 安全地获取密度地图。
-     * 返回防御性副本以防止 GUI 中出现 ConcurrentModificationException。
+     * 获取密度地图 (Edge ID -> 车辆数量，仅含有车的路段)。
+     * 每次调用都从路段数组新建；请在仿真线程中调用。
      */
     public Map<String, Integer> getEdgeDensities() {
-        // [CRITICAL] Defensive Copying
-        // Why: The 'currentEdgeDensity' is cleared by the Simulation Thread every 50ms.
-        // If the GUI Thread tries to iterate over the *original* map while it's being cleared,
-        // it will crash or show empty data.
-        // Returning a 'new HashMap' creates a snapshot safe for the GUI to render slowly.
-        //
-        // [关键] 防御性复制
-        // 原因：'currentEdgeDensity' 每 50ms 就会被仿真线程清空。
-        // 如果 GUI 线程在它被清空的同时尝试遍历 *原始* Map，程序会崩溃或显示空数据。
-        // 返回一个 'new HashMap' 创建了一个快照，供 GUI 慢慢渲染而互不干扰。
-        return new HashMap<>(currentEdgeDensity); // 返回副本保护数据
+        Map<String, Integer> density = new HashMap<>();
+        for (int e = 0; e < edgeMetrics.size(); e++) {
+            if (edgeMetrics.vehicles(e) > 0) density.put(edgeMetrics.id(e), edgeMetrics.vehicles(e));
+        }
+        return density;
     }
 
     /**
-     * Calculate system-wide average speed.
-     * 计算全系统的平均速度。
+     * Per-edge metrics of the last step (Simulation thread only).
+     * 上一步的路段指标 (仅限仿真线程)。
+     */
+    public EdgeMetricsStore getEdgeMetrics() {
+        return edgeMetrics;
+    }
+
+    /**
+     * Calculate system-wide average speed: the mean of the per-vehicle average speeds over every
+     * vehicle seen so far (finished trips and active vehicles). O(1), from the running sums.
+     * Simulation thread only.
+     *
+     * 计算全系统的平均速度：所有出现过的车辆 (已完成的行程和活跃车辆) 各自平均速度的平均值。
+     * 由累计和得到，O(1)。仅限仿真线程。
      */
     public double getSystemAverageSpeed() {
-        if (vehicleHistory.isEmpty()) return 0.0;
-        double sumAvg = 0.0;
+        long count = trips.totalTrips() + activeVehicles.size();
+        if (count == 0) return 0.0;
+        return (trips.sumMeanSpeed() + activeAvgSpeedSum) / count;
+    }
 
-        // Iterate over all tracked vehicles
-        // 遍历所有被追踪的车辆
-        for (VehicleData v : vehicleHistory.values()) {
-            sumAvg += v.getAverageSpeed();
-        }
-        // Return the global average
-        // 返回全局平均值
-        return sumAvg / vehicleHistory.size();
+    /**
+     * Finished trips (Simulation thread only).
+     * 已完成的行程 (仅限仿真线程)。
+     */
+    public TripStore getTrips() {
+        return trips;
     }
 
     /**
-     * Get snapshot of all vehicle data for GUI rendering/filtering.
-     * 获取所有车辆数据的快照用于 GUI 渲染/筛选。
+     * Get snapshot of the active vehicles for GUI rendering/filtering.
+     * 获取活跃车辆的快照用于 GUI 渲染/筛选。
      */
     public List<VehicleData> getAllVehicleData() {
-        return new ArrayList<>(vehicleHistory.values());
+        return new ArrayList<>(activeVehicles.values());
     }
 }
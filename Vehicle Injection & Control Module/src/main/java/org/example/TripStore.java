@@ -0,0 +1,134 @@
+package org.example;
+import java.util.Arrays;
+
+/**
+ * TripStore: Finished Trips
+ * One compact record per arrived vehicle: depart, arrive, distance, mean speed, wait time and route.
+ *
+ * TripStore: 已完成的行程
+ * 每辆已到达的车辆一条紧凑记录：出发、到达、距离、平均速度、等待时间和路线。
+ */
+public class TripStore {
+
+    // Why columns?
+    // A record is a slot in a few primitive arrays (one array per field) instead of one object per
+    // trip: about 48 bytes per trip and no per-trip object header or boxing. Records are only
+    // appended. Once 'capacity' trips are stored the oldest slot is overwritten (ring), so the
+    // memory stays bounded on multi-hour runs; the totals below still cover every trip ever added.
+    // So once full, size() and the per-trip accessors describe only the last 'capacity' trips while
+    // totalTrips() and the averages describe all of them. Simulation thread only.
+    // Port of JavaSumo's TripStore, which is the source: change that one first and keep this in step.
+    //
+    // 为什么按列存储？
+    // 一条记录是几个基本类型数组 (每个字段一个数组) 中的一个位置，而不是每个行程一个对象：
+    // 每个行程约 48 字节，没有对象头和装箱。记录只追加。存满 'capacity' 条后覆盖最旧的位置 (环形)，
+    // 因此长时间运行时内存有上限；下面的累计值仍然覆盖所有加入过的行程。
+    // 因此存满后 size() 和按下标的访问只描述最近 'capacity' 个行程，而 totalTrips() 和平均值描述全部行程。
+    // 仅限仿真线程使用。本类移植自 JavaSumo 的 TripStore (原版)：先改那边，再同步到这里。
+    public static final int DEFAULT_CAPACITY = 100_000;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private final int capacity;
+
+    private double[] depart = new double[0];     // sim time [s] / 仿真时间 [秒]
+    private double[] arrive = new double[0];     // sim time [s] / 仿真时间 [秒]
+    private double[] distance = new double[0];   // [m] / [米]
+    private double[] meanSpeed = new double[0];  // [m/s] / [米/秒]
+    private double[] waitTime = new double[0];   // time below 0.1 m/s [s] / 速度低于 0.1 m/s 的时间 [秒]
+    private String[] route = new String[0];
+
+    private int size = 0;   // stored records / 保存的记录数
+    private int oldest = 0; // slot of record 0 once the ring is full / 环形存满后第 0 条记录所在的位置
+
+    // Running totals over all trips (including overwritten ones).
+    // 所有行程的累计值 (包括已被覆盖的)。
+    private long totalTrips = 0;
+    // trips with a known depart time (travel time known), the divisor of averageTravelTime()
+    // 出发时间已知 (行程时间可算) 的行程，averageTravelTime() 的分母
+    private long timedTrips = 0;
+    private double sumMeanSpeed = 0.0;
+    private double sumTravelTime = 0.0;
+    private double sumDistance = 0.0;
+    private double sumWaitTime = 0.0;
+
+    public TripStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TripStore(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Append a finished trip (overwrites the oldest one when full).
+     * 追加一个已完成的行程 (存满时覆盖最旧的)。
+     */
+    public void add(double departTime, double arriveTime, double dist, double speed, double wait, String routeId) {
+        int slot;
+        if (size < capacity) {
+            if (size == depart.length) grow();
+            slot = size++;
+        } else {
+            slot = oldest;
+            oldest = (oldest + 1) % capacity;
+        }
+        depart[slot] = departTime;
+        arrive[slot] = arriveTime;
+        distance[slot] = dist;
+        meanSpeed[slot] = speed;
+        waitTime[slot] = wait;
+        route[slot] = routeId;
+
+        totalTrips++;
+        sumMeanSpeed += speed;
+        if (arriveTime >= departTime) {
+            timedTrips++;
+            sumTravelTime += arriveTime - departTime;
+        }
+        sumDistance += dist;
+        sumWaitTime += wait;
+    }
+
+    // Double the columns, up to the capacity.
+    // 将每一列扩大一倍，最多到容量上限。
+    private void grow() {
+        int n = Math.min(capacity, Math.max(INITIAL_SLOTS, depart.length * 2));
+        depart = Arrays.copyOf(depart, n);
+        arrive = Arrays.copyOf(arrive, n);
+        distance = Arrays.copyOf(distance, n);
+        meanSpeed = Arrays.copyOf(meanSpeed, n);
+        waitTime = Arrays.copyOf(waitTime, n);
+        route = Arrays.copyOf(route, n);
+    }
+
+    // --- Stored records (0 = oldest) / 保存的记录 (0 = 最旧) ---
+    // Only the last min(totalTrips(), capacity) trips; older ones were overwritten and live on in the totals.
+    // 只有最近 min(totalTrips(), capacity) 个行程；更早的已被覆盖，只保留在累计值中。
+    public int size() { return size; }
+    public int capacity() { return capacity; }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("trip " + i + " of " + size);
+        return size < capacity ? i : (oldest + i) % capacity;
+    }
+
+    public double depart(int i) { return depart[slot(i)]; }
+    public double arrive(int i) { return arrive[slot(i)]; }
+    public double distance(int i) { return distance[slot(i)]; }
+    public double meanSpeed(int i) { return meanSpeed[slot(i)]; }
+    public double waitTime(int i) { return waitTime[slot(i)]; }
+    public String route(int i) { return route[slot(i)]; }
+
+    // --- Totals over all trips, overwritten ones included / 所有行程的累计值 (包括已被覆盖的) ---
+    public long totalTrips() { return totalTrips; }
+    // those with a known travel time (not: depart unknown (NaN) or after arrival)
+    // 其中行程时间已知的 (出发时间未知 (NaN) 或晚于到达时间的不算)
+    public long timedTrips() { return timedTrips; }
+    public double sumMeanSpeed() { return sumMeanSpeed; }
+    public double totalDistance() { return sumDistance; }
+
+    public double averageMeanSpeed() { return totalTrips == 0 ? 0.0 : sumMeanSpeed / totalTrips; }
+    public double averageTravelTime() { return timedTrips == 0 ? 0.0 : sumTravelTime / timedTrips; }
+    public double averageWaitTime() { return totalTrips == 0 ? 0.0 : sumWaitTime / totalTrips; }
+}
@@ -117,18 +117,17 @@ public class VehicleControlPanel extends JPanel{
         btnBatch.addActionListener(e -> {
             int count = (Integer) spinCount.getValue();
 
-            // Threading: Run batch loop in a new thread to avoid freezing the UI.
-            // 线程：在新线程中运行批量循环以避免冻结 UI。
-            new Thread(() -> {
-                for(int i=0; i<count; i++) {
-                    String uid = "batch_" + System.currentTimeMillis() + "_" + i;
-                    String edge = edges[rng.nextInt(edges.length)];
-                    String type = rng.nextBoolean() ? "car" : "truck";
-                    Color c = new Color(rng.nextInt(256), rng.nextInt(256), rng.nextInt(256));
-                    simManager.injectVehicleOnEdge(uid, edge, type, c);
-                    try { Thread.sleep(100); } catch(Exception ex){}
-                }
-            }).start();
+            // Threading: Only queues the requests (non-blocking); the Simulation thread executes
+            // them as one batch between steps, so no extra thread is needed.
+            // 线程：这里只是将请求入队（非阻塞）；仿真线程会在步长之间把它们作为一批执行，因此不需要额外线程。
+            long batchTag = System.currentTimeMillis();
+            for(int i=0; i<count; i++) {
+                String uid = "batch_" + batchTag + "_" + i;
+                String edge = edges[rng.nextInt(edges.length)];
+                String type = rng.nextBoolean() ? "car" : "truck";
+                Color c = new Color(rng.nextInt(256), rng.nextInt(256), rng.nextInt(256));
+                simManager.injectVehicleOnEdge(uid, edge, type, c);
+            }
         });
 
         return p;
@@ -205,20 +204,20 @@ public class VehicleControlPanel extends JPanel{
             String id = txtTargetId.getText().trim();
             if(!id.isEmpty()) {
                 Color randomColor = new Color(rng.nextInt(256), rng.nextInt(256), rng.nextInt(256));
-                // Run in thread (good practice for TraCI calls).
-                // 在线程中运行（TraCI 调用的良好实践）。
-                new Thread(() -> simManager.changeVehicleColor(id, randomColor)).start();
+                // Queued: the Simulation thread sends it to SUMO before the next step.
+                // 入队：仿真线程会在下一步之前将其发送给 SUMO。
+                simManager.changeVehicleColor(id, randomColor);
             }
         });
 
         btnStop.addActionListener(e -> {
             String id = txtTargetId.getText().trim();
-            if(!id.isEmpty()) new Thread(() -> simManager.setVehicleSpeed(id, 0.0)).start();
+            if(!id.isEmpty()) simManager.setVehicleSpeed(id, 0.0);
         });
 
         btnResume.addActionListener(e -> {
             String id = txtTargetId.getText().trim();
-            if(!id.isEmpty()) new Thread(() -> simManager.setVehicleSpeed(id, -1.0)).start(); // -1 代表恢复默认限速
+            if(!id.isEmpty()) simManager.setVehicleSpeed(id, -1.0); // -1 代表恢复默认限速
         });
 
         return p;
@@ -27,6 +27,11 @@ public class VehicleData {
     private final String typeId;    // 新增：车辆类型 (e.g. "car", "truck")
     private final Color color;      // 新增：车辆颜色 (用于绘图和筛选)
 
+    // Static attributes read once at departure / 出发时读取一次的静态属性
+    private final String vehicleClass; // vClass (e.g. "passenger", "bus")
+    private final String routeId;      // Route ID / 路线 ID
+    private final double departTime;   // Departure sim time [s] / 出发仿真时间 [秒]
+
     // --- Dynamic Fields (Updated every frame) / 动态字段 (每帧更新) ---
     private Point2D.Double position; // X,Y Coordinates / X,Y 坐标
     private double currentSpeed;     // Instant speed / 瞬时速度
@@ -37,8 +42,14 @@ public class VehicleData {
     private double totalSpeedSum = 0.0;
     private long sampleCount = 0;
 
-    // Current Location Tracker / 当前位置追踪器
-    private String currentEdge = "";
+    // Trip accumulators, finalized into a TripStore record on arrival.
+    // 行程累加器，到达时写入 TripStore 记录。
+    private double distance = 0.0;  // speed * step length [m] / 速度 * 步长 [米]
+    private double waitTime = 0.0;  // time below WAIT_SPEED [s] / 低于 WAIT_SPEED 的时间 [秒]
+
+    // SUMO counts a vehicle as waiting below 0.1 m/s.
+    // SUMO 将速度低于 0.1 m/s 的车辆视为等待。
+    static final double WAIT_SPEED = 0.1;
 
     /**
      * Constructor / 构造函数
@@ -51,9 +62,25 @@ public class VehicleData {
      * @param color Display color / 显示颜色
      */
     public VehicleData(String vehicleId, String typeId, Color color) {
+        this(vehicleId, typeId, "", color, "", Double.NaN);
+    }
+
+    /**
+     * Constructor with every static attribute (see StatisticsCollector.registerDeparture).
+     * 包含全部静态属性的构造函数 (见 StatisticsCollector.registerDeparture)。
+     *
+     * @param vehicleClass SUMO vClass / SUMO 车辆类别
+     * @param routeId Route ID / 路线 ID
+     * @param departTime Departure sim time, NaN if unknown / 出发仿真时间，未知时为 NaN
+     */
+    public VehicleData(String vehicleId, String typeId, String vehicleClass, Color color,
+                       String routeId, double departTime) {
         this.vehicleId = vehicleId;
         this.typeId = typeId;
+        this.vehicleClass = vehicleClass;
         this.color = color;
+        this.routeId = routeId;
+        this.departTime = departTime;
         this.position = new Point2D.Double(0, 0);
     }
 
@@ -62,18 +89,19 @@ public class VehicleData {
      * Why: This method is called by 'StatisticsCollector' every 50ms to record the latest data.
      * * 原因: 'StatisticsCollector' 每 50ms 调用此方法以记录最新数据。
      * * @param currentSpeed Speed in m/s from SUMO / 来自 SUMO 的速度 (米/秒)
-     * @param edge The ID of the road the vehicle is currently on / 车辆当前所在的道路 ID
+     * @param pos Position in SUMO coordinates / SUMO 坐标中的位置
+     * @param stepLength Simulation step length [s] / 仿真步长 [秒]
      */
-    public void update(double speed, String edge, Point2D.Double pos) {
+    public void update(double speed, Point2D.Double pos, double stepLength) {
         this.currentSpeed = speed;
-        this.currentEdge = edge;
         this.position = pos;
 
         // Accumulate statistics.
         // 累加统计数据。
         this.totalSpeedSum += speed;
         this.sampleCount++;
-
+        this.distance += speed * stepLength;
+        if (speed < WAIT_SPEED) this.waitTime += stepLength;
     }
 
     /**
@@ -86,16 +114,17 @@ public class VehicleData {
         return totalSpeedSum / sampleCount;
     }
 
-    /**
-     * Getter for Current Edge / 获取当前道路
-     */
     // Getters...
     public String getVehicleId() {return vehicleId;}
     public Color getColor() { return color; }
     public String getTypeId() { return typeId; }
+    public String getVehicleClass() { return vehicleClass; }
+    public String getRouteId() { return routeId; }
+    public double getDepartTime() { return departTime; }
     public double getCurrentSpeed() { return currentSpeed; }
+    public double getDistance() { return distance; }
+    public double getWaitTime() { return waitTime; }
     public Point2D.Double getPosition() { return position; }
-    public String getCurrentEdge() {return currentEdge;}
     // 计算平均速度
 
 }
@@ -113,6 +113,7 @@ public class VehicleInjection {
             System.out.println("[TraCI] Vehicle added: " + vehicleId);
         } catch (Exception e) {
             System.err.println("[TraCI Error] Failed to add vehicle: " + e.getMessage());
+            throw e; // the command's future fails with it / 命令的 future 随之失败
         }
     }
 
@@ -207,6 +208,7 @@ public class VehicleInjection {
 
         } catch (Exception e) {
             System.err.println("[TraCI Error] Failed to add vehicle on edge " + edgeId + ": " + e.getMessage());
+            throw e;
         }
     }
     public void setVehicleColor(String id, TraCIColor color) {
@@ -214,6 +216,7 @@ public class VehicleInjection {
             Vehicle.setColor(id, color);
         } catch (Exception e) {
             System.err.println("[TraCI Error] Could not set color for " + id);
+            throw e;
         }
     }
 
@@ -222,6 +225,7 @@ public class VehicleInjection {
             Vehicle.setMaxSpeed(id, speed);
         } catch (Exception e) {
             System.err.println("[TraCI Error] Could not set speed for " + id);
+            throw e;
         }
     }
 }